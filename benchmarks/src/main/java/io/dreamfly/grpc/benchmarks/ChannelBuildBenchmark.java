@@ -0,0 +1,56 @@
+package io.dreamfly.grpc.benchmarks;
+
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.grpc.ManagedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of creating channels by {@link GrpcConnectionBuilder#build()}.
+ *
+ * <p>Channels connect lazily, so this measures the builder, the name resolver and the load balancer setup. Each
+ * channel is shut down right after it is built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChannelBuildBenchmark {
+
+    @Param({"1", "10"})
+    private int hosts;
+
+    private GrpcConnectionBuilder connectionBuilder;
+
+    @Setup
+    public void setUp() {
+        StringBuilder uri = new StringBuilder("grpc://");
+        for (int i = 0; i < hosts; i++) {
+            if (i > 0) {
+                uri.append(',');
+            }
+            uri.append("127.0.0.1:").append(20000 + i);
+        }
+        connectionBuilder = GrpcConnectionBuilder.newBuilder().uri(uri.toString());
+    }
+
+    @Benchmark
+    public ManagedChannel build() {
+        ManagedChannel channel = connectionBuilder.build();
+        channel.shutdownNow();
+        return channel;
+    }
+}
@@ -0,0 +1,105 @@
+package io.dreamfly.grpc.benchmarks;
+
+import com.google.protobuf.ByteString;
+import io.dreamfly.grpc.internal.util.SimpleJsonFormat;
+import io.dreamfly.grpc.test.AllTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of converting messages to/from json with each codec of {@link SimpleJsonFormat}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SimpleJsonFormatBenchmark {
+
+    @Param({"JSON_FORMAT", "FAST"})
+    private SimpleJsonFormat.Codec codec;
+
+    @Param({"small", "large"})
+    private String size;
+
+    private AllTypes message;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        SimpleJsonFormat.setCodec(codec);
+        message = "small".equals(size) ? smallMessage() : largeMessage();
+        json = SimpleJsonFormat.message2Json(message);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SimpleJsonFormat.setCodec(SimpleJsonFormat.Codec.JSON_FORMAT);
+    }
+
+    @Benchmark
+    public String message2Json() {
+        return SimpleJsonFormat.message2Json(message);
+    }
+
+    /**
+     * binary encoding which {@link io.dreamfly.grpc.internal.util.FastJsonCodec} prints from, to compare its cost
+     * with message2Json.
+     */
+    @Benchmark
+    public byte[] encode() {
+        return message.toByteArray();
+    }
+
+    @Benchmark
+    public AllTypes json2message() {
+        AllTypes.Builder builder = AllTypes.newBuilder();
+        SimpleJsonFormat.json2message(json, builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public AllTypes roundTrip() {
+        AllTypes.Builder builder = AllTypes.newBuilder();
+        SimpleJsonFormat.json2message(SimpleJsonFormat.message2Json(message), builder);
+        return builder.build();
+    }
+
+    private static AllTypes smallMessage() {
+        return AllTypes.newBuilder()
+                .setInt64Value(1234567890123L)
+                .setStringValue("small message")
+                .setColor(AllTypes.Color.GREEN)
+                .build();
+    }
+
+    private static AllTypes largeMessage() {
+        AllTypes.Builder builder = AllTypes.newBuilder()
+                .setInt32Value(-42).setInt64Value(Long.MAX_VALUE).setUint64Value(-1L)
+                .setDoubleValue(Math.PI).setFloatValue(2.5f).setBoolValue(true)
+                .setStringValue("large message with \"escaped\" content\n")
+                .setBytesValue(ByteString.copyFrom(new byte[256]));
+        for (int i = 0; i < 200; i++) {
+            builder.addRepeatedInt64(i * 1000003L)
+                    .addRepeatedDouble(i / 7.0)
+                    .addRepeatedString("item-" + i)
+                    .addRepeatedNested(AllTypes.Nested.newBuilder().setId(i).setName("nested-" + i))
+                    .putStringMap("key-" + i, i)
+                    .putInt64Map(i, AllTypes.Nested.newBuilder().setId(i).build());
+        }
+        return builder.build();
+    }
+}
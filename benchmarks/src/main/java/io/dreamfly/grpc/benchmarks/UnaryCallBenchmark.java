@@ -0,0 +1,111 @@
+package io.dreamfly.grpc.benchmarks;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableResponse;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of unary calls to {@link ControllableServiceImpl}.
+ *
+ * <p>The in-process transport measures the stub and the channel without network, netty measures a channel built by
+ * {@link GrpcConnectionBuilder} to a server on loopback. The payload size applies to both request and response.
+ * Run with {@code -t} to add concurrent callers.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UnaryCallBenchmark {
+
+    private static final int OUTSTANDING_CALLS = 16;
+
+    @Param({"inprocess", "netty"})
+    private String transport;
+
+    @Param({"0", "16384"})
+    private int payloadSize;
+
+    private Server server;
+    private ManagedChannel channel;
+    private ControllableServiceGrpc.ControllableServiceBlockingStub blockingStub;
+    private ControllableServiceGrpc.ControllableServiceFutureStub futureStub;
+    private ControllableRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("inprocess".equals(transport)) {
+            String name = "unary-call-benchmark";
+            server = InProcessServerBuilder.forName(name).addService(new ControllableServiceImpl()).build().start();
+            channel = InProcessChannelBuilder.forName(name).build();
+        } else {
+            // pick a free port
+            server = ServerBuilder.forPort(0).addService(new ControllableServiceImpl()).build().start();
+            channel = GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:" + server.getPort()).build();
+        }
+        blockingStub = ControllableServiceGrpc.newBlockingStub(channel);
+        futureStub = ControllableServiceGrpc.newFutureStub(channel);
+        request = ControllableRequest.newBuilder()
+                .setRequestId(1)
+                .setPayload(ByteString.copyFrom(new byte[payloadSize]))
+                .setResponseSize(payloadSize)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * one call at a time per benchmark thread.
+     */
+    @Benchmark
+    public ControllableResponse blockingCall() {
+        return blockingStub.execute(request);
+    }
+
+    /**
+     * a batch of concurrent calls per benchmark thread, the time is of one call.
+     */
+    @Benchmark
+    @OperationsPerInvocation(OUTSTANDING_CALLS)
+    public List<ControllableResponse> asyncCalls() throws ExecutionException, InterruptedException {
+        List<ListenableFuture<ControllableResponse>> futures = new ArrayList<>(OUTSTANDING_CALLS);
+        for (int i = 0; i < OUTSTANDING_CALLS; i++) {
+            futures.add(futureStub.execute(request));
+        }
+        return Futures.allAsList(futures).get();
+    }
+}
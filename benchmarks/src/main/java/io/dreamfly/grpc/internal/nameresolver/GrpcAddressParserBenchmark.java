@@ -0,0 +1,63 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of parsing comma separated targets.
+ *
+ * <p>Hosts are ip literals, so {@link GrpcAddressParser#parse(String, int)} measures parsing and the resolver cache
+ * instead of DNS.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GrpcAddressParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int hosts;
+
+    private String target;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < hosts; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("10.0.").append(i / 250).append('.').append(i % 250 + 1);
+            // half of the hosts use the default port
+            if (i % 2 == 0) {
+                builder.append(':').append(9000 + i % 100);
+            }
+        }
+        target = builder.toString();
+    }
+
+    @Benchmark
+    public List<GrpcAddressParser.HostPortPair> parseHostPortPairs() {
+        return GrpcAddressParser.parseHostPortPairs(target, 8080);
+    }
+
+    @Benchmark
+    public List<GrpcAddressParser.IpPortPair> parse() throws UnknownHostException {
+        return GrpcAddressParser.parse(target, 8080);
+    }
+}
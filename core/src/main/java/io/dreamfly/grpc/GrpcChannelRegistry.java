@@ -0,0 +1,272 @@
+package io.dreamfly.grpc;
+
+import io.dreamfly.grpc.internal.nameresolver.GrpcNameResolverProvider;
+import io.dreamfly.grpc.internal.util.FailingClientCall;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Registry sharing one channel among all users of the same target and settings.
+ *
+ * <p>Each channel has its own name resolver and connections, so components building channels to the same target
+ * multiply connections and resolution. {@link #acquire(GrpcConnectionBuilder)} returns a handle of the shared
+ * channel instead, shutting down the handle releases it, and the channel is shut down when the last handle is
+ * released.
+ *
+ * <p>Channels are shared when the normalized uri and all settings of the builders are equal. Objects given to the
+ * builder, like policies, limiters and event loop groups, are compared by equals, so reuse the same instances to
+ * share channels.
+ */
+public class GrpcChannelRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(GrpcChannelRegistry.class);
+
+    private static class DefaultHolder {
+        private static final GrpcChannelRegistry INSTANCE = new GrpcChannelRegistry();
+    }
+
+    @GuardedBy("this")
+    private final Map<Object, SharedChannel> channels = new HashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * @return registry shared by the process
+     */
+    public static GrpcChannelRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * acquire the channel built by the builder, shared with other users of the same target and settings.
+     *
+     * @param connectionBuilder builder of the channel, only used if no channel is shared
+     * @return handle of the shared channel, shut it down to release
+     */
+    public ManagedChannel acquire(GrpcConnectionBuilder connectionBuilder) {
+        checkNotNull(connectionBuilder, "connectionBuilder should not be null");
+        Object key = connectionBuilder.registryKey();
+        synchronized (this) {
+            SharedChannel sharedChannel = channels.get(key);
+            if (sharedChannel == null) {
+                sharedChannel = new SharedChannel(key, connectionBuilder.getUri(), connectionBuilder.build(connections));
+                channels.put(key, sharedChannel);
+                logger.debug("create shared channel: uri={}", sharedChannel.uri);
+            }
+            sharedChannel.references++;
+            return new ChannelHandle(sharedChannel);
+        }
+    }
+
+    /**
+     * @return count of shared channels not released
+     */
+    public synchronized int channelCount() {
+        return channels.size();
+    }
+
+    /**
+     * @return count of handles not released
+     */
+    public synchronized int referenceCount() {
+        int count = 0;
+        for (SharedChannel sharedChannel : channels.values()) {
+            count += sharedChannel.references;
+        }
+        return count;
+    }
+
+    /**
+     * @return count of ready connections of all channels created by the registry
+     */
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return true if the shared channel is closed by the release
+     */
+    private synchronized boolean release(SharedChannel sharedChannel, boolean now) {
+        if (--sharedChannel.references > 0) {
+            return false;
+        }
+        channels.remove(sharedChannel.key);
+        if (now) {
+            sharedChannel.channel.shutdownNow();
+        } else {
+            sharedChannel.channel.shutdown();
+        }
+        logger.debug("close shared channel: uri={}", sharedChannel.uri);
+        return true;
+    }
+
+    /**
+     * normalize the grpc uri so the same target written differently shares the channel, hosts of "grpc://" are
+     * case insensitive.
+     */
+    static String normalizeTarget(String target) {
+        int index = target.indexOf("://");
+        checkArgument(index > 0, "invalid target " + target);
+        if (!GrpcNameResolverProvider.GRPC_SCHEME.equals(target.substring(0, index))) {
+            // paths and in-process names are case sensitive
+            return target;
+        }
+
+        StringBuilder normalized = new StringBuilder(target.length()).append(target, 0, index + 3);
+        String[] addresses = target.substring(index + 3).split(",");
+        for (int i = 0; i < addresses.length; i++) {
+            if (i > 0) {
+                normalized.append(',');
+            }
+            int end = addresses[i].indexOf(';');
+            if (end < 0) {
+                end = addresses[i].length();
+            }
+            normalized.append(addresses[i].substring(0, end).toLowerCase(Locale.ROOT))
+                    .append(addresses[i], end, addresses[i].length());
+        }
+        return normalized.toString();
+    }
+
+    private static class SharedChannel {
+        private final Object key;
+        private final String uri;
+        private final ManagedChannel channel;
+        @GuardedBy("GrpcChannelRegistry.this")
+        private int references;
+
+        SharedChannel(Object key, String uri, ManagedChannel channel) {
+            this.key = key;
+            this.uri = uri;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Handle of a shared channel, shutdown releases the reference instead of shutting down the channel.
+     */
+    private class ChannelHandle extends ManagedChannel {
+        private final SharedChannel sharedChannel;
+        @GuardedBy("this")
+        private boolean released;
+        // true if the shared channel is closed by this handle
+        @GuardedBy("this")
+        private boolean closedChannel;
+
+        ChannelHandle(SharedChannel sharedChannel) {
+            this.sharedChannel = sharedChannel;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                                             CallOptions callOptions) {
+            if (isShutdown()) {
+                return new FailingClientCall<>(Status.UNAVAILABLE.withDescription("channel is released"),
+                        callOptions.getExecutor());
+            }
+            return sharedChannel.channel.newCall(methodDescriptor, callOptions);
+        }
+
+        @Override
+        public String authority() {
+            return sharedChannel.channel.authority();
+        }
+
+        @Override
+        public ConnectivityState getState(boolean requestConnection) {
+            if (isShutdown()) {
+                return ConnectivityState.SHUTDOWN;
+            }
+            return sharedChannel.channel.getState(requestConnection);
+        }
+
+        @Override
+        public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+            if (isShutdown()) {
+                // the handle stays SHUTDOWN after released
+                if (source != ConnectivityState.SHUTDOWN) {
+                    callback.run();
+                }
+                return;
+            }
+            sharedChannel.channel.notifyWhenStateChanged(source, callback);
+        }
+
+        @Override
+        public void resetConnectBackoff() {
+            if (!isShutdown()) {
+                sharedChannel.channel.resetConnectBackoff();
+            }
+        }
+
+        @Override
+        public void enterIdle() {
+            if (!isShutdown()) {
+                sharedChannel.channel.enterIdle();
+            }
+        }
+
+        @Override
+        public ManagedChannel shutdown() {
+            release(false);
+            return this;
+        }
+
+        @Override
+        public ManagedChannel shutdownNow() {
+            release(true);
+            return this;
+        }
+
+        private synchronized void release(boolean now) {
+            if (!released) {
+                released = true;
+                closedChannel = GrpcChannelRegistry.this.release(sharedChannel, now);
+            } else if (closedChannel && now) {
+                sharedChannel.channel.shutdownNow();
+            }
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return released;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return released && (!closedChannel || sharedChannel.channel.isTerminated());
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            synchronized (this) {
+                checkState(released, "channel is not released");
+                if (!closedChannel) {
+                    return true;
+                }
+            }
+            return sharedChannel.channel.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return "ChannelHandle{uri=" + sharedChannel.uri + ", released=" + isShutdown() + "}";
+        }
+    }
+}
@@ -1,14 +1,61 @@
 package io.dreamfly.grpc;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import io.dreamfly.grpc.internal.discovery.ServiceDiscovery;
+import io.dreamfly.grpc.internal.limit.ConcurrencyLimitClientInterceptor;
+import io.dreamfly.grpc.internal.limit.ConcurrencyLimiter;
+import io.dreamfly.grpc.internal.loadbalancer.GrpcLoadBalancerFactory;
+import io.dreamfly.grpc.internal.loadbalancer.HealthCheckConfig;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerOptions;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicy;
+import io.dreamfly.grpc.internal.loadbalancer.OutlierDetectionConfig;
+import io.dreamfly.grpc.internal.loadbalancer.TrackingLoadBalancerFactory;
+import io.dreamfly.grpc.internal.metrics.MetricsClientInterceptor;
+import io.dreamfly.grpc.internal.metrics.MetricsRecorder;
+import io.dreamfly.grpc.internal.nameresolver.BackoffPolicy;
+import io.dreamfly.grpc.internal.nameresolver.GrpcNameResolverOptions;
 import io.dreamfly.grpc.internal.nameresolver.GrpcNameResolverProvider;
+import io.dreamfly.grpc.internal.nameresolver.HostResolver;
+import io.dreamfly.grpc.internal.nameresolver.ResolverExecutors;
+import io.dreamfly.grpc.internal.retry.HedgingClientInterceptor;
+import io.dreamfly.grpc.internal.retry.HedgingPolicy;
+import io.dreamfly.grpc.internal.retry.RetryBudget;
+import io.dreamfly.grpc.internal.retry.RetryPolicy;
+import io.dreamfly.grpc.internal.retry.ServiceConfigs;
+import io.dreamfly.grpc.internal.transport.NettyTransports;
+import io.dreamfly.grpc.internal.transport.ResolvingInProcessChannelBuilder;
+import io.dreamfly.grpc.internal.warmup.ChannelWarmUp;
+import io.dreamfly.grpc.internal.warmup.WarmUpConfig;
+import io.grpc.LoadBalancer;
 import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.internal.SharedResourceHolder;
+import io.grpc.netty.InternalNettyChannelBuilder;
 import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 /**
@@ -16,7 +63,34 @@ import static com.google.common.base.Preconditions.checkState;
  */
 public class GrpcConnectionBuilder {
 
+    private static Logger logger = LoggerFactory.getLogger(GrpcConnectionBuilder.class);
+
     private String uri;
+    private final GrpcNameResolverOptions.Builder resolverOptions = GrpcNameResolverOptions.newBuilder();
+
+    private LoadBalancingPolicy loadBalancingPolicy = LoadBalancingPolicy.ROUND_ROBIN;
+    private LoadBalancer.Factory loadBalancerFactory;
+    private final LoadBalancerOptions.Builder loadBalancerOptions = LoadBalancerOptions.newBuilder();
+
+    private boolean useEpoll;
+    private EventLoopGroup eventLoopGroup;
+    private Class<? extends Channel> channelType;
+    private int flowControlWindow;
+    private int maxInboundMessageSize;
+    private long keepAliveTimeNanos;
+    private long keepAliveTimeoutNanos;
+    private boolean keepAliveWithoutCalls = true;
+    private boolean pooledAllocator;
+
+    private MetricsRecorder metricsRecorder;
+
+    private final Map<String, RetryPolicy> retryPolicies = new LinkedHashMap<>();
+    private final Map<String, HedgingPolicy> hedgingPolicies = new LinkedHashMap<>();
+    private RetryBudget retryBudget;
+
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    private WarmUpConfig warmUpConfig;
 
     private GrpcConnectionBuilder() {
         // no public constructor
@@ -32,7 +106,13 @@ public class GrpcConnectionBuilder {
     }
 
     /**
-     * set grpc uri
+     * set grpc uri, like "grpc://host1:8080,host2:8080", each address can be annotated with zone and weight like
+     * "host1:8080;zone=zone-a;weight=2", see {@link #localZone(String)} and
+     * {@link LoadBalancingPolicy#WEIGHTED_ROUND_ROBIN}.
+     *
+     * <p>Local servers are reached by unix domain sockets like "grpc+unix:///var/run/a.sock,/var/run/b.sock",
+     * which need netty-transport-native-epoll, or by in-process servers like "grpc+inprocess://server-a,server-b",
+     * with the same load balancing and interceptors.
      *
      * @param uri grpc uri address
      * @return GrpcConnectionBuilder
@@ -45,6 +125,384 @@ public class GrpcConnectionBuilder {
         return this;
     }
 
+    /**
+     * set the resolver used to resolve hosts in grpc uri, default to the process wide
+     * {@link io.dreamfly.grpc.internal.nameresolver.CachingHostResolver#getDefault()}.
+     *
+     * <p>Use {@link io.dreamfly.grpc.internal.nameresolver.NettyDnsHostResolver} to resolve without blocking.
+     *
+     * @param hostResolver host resolver
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder hostResolver(HostResolver hostResolver) {
+        resolverOptions.hostResolver(checkNotNull(hostResolver, "hostResolver should not be null"));
+        return this;
+    }
+
+    /**
+     * set the service discovery, then the authority of grpc uri is a service name like "grpc://user-service", and
+     * changes of its addresses are pushed to the channel at once. See
+     * {@link io.dreamfly.grpc.internal.discovery.FileServiceDiscovery} and
+     * {@link io.dreamfly.grpc.internal.discovery.KeyValueServiceDiscovery}.
+     *
+     * @param serviceDiscovery service discovery
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder serviceDiscovery(ServiceDiscovery serviceDiscovery) {
+        resolverOptions.serviceDiscovery(serviceDiscovery);
+        return this;
+    }
+
+    /**
+     * connect to at most subsetSize addresses of a large cluster, instead of all of them. Clients choose different
+     * subsets by rendezvous hashing of their client ids, so backends are covered evenly, and a change of addresses
+     * only moves the clients whose subsets contain the changed addresses.
+     *
+     * @param subsetSize subset size, default to 0 which connects to all addresses
+     * @param clientId stable id of the client like the host name, null to use a random id of the process
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder subset(int subsetSize, @Nullable String clientId) {
+        resolverOptions.subsetSize(subsetSize);
+        if (clientId != null) {
+            resolverOptions.clientId(clientId);
+        }
+        return this;
+    }
+
+    /**
+     * set the interval to re-resolve hosts in background, so new addresses can be used without connection
+     * failure. Default to 0 which means only re-resolve when gRPC asks for.
+     *
+     * @param interval refresh interval
+     * @param unit time unit of interval
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder refreshInterval(long interval, TimeUnit unit) {
+        resolverOptions.refreshInterval(interval, unit);
+        return this;
+    }
+
+    /**
+     * set the jitter of refresh interval to avoid all channels re-resolving at the same time.
+     *
+     * @param jitter jitter between 0 and 1, default to 0.2
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder refreshJitter(double jitter) {
+        resolverOptions.refreshJitter(jitter);
+        return this;
+    }
+
+    /**
+     * set the backoff policy to retry failed resolutions, default to {@link BackoffPolicy#DEFAULT}.
+     *
+     * @param backoffPolicy backoff policy
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder resolutionBackoff(BackoffPolicy backoffPolicy) {
+        resolverOptions.backoffPolicy(backoffPolicy);
+        return this;
+    }
+
+    /**
+     * set the executor used by name resolver, see {@link ResolverExecutors} for bounded or virtual thread executors.
+     *
+     * <p>Pass the same resource to all builders to share one pool among channels.
+     *
+     * @param executorResource executor resource, default to unbounded cached thread pool
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder resolverExecutor(SharedResourceHolder.Resource<ExecutorService> executorResource) {
+        resolverOptions.executor(executorResource);
+        return this;
+    }
+
+    /**
+     * set the executor used by name resolver, the executor is managed by caller and never shut down by channels.
+     *
+     * @param executor executor
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder resolverExecutor(ExecutorService executor) {
+        resolverOptions.executor(ResolverExecutors.sharedExecutor(executor));
+        return this;
+    }
+
+    /**
+     * set the timer service used by name resolver to schedule refreshes and retries.
+     *
+     * @param timerServiceResource timer service resource, default to single thread timer
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder resolverTimerService(
+            SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource) {
+        resolverOptions.timerService(timerServiceResource);
+        return this;
+    }
+
+    /**
+     * set the timer service used by name resolver, the timer is managed by caller and never shut down by channels.
+     *
+     * @param timerService timer service
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder resolverTimerService(ScheduledExecutorService timerService) {
+        resolverOptions.timerService(ResolverExecutors.sharedTimerService(timerService));
+        return this;
+    }
+
+    /**
+     * set the policy to distribute calls among the addresses in grpc uri.
+     *
+     * @param loadBalancingPolicy load balancing policy, default to {@link LoadBalancingPolicy#ROUND_ROBIN}
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder loadBalancingPolicy(LoadBalancingPolicy loadBalancingPolicy) {
+        this.loadBalancingPolicy = checkNotNull(loadBalancingPolicy, "loadBalancingPolicy should not be null");
+        this.loadBalancerFactory = null;
+        return this;
+    }
+
+    /**
+     * enable outlier detection to eject failing or slow addresses from load balancing temporarily, ejections are
+     * counted in {@link OutlierDetectionConfig#getStats()}.
+     *
+     * @param outlierDetection outlier detection config
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder outlierDetection(OutlierDetectionConfig outlierDetection) {
+        loadBalancerOptions.outlierDetection(outlierDetection);
+        return this;
+    }
+
+    /**
+     * enable active health checking to exclude unhealthy addresses from load balancing until they recover, ignored
+     * by {@link LoadBalancingPolicy#PICK_FIRST}.
+     *
+     * <p>Probes are sent by an out-of-band channel per address, so each backend holds a second connection from this
+     * channel, and a probe checks that connection rather than the one carrying the calls. Account for it in the
+     * connection limits of the backends.
+     *
+     * @param healthCheck health check config
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder healthCheck(HealthCheckConfig healthCheck) {
+        loadBalancerOptions.healthCheck(healthCheck);
+        return this;
+    }
+
+    /**
+     * set the zone of the client to prefer addresses in the same zone, annotated in uri like
+     * "grpc://host1:8080;zone=zone-a,host2:8080;zone=zone-b". Addresses of other zones are used when less than
+     * half of the local zone is ready.
+     *
+     * @param localZone zone of the client, default to none
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder localZone(String localZone) {
+        loadBalancerOptions.localZone(localZone);
+        return this;
+    }
+
+    /**
+     * set a custom load balancer factory, it replaces {@link #loadBalancingPolicy(LoadBalancingPolicy)}.
+     *
+     * @param loadBalancerFactory load balancer factory
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder loadBalancerFactory(LoadBalancer.Factory loadBalancerFactory) {
+        this.loadBalancerFactory = checkNotNull(loadBalancerFactory, "loadBalancerFactory should not be null");
+        return this;
+    }
+
+    /**
+     * use the native epoll transport with the process wide epoll event loop group, see {@link NettyTransports}.
+     *
+     * <p>Fall back to NIO with a warning if netty-transport-native-epoll is not on classpath or not supported by
+     * the platform. Ignored if {@link #eventLoopGroup(EventLoopGroup, Class)} is set.
+     *
+     * @param useEpoll true to use epoll, default to false
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder useEpoll(boolean useEpoll) {
+        this.useEpoll = useEpoll;
+        return this;
+    }
+
+    /**
+     * set the event loop group shared by channels, it is managed by caller and never shut down by channels.
+     *
+     * <p>Without it all channels share the default NIO event loop group of grpc-netty.
+     *
+     * @param eventLoopGroup event loop group
+     * @param channelType netty channel type matching the group, like NioSocketChannel for NioEventLoopGroup
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder eventLoopGroup(EventLoopGroup eventLoopGroup, Class<? extends Channel> channelType) {
+        this.eventLoopGroup = checkNotNull(eventLoopGroup, "eventLoopGroup should not be null");
+        this.channelType = checkNotNull(channelType, "channelType should not be null");
+        return this;
+    }
+
+    /**
+     * set the HTTP/2 flow control window, increase it for large payloads on high latency links.
+     *
+     * @param flowControlWindow window size in bytes, default to 1 MiB of grpc-netty
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder flowControlWindow(int flowControlWindow) {
+        checkArgument(flowControlWindow > 0, "invalid flowControlWindow " + flowControlWindow);
+        this.flowControlWindow = flowControlWindow;
+        return this;
+    }
+
+    /**
+     * set the max size of received messages.
+     *
+     * @param maxInboundMessageSize max message size in bytes, default to 4 MiB of grpc
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder maxInboundMessageSize(int maxInboundMessageSize) {
+        checkArgument(maxInboundMessageSize > 0, "invalid maxInboundMessageSize " + maxInboundMessageSize);
+        this.maxInboundMessageSize = maxInboundMessageSize;
+        return this;
+    }
+
+    /**
+     * set the interval to send keepalive ping, default to disabled.
+     *
+     * @param keepAliveTime keepalive interval
+     * @param unit time unit of interval
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder keepAliveTime(long keepAliveTime, TimeUnit unit) {
+        checkArgument(keepAliveTime > 0, "invalid keepAliveTime " + keepAliveTime);
+        this.keepAliveTimeNanos = unit.toNanos(keepAliveTime);
+        return this;
+    }
+
+    /**
+     * set the time to wait for keepalive ping ack before closing the connection.
+     *
+     * @param keepAliveTimeout keepalive timeout
+     * @param unit time unit of timeout
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder keepAliveTimeout(long keepAliveTimeout, TimeUnit unit) {
+        checkArgument(keepAliveTimeout > 0, "invalid keepAliveTimeout " + keepAliveTimeout);
+        this.keepAliveTimeoutNanos = unit.toNanos(keepAliveTimeout);
+        return this;
+    }
+
+    /**
+     * set whether to send keepalive ping when there is no outstanding call.
+     *
+     * @param keepAliveWithoutCalls true to keep idle connections alive, default to true
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder keepAliveWithoutCalls(boolean keepAliveWithoutCalls) {
+        this.keepAliveWithoutCalls = keepAliveWithoutCalls;
+        return this;
+    }
+
+    /**
+     * use {@link PooledByteBufAllocator#DEFAULT} to allocate buffers of connections, which pools direct buffers
+     * and reduces GC pressure for high QPS and large payloads.
+     *
+     * @param pooledAllocator true to use pooled allocator, default to false which uses the allocator of grpc-netty
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder pooledAllocator(boolean pooledAllocator) {
+        this.pooledAllocator = pooledAllocator;
+        return this;
+    }
+
+    /**
+     * record metrics of calls and name resolutions, see {@link io.dreamfly.grpc.internal.metrics.ClientMetrics}
+     * for the in-memory recorder.
+     *
+     * @param metricsRecorder metrics recorder, default to none
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder metrics(MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = checkNotNull(metricsRecorder, "metricsRecorder should not be null");
+        resolverOptions.metricsRecorder(metricsRecorder);
+        return this;
+    }
+
+    /**
+     * retry failed calls of a method or service, the policy is supplied to grpc as service config by the name
+     * resolver. A method can't be both retried and hedged. Census stats and tracing of grpc are disabled on channels
+     * with retry policies, since grpc doesn't retry with them.
+     *
+     * @param name "package.Service/Method", or "package.Service" for all methods of the service
+     * @param retryPolicy retry policy
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder retryPolicy(String name, RetryPolicy retryPolicy) {
+        ServiceConfigs.checkMethodName(name);
+        checkNotNull(retryPolicy, "retryPolicy should not be null");
+        checkArgument(!hedgingPolicies.containsKey(name), "hedging policy is already set: name=%s", name);
+        retryPolicies.put(name, retryPolicy);
+        return this;
+    }
+
+    /**
+     * hedge unary calls of a method or service to cut tail latency: send another attempt to a different address
+     * if no response within the hedging delay, and cancel the slower ones.
+     *
+     * @param name "package.Service/Method", or "package.Service" for all methods of the service
+     * @param hedgingPolicy hedging policy
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder hedgingPolicy(String name, HedgingPolicy hedgingPolicy) {
+        ServiceConfigs.checkMethodName(name);
+        checkNotNull(hedgingPolicy, "hedgingPolicy should not be null");
+        checkArgument(!retryPolicies.containsKey(name), "retry policy is already set: name=%s", name);
+        hedgingPolicies.put(name, hedgingPolicy);
+        return this;
+    }
+
+    /**
+     * set the token budget to stop retries and hedged attempts when many calls fail, pass the same budget to all
+     * builders to share it among channels.
+     *
+     * @param retryBudget retry budget, default to unlimited
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder retryBudget(RetryBudget retryBudget) {
+        this.retryBudget = checkNotNull(retryBudget, "retryBudget should not be null");
+        return this;
+    }
+
+    /**
+     * limit concurrent calls of the channel adaptively, calls over the limit fail fast with RESOURCE_EXHAUSTED
+     * instead of being queued. Pass the same limiter to all builders of a target to limit calls to the target.
+     *
+     * @param concurrencyLimiter concurrency limiter, default to unlimited
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = checkNotNull(concurrencyLimiter, "concurrencyLimiter should not be null");
+        return this;
+    }
+
+    /**
+     * connect to all backends when the channel is built instead of on the first calls, see {@link WarmUpConfig}.
+     *
+     * <p>{@link #build()} warms up in background, {@link #buildAndWarmUp()} returns a future to wait for it.
+     * A probe of the config is rejected on build with {@link LoadBalancingPolicy#PICK_FIRST} or a custom
+     * {@link #loadBalancerFactory(LoadBalancer.Factory)}, which can't send it to each backend.
+     *
+     * @param warmUpConfig warm-up config, default to connect on demand
+     * @return GrpcConnectionBuilder
+     */
+    public GrpcConnectionBuilder warmUp(WarmUpConfig warmUpConfig) {
+        this.warmUpConfig = checkNotNull(warmUpConfig, "warmUpConfig should not be null");
+        return this;
+    }
+
     private void checkScheme(String uriContent) {
         URI uri;
         try {
@@ -52,24 +510,185 @@ public class GrpcConnectionBuilder {
         } catch (Exception e) {
             throw new IllegalArgumentException("uri is not a valid URI: uri=" + uriContent, e);
         }
-        checkArgument(uri.getScheme().equals(GrpcNameResolverProvider.GRPC_SCHEME),
-                "Scheme of uri should be '%s': uri=%s",
-                GrpcNameResolverProvider.GRPC_SCHEME, uriContent);
+        String scheme = uri.getScheme();
+        checkArgument(GrpcNameResolverProvider.GRPC_SCHEME.equals(scheme)
+                        || GrpcNameResolverProvider.GRPC_UNIX_SCHEME.equals(scheme)
+                        || GrpcNameResolverProvider.GRPC_INPROCESS_SCHEME.equals(scheme),
+                "Scheme of uri should be '%s', '%s' or '%s': uri=%s",
+                GrpcNameResolverProvider.GRPC_SCHEME, GrpcNameResolverProvider.GRPC_UNIX_SCHEME,
+                GrpcNameResolverProvider.GRPC_INPROCESS_SCHEME, uriContent);
     }
 
     /**
-     * build managedChannel with GrpcConnectionBuilder
+     * build managedChannel with GrpcConnectionBuilder, it starts to warm up in background if
+     * {@link #warmUp(WarmUpConfig)} is set.
      *
      * @return ManagedChannel
      */
     public ManagedChannel build() {
+        return build(null);
+    }
+
+    /**
+     * build managedChannel and warm it up, see {@link WarmUpConfig}.
+     *
+     * @return future of the channel once warmed up, the channel is shut down if warm-up fails
+     */
+    public ListenableFuture<ManagedChannel> buildAndWarmUp() {
+        TrackingLoadBalancerFactory tracker = newBalancerFactory(null);
+        final ManagedChannel channel = newChannel(tracker);
+        ListenableFuture<ManagedChannel> future = ChannelWarmUp.start(channel, tracker,
+                warmUpConfig != null ? warmUpConfig : WarmUpConfig.DEFAULT);
+        Futures.addCallback(future, new FutureCallback<ManagedChannel>() {
+            @Override
+            public void onSuccess(ManagedChannel result) {
+                // warmed up
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                channel.shutdownNow();
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * @param connections counter of connections of the channel, null if not counted
+     * @return ManagedChannel
+     */
+    ManagedChannel build(@Nullable AtomicInteger connections) {
+        TrackingLoadBalancerFactory tracker = newBalancerFactory(connections);
+        ManagedChannel channel = newChannel(tracker);
+        if (warmUpConfig != null) {
+            ListenableFuture<ManagedChannel> future = ChannelWarmUp.start(channel, tracker, warmUpConfig);
+            Futures.addCallback(future, new FutureCallback<ManagedChannel>() {
+                @Override
+                public void onSuccess(ManagedChannel result) {
+                    // logged by ChannelWarmUp
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    logger.warn("fail to warm up channel, connect on demand: uri={}, cause={}", uri, t.getMessage());
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        return channel;
+    }
+
+    private TrackingLoadBalancerFactory newBalancerFactory(@Nullable AtomicInteger connections) {
+        // probe calls are sent to each backend by LoadBalancerAttributes.AVOIDED_ADDRESSES, which only the load
+        // balancers of the policies except PICK_FIRST honour
+        checkState(warmUpConfig == null || warmUpConfig.getProbeMethod() == null
+                        || (loadBalancerFactory == null && loadBalancingPolicy != LoadBalancingPolicy.PICK_FIRST),
+                "probe of warm-up is not supported by PICK_FIRST or a custom loadBalancerFactory: uri=%s", uri);
+        LoadBalancer.Factory balancerFactory = loadBalancerFactory != null ? loadBalancerFactory
+                : new GrpcLoadBalancerFactory(loadBalancingPolicy, loadBalancerOptions.build());
+        boolean singleSubchannel = loadBalancerFactory == null && loadBalancingPolicy == LoadBalancingPolicy.PICK_FIRST;
+        return new TrackingLoadBalancerFactory(balancerFactory, connections, singleSubchannel);
+    }
+
+    private ManagedChannel newChannel(TrackingLoadBalancerFactory balancerFactory) {
+        checkState(uri != null, "please set uri before build");
+
+        String scheme = URI.create(uri).getScheme();
+        ManagedChannelBuilder<?> channelBuilder;
+        if (GrpcNameResolverProvider.GRPC_INPROCESS_SCHEME.equals(scheme)) {
+            ResolvingInProcessChannelBuilder inProcessChannelBuilder = ResolvingInProcessChannelBuilder.forTarget(uri);
+            if (!retryPolicies.isEmpty()) {
+                inProcessChannelBuilder.setStatsEnabled(false);
+                inProcessChannelBuilder.setTracingEnabled(false);
+            }
+            channelBuilder = inProcessChannelBuilder;
+        } else {
+            NettyChannelBuilder nettyChannelBuilder = NettyChannelBuilder.forTarget(uri)
+                    .keepAliveWithoutCalls(keepAliveWithoutCalls)
+                    .usePlaintext(true);
+            configureTransport(nettyChannelBuilder, GrpcNameResolverProvider.GRPC_UNIX_SCHEME.equals(scheme));
+            if (!retryPolicies.isEmpty()) {
+                // grpc 1.14 turns retry off while census stats or tracing is enabled, use metrics() instead
+                InternalNettyChannelBuilder.setStatsEnabled(nettyChannelBuilder, false);
+                InternalNettyChannelBuilder.setTracingEnabled(nettyChannelBuilder, false);
+            }
+            channelBuilder = nettyChannelBuilder;
+        }
+
+        channelBuilder.nameResolverFactory(new GrpcNameResolverProvider(buildResolverOptions()))
+                .loadBalancerFactory(balancerFactory);
+        if (!retryPolicies.isEmpty()) {
+            channelBuilder.enableRetry();
+        }
+        // interceptors added later run first, so each hedged attempt takes a permit of the limiter,
+        // and a hedged call is recorded once by metrics
+        if (concurrencyLimiter != null) {
+            channelBuilder.intercept(new ConcurrencyLimitClientInterceptor(concurrencyLimiter));
+        }
+        if (!hedgingPolicies.isEmpty()) {
+            channelBuilder.intercept(new HedgingClientInterceptor(hedgingPolicies, retryBudget));
+        }
+        if (metricsRecorder != null) {
+            channelBuilder.intercept(new MetricsClientInterceptor(metricsRecorder));
+        }
+        return channelBuilder.build();
+    }
+
+    String getUri() {
+        return uri;
+    }
+
+    /**
+     * key of the channels built by current settings, see {@link GrpcChannelRegistry}.
+     *
+     * @return key equal to the key of a builder with the same settings
+     */
+    Object registryKey() {
         checkState(uri != null, "please set uri before build");
+        return Arrays.asList(GrpcChannelRegistry.normalizeTarget(uri), buildResolverOptions(),
+                loadBalancingPolicy, loadBalancerFactory, loadBalancerOptions.build(),
+                useEpoll, eventLoopGroup, channelType, flowControlWindow, maxInboundMessageSize,
+                keepAliveTimeNanos, keepAliveTimeoutNanos, keepAliveWithoutCalls, pooledAllocator, metricsRecorder,
+                new LinkedHashMap<>(retryPolicies), new LinkedHashMap<>(hedgingPolicies), retryBudget,
+                concurrencyLimiter, warmUpConfig);
+    }
+
+    private GrpcNameResolverOptions buildResolverOptions() {
+        if (!retryPolicies.isEmpty()) {
+            resolverOptions.serviceConfig(ServiceConfigs.retryServiceConfig(retryPolicies, retryBudget));
+        }
+        return resolverOptions.build();
+    }
 
-        NettyChannelBuilder nettyChannelBuilder = NettyChannelBuilder.forTarget(uri)
-                .keepAliveWithoutCalls(true)
-                // we use SPI to load GrpcNameResolverProvider, so comment this line
-                //.nameResolverFactory(new GrpcNameResolverProvider())
-                .usePlaintext(true);
-        return nettyChannelBuilder.build();
+    private void configureTransport(NettyChannelBuilder nettyChannelBuilder, boolean domainSocket) {
+        if (eventLoopGroup != null) {
+            nettyChannelBuilder.eventLoopGroup(eventLoopGroup).channelType(channelType);
+        } else if (domainSocket) {
+            // unix domain sockets are only supported by the native epoll transport
+            nettyChannelBuilder.channelType(NettyTransports.epollDomainSocketChannelType())
+                    .eventLoopGroup(NettyTransports.sharedEpollEventLoopGroup());
+        } else if (useEpoll) {
+            if (NettyTransports.isEpollAvailable()) {
+                nettyChannelBuilder.eventLoopGroup(NettyTransports.sharedEpollEventLoopGroup())
+                        .channelType(NettyTransports.epollChannelType());
+            } else {
+                logger.warn("netty epoll transport is unavailable, fall back to nio: cause={}",
+                        String.valueOf(NettyTransports.epollUnavailabilityCause()));
+            }
+        }
+        if (flowControlWindow > 0) {
+            nettyChannelBuilder.flowControlWindow(flowControlWindow);
+        }
+        if (maxInboundMessageSize > 0) {
+            nettyChannelBuilder.maxInboundMessageSize(maxInboundMessageSize);
+        }
+        if (keepAliveTimeNanos > 0) {
+            nettyChannelBuilder.keepAliveTime(keepAliveTimeNanos, TimeUnit.NANOSECONDS);
+        }
+        if (keepAliveTimeoutNanos > 0) {
+            nettyChannelBuilder.keepAliveTimeout(keepAliveTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        if (pooledAllocator) {
+            nettyChannelBuilder.withOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        }
     }
 }
@@ -0,0 +1,546 @@
+package io.dreamfly.grpc;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Pool of channels built from the same {@link GrpcConnectionBuilder}.
+ *
+ * <p>Each channel has its own HTTP/2 connections, so the pool can go beyond the MAX_CONCURRENT_STREAMS limit of one
+ * connection and spread the load over multiple netty event loops. Calls are distributed by {@link Strategy}.
+ *
+ * <p>The pool grows when the average in-flight calls per channel reaches maxInFlightPerChannel, and shrinks when the
+ * load drops to less than half of it. A retired channel is shut down after the calls started on it are closed.
+ * Generated stubs can use the pool as a normal channel, its connectivity state is the best state of its channels.
+ */
+public class GrpcConnectionPool extends ManagedChannel {
+
+    private static Logger logger = LoggerFactory.getLogger(GrpcConnectionPool.class);
+
+    private static final long SHRINK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Strategy to choose channel for new call.
+     */
+    public enum Strategy {
+        /**
+         * choose channels in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * choose the channel with the fewest in-flight calls.
+         */
+        LEAST_BUSY
+    }
+
+    private final GrpcConnectionBuilder connectionBuilder;
+    private final Strategy strategy;
+    private final int minChannels;
+    private final int maxChannels;
+    private final int maxInFlightPerChannel;
+    private final String authority;
+
+    private final AtomicInteger index = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // copy on write, read without lock
+    private volatile PooledChannel[] channels;
+    @GuardedBy("this")
+    private PooledChannel[] retiredChannels = new PooledChannel[0];
+    @GuardedBy("this")
+    private long lastShrinkNanos = System.nanoTime();
+    @GuardedBy("this")
+    private boolean shutdown;
+    // a channel is being built to grow the pool
+    @GuardedBy("this")
+    private boolean growing;
+
+    private GrpcConnectionPool(Builder builder) {
+        this.connectionBuilder = builder.connectionBuilder;
+        this.strategy = builder.strategy;
+        this.minChannels = builder.minChannels;
+        this.maxChannels = builder.maxChannels;
+        this.maxInFlightPerChannel = builder.maxInFlightPerChannel;
+
+        PooledChannel[] initialChannels = new PooledChannel[minChannels];
+        for (int i = 0; i < minChannels; i++) {
+            initialChannels[i] = new PooledChannel(connectionBuilder.build());
+        }
+        this.channels = initialChannels;
+        this.authority = initialChannels[0].channel.authority();
+    }
+
+    /**
+     * create new pool builder.
+     *
+     * @param connectionBuilder builder to build channels in the pool
+     * @return Builder
+     */
+    public static Builder newBuilder(GrpcConnectionBuilder connectionBuilder) {
+        return new Builder(connectionBuilder);
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                                         CallOptions callOptions) {
+        // the channel is picked on start, so a call never started holds no channel
+        return new PooledClientCall<>(methodDescriptor, callOptions);
+    }
+
+    @Override
+    public String authority() {
+        return authority;
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        if (isShutdown()) {
+            return ConnectivityState.SHUTDOWN;
+        }
+        ConnectivityState best = ConnectivityState.SHUTDOWN;
+        for (PooledChannel pooledChannel : channels) {
+            ConnectivityState state = pooledChannel.channel.getState(requestConnection);
+            if (rank(state) < rank(best)) {
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return rank of state, the lower the better
+     */
+    private static int rank(ConnectivityState state) {
+        switch (state) {
+            case READY:
+                return 0;
+            case CONNECTING:
+                return 1;
+            case IDLE:
+                return 2;
+            case TRANSIENT_FAILURE:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        checkNotNull(callback, "callback should not be null");
+        if (getState(false) != source) {
+            callback.run();
+            return;
+        }
+        // watch all current channels, the first change of the pool state wins
+        StateWatcher watcher = new StateWatcher(source, callback);
+        for (PooledChannel pooledChannel : channels) {
+            watcher.watch(pooledChannel.channel);
+        }
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        for (PooledChannel pooledChannel : channels) {
+            pooledChannel.channel.resetConnectBackoff();
+        }
+    }
+
+    @Override
+    public void enterIdle() {
+        for (PooledChannel pooledChannel : channels) {
+            pooledChannel.channel.enterIdle();
+        }
+    }
+
+    /**
+     * @return count of active channels in the pool
+     */
+    public int size() {
+        return channels.length;
+    }
+
+    /**
+     * @return count of in-flight calls of all channels
+     */
+    public int inFlightCalls() {
+        return inFlight.get();
+    }
+
+    private PooledChannel pick() {
+        PooledChannel[] current = channels;
+        if (current.length == 1) {
+            return current[0];
+        }
+        if (strategy == Strategy.ROUND_ROBIN) {
+            return current[(index.getAndIncrement() & Integer.MAX_VALUE) % current.length];
+        }
+
+        // start from a rotating position so ties are broken evenly
+        int start = (index.getAndIncrement() & Integer.MAX_VALUE) % current.length;
+        PooledChannel picked = current[start];
+        for (int i = 1; i < current.length; i++) {
+            PooledChannel candidate = current[(start + i) % current.length];
+            if (candidate.inFlight.get() < picked.inFlight.get()) {
+                picked = candidate;
+            }
+        }
+        return picked;
+    }
+
+    private void maybeGrow() {
+        if (channels.length >= maxChannels || inFlight.get() < channels.length * maxInFlightPerChannel) {
+            return;
+        }
+        synchronized (this) {
+            PooledChannel[] current = channels;
+            if (shutdown || growing || current.length >= maxChannels
+                    || inFlight.get() < current.length * maxInFlightPerChannel) {
+                return;
+            }
+            growing = true;
+        }
+
+        // build without the lock, it creates the name resolver and load balancer of the channel
+        ManagedChannel channel;
+        try {
+            channel = connectionBuilder.build();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                growing = false;
+            }
+            logger.warn("fail to grow connection pool", e);
+            return;
+        }
+        synchronized (this) {
+            growing = false;
+            if (!shutdown) {
+                PooledChannel[] current = channels;
+                PooledChannel[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[current.length] = new PooledChannel(channel);
+                channels = grown;
+                logger.debug("grow connection pool to {} channels: inFlight={}", grown.length, inFlight.get());
+                return;
+            }
+        }
+        channel.shutdownNow();
+    }
+
+    private void maybeShrink() {
+        if (channels.length <= minChannels || inFlight.get() * 2 >= (channels.length - 1) * maxInFlightPerChannel) {
+            return;
+        }
+        synchronized (this) {
+            PooledChannel[] current = channels;
+            long now = System.nanoTime();
+            if (shutdown || current.length <= minChannels || now - lastShrinkNanos < SHRINK_INTERVAL_NANOS
+                    || inFlight.get() * 2 >= (current.length - 1) * maxInFlightPerChannel) {
+                return;
+            }
+            lastShrinkNanos = now;
+            PooledChannel retired = current[current.length - 1];
+            channels = Arrays.copyOf(current, current.length - 1);
+            // calls created on the retired channel are allowed to complete
+            retired.retire();
+            retiredChannels = retainActive(retiredChannels, retired);
+            logger.debug("shrink connection pool to {} channels: inFlight={}", channels.length, inFlight.get());
+        }
+    }
+
+    private static PooledChannel[] retainActive(PooledChannel[] retired, PooledChannel newlyRetired) {
+        PooledChannel[] result = new PooledChannel[retired.length + 1];
+        int count = 0;
+        for (PooledChannel pooledChannel : retired) {
+            if (!pooledChannel.channel.isTerminated()) {
+                result[count++] = pooledChannel;
+            }
+        }
+        result[count++] = newlyRetired;
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public synchronized GrpcConnectionPool shutdown() {
+        shutdown = true;
+        for (PooledChannel pooledChannel : allChannels()) {
+            pooledChannel.channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        if (!shutdown) {
+            return false;
+        }
+        for (PooledChannel pooledChannel : allChannels()) {
+            if (!pooledChannel.channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized GrpcConnectionPool shutdownNow() {
+        shutdown = true;
+        for (PooledChannel pooledChannel : allChannels()) {
+            pooledChannel.channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        PooledChannel[] toAwait;
+        synchronized (this) {
+            checkState(shutdown, "pool is not shut down");
+            toAwait = allChannels();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (PooledChannel pooledChannel : toAwait) {
+            long remaining = deadline - System.nanoTime();
+            if (!pooledChannel.channel.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @GuardedBy("this")
+    private PooledChannel[] allChannels() {
+        PooledChannel[] current = channels;
+        PooledChannel[] all = Arrays.copyOf(current, current.length + retiredChannels.length);
+        System.arraycopy(retiredChannels, 0, all, current.length, retiredChannels.length);
+        return all;
+    }
+
+    private static class PooledChannel {
+        private final ManagedChannel channel;
+        // calls started and not closed, the channel is shut down after retired and they are closed
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean retired;
+
+        PooledChannel(ManagedChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return false if the channel is retired, calls should not be started on it
+         */
+        boolean acquire() {
+            inFlight.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                channel.shutdown();
+            }
+        }
+
+        void retire() {
+            // set before checking in-flight calls, so either this or the last release shuts down the channel
+            retired = true;
+            if (inFlight.get() == 0) {
+                channel.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Watch of the channels for {@link #notifyWhenStateChanged(ConnectivityState, Runnable)}.
+     */
+    private class StateWatcher {
+        private final ConnectivityState source;
+        private final Runnable callback;
+        private final AtomicBoolean notified = new AtomicBoolean();
+
+        StateWatcher(ConnectivityState source, Runnable callback) {
+            this.source = source;
+            this.callback = callback;
+        }
+
+        void watch(final ManagedChannel channel) {
+            channel.notifyWhenStateChanged(channel.getState(false), () -> {
+                if (notified.get()) {
+                    return;
+                }
+                if (getState(false) != source) {
+                    if (notified.compareAndSet(false, true)) {
+                        callback.run();
+                    }
+                } else {
+                    watch(channel);
+                }
+            });
+        }
+    }
+
+    /**
+     * Call holding a reference of its channel from start until it is closed.
+     */
+    private class PooledClientCall<ReqT, RespT> extends ForwardingClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> methodDescriptor;
+        private final CallOptions callOptions;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile PooledChannel pooledChannel;
+        private volatile ClientCall<ReqT, RespT> delegate;
+
+        PooledClientCall(MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+            this.methodDescriptor = methodDescriptor;
+            this.callOptions = callOptions;
+        }
+
+        @Override
+        protected ClientCall<ReqT, RespT> delegate() {
+            ClientCall<ReqT, RespT> current = delegate;
+            checkState(current != null, "Not started");
+            return current;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            checkState(delegate == null, "Already started");
+            PooledChannel picked = pick();
+            // the channel may be retired after picked, pick again from the remaining channels
+            while (!picked.acquire()) {
+                picked = pick();
+            }
+            pooledChannel = picked;
+            inFlight.incrementAndGet();
+            maybeGrow();
+            try {
+                delegate = picked.channel.newCall(methodDescriptor, callOptions);
+                delegate.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                        responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        release();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            ClientCall<ReqT, RespT> current = delegate;
+            // nothing is held before start
+            if (current != null) {
+                current.cancel(message, cause);
+            }
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            ClientCall<ReqT, RespT> current = delegate;
+            return current != null ? current.getAttributes() : Attributes.EMPTY;
+        }
+
+        private void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            pooledChannel.release();
+            maybeShrink();
+        }
+    }
+
+    public static class Builder {
+        private final GrpcConnectionBuilder connectionBuilder;
+        private Strategy strategy = Strategy.ROUND_ROBIN;
+        private int minChannels = 1;
+        private int maxChannels = 1;
+        private int maxInFlightPerChannel = 100;
+
+        private Builder(GrpcConnectionBuilder connectionBuilder) {
+            this.connectionBuilder = checkNotNull(connectionBuilder, "connectionBuilder should not be null");
+        }
+
+        /**
+         * set the strategy to distribute calls.
+         *
+         * @param strategy strategy, default to round robin
+         * @return Builder
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = checkNotNull(strategy, "strategy should not be null");
+            return this;
+        }
+
+        /**
+         * set the count of channels created at start and kept when idle.
+         *
+         * @param minChannels min count of channels, default to 1
+         * @return Builder
+         */
+        public Builder minChannels(int minChannels) {
+            checkArgument(minChannels > 0, "invalid minChannels " + minChannels);
+            this.minChannels = minChannels;
+            return this;
+        }
+
+        /**
+         * set the max count of channels the pool can grow to.
+         *
+         * @param maxChannels max count of channels, default to 1
+         * @return Builder
+         */
+        public Builder maxChannels(int maxChannels) {
+            checkArgument(maxChannels > 0, "invalid maxChannels " + maxChannels);
+            this.maxChannels = maxChannels;
+            return this;
+        }
+
+        /**
+         * set the average in-flight calls per channel to grow the pool.
+         *
+         * @param maxInFlightPerChannel threshold to grow, default to 100
+         * @return Builder
+         */
+        public Builder maxInFlightPerChannel(int maxInFlightPerChannel) {
+            checkArgument(maxInFlightPerChannel > 0, "invalid maxInFlightPerChannel " + maxInFlightPerChannel);
+            this.maxInFlightPerChannel = maxInFlightPerChannel;
+            return this;
+        }
+
+        public GrpcConnectionPool build() {
+            checkArgument(minChannels <= maxChannels, "minChannels should not be greater than maxChannels");
+            return new GrpcConnectionPool(this);
+        }
+    }
+}
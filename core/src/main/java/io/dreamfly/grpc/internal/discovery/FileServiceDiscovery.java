@@ -0,0 +1,226 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link ServiceDiscovery} backed by files in a watched directory.
+ *
+ * <p>Addresses of a service are in the file named after the service, one address entry per line or separated by
+ * comma, blank lines and lines starting with '#' are ignored. A missing file means no address.
+ *
+ * <p>The directory is watched by a {@link WatchService} with a daemon thread while any service is watched, so
+ * changes are pushed without polling on platforms with native file events like Linux. Replace a file by moving a
+ * completely written file over it, otherwise a partially written file may be read.
+ */
+public class FileServiceDiscovery implements ServiceDiscovery {
+
+    private static Logger logger = LoggerFactory.getLogger(FileServiceDiscovery.class);
+
+    private final Path directory;
+
+    @GuardedBy("this")
+    private final Map<String, List<ServiceWatch>> watches = new HashMap<>();
+    @GuardedBy("this")
+    private WatchService watchService;
+
+    /**
+     * @param directory directory of service files
+     */
+    public FileServiceDiscovery(Path directory) {
+        this.directory = checkNotNull(directory, "directory should not be null");
+    }
+
+    @Override
+    public Watch watch(String service, Listener listener) {
+        checkArgument(!Strings.isNullOrEmpty(service) && !service.contains("/"), "invalid service " + service);
+        checkNotNull(listener, "listener should not be null");
+        ServiceWatch watch = new ServiceWatch(service, listener);
+        synchronized (this) {
+            startWatchService();
+            List<ServiceWatch> serviceWatches = watches.get(service);
+            if (serviceWatches == null) {
+                serviceWatches = new ArrayList<>();
+                watches.put(service, serviceWatches);
+            }
+            serviceWatches.add(watch);
+        }
+        watch.reload();
+        return watch;
+    }
+
+    @GuardedBy("this")
+    private void startWatchService() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            closeWatchService();
+            throw new IllegalStateException("fail to watch directory " + directory, e);
+        }
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("grpc-file-discovery-%d").build()
+                .newThread(new WatchLoop(watchService)).start();
+        logger.info("start to watch directory {}", directory);
+    }
+
+    @GuardedBy("this")
+    private void closeWatchService() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("fail to close watch service of directory {}", directory, e);
+        }
+        watchService = null;
+    }
+
+    private synchronized void remove(ServiceWatch watch) {
+        List<ServiceWatch> serviceWatches = watches.get(watch.service);
+        if (serviceWatches == null || !serviceWatches.remove(watch)) {
+            return;
+        }
+        if (serviceWatches.isEmpty()) {
+            watches.remove(watch.service);
+        }
+        if (watches.isEmpty()) {
+            closeWatchService();
+            logger.info("stop to watch directory {}", directory);
+        }
+    }
+
+    private synchronized List<ServiceWatch> watchesOf(String service) {
+        List<ServiceWatch> serviceWatches = watches.get(service);
+        return serviceWatches == null ? Collections.<ServiceWatch>emptyList() : new ArrayList<>(serviceWatches);
+    }
+
+    private synchronized List<ServiceWatch> allWatches() {
+        List<ServiceWatch> all = new ArrayList<>();
+        for (List<ServiceWatch> serviceWatches : watches.values()) {
+            all.addAll(serviceWatches);
+        }
+        return all;
+    }
+
+    /**
+     * Parse address entries of a service file.
+     */
+    static List<String> parseAddresses(List<String> lines) {
+        List<String> addresses = new ArrayList<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            for (String address : line.split(",")) {
+                address = address.trim();
+                if (!address.isEmpty()) {
+                    addresses.add(address);
+                }
+            }
+        }
+        return addresses;
+    }
+
+    private class WatchLoop implements Runnable {
+        private final WatchService watchService;
+
+        WatchLoop(WatchService watchService) {
+            this.watchService = watchService;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (ClosedWatchServiceException | InterruptedException e) {
+                    return;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events are lost, reload all services
+                        for (ServiceWatch watch : allWatches()) {
+                            watch.reload();
+                        }
+                    } else {
+                        for (ServiceWatch watch : watchesOf(event.context().toString())) {
+                            watch.reload();
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    logger.error("directory {} is not accessible any more, stop watching", directory);
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class ServiceWatch implements Watch {
+        private final String service;
+        private final Listener listener;
+        private List<String> lastAddresses;
+        private volatile boolean closed;
+
+        ServiceWatch(String service, Listener listener) {
+            this.service = service;
+            this.listener = listener;
+        }
+
+        synchronized void reload() {
+            if (closed) {
+                return;
+            }
+            List<String> addresses;
+            try {
+                addresses = parseAddresses(Files.readAllLines(directory.resolve(service), StandardCharsets.UTF_8));
+            } catch (NoSuchFileException e) {
+                addresses = Collections.emptyList();
+            } catch (IOException e) {
+                logger.warn("fail to read addresses of service {} in {}", service, directory, e);
+                listener.onError(e);
+                return;
+            }
+            if (!addresses.equals(lastAddresses)) {
+                lastAddresses = addresses;
+                logger.debug("addresses of service {} changed: {}", service, addresses);
+                listener.onAddresses(addresses);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            remove(this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-memory {@link KeyValueStore}, a local stand-in of a registry for tests and embedded use.
+ *
+ * <p>Watchers are notified in the writing thread before put and delete return, so changes are seen in order.
+ */
+public class InMemoryKeyValueStore implements KeyValueStore {
+
+    @GuardedBy("this")
+    private final TreeMap<String, String> keyValues = new TreeMap<>();
+    @GuardedBy("this")
+    private final List<PrefixWatch> watches = new ArrayList<>();
+
+    /**
+     * put a key, watchers of its prefixes are notified.
+     *
+     * @param key key
+     * @param value value
+     */
+    public synchronized void put(String key, String value) {
+        checkNotNull(key, "key should not be null");
+        checkNotNull(value, "value should not be null");
+        keyValues.put(key, value);
+        for (PrefixWatch watch : new ArrayList<>(watches)) {
+            if (key.startsWith(watch.prefix)) {
+                watch.watcher.onPut(key, value);
+            }
+        }
+    }
+
+    /**
+     * delete a key, watchers of its prefixes are notified if it exists.
+     *
+     * @param key key
+     */
+    public synchronized void delete(String key) {
+        checkNotNull(key, "key should not be null");
+        if (keyValues.remove(key) == null) {
+            return;
+        }
+        for (PrefixWatch watch : new ArrayList<>(watches)) {
+            if (key.startsWith(watch.prefix)) {
+                watch.watcher.onDelete(key);
+            }
+        }
+    }
+
+    @Override
+    public synchronized ServiceDiscovery.Watch watch(String prefix, Watcher watcher) {
+        checkNotNull(prefix, "prefix should not be null");
+        checkNotNull(watcher, "watcher should not be null");
+        PrefixWatch watch = new PrefixWatch(prefix, watcher);
+        watches.add(watch);
+        watcher.onSnapshot(new HashMap<>(withPrefix(prefix)));
+        return watch;
+    }
+
+    @GuardedBy("this")
+    private SortedMap<String, String> withPrefix(String prefix) {
+        // keys with the prefix are sorted between the prefix and the prefix followed by the max char
+        return keyValues.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private synchronized void remove(PrefixWatch watch) {
+        watches.remove(watch);
+    }
+
+    private final class PrefixWatch implements ServiceDiscovery.Watch {
+        private final String prefix;
+        private final Watcher watcher;
+
+        PrefixWatch(String prefix, Watcher watcher) {
+            this.prefix = prefix;
+            this.watcher = watcher;
+        }
+
+        @Override
+        public void close() {
+            remove(this);
+        }
+    }
+}
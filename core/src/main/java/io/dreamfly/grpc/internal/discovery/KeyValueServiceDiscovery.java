@@ -0,0 +1,88 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link ServiceDiscovery} backed by a watched {@link KeyValueStore}.
+ *
+ * <p>Each instance of a service registers a key {@code <root>/<service>/<instance id>}, the value is its address
+ * entry like {@code 10.0.0.1:8080;zone=a}. Changes of the keys are applied to the last addresses one by one, and the
+ * listener is notified on each change.
+ */
+public class KeyValueServiceDiscovery implements ServiceDiscovery {
+
+    private static Logger logger = LoggerFactory.getLogger(KeyValueServiceDiscovery.class);
+
+    private final KeyValueStore store;
+    private final String root;
+
+    /**
+     * @param store key/value store
+     * @param root root of service keys, like "/services"
+     */
+    public KeyValueServiceDiscovery(KeyValueStore store, String root) {
+        this.store = checkNotNull(store, "store should not be null");
+        checkArgument(!Strings.isNullOrEmpty(root), "root should not be null or empty");
+        this.root = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+    }
+
+    @Override
+    public Watch watch(String service, Listener listener) {
+        checkArgument(!Strings.isNullOrEmpty(service), "service should not be null or empty");
+        checkNotNull(listener, "listener should not be null");
+        return store.watch(root + "/" + service + "/", new ServiceWatcher(service, listener));
+    }
+
+    private static final class ServiceWatcher implements KeyValueStore.Watcher {
+        private final String service;
+        private final Listener listener;
+        // sorted by key so that instances keep their order
+        private final TreeMap<String, String> instances = new TreeMap<>();
+
+        ServiceWatcher(String service, Listener listener) {
+            this.service = service;
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void onSnapshot(Map<String, String> keyValues) {
+            instances.clear();
+            instances.putAll(keyValues);
+            notifyListener();
+        }
+
+        @Override
+        public synchronized void onPut(String key, String value) {
+            if (!value.equals(instances.put(key, value))) {
+                notifyListener();
+            }
+        }
+
+        @Override
+        public synchronized void onDelete(String key) {
+            if (instances.remove(key) != null) {
+                notifyListener();
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable error) {
+            logger.warn("watch of service {} is broken", service, error);
+            listener.onError(error);
+        }
+
+        private void notifyListener() {
+            logger.debug("addresses of service {} changed: {}", service, instances.values());
+            listener.onAddresses(new ArrayList<>(instances.values()));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import java.util.Map;
+
+/**
+ * Key/value registry with prefix watches like etcd, used by {@link KeyValueServiceDiscovery}.
+ *
+ * <p>Implementations adapt a registry client, or use {@link InMemoryKeyValueStore} as a local stand-in.
+ */
+public interface KeyValueStore {
+
+    /**
+     * watch keys with the prefix, the watcher receives a snapshot of the current keys first, then each change in
+     * order.
+     *
+     * @param prefix prefix of keys
+     * @param watcher watcher of keys
+     * @return watch of the prefix, close it to stop notifications
+     */
+    ServiceDiscovery.Watch watch(String prefix, Watcher watcher);
+
+    /**
+     * Receive changes of keys, methods may be called from any thread but never concurrently.
+     */
+    interface Watcher {
+
+        /**
+         * called once with the keys present when the watch starts.
+         *
+         * @param keyValues current keys and values
+         */
+        void onSnapshot(Map<String, String> keyValues);
+
+        void onPut(String key, String value);
+
+        void onDelete(String key);
+
+        /**
+         * called if the watch is broken, implementations should resume it with a new snapshot.
+         *
+         * @param error error of the registry
+         */
+        void onError(Throwable error);
+    }
+}
@@ -0,0 +1,57 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Discover addresses of services from a registry, and push changes of them.
+ *
+ * <p>With a service discovery set in {@link io.dreamfly.grpc.internal.nameresolver.GrpcNameResolverOptions}, the
+ * authority of a grpc uri is the service name instead of addresses, like "grpc://user-service". Discovered addresses
+ * are resolved as if they were written in the uri.
+ *
+ * <p>Implementations should never block the calling thread of {@link #watch(String, Listener)}, except to notify the
+ * current addresses.
+ */
+public interface ServiceDiscovery {
+
+    /**
+     * watch addresses of a service, the listener is notified with the current addresses first, then with all
+     * addresses again on each change.
+     *
+     * @param service name of the service
+     * @param listener listener of addresses
+     * @return watch of the service, close it to stop notifications
+     */
+    Watch watch(String service, Listener listener);
+
+    /**
+     * Receive addresses of a service, methods may be called from any thread but never concurrently.
+     */
+    interface Listener {
+
+        /**
+         * called with all current addresses of the service.
+         *
+         * @param addresses address entries like {@code host[:port][;zone=zone][;weight=weight]}, empty if the
+         *                  service has no address
+         */
+        void onAddresses(List<String> addresses);
+
+        /**
+         * called if the registry fails, the last addresses are kept.
+         *
+         * @param error error of the registry
+         */
+        void onError(Throwable error);
+    }
+
+    /**
+     * Watch of a service, closing it never throws.
+     */
+    interface Watch extends Closeable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,105 @@
+package io.dreamfly.grpc.internal.limit;
+
+import io.dreamfly.grpc.internal.util.FailingClientCall;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Interceptor failing calls over the {@link ConcurrencyLimiter} fast with RESOURCE_EXHAUSTED, instead of queueing
+ * them in the channel while the servers are overloaded.
+ *
+ * <p>Calls closed with DEADLINE_EXCEEDED, RESOURCE_EXHAUSTED or UNAVAILABLE are dropped calls which shrink the
+ * limit, cancelled calls are ignored, and calls closed with other status are answered by the servers so their
+ * latency is sampled.
+ */
+public class ConcurrencyLimitClientInterceptor implements ClientInterceptor {
+
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitClientInterceptor(ConcurrencyLimiter limiter) {
+        this.limiter = checkNotNull(limiter, "limiter should not be null");
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        return new LimitedClientCall<>(next.newCall(method, callOptions), callOptions);
+    }
+
+    /**
+     * Call holding a permit from start until it is closed, so a call never started holds nothing.
+     */
+    private class LimitedClientCall<ReqT, RespT> extends ForwardingClientCall<ReqT, RespT> {
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final CallOptions callOptions;
+        private volatile ClientCall<ReqT, RespT> delegate;
+        private long startNanos;
+
+        LimitedClientCall(ClientCall<ReqT, RespT> delegate, CallOptions callOptions) {
+            this.delegate = delegate;
+            this.callOptions = callOptions;
+        }
+
+        @Override
+        protected ClientCall<ReqT, RespT> delegate() {
+            return delegate;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            if (!limiter.tryAcquire()) {
+                Status status = Status.RESOURCE_EXHAUSTED.withDescription(
+                        "concurrency limit exceeded: limit=" + limiter.getLimit());
+                // the call is never started, cancel it to release what it holds in the channel
+                delegate.cancel(status.getDescription(), null);
+                delegate = new FailingClientCall<>(status, callOptions.getExecutor());
+                delegate.start(responseListener, headers);
+                return;
+            }
+            startNanos = System.nanoTime();
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                        responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        release(status.getCode());
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                release(Status.Code.CANCELLED);
+                throw e;
+            }
+        }
+
+        private void release(Status.Code code) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            switch (code) {
+                case CANCELLED:
+                    limiter.onIgnored();
+                    break;
+                case DEADLINE_EXCEEDED:
+                case RESOURCE_EXHAUSTED:
+                case UNAVAILABLE:
+                    limiter.onDropped(System.nanoTime() - startNanos);
+                    break;
+                default:
+                    limiter.onSuccess(System.nanoTime() - startNanos);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package io.dreamfly.grpc.internal.limit;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Adaptive limit of concurrent calls, calls over the limit should be rejected instead of queued.
+ *
+ * <p>The limit is adjusted by each completed call:
+ * <ul>
+ * <li>{@link Algorithm#AIMD}: increase the limit by 1 on success, multiply it by {@code backoffRatio} on drop.</li>
+ * <li>{@link Algorithm#GRADIENT}: compare the rtt of the call with the long term average rtt, keep growing while
+ * the rtt is within {@code rttTolerance} times of the average, otherwise shrink the limit by the ratio of them.
+ * Queueing in servers is detected before calls time out.</li>
+ * </ul>
+ * The limit doesn't grow while less than half of it is used, so an idle client keeps a sane limit.
+ *
+ * <p>Share one instance among channels to limit the calls to a target instead of a channel.
+ */
+public class ConcurrencyLimiter {
+
+    public enum Algorithm {
+        /**
+         * additive increase multiplicative decrease on dropped calls.
+         */
+        AIMD,
+        /**
+         * adjust by the gradient of the rtt, like TCP Vegas.
+         */
+        GRADIENT
+    }
+
+    // samples of the long term average rtt
+    private static final int LONG_RTT_WINDOW = 100;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final double smoothing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    @GuardedBy("this")
+    private double estimatedLimit;
+    @GuardedBy("this")
+    private double longRttNanos;
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.rttTolerance = builder.rttTolerance;
+        this.smoothing = builder.smoothing;
+        this.estimatedLimit = builder.initialLimit;
+        this.limit = builder.initialLimit;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * acquire a permit for a call, one of onSuccess/onDropped/onIgnored should be called after it completes.
+     *
+     * @return true if acquired, false if the limit is reached
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * release the permit of a call answered by the server.
+     *
+     * @param rttNanos latency of the call
+     */
+    public void onSuccess(long rttNanos) {
+        update(inFlight.getAndDecrement(), rttNanos, false);
+    }
+
+    /**
+     * release the permit of a call failed because of overload, e.g. timeout.
+     *
+     * @param rttNanos latency of the call
+     */
+    public void onDropped(long rttNanos) {
+        update(inFlight.getAndDecrement(), rttNanos, true);
+    }
+
+    /**
+     * release the permit of a call which says nothing about the load, e.g. cancelled by the client.
+     */
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return current limit of concurrent calls
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return count of calls holding permits
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(int inFlight, long rttNanos, boolean dropped) {
+        double newLimit;
+        if (algorithm == Algorithm.AIMD) {
+            if (dropped) {
+                newLimit = estimatedLimit * backoffRatio;
+            } else if (inFlight * 2 >= estimatedLimit) {
+                newLimit = estimatedLimit + 1;
+            } else {
+                return;
+            }
+        } else {
+            long rtt = Math.max(1, rttNanos);
+            longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) / LONG_RTT_WINDOW;
+            double gradient = dropped ? MIN_GRADIENT
+                    : Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * longRttNanos / rtt));
+            if (gradient >= 1.0 && inFlight * 2 < estimatedLimit) {
+                return;
+            }
+            // allow some calls queued in servers to probe for more capacity
+            newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{algorithm=" + algorithm + ", limit=" + limit + ", inFlight=" + inFlight.get() + "}";
+    }
+
+    public static class Builder {
+        private Algorithm algorithm = Algorithm.GRADIENT;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private double rttTolerance = 1.5;
+        private double smoothing = 0.2;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the algorithm to adjust the limit.
+         *
+         * @param algorithm algorithm, default to GRADIENT
+         * @return Builder
+         */
+        public Builder algorithm(Algorithm algorithm) {
+            this.algorithm = checkNotNull(algorithm, "algorithm should not be null");
+            return this;
+        }
+
+        /**
+         * set the limit before any call completes.
+         *
+         * @param initialLimit initial limit, default to 20
+         * @return Builder
+         */
+        public Builder initialLimit(int initialLimit) {
+            checkArgument(initialLimit > 0, "invalid initialLimit " + initialLimit);
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * set the min limit.
+         *
+         * @param minLimit min limit, default to 1
+         * @return Builder
+         */
+        public Builder minLimit(int minLimit) {
+            checkArgument(minLimit > 0, "invalid minLimit " + minLimit);
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * set the max limit.
+         *
+         * @param maxLimit max limit, default to 200
+         * @return Builder
+         */
+        public Builder maxLimit(int maxLimit) {
+            checkArgument(maxLimit > 0, "invalid maxLimit " + maxLimit);
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * set the ratio to shrink the limit on dropped calls, only for AIMD.
+         *
+         * @param backoffRatio ratio between 0.5 and 1, default to 0.9
+         * @return Builder
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            checkArgument(backoffRatio >= 0.5 && backoffRatio < 1, "invalid backoffRatio " + backoffRatio);
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * set how many times of the average rtt is tolerated before shrinking the limit, only for GRADIENT.
+         *
+         * @param rttTolerance tolerance, at least 1, default to 1.5
+         * @return Builder
+         */
+        public Builder rttTolerance(double rttTolerance) {
+            checkArgument(rttTolerance >= 1, "invalid rttTolerance " + rttTolerance);
+            this.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        /**
+         * set the weight of each adjustment, only for GRADIENT.
+         *
+         * @param smoothing weight between 0 and 1, default to 0.2
+         * @return Builder
+         */
+        public Builder smoothing(double smoothing) {
+            checkArgument(smoothing > 0 && smoothing <= 1, "invalid smoothing " + smoothing);
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                    "initialLimit should be between minLimit and maxLimit: minLimit=%s, initialLimit=%s, maxLimit=%s",
+                    minLimit, initialLimit, maxLimit);
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
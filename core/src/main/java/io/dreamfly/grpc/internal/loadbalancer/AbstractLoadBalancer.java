@@ -0,0 +1,302 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Base of load balancers which keep one subchannel per address group and pick among the ready ones.
+ *
+ * <p>All methods are called in the synchronization context of the channel, subclasses only decide how to pick a
+ * subchannel by {@link #newReadyPicker(List)}. Addresses ejected by the {@link OutlierDetector} are excluded from
+ * picking, and so are addresses failing the {@link HealthChecker}. With a local zone, ready addresses of the local
+ * zone are preferred, see {@link LoadBalancerOptions.Builder#localZone(String)}.
+ */
+abstract class AbstractLoadBalancer extends LoadBalancer {
+
+    private final Helper helper;
+    private final OutlierDetector outlierDetector;
+    private final HealthChecker healthChecker;
+    private final String localZone;
+    // key: address group without attributes
+    private final Map<EquivalentAddressGroup, TrackedSubchannel> subchannels = new HashMap<>();
+    private ConnectivityState currentState;
+    private Status resolutionError;
+
+    AbstractLoadBalancer(Helper helper, LoadBalancerOptions options) {
+        this.helper = checkNotNull(helper, "helper should not be null");
+        this.localZone = options.getLocalZone();
+        OutlierDetectionConfig outlierDetection = options.getOutlierDetection();
+        if (outlierDetection != null) {
+            this.outlierDetector = new OutlierDetector(this, outlierDetection);
+            this.outlierDetector.start();
+        } else {
+            this.outlierDetector = null;
+        }
+        HealthCheckConfig healthCheck = options.getHealthCheck();
+        if (healthCheck != null) {
+            this.healthChecker = new HealthChecker(this, healthCheck);
+            this.healthChecker.start();
+        } else {
+            this.healthChecker = null;
+        }
+    }
+
+    /**
+     * create picker for the ready subchannels.
+     *
+     * @param readySubchannels ready subchannels, not empty
+     * @return picker
+     */
+    abstract SubchannelPicker newReadyPicker(List<TrackedSubchannel> readySubchannels);
+
+    @Override
+    public void handleResolvedAddressGroups(List<EquivalentAddressGroup> servers, Attributes attributes) {
+        resolutionError = null;
+        Set<EquivalentAddressGroup> latestKeys = new HashSet<>();
+        for (EquivalentAddressGroup server : servers) {
+            EquivalentAddressGroup key = new EquivalentAddressGroup(server.getAddresses());
+            latestKeys.add(key);
+            Integer weight = server.getAttributes().get(LoadBalancerAttributes.WEIGHT);
+
+            TrackedSubchannel tracked = subchannels.get(key);
+            if (tracked == null) {
+                tracked = new TrackedSubchannel(key, outlierDetector);
+                Subchannel subchannel = helper.createSubchannel(server,
+                        Attributes.newBuilder().set(TrackedSubchannel.KEY, tracked).build());
+                tracked.setSubchannel(subchannel);
+                subchannels.put(key, tracked);
+                subchannel.requestConnection();
+                if (healthChecker != null) {
+                    healthChecker.onAdded(tracked);
+                }
+            }
+            tracked.setWeight(weight != null && weight > 0 ? weight : 1);
+            tracked.setZone(server.getAttributes().get(LoadBalancerAttributes.ZONE));
+        }
+
+        List<TrackedSubchannel> removed = new ArrayList<>();
+        for (Map.Entry<EquivalentAddressGroup, TrackedSubchannel> entry : subchannels.entrySet()) {
+            if (!latestKeys.contains(entry.getKey())) {
+                removed.add(entry.getValue());
+            }
+        }
+        for (TrackedSubchannel tracked : removed) {
+            subchannels.remove(tracked.getAddressGroup());
+            if (outlierDetector != null) {
+                outlierDetector.onRemoved(tracked);
+            }
+            if (healthChecker != null) {
+                healthChecker.onRemoved(tracked);
+            }
+            shutdownSubchannel(tracked);
+        }
+
+        updateBalancingState();
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+        resolutionError = error;
+        if (currentState != ConnectivityState.READY) {
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, new EmptyPicker(error));
+            currentState = ConnectivityState.TRANSIENT_FAILURE;
+        }
+    }
+
+    @Override
+    public void handleSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+        TrackedSubchannel tracked = subchannel.getAttributes().get(TrackedSubchannel.KEY);
+        if (tracked == null || subchannels.get(tracked.getAddressGroup()) != tracked) {
+            return;
+        }
+        if (stateInfo.getState() == ConnectivityState.IDLE) {
+            subchannel.requestConnection();
+        }
+        tracked.setStateInfo(stateInfo);
+        updateBalancingState();
+    }
+
+    @Override
+    public void shutdown() {
+        if (outlierDetector != null) {
+            outlierDetector.shutdown();
+        }
+        if (healthChecker != null) {
+            healthChecker.shutdown();
+        }
+        for (TrackedSubchannel tracked : subchannels.values()) {
+            shutdownSubchannel(tracked);
+        }
+        subchannels.clear();
+    }
+
+    private void shutdownSubchannel(TrackedSubchannel tracked) {
+        tracked.getSubchannel().shutdown();
+        tracked.setStateInfo(ConnectivityStateInfo.forNonError(ConnectivityState.SHUTDOWN));
+    }
+
+    /**
+     * @return all subchannels of current addresses
+     */
+    Collection<TrackedSubchannel> getSubchannels() {
+        return Collections.unmodifiableCollection(subchannels.values());
+    }
+
+    Helper getHelper() {
+        return helper;
+    }
+
+    OutlierDetector getOutlierDetector() {
+        return outlierDetector;
+    }
+
+    /**
+     * update picker with current ready subchannels.
+     */
+    void updateBalancingState() {
+        List<TrackedSubchannel> ready = new ArrayList<>();
+        List<TrackedSubchannel> ejected = new ArrayList<>();
+        boolean connecting = false;
+        Status failure = resolutionError;
+        for (TrackedSubchannel tracked : subchannels.values()) {
+            ConnectivityStateInfo stateInfo = tracked.getStateInfo();
+            if (tracked.isReady() && !tracked.isHealthy()) {
+                failure = Status.UNAVAILABLE.withDescription("address is unhealthy: " + tracked.getAddressGroup());
+            } else if (tracked.isReady()) {
+                (tracked.isEjected() ? ejected : ready).add(tracked);
+            } else if (stateInfo.getState() == ConnectivityState.CONNECTING
+                    || stateInfo.getState() == ConnectivityState.IDLE) {
+                connecting = true;
+            } else if (stateInfo.getState() == ConnectivityState.TRANSIENT_FAILURE) {
+                failure = stateInfo.getStatus();
+            }
+        }
+
+        if (ready.isEmpty()) {
+            // the only ready addresses are ejected, use them rather than fail
+            ready = ejected;
+        }
+        if (localZone != null) {
+            ready = preferLocalZone(ready);
+        }
+        if (!ready.isEmpty()) {
+            updateBalancingState(ConnectivityState.READY, newReadyPicker(ready));
+        } else if (connecting || failure == null) {
+            updateBalancingState(ConnectivityState.CONNECTING, new EmptyPicker(null));
+        } else {
+            updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, new EmptyPicker(failure));
+        }
+    }
+
+    /**
+     * @return ready subchannels of the local zone if at least half of the local zone is ready, otherwise all
+     */
+    private List<TrackedSubchannel> preferLocalZone(List<TrackedSubchannel> ready) {
+        List<TrackedSubchannel> local = new ArrayList<>();
+        for (TrackedSubchannel tracked : ready) {
+            if (localZone.equals(tracked.getZone())) {
+                local.add(tracked);
+            }
+        }
+        if (local.isEmpty()) {
+            return ready;
+        }
+        int localTotal = 0;
+        for (TrackedSubchannel tracked : subchannels.values()) {
+            if (localZone.equals(tracked.getZone())) {
+                localTotal++;
+            }
+        }
+        // spill over to other zones rather than overload the few ready addresses left
+        return local.size() * 2 >= localTotal ? local : ready;
+    }
+
+    private void updateBalancingState(ConnectivityState state, SubchannelPicker picker) {
+        currentState = state;
+        helper.updateBalancingState(state, picker);
+    }
+
+    /**
+     * Picker when no subchannel is ready: wait for connection, or fail the call if all failed.
+     */
+    static final class EmptyPicker extends SubchannelPicker {
+        private final Status status;
+
+        EmptyPicker(Status status) {
+            this.status = status;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            return status == null ? PickResult.withNoResult() : PickResult.withError(status);
+        }
+    }
+
+    /**
+     * Picker of ready subchannels, calls on picked subchannel are traced for in-flight count and latency.
+     *
+     * <p>A re-admitted subchannel accepts a pick by its admission probability, otherwise the pick is done again once.
+     * A subchannel of {@link LoadBalancerAttributes#AVOIDED_ADDRESSES} is picked again, and only picked if all ready
+     * subchannels are avoided.
+     */
+    abstract static class ReadyPicker extends SubchannelPicker {
+        final List<TrackedSubchannel> subchannels;
+
+        ReadyPicker(List<TrackedSubchannel> subchannels) {
+            this.subchannels = subchannels;
+        }
+
+        abstract TrackedSubchannel choose(PickSubchannelArgs args);
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            TrackedSubchannel chosen = choose(args);
+            double admission = chosen.getAdmissionProbability();
+            if (admission < 1 && ThreadLocalRandom.current().nextDouble() >= admission) {
+                chosen = choose(args);
+            }
+            Set<SocketAddress> avoided = args.getCallOptions().getOption(LoadBalancerAttributes.AVOIDED_ADDRESSES);
+            if (avoided != null) {
+                for (int i = 1; i < subchannels.size() && isAvoided(chosen, avoided); i++) {
+                    chosen = choose(args);
+                }
+                if (isAvoided(chosen, avoided)) {
+                    // random pickers may miss the only subchannels not avoided
+                    for (TrackedSubchannel subchannel : subchannels) {
+                        if (!isAvoided(subchannel, avoided)) {
+                            chosen = subchannel;
+                            break;
+                        }
+                    }
+                }
+            }
+            return PickResult.withSubchannel(chosen.getSubchannel(), chosen.getTracerFactory());
+        }
+
+        private static boolean isAvoided(TrackedSubchannel subchannel, Set<SocketAddress> avoided) {
+            for (SocketAddress address : subchannel.getAddressGroup().getAddresses()) {
+                if (avoided.contains(address)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.LoadBalancer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory to create load balancer of the given {@link LoadBalancingPolicy} for each channel.
+ */
+public class GrpcLoadBalancerFactory extends LoadBalancer.Factory {
+
+    private final LoadBalancingPolicy policy;
+    private final LoadBalancerOptions options;
+
+    public GrpcLoadBalancerFactory(LoadBalancingPolicy policy) {
+        this(policy, LoadBalancerOptions.DEFAULT);
+    }
+
+    public GrpcLoadBalancerFactory(LoadBalancingPolicy policy, LoadBalancerOptions options) {
+        this.policy = checkNotNull(policy, "policy should not be null");
+        this.options = checkNotNull(options, "options should not be null");
+    }
+
+    public LoadBalancingPolicy getPolicy() {
+        return policy;
+    }
+
+    public LoadBalancerOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return policy.newLoadBalancer(helper, options);
+    }
+}
@@ -0,0 +1,184 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.internal.SharedResourceHolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config of active health checking, which probes each address with the standard {@code grpc.health.v1.Health/Check}
+ * method and excludes unhealthy addresses from picking until they recover.
+ *
+ * <p>Each address is probed every interval for all service names, it is healthy only if all of them are SERVING.
+ * Servers without the health service, which answer UNIMPLEMENTED, are healthy. An address turns unhealthy after
+ * unhealthyThreshold consecutive failed probes, and healthy again after healthyThreshold consecutive passed probes.
+ * New addresses are healthy until probed.
+ *
+ * <p>Probes are sent by a dedicated connection to each address, and scheduled by a shared scheduler with a fixed
+ * number of threads, waiting for responses doesn't hold a thread.
+ */
+public class HealthCheckConfig {
+
+    /**
+     * default scheduler: 2 daemon threads shared by all channels.
+     */
+    public static final SharedResourceHolder.Resource<ScheduledExecutorService> DEFAULT_SCHEDULER =
+            new SharedResourceHolder.Resource<ScheduledExecutorService>() {
+                @Override
+                public ScheduledExecutorService create() {
+                    return Executors.newScheduledThreadPool(2, new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("grpc-health-check-%d").build());
+                }
+
+                @Override
+                public void close(ScheduledExecutorService instance) {
+                    instance.shutdownNow();
+                }
+            };
+
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final Set<String> serviceNames;
+    private final int unhealthyThreshold;
+    private final int healthyThreshold;
+    private final SharedResourceHolder.Resource<ScheduledExecutorService> schedulerResource;
+
+    private HealthCheckConfig(Builder builder) {
+        this.intervalNanos = builder.intervalNanos;
+        this.timeoutNanos = builder.timeoutNanos;
+        this.serviceNames = Collections.unmodifiableSet(new LinkedHashSet<>(builder.serviceNames));
+        this.unhealthyThreshold = builder.unhealthyThreshold;
+        this.healthyThreshold = builder.healthyThreshold;
+        this.schedulerResource = builder.schedulerResource;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    public Set<String> getServiceNames() {
+        return serviceNames;
+    }
+
+    public int getUnhealthyThreshold() {
+        return unhealthyThreshold;
+    }
+
+    public int getHealthyThreshold() {
+        return healthyThreshold;
+    }
+
+    public SharedResourceHolder.Resource<ScheduledExecutorService> getSchedulerResource() {
+        return schedulerResource;
+    }
+
+    public static class Builder {
+        private long intervalNanos = TimeUnit.SECONDS.toNanos(5);
+        private long timeoutNanos = TimeUnit.SECONDS.toNanos(1);
+        private Set<String> serviceNames = Collections.singleton("");
+        private int unhealthyThreshold = 2;
+        private int healthyThreshold = 1;
+        private SharedResourceHolder.Resource<ScheduledExecutorService> schedulerResource = DEFAULT_SCHEDULER;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the interval between probes of an address.
+         *
+         * @param interval interval, default to 5 seconds
+         * @param unit time unit of interval
+         * @return Builder
+         */
+        public Builder interval(long interval, TimeUnit unit) {
+            checkArgument(interval > 0, "invalid interval " + interval);
+            this.intervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * set the deadline of a probe, a probe timed out is failed.
+         *
+         * @param timeout timeout, default to 1 second
+         * @param unit time unit of timeout
+         * @return Builder
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            checkArgument(timeout > 0, "invalid timeout " + timeout);
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * set the service names to check, "" is the overall health of the server.
+         *
+         * @param serviceNames service names, default to ""
+         * @return Builder
+         */
+        public Builder serviceNames(String... serviceNames) {
+            checkArgument(serviceNames.length > 0, "serviceNames should not be empty");
+            for (String serviceName : serviceNames) {
+                checkNotNull(serviceName, "serviceName should not be null");
+            }
+            this.serviceNames = new LinkedHashSet<>(Arrays.asList(serviceNames));
+            return this;
+        }
+
+        /**
+         * set the count of consecutive failed probes to mark an address unhealthy.
+         *
+         * @param unhealthyThreshold threshold, default to 2
+         * @return Builder
+         */
+        public Builder unhealthyThreshold(int unhealthyThreshold) {
+            checkArgument(unhealthyThreshold > 0, "invalid unhealthyThreshold " + unhealthyThreshold);
+            this.unhealthyThreshold = unhealthyThreshold;
+            return this;
+        }
+
+        /**
+         * set the count of consecutive passed probes to mark an unhealthy address healthy.
+         *
+         * @param healthyThreshold threshold, default to 1
+         * @return Builder
+         */
+        public Builder healthyThreshold(int healthyThreshold) {
+            checkArgument(healthyThreshold > 0, "invalid healthyThreshold " + healthyThreshold);
+            this.healthyThreshold = healthyThreshold;
+            return this;
+        }
+
+        /**
+         * set the scheduler of probes, pass the same resource to all channels to share it.
+         *
+         * @param schedulerResource scheduler resource, default to {@link #DEFAULT_SCHEDULER}
+         * @return Builder
+         */
+        public Builder scheduler(SharedResourceHolder.Resource<ScheduledExecutorService> schedulerResource) {
+            this.schedulerResource = checkNotNull(schedulerResource, "schedulerResource should not be null");
+            return this;
+        }
+
+        public HealthCheckConfig build() {
+            return new HealthCheckConfig(this);
+        }
+    }
+}
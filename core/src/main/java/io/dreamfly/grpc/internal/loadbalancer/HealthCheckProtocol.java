@@ -0,0 +1,106 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import io.grpc.MethodDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Check method of the standard health checking protocol, see
+ * <a href="https://github.com/grpc/grpc/blob/master/doc/health-checking.md">health-checking.md</a>.
+ *
+ * <p>grpc-services is not a dependency, so the two messages are encoded by hand:
+ * {@code HealthCheckRequest {string service = 1;}} is marshalled from the service name, and
+ * {@code HealthCheckResponse {ServingStatus status = 1;}} to the number of the status.
+ */
+final class HealthCheckProtocol {
+
+    static final int UNKNOWN = 0;
+    static final int SERVING = 1;
+    static final int NOT_SERVING = 2;
+    static final int SERVICE_UNKNOWN = 3;
+
+    static final MethodDescriptor<String, Integer> CHECK_METHOD = MethodDescriptor.<String, Integer>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName("grpc.health.v1.Health", "Check"))
+            .setRequestMarshaller(new FieldMarshaller<String>() {
+                @Override
+                void write(CodedOutputStream output, String service) throws IOException {
+                    if (!service.isEmpty()) {
+                        output.writeString(1, service);
+                    }
+                }
+
+                @Override
+                String read(CodedInputStream input) throws IOException {
+                    String service = "";
+                    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                        if (tag == (1 << 3 | 2)) {
+                            service = input.readStringRequireUtf8();
+                        } else {
+                            input.skipField(tag);
+                        }
+                    }
+                    return service;
+                }
+            })
+            .setResponseMarshaller(new FieldMarshaller<Integer>() {
+                @Override
+                void write(CodedOutputStream output, Integer status) throws IOException {
+                    if (status != UNKNOWN) {
+                        output.writeEnum(1, status);
+                    }
+                }
+
+                @Override
+                Integer read(CodedInputStream input) throws IOException {
+                    int status = UNKNOWN;
+                    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                        if (tag == 1 << 3) {
+                            status = input.readEnum();
+                        } else {
+                            input.skipField(tag);
+                        }
+                    }
+                    return status;
+                }
+            })
+            .build();
+
+    private HealthCheckProtocol() {
+        // no instance
+    }
+
+    private abstract static class FieldMarshaller<T> implements MethodDescriptor.Marshaller<T> {
+
+        abstract void write(CodedOutputStream output, T value) throws IOException;
+
+        abstract T read(CodedInputStream input) throws IOException;
+
+        @Override
+        public InputStream stream(T value) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+                write(output, value);
+                output.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("fail to serialize health check message", e);
+            }
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        @Override
+        public T parse(InputStream stream) {
+            try {
+                return read(CodedInputStream.newInstance(stream));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("fail to parse health check message", e);
+            }
+        }
+    }
+}
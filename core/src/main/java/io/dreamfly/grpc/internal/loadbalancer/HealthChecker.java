@@ -0,0 +1,193 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.internal.SharedResourceHolder;
+import io.grpc.stub.ClientCalls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Active health checker of a load balancer, see {@link HealthCheckConfig}.
+ *
+ * <p>Addresses are added and removed in the synchronization context of the channel, and probe results are
+ * submitted to it by {@link io.grpc.LoadBalancer.Helper#runSerialized}.
+ */
+final class HealthChecker {
+
+    private static Logger logger = LoggerFactory.getLogger(HealthChecker.class);
+
+    // spread probes of addresses added at the same time
+    private static final double INTERVAL_JITTER = 0.1;
+
+    private final AbstractLoadBalancer loadBalancer;
+    private final HealthCheckConfig config;
+    private final Map<TrackedSubchannel, Probe> probes = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private boolean shutdown;
+
+    HealthChecker(AbstractLoadBalancer loadBalancer, HealthCheckConfig config) {
+        this.loadBalancer = loadBalancer;
+        this.config = config;
+    }
+
+    void start() {
+        scheduler = SharedResourceHolder.get(config.getSchedulerResource());
+    }
+
+    void onAdded(TrackedSubchannel tracked) {
+        if (shutdown) {
+            return;
+        }
+        Probe probe = new Probe(tracked);
+        probes.put(tracked, probe);
+        probe.schedule(0);
+    }
+
+    void onRemoved(TrackedSubchannel tracked) {
+        Probe probe = probes.remove(tracked);
+        if (probe != null) {
+            probe.stop();
+        }
+    }
+
+    void shutdown() {
+        shutdown = true;
+        for (Probe probe : probes.values()) {
+            probe.stop();
+        }
+        probes.clear();
+        if (scheduler != null) {
+            scheduler = SharedResourceHolder.release(config.getSchedulerResource(), scheduler);
+        }
+    }
+
+    /**
+     * Probes of an address, sent by an out-of-band channel to the address so they don't compete with calls.
+     *
+     * <p>The out-of-band channel holds its own connection to the address: subchannels of this grpc version can't
+     * carry calls of the load balancer, so the connection of the calls can't be probed directly.
+     */
+    private final class Probe implements Runnable {
+        private final TrackedSubchannel tracked;
+        private final ManagedChannel channel;
+        private final ScheduledExecutorService scheduler = HealthChecker.this.scheduler;
+        private volatile ScheduledFuture<?> task;
+        private volatile boolean stopped;
+
+        // updated in the synchronization context
+        private int consecutiveFailures;
+        private int consecutivePasses;
+
+        Probe(TrackedSubchannel tracked) {
+            this.tracked = tracked;
+            this.channel = loadBalancer.getHelper().createOobChannel(tracked.getAddressGroup(),
+                    loadBalancer.getHelper().getAuthority());
+        }
+
+        void schedule(long delayNanos) {
+            if (stopped) {
+                return;
+            }
+            try {
+                task = scheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the scheduler is closed after the load balancer shut down
+                logger.debug("health check stopped: address={}", tracked.getAddressGroup());
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            ScheduledFuture<?> current = task;
+            if (current != null) {
+                current.cancel(false);
+            }
+            channel.shutdownNow();
+        }
+
+        @Override
+        public void run() {
+            if (stopped) {
+                return;
+            }
+            List<ListenableFuture<Boolean>> results = new ArrayList<>(config.getServiceNames().size());
+            for (String serviceName : config.getServiceNames()) {
+                results.add(check(serviceName));
+            }
+            Futures.addCallback(Futures.allAsList(results), new FutureCallback<List<Boolean>>() {
+                @Override
+                public void onSuccess(List<Boolean> passes) {
+                    onProbed(!passes.contains(Boolean.FALSE));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    onProbed(false);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private ListenableFuture<Boolean> check(final String serviceName) {
+            CallOptions callOptions = CallOptions.DEFAULT.withDeadlineAfter(config.getTimeoutNanos(),
+                    TimeUnit.NANOSECONDS);
+            ListenableFuture<Integer> response = ClientCalls.futureUnaryCall(
+                    channel.newCall(HealthCheckProtocol.CHECK_METHOD, callOptions), serviceName);
+            return Futures.transform(Futures.catching(response, Throwable.class, t -> {
+                Status status = Status.fromThrowable(t);
+                if (status.getCode() == Status.Code.UNIMPLEMENTED) {
+                    // health checking is not supported by the server
+                    return HealthCheckProtocol.SERVING;
+                }
+                logger.debug("health check failed: address={}, service={}, status={}", tracked.getAddressGroup(),
+                        serviceName, status);
+                return HealthCheckProtocol.UNKNOWN;
+            }, MoreExecutors.directExecutor()), status -> status == HealthCheckProtocol.SERVING,
+                    MoreExecutors.directExecutor());
+        }
+
+        private void onProbed(final boolean passed) {
+            loadBalancer.getHelper().runSerialized(() -> {
+                if (stopped) {
+                    return;
+                }
+                if (passed) {
+                    consecutiveFailures = 0;
+                    consecutivePasses++;
+                    if (!tracked.isHealthy() && consecutivePasses >= config.getHealthyThreshold()) {
+                        tracked.setHealthy(true);
+                        logger.info("address turns healthy: address={}", tracked.getAddressGroup());
+                        loadBalancer.updateBalancingState();
+                    }
+                } else {
+                    consecutivePasses = 0;
+                    consecutiveFailures++;
+                    if (tracked.isHealthy() && consecutiveFailures >= config.getUnhealthyThreshold()) {
+                        tracked.setHealthy(false);
+                        logger.warn("address turns unhealthy: address={}", tracked.getAddressGroup());
+                        loadBalancer.updateBalancingState();
+                    }
+                }
+            });
+            long interval = config.getIntervalNanos();
+            long jitter = (long) (interval * INTERVAL_JITTER);
+            schedule(interval - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import java.util.List;
+
+/**
+ * Load balancer choosing two random ready subchannels and sending the call to the one with lower cost.
+ *
+ * <p>The cost is the peak EWMA of successful call latency multiplied by in-flight calls plus one, so slow addresses
+ * get fewer calls and are retried as the average decays.
+ */
+class LatencyEwmaLoadBalancer extends AbstractLoadBalancer {
+
+    LatencyEwmaLoadBalancer(Helper helper, LoadBalancerOptions options) {
+        super(helper, options);
+    }
+
+    @Override
+    SubchannelPicker newReadyPicker(List<TrackedSubchannel> readySubchannels) {
+        return new PowerOfTwoChoicesPicker(readySubchannels) {
+            @Override
+            double cost(TrackedSubchannel subchannel) {
+                return subchannel.getCost();
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import java.util.List;
+
+/**
+ * Load balancer choosing two random ready subchannels and sending the call to the one with fewer in-flight calls.
+ */
+class LeastRequestLoadBalancer extends AbstractLoadBalancer {
+
+    LeastRequestLoadBalancer(Helper helper, LoadBalancerOptions options) {
+        super(helper, options);
+    }
+
+    @Override
+    SubchannelPicker newReadyPicker(List<TrackedSubchannel> readySubchannels) {
+        return new PowerOfTwoChoicesPicker(readySubchannels) {
+            @Override
+            double cost(TrackedSubchannel subchannel) {
+                return subchannel.getInFlight();
+            }
+        };
+    }
+}
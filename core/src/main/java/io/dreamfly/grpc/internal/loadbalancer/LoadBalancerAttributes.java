@@ -0,0 +1,33 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+
+import java.net.SocketAddress;
+import java.util.Set;
+
+/**
+ * Attributes of {@link io.grpc.EquivalentAddressGroup} and call options used by load balancers.
+ */
+public class LoadBalancerAttributes {
+
+    /**
+     * weight of the address for {@link LoadBalancingPolicy#WEIGHTED_ROUND_ROBIN}, default to 1.
+     */
+    public static final Attributes.Key<Integer> WEIGHT = Attributes.Key.create("io.dreamfly.grpc.lb.weight");
+
+    /**
+     * zone of the address, addresses in {@link LoadBalancerOptions#getLocalZone()} are preferred.
+     */
+    public static final Attributes.Key<String> ZONE = Attributes.Key.create("io.dreamfly.grpc.lb.zone");
+
+    /**
+     * call option of addresses the call should avoid if other ready addresses exist, used by hedged attempts.
+     */
+    public static final CallOptions.Key<Set<SocketAddress>> AVOIDED_ADDRESSES =
+            CallOptions.Key.create("io.dreamfly.grpc.lb.avoidedAddresses");
+
+    private LoadBalancerAttributes() {
+        // no instance
+    }
+}
@@ -0,0 +1,126 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import com.google.common.base.Strings;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options of load balancers created by {@link GrpcLoadBalancerFactory}, ignored by
+ * {@link LoadBalancingPolicy#PICK_FIRST}.
+ */
+public class LoadBalancerOptions {
+
+    /**
+     * default options: no outlier detection or health checking, zones ignored.
+     */
+    public static final LoadBalancerOptions DEFAULT = newBuilder().build();
+
+    private final OutlierDetectionConfig outlierDetection;
+    private final HealthCheckConfig healthCheck;
+    private final String localZone;
+
+    private LoadBalancerOptions(Builder builder) {
+        this.outlierDetection = builder.outlierDetection;
+        this.healthCheck = builder.healthCheck;
+        this.localZone = builder.localZone;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return outlier detection config, null if disabled
+     */
+    @Nullable
+    public OutlierDetectionConfig getOutlierDetection() {
+        return outlierDetection;
+    }
+
+    /**
+     * @return health check config, null if disabled
+     */
+    @Nullable
+    public HealthCheckConfig getHealthCheck() {
+        return healthCheck;
+    }
+
+    /**
+     * @return zone of the client, null if zones are ignored
+     */
+    @Nullable
+    public String getLocalZone() {
+        return localZone;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LoadBalancerOptions)) {
+            return false;
+        }
+        LoadBalancerOptions that = (LoadBalancerOptions) o;
+        return Objects.equals(outlierDetection, that.outlierDetection) && Objects.equals(healthCheck, that.healthCheck)
+                && Objects.equals(localZone, that.localZone);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(outlierDetection, healthCheck, localZone);
+    }
+
+    public static class Builder {
+        private OutlierDetectionConfig outlierDetection;
+        private HealthCheckConfig healthCheck;
+        private String localZone;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * enable outlier detection to eject failing or slow addresses temporarily.
+         *
+         * @param outlierDetection outlier detection config
+         * @return Builder
+         */
+        public Builder outlierDetection(OutlierDetectionConfig outlierDetection) {
+            this.outlierDetection = checkNotNull(outlierDetection, "outlierDetection should not be null");
+            return this;
+        }
+
+        /**
+         * enable active health checking to exclude unhealthy addresses.
+         *
+         * @param healthCheck health check config
+         * @return Builder
+         */
+        public Builder healthCheck(HealthCheckConfig healthCheck) {
+            this.healthCheck = checkNotNull(healthCheck, "healthCheck should not be null");
+            return this;
+        }
+
+        /**
+         * set the zone of the client, addresses of {@link LoadBalancerAttributes#ZONE} in the same zone are picked
+         * while at least half of them are ready, otherwise addresses of all zones are picked.
+         *
+         * @param localZone zone of the client
+         * @return Builder
+         */
+        public Builder localZone(String localZone) {
+            checkArgument(!Strings.isNullOrEmpty(localZone), "localZone should not be null or empty");
+            this.localZone = localZone;
+            return this;
+        }
+
+        public LoadBalancerOptions build() {
+            return new LoadBalancerOptions(this);
+        }
+    }
+}
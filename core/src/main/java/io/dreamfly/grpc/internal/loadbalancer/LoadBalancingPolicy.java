@@ -0,0 +1,58 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.PickFirstBalancerFactory;
+
+/**
+ * Policy to distribute calls among the addresses of a channel.
+ */
+public enum LoadBalancingPolicy {
+    /**
+     * send all calls to the first connectable address, the default policy of gRPC.
+     */
+    PICK_FIRST {
+        @Override
+        LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options) {
+            return PickFirstBalancerFactory.getInstance().newLoadBalancer(helper);
+        }
+    },
+    /**
+     * send calls to ready addresses in turn.
+     */
+    ROUND_ROBIN {
+        @Override
+        LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options) {
+            return new RoundRobinLoadBalancer(helper, options);
+        }
+    },
+    /**
+     * send calls to ready addresses in turn in proportion to {@link LoadBalancerAttributes#WEIGHT}.
+     */
+    WEIGHTED_ROUND_ROBIN {
+        @Override
+        LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options) {
+            return new WeightedRoundRobinLoadBalancer(helper, options);
+        }
+    },
+    /**
+     * choose two random ready addresses and send the call to the one with fewer in-flight calls.
+     */
+    LEAST_REQUEST {
+        @Override
+        LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options) {
+            return new LeastRequestLoadBalancer(helper, options);
+        }
+    },
+    /**
+     * choose two random ready addresses and send the call to the one with lower cost, the cost is the peak EWMA
+     * of latency multiplied by in-flight calls.
+     */
+    LATENCY_EWMA {
+        @Override
+        LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options) {
+            return new LatencyEwmaLoadBalancer(helper, options);
+        }
+    };
+
+    abstract LoadBalancer newLoadBalancer(LoadBalancer.Helper helper, LoadBalancerOptions options);
+}
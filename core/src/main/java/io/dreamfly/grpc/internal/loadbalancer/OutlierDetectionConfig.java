@@ -0,0 +1,310 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config of outlier detection, which ejects failing or slow addresses from load balancing temporarily.
+ *
+ * <p>An address is ejected immediately after consecutive failures, or at the end of each interval when its success
+ * rate, failure percentage or average latency is an outlier among the addresses with enough calls in the interval.
+ * The n-th ejection of an address lasts {@code min(baseEjectionTime * n, maxEjectionTime)}, after that its share of
+ * calls ramps up linearly in rampUpTime. No more than maxEjectionPercent of addresses are ejected at the same time.
+ *
+ * <p>Failures are statuses indicating an unhealthy server: UNAVAILABLE, DEADLINE_EXCEEDED, INTERNAL, UNKNOWN,
+ * RESOURCE_EXHAUSTED and DATA_LOSS.
+ */
+public class OutlierDetectionConfig {
+
+    private final long intervalNanos;
+    private final long baseEjectionTimeNanos;
+    private final long maxEjectionTimeNanos;
+    private final int maxEjectionPercent;
+    private final long rampUpTimeNanos;
+    private final int consecutiveFailures;
+    private final int minimumHosts;
+    private final int requestVolume;
+    private final double successRateStdevFactor;
+    private final int failurePercentageThreshold;
+    private final double latencyFactor;
+    private final long minLatencyDifferenceNanos;
+    private final OutlierDetectionStats stats;
+
+    private OutlierDetectionConfig(Builder builder) {
+        this.intervalNanos = builder.intervalNanos;
+        this.baseEjectionTimeNanos = builder.baseEjectionTimeNanos;
+        this.maxEjectionTimeNanos = builder.maxEjectionTimeNanos;
+        this.maxEjectionPercent = builder.maxEjectionPercent;
+        this.rampUpTimeNanos = builder.rampUpTimeNanos;
+        this.consecutiveFailures = builder.consecutiveFailures;
+        this.minimumHosts = builder.minimumHosts;
+        this.requestVolume = builder.requestVolume;
+        this.successRateStdevFactor = builder.successRateStdevFactor;
+        this.failurePercentageThreshold = builder.failurePercentageThreshold;
+        this.latencyFactor = builder.latencyFactor;
+        this.minLatencyDifferenceNanos = builder.minLatencyDifferenceNanos;
+        this.stats = builder.stats != null ? builder.stats : new OutlierDetectionStats();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public long getBaseEjectionTimeNanos() {
+        return baseEjectionTimeNanos;
+    }
+
+    public long getMaxEjectionTimeNanos() {
+        return maxEjectionTimeNanos;
+    }
+
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public long getRampUpTimeNanos() {
+        return rampUpTimeNanos;
+    }
+
+    /**
+     * @return count of consecutive failures to eject an address, 0 if disabled
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public int getMinimumHosts() {
+        return minimumHosts;
+    }
+
+    public int getRequestVolume() {
+        return requestVolume;
+    }
+
+    /**
+     * @return factor of standard deviation below the mean success rate to eject an address, 0 if disabled
+     */
+    public double getSuccessRateStdevFactor() {
+        return successRateStdevFactor;
+    }
+
+    /**
+     * @return failure percentage to eject an address, 0 if disabled
+     */
+    public int getFailurePercentageThreshold() {
+        return failurePercentageThreshold;
+    }
+
+    /**
+     * @return factor of the median latency to eject an address, 0 if disabled
+     */
+    public double getLatencyFactor() {
+        return latencyFactor;
+    }
+
+    public long getMinLatencyDifferenceNanos() {
+        return minLatencyDifferenceNanos;
+    }
+
+    /**
+     * @return ejection counters of all channels using this config
+     */
+    public OutlierDetectionStats getStats() {
+        return stats;
+    }
+
+    long getEjectionTimeNanos(int ejectionCount) {
+        return Math.min(baseEjectionTimeNanos * ejectionCount, Math.max(baseEjectionTimeNanos, maxEjectionTimeNanos));
+    }
+
+    public static class Builder {
+        private long intervalNanos = TimeUnit.SECONDS.toNanos(10);
+        private long baseEjectionTimeNanos = TimeUnit.SECONDS.toNanos(30);
+        private long maxEjectionTimeNanos = TimeUnit.MINUTES.toNanos(5);
+        private int maxEjectionPercent = 50;
+        private long rampUpTimeNanos = TimeUnit.SECONDS.toNanos(30);
+        private int consecutiveFailures = 5;
+        private int minimumHosts = 3;
+        private int requestVolume = 20;
+        private double successRateStdevFactor = 1.9;
+        private int failurePercentageThreshold = 50;
+        private double latencyFactor = 3;
+        private long minLatencyDifferenceNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private OutlierDetectionStats stats;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the interval to evaluate statistics of addresses.
+         *
+         * @param interval interval, default to 10 seconds
+         * @param unit time unit of interval
+         * @return Builder
+         */
+        public Builder interval(long interval, TimeUnit unit) {
+            checkArgument(interval > 0, "invalid interval " + interval);
+            this.intervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * set the time of first ejection, the n-th ejection lasts n times of it.
+         *
+         * @param ejectionTime ejection time, default to 30 seconds
+         * @param unit time unit of ejection time
+         * @return Builder
+         */
+        public Builder baseEjectionTime(long ejectionTime, TimeUnit unit) {
+            checkArgument(ejectionTime > 0, "invalid base ejection time " + ejectionTime);
+            this.baseEjectionTimeNanos = unit.toNanos(ejectionTime);
+            return this;
+        }
+
+        /**
+         * set the max time of an ejection.
+         *
+         * @param ejectionTime max ejection time, default to 5 minutes
+         * @param unit time unit of ejection time
+         * @return Builder
+         */
+        public Builder maxEjectionTime(long ejectionTime, TimeUnit unit) {
+            checkArgument(ejectionTime > 0, "invalid max ejection time " + ejectionTime);
+            this.maxEjectionTimeNanos = unit.toNanos(ejectionTime);
+            return this;
+        }
+
+        /**
+         * set the max percent of addresses ejected at the same time, at least one address is never ejected.
+         *
+         * @param percent percent between 0 and 100, default to 50
+         * @return Builder
+         */
+        public Builder maxEjectionPercent(int percent) {
+            checkArgument(percent >= 0 && percent <= 100, "invalid max ejection percent " + percent);
+            this.maxEjectionPercent = percent;
+            return this;
+        }
+
+        /**
+         * set the time for a re-admitted address to get its full share of calls, 0 to re-admit at once.
+         *
+         * @param rampUpTime ramp up time, default to 30 seconds
+         * @param unit time unit of ramp up time
+         * @return Builder
+         */
+        public Builder rampUpTime(long rampUpTime, TimeUnit unit) {
+            checkArgument(rampUpTime >= 0, "invalid ramp up time " + rampUpTime);
+            this.rampUpTimeNanos = unit.toNanos(rampUpTime);
+            return this;
+        }
+
+        /**
+         * set the count of consecutive failures to eject an address at once, 0 to disable.
+         *
+         * @param consecutiveFailures count of consecutive failures, default to 5
+         * @return Builder
+         */
+        public Builder consecutiveFailures(int consecutiveFailures) {
+            checkArgument(consecutiveFailures >= 0, "invalid consecutive failures " + consecutiveFailures);
+            this.consecutiveFailures = consecutiveFailures;
+            return this;
+        }
+
+        /**
+         * set the min count of addresses with enough calls to evaluate success rate and latency.
+         *
+         * @param minimumHosts min count of addresses, default to 3
+         * @return Builder
+         */
+        public Builder minimumHosts(int minimumHosts) {
+            checkArgument(minimumHosts > 0, "invalid minimum hosts " + minimumHosts);
+            this.minimumHosts = minimumHosts;
+            return this;
+        }
+
+        /**
+         * set the min count of calls of an address in an interval to evaluate it.
+         *
+         * @param requestVolume min count of calls, default to 20
+         * @return Builder
+         */
+        public Builder requestVolume(int requestVolume) {
+            checkArgument(requestVolume > 0, "invalid request volume " + requestVolume);
+            this.requestVolume = requestVolume;
+            return this;
+        }
+
+        /**
+         * eject addresses whose success rate is below {@code mean - stdevFactor * stdev} of all addresses.
+         *
+         * @param stdevFactor factor of standard deviation, default to 1.9, 0 to disable
+         * @return Builder
+         */
+        public Builder successRateStdevFactor(double stdevFactor) {
+            checkArgument(stdevFactor >= 0, "invalid success rate stdev factor " + stdevFactor);
+            this.successRateStdevFactor = stdevFactor;
+            return this;
+        }
+
+        /**
+         * eject addresses whose failure percentage is above the threshold.
+         *
+         * @param threshold percent between 0 and 100, default to 50, 0 to disable
+         * @return Builder
+         */
+        public Builder failurePercentageThreshold(int threshold) {
+            checkArgument(threshold >= 0 && threshold <= 100, "invalid failure percentage threshold " + threshold);
+            this.failurePercentageThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * eject addresses whose average latency is above {@code latencyFactor * median} of all addresses.
+         *
+         * @param latencyFactor factor of median latency, default to 3, 0 to disable
+         * @return Builder
+         */
+        public Builder latencyFactor(double latencyFactor) {
+            checkArgument(latencyFactor == 0 || latencyFactor > 1, "invalid latency factor " + latencyFactor);
+            this.latencyFactor = latencyFactor;
+            return this;
+        }
+
+        /**
+         * set the min difference between the average latency of an address and the median to eject it, so addresses
+         * of fast services are not ejected by noise.
+         *
+         * @param difference min latency difference, default to 10 milliseconds
+         * @param unit time unit of difference
+         * @return Builder
+         */
+        public Builder minLatencyDifference(long difference, TimeUnit unit) {
+            checkArgument(difference >= 0, "invalid min latency difference " + difference);
+            this.minLatencyDifferenceNanos = unit.toNanos(difference);
+            return this;
+        }
+
+        /**
+         * set the counters to report ejections, default to new counters of this config.
+         *
+         * @param stats ejection counters
+         * @return Builder
+         */
+        public Builder stats(OutlierDetectionStats stats) {
+            this.stats = checkNotNull(stats, "stats should not be null");
+            return this;
+        }
+
+        public OutlierDetectionConfig build() {
+            return new OutlierDetectionConfig(this);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of outlier ejections, shared by all channels using the same {@link OutlierDetectionConfig}.
+ */
+public class OutlierDetectionStats {
+
+    /**
+     * Reason of ejection.
+     */
+    public enum EjectionType {
+        /**
+         * too many consecutive failures.
+         */
+        CONSECUTIVE_FAILURE,
+        /**
+         * success rate is far below the average of other addresses.
+         */
+        SUCCESS_RATE,
+        /**
+         * failure percentage is above the threshold.
+         */
+        FAILURE_PERCENTAGE,
+        /**
+         * average latency is far above the median of other addresses.
+         */
+        LATENCY
+    }
+
+    private final LongAdder[] ejections = new LongAdder[EjectionType.values().length];
+    private final LongAdder currentlyEjected = new LongAdder();
+
+    public OutlierDetectionStats() {
+        for (int i = 0; i < ejections.length; i++) {
+            ejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return count of all ejections
+     */
+    public long getEjectionCount() {
+        long count = 0;
+        for (LongAdder adder : ejections) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @param type reason of ejection
+     * @return count of ejections of the reason
+     */
+    public long getEjectionCount(EjectionType type) {
+        return ejections[type.ordinal()].sum();
+    }
+
+    /**
+     * @return count of addresses which are ejected now
+     */
+    public long getCurrentlyEjected() {
+        return currentlyEjected.sum();
+    }
+
+    void ejected(EjectionType type) {
+        ejections[type.ordinal()].increment();
+        currentlyEjected.increment();
+    }
+
+    void unejected() {
+        currentlyEjected.decrement();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("OutlierDetectionStats{");
+        for (EjectionType type : EjectionType.values()) {
+            sb.append(type).append('=').append(getEjectionCount(type)).append(", ");
+        }
+        return sb.append("currentlyEjected=").append(getCurrentlyEjected()).append('}').toString();
+    }
+}
@@ -0,0 +1,242 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.dreamfly.grpc.internal.loadbalancer.OutlierDetectionStats.EjectionType;
+import io.grpc.ConnectivityState;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outlier detector of a load balancer, see {@link OutlierDetectionConfig}.
+ *
+ * <p>Ejections are done in the synchronization context of the channel: consecutive failures reported by stream
+ * tracers and the periodical evaluation are both submitted by {@link io.grpc.LoadBalancer.Helper#runSerialized}.
+ */
+final class OutlierDetector {
+
+    private static Logger logger = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private final AbstractLoadBalancer loadBalancer;
+    private final OutlierDetectionConfig config;
+    private final OutlierDetectionStats stats;
+
+    private ScheduledExecutorService timerService;
+    private ScheduledFuture<?> evaluationTask;
+    private boolean shutdown;
+
+    OutlierDetector(AbstractLoadBalancer loadBalancer, OutlierDetectionConfig config) {
+        this.loadBalancer = loadBalancer;
+        this.config = config;
+        this.stats = config.getStats();
+    }
+
+    void start() {
+        timerService = SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
+        evaluationTask = timerService.scheduleAtFixedRate(
+                () -> loadBalancer.getHelper().runSerialized(this::evaluate),
+                config.getIntervalNanos(), config.getIntervalNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    void shutdown() {
+        shutdown = true;
+        if (evaluationTask != null) {
+            evaluationTask.cancel(false);
+            evaluationTask = null;
+        }
+        if (timerService != null) {
+            timerService = SharedResourceHolder.release(GrpcUtil.TIMER_SERVICE, timerService);
+        }
+        for (TrackedSubchannel tracked : loadBalancer.getSubchannels()) {
+            onRemoved(tracked);
+        }
+    }
+
+    long getRampUpTimeNanos() {
+        return config.getRampUpTimeNanos();
+    }
+
+    /**
+     * called by stream tracers from any thread when a call failed.
+     */
+    void onFailure(final TrackedSubchannel tracked, int consecutiveFailures) {
+        if (config.getConsecutiveFailures() == 0 || consecutiveFailures != config.getConsecutiveFailures()) {
+            return;
+        }
+        loadBalancer.getHelper().runSerialized(() -> {
+            if (shutdown || tracked.isEjected()
+                    || tracked.getStateInfo().getState() == ConnectivityState.SHUTDOWN) {
+                return;
+            }
+            if (eject(tracked, EjectionType.CONSECUTIVE_FAILURE, System.nanoTime())) {
+                loadBalancer.updateBalancingState();
+            }
+        });
+    }
+
+    void onRemoved(TrackedSubchannel tracked) {
+        if (tracked.isEjected()) {
+            tracked.uneject(System.nanoTime());
+            stats.unejected();
+        }
+    }
+
+    /**
+     * re-admit addresses whose ejection expired and eject the outliers of the last interval.
+     */
+    void evaluate() {
+        if (shutdown) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean changed = false;
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (TrackedSubchannel tracked : loadBalancer.getSubchannels()) {
+            long[] intervalStats = tracked.takeIntervalStats();
+            if (tracked.isEjected()) {
+                if (now - tracked.getEjectedUntilNanos() >= 0) {
+                    tracked.uneject(now);
+                    stats.unejected();
+                    changed = true;
+                    logger.info("re-admit ejected address: address={}, ejectionCount={}",
+                            tracked.getAddressGroup().getAddresses(), tracked.getEjectionCount());
+                }
+                continue;
+            }
+            tracked.decreaseEjectionCount();
+            if (intervalStats[0] + intervalStats[1] >= config.getRequestVolume()) {
+                candidates.add(new Candidate(tracked, intervalStats));
+            }
+        }
+
+        if (config.getFailurePercentageThreshold() > 0) {
+            for (Candidate candidate : candidates) {
+                if (candidate.failures * 100 > config.getFailurePercentageThreshold() * candidate.total()) {
+                    changed |= eject(candidate.tracked, EjectionType.FAILURE_PERCENTAGE, now);
+                }
+            }
+        }
+        if (candidates.size() >= config.getMinimumHosts()) {
+            if (config.getSuccessRateStdevFactor() > 0) {
+                changed |= ejectBySuccessRate(candidates, now);
+            }
+            if (config.getLatencyFactor() > 0) {
+                changed |= ejectByLatency(candidates, now);
+            }
+        }
+
+        if (changed) {
+            loadBalancer.updateBalancingState();
+        }
+    }
+
+    private boolean ejectBySuccessRate(List<Candidate> candidates, long now) {
+        double sum = 0;
+        for (Candidate candidate : candidates) {
+            sum += candidate.successRate();
+        }
+        double mean = sum / candidates.size();
+        double variance = 0;
+        for (Candidate candidate : candidates) {
+            variance += (candidate.successRate() - mean) * (candidate.successRate() - mean);
+        }
+        double threshold = mean - config.getSuccessRateStdevFactor() * Math.sqrt(variance / candidates.size());
+
+        boolean changed = false;
+        for (Candidate candidate : candidates) {
+            if (candidate.successRate() < threshold) {
+                changed |= eject(candidate.tracked, EjectionType.SUCCESS_RATE, now);
+            }
+        }
+        return changed;
+    }
+
+    private boolean ejectByLatency(List<Candidate> candidates, long now) {
+        List<Candidate> sampled = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.successes > 0) {
+                sampled.add(candidate);
+            }
+        }
+        if (sampled.size() < config.getMinimumHosts()) {
+            return false;
+        }
+        double[] latencies = new double[sampled.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = sampled.get(i).averageLatencyNanos();
+        }
+        Arrays.sort(latencies);
+        double median = latencies.length % 2 == 1 ? latencies[latencies.length / 2]
+                : (latencies[latencies.length / 2 - 1] + latencies[latencies.length / 2]) / 2;
+
+        boolean changed = false;
+        for (Candidate candidate : sampled) {
+            double latency = candidate.averageLatencyNanos();
+            if (latency > config.getLatencyFactor() * median
+                    && latency - median > config.getMinLatencyDifferenceNanos()) {
+                changed |= eject(candidate.tracked, EjectionType.LATENCY, now);
+            }
+        }
+        return changed;
+    }
+
+    private boolean eject(TrackedSubchannel tracked, EjectionType type, long now) {
+        if (tracked.isEjected()) {
+            return false;
+        }
+        Collection<TrackedSubchannel> all = loadBalancer.getSubchannels();
+        int ejectedCount = 1;
+        for (TrackedSubchannel other : all) {
+            if (other.isEjected()) {
+                ejectedCount++;
+            }
+        }
+        // keep at least one address
+        if (ejectedCount >= all.size() || ejectedCount * 100 > all.size() * config.getMaxEjectionPercent()) {
+            return false;
+        }
+
+        long ejectionTimeNanos = config.getEjectionTimeNanos(tracked.getEjectionCount() + 1);
+        tracked.eject(now + ejectionTimeNanos);
+        stats.ejected(type);
+        logger.warn("eject outlier address: address={}, type={}, ejectionCount={}, ejectionTimeMillis={}",
+                tracked.getAddressGroup().getAddresses(), type, tracked.getEjectionCount(),
+                TimeUnit.NANOSECONDS.toMillis(ejectionTimeNanos));
+        return true;
+    }
+
+    private static final class Candidate {
+        private final TrackedSubchannel tracked;
+        private final long successes;
+        private final long failures;
+        private final long latencyNanos;
+
+        Candidate(TrackedSubchannel tracked, long[] intervalStats) {
+            this.tracked = tracked;
+            this.successes = intervalStats[0];
+            this.failures = intervalStats[1];
+            this.latencyNanos = intervalStats[2];
+        }
+
+        long total() {
+            return successes + failures;
+        }
+
+        double successRate() {
+            return (double) successes / total();
+        }
+
+        double averageLatencyNanos() {
+            return (double) latencyNanos / successes;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picker choosing two random subchannels and picking the one with lower cost.
+ *
+ * <p>Comparing two random candidates instead of all avoids sending all calls of concurrent clients to the same
+ * least loaded subchannel.
+ */
+abstract class PowerOfTwoChoicesPicker extends AbstractLoadBalancer.ReadyPicker {
+
+    PowerOfTwoChoicesPicker(List<TrackedSubchannel> subchannels) {
+        super(subchannels);
+    }
+
+    abstract double cost(TrackedSubchannel subchannel);
+
+    @Override
+    TrackedSubchannel choose(PickSubchannelArgs args) {
+        int size = subchannels.size();
+        if (size == 1) {
+            return subchannels.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        TrackedSubchannel a = subchannels.get(first);
+        TrackedSubchannel b = subchannels.get(second);
+        return cost(b) < cost(a) ? b : a;
+    }
+}
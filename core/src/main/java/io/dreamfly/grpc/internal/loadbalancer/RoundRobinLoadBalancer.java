@@ -0,0 +1,34 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load balancer sending calls to ready subchannels in turn.
+ */
+class RoundRobinLoadBalancer extends AbstractLoadBalancer {
+
+    RoundRobinLoadBalancer(Helper helper, LoadBalancerOptions options) {
+        super(helper, options);
+    }
+
+    @Override
+    SubchannelPicker newReadyPicker(List<TrackedSubchannel> readySubchannels) {
+        return new RoundRobinPicker(readySubchannels);
+    }
+
+    static final class RoundRobinPicker extends ReadyPicker {
+        // random start, so clients created at the same time don't hit the same address first
+        private final AtomicInteger index = new AtomicInteger(ThreadLocalRandom.current().nextInt(1 << 16));
+
+        RoundRobinPicker(List<TrackedSubchannel> subchannels) {
+            super(subchannels);
+        }
+
+        @Override
+        TrackedSubchannel choose(PickSubchannelArgs args) {
+            return subchannels.get((index.getAndIncrement() & Integer.MAX_VALUE) % subchannels.size());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Subchannel with the state and call statistics used by load balancers.
+ *
+ * <p>Connectivity state, weight, zone, health and ejection are updated in the synchronization context of the channel, call
+ * statistics are updated by stream tracers from any thread.
+ */
+final class TrackedSubchannel {
+
+    static final Attributes.Key<TrackedSubchannel> KEY = Attributes.Key.create("io.dreamfly.grpc.lb.tracked");
+
+    private static final long EWMA_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // cost of an address without latency sample but with in-flight calls, avoid flooding new addresses
+    private static final double UNSAMPLED_PENALTY = Long.MAX_VALUE >> 16;
+
+    // minimal share of calls of a re-admitted address at the beginning of ramp up
+    private static final double MIN_ADMISSION_PROBABILITY = 0.1;
+
+    private final EquivalentAddressGroup addressGroup;
+    private final OutlierDetector outlierDetector;
+    private Subchannel subchannel;
+    private volatile ConnectivityStateInfo stateInfo = ConnectivityStateInfo.forNonError(ConnectivityState.IDLE);
+    private volatile int weight = 1;
+    private volatile String zone;
+    private volatile boolean healthy = true;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    @GuardedBy("this")
+    private double ewmaNanos;
+    @GuardedBy("this")
+    private long lastSampleNanos;
+
+    // statistics of current outlier detection interval
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder successLatencyNanos = new LongAdder();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile boolean ejected;
+    private int ejectionCount;
+    private long ejectedUntilNanos;
+    private volatile long readmittedAtNanos;
+
+    private final ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory() {
+        @Override
+        public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+            inFlight.incrementAndGet();
+            final long startNanos = System.nanoTime();
+            return new ClientStreamTracer() {
+                @Override
+                public void streamClosed(Status status) {
+                    inFlight.decrementAndGet();
+                    callClosed(status, System.nanoTime() - startNanos);
+                }
+            };
+        }
+    };
+
+    TrackedSubchannel(EquivalentAddressGroup addressGroup, OutlierDetector outlierDetector) {
+        this.addressGroup = addressGroup;
+        this.outlierDetector = outlierDetector;
+    }
+
+    EquivalentAddressGroup getAddressGroup() {
+        return addressGroup;
+    }
+
+    Subchannel getSubchannel() {
+        return subchannel;
+    }
+
+    void setSubchannel(Subchannel subchannel) {
+        this.subchannel = subchannel;
+    }
+
+    ConnectivityStateInfo getStateInfo() {
+        return stateInfo;
+    }
+
+    void setStateInfo(ConnectivityStateInfo stateInfo) {
+        this.stateInfo = stateInfo;
+    }
+
+    boolean isReady() {
+        return stateInfo.getState() == ConnectivityState.READY;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return zone of the address, null if unknown
+     */
+    String getZone() {
+        return zone;
+    }
+
+    void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @return false if the address fails active health checking
+     */
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    ClientStreamTracer.Factory getTracerFactory() {
+        return tracerFactory;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void callClosed(Status status, long latencyNanos) {
+        if (status.isOk()) {
+            recordLatency(latencyNanos, System.nanoTime());
+            successCount.increment();
+            successLatencyNanos.add(latencyNanos);
+            consecutiveFailures.set(0);
+        } else if (isFailure(status.getCode())) {
+            failureCount.increment();
+            int failures = consecutiveFailures.incrementAndGet();
+            if (outlierDetector != null) {
+                outlierDetector.onFailure(this, failures);
+            }
+        }
+    }
+
+    /**
+     * @param code status code of a call
+     * @return true if the code indicates the server is unhealthy
+     */
+    static boolean isFailure(Status.Code code) {
+        switch (code) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case INTERNAL:
+            case UNKNOWN:
+            case RESOURCE_EXHAUSTED:
+            case DATA_LOSS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * take the statistics of current interval and start a new one.
+     *
+     * @return successes, failures and total latency of successes in nanoseconds
+     */
+    long[] takeIntervalStats() {
+        return new long[]{successCount.sumThenReset(), failureCount.sumThenReset(),
+                successLatencyNanos.sumThenReset()};
+    }
+
+    boolean isEjected() {
+        return ejected;
+    }
+
+    int getEjectionCount() {
+        return ejectionCount;
+    }
+
+    long getEjectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    void eject(long untilNanos) {
+        ejected = true;
+        ejectionCount++;
+        ejectedUntilNanos = untilNanos;
+        readmittedAtNanos = 0;
+        consecutiveFailures.set(0);
+    }
+
+    void uneject(long nowNanos) {
+        ejected = false;
+        readmittedAtNanos = nowNanos == 0 ? 1 : nowNanos;
+        consecutiveFailures.set(0);
+    }
+
+    void decreaseEjectionCount() {
+        if (ejectionCount > 0) {
+            ejectionCount--;
+        }
+    }
+
+    /**
+     * get the probability to accept a pick, which ramps up linearly after re-admission.
+     *
+     * @return probability between 0.1 and 1
+     */
+    double getAdmissionProbability() {
+        long readmittedAt = readmittedAtNanos;
+        if (readmittedAt == 0) {
+            return 1;
+        }
+        long rampUpNanos = outlierDetector.getRampUpTimeNanos();
+        long elapsed = System.nanoTime() - readmittedAt;
+        if (elapsed >= rampUpNanos) {
+            readmittedAtNanos = 0;
+            return 1;
+        }
+        return Math.max(MIN_ADMISSION_PROBABILITY, (double) elapsed / rampUpNanos);
+    }
+
+    synchronized void recordLatency(long latencyNanos, long nowNanos) {
+        if (lastSampleNanos == 0 || latencyNanos > ewmaNanos) {
+            // peak sensitive: jump to a higher latency at once, decay slowly when it drops
+            ewmaNanos = latencyNanos;
+        } else {
+            double w = Math.exp(-(double) (nowNanos - lastSampleNanos) / EWMA_DECAY_NANOS);
+            ewmaNanos = ewmaNanos * w + latencyNanos * (1 - w);
+        }
+        lastSampleNanos = nowNanos;
+    }
+
+    synchronized double getEwmaNanos() {
+        return ewmaNanos;
+    }
+
+    /**
+     * @return cost to send a new call, lower is better
+     */
+    double getCost() {
+        return getCost(System.nanoTime());
+    }
+
+    /**
+     * the peak EWMA decays toward 0 since the last sample, so an address without calls after being slow is retried.
+     */
+    double getCost(long nowNanos) {
+        int pending = inFlight.get();
+        double ewma;
+        long lastSample;
+        synchronized (this) {
+            ewma = ewmaNanos;
+            lastSample = lastSampleNanos;
+        }
+        if (lastSample == 0) {
+            return pending == 0 ? 0 : UNSAMPLED_PENALTY + pending;
+        }
+        double decayed = ewma * Math.exp(-(double) Math.max(0, nowNanos - lastSample) / EWMA_DECAY_NANOS);
+        return decayed * (pending + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "TrackedSubchannel{addresses=" + addressGroup.getAddresses() + ", state=" + stateInfo.getState()
+                + ", weight=" + weight + ", zone=" + zone + ", inFlight=" + inFlight.get() + ", ejected=" + ejected + "}";
+    }
+}
@@ -0,0 +1,155 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory tracking READY subchannels of the load balancers created by the delegate for a channel, each of them
+ * holds a connection to a backend.
+ */
+public class TrackingLoadBalancerFactory extends LoadBalancer.Factory {
+
+    private final LoadBalancer.Factory delegate;
+    private final AtomicInteger connections;
+    private final boolean singleSubchannel;
+
+    private volatile int readyCount;
+    private volatile int backendCount;
+    private volatile List<EquivalentAddressGroup> readyAddresses = Collections.emptyList();
+    private volatile Runnable listener;
+
+    /**
+     * @param delegate factory of the load balancers
+     * @param connections counter of READY subchannels shared by factories, null if not counted
+     * @param singleSubchannel true if the load balancer connects to one backend at a time, like pick first
+     */
+    public TrackingLoadBalancerFactory(LoadBalancer.Factory delegate, @Nullable AtomicInteger connections,
+                                       boolean singleSubchannel) {
+        this.delegate = checkNotNull(delegate, "delegate should not be null");
+        this.connections = connections;
+        this.singleSubchannel = singleSubchannel;
+    }
+
+    /**
+     * @return count of READY subchannels
+     */
+    public int getReadyCount() {
+        return readyCount;
+    }
+
+    /**
+     * @return address groups of READY subchannels
+     */
+    public List<EquivalentAddressGroup> getReadyAddresses() {
+        return readyAddresses;
+    }
+
+    /**
+     * @return count of backends expected to be connected, by the latest resolved addresses
+     */
+    public int getBackendCount() {
+        return backendCount;
+    }
+
+    /**
+     * set the listener called in the synchronization context of the channel when the counts change, after the
+     * balancing state of the change is applied to the channel.
+     *
+     * @param listener listener, null to remove
+     */
+    public void setListener(@Nullable Runnable listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return new TrackingLoadBalancer(helper, delegate.newLoadBalancer(helper));
+    }
+
+    private void notifyListener() {
+        Runnable current = listener;
+        if (current != null) {
+            current.run();
+        }
+    }
+
+    /**
+     * All methods are called in the synchronization context of the channel.
+     */
+    private class TrackingLoadBalancer extends LoadBalancer {
+        private final Helper helper;
+        private final LoadBalancer delegate;
+        private final Set<Subchannel> ready = Collections.newSetFromMap(new IdentityHashMap<Subchannel, Boolean>());
+
+        TrackingLoadBalancer(Helper helper, LoadBalancer delegate) {
+            this.helper = helper;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handleResolvedAddressGroups(List<EquivalentAddressGroup> servers, Attributes attributes) {
+            delegate.handleResolvedAddressGroups(servers, attributes);
+            backendCount = singleSubchannel ? Math.min(1, servers.size()) : servers.size();
+            notifyListenerLater();
+        }
+
+        @Override
+        public void handleNameResolutionError(Status error) {
+            delegate.handleNameResolutionError(error);
+        }
+
+        @Override
+        public void handleSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+            delegate.handleSubchannelState(subchannel, stateInfo);
+            if (stateInfo.getState() == ConnectivityState.READY) {
+                if (ready.add(subchannel)) {
+                    updateReady(1);
+                }
+            } else if (ready.remove(subchannel)) {
+                updateReady(-1);
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+            if (!ready.isEmpty()) {
+                int closed = ready.size();
+                ready.clear();
+                updateReady(-closed);
+            }
+        }
+
+        private void updateReady(int delta) {
+            List<EquivalentAddressGroup> addresses = new ArrayList<>(ready.size());
+            for (Subchannel subchannel : ready) {
+                addresses.addAll(subchannel.getAllAddresses());
+            }
+            readyAddresses = Collections.unmodifiableList(addresses);
+            readyCount = ready.size();
+            if (connections != null) {
+                connections.addAndGet(delta);
+            }
+            notifyListenerLater();
+        }
+
+        private void notifyListenerLater() {
+            // updateBalancingState of the delegate is applied by a task of the channel, so run after it
+            helper.runSerialized(TrackingLoadBalancerFactory.this::notifyListener);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import com.google.common.math.IntMath;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load balancer sending calls to ready subchannels in turn in proportion to their weights.
+ *
+ * <p>The picker precomputes the pick sequence by smooth weighted round robin, so picks of a heavy address are
+ * interleaved with others instead of sent in burst, and picking is lock free.
+ */
+class WeightedRoundRobinLoadBalancer extends AbstractLoadBalancer {
+
+    static final int MAX_SCHEDULE_LENGTH = 4096;
+
+    WeightedRoundRobinLoadBalancer(Helper helper, LoadBalancerOptions options) {
+        super(helper, options);
+    }
+
+    @Override
+    SubchannelPicker newReadyPicker(List<TrackedSubchannel> readySubchannels) {
+        return new WeightedRoundRobinPicker(readySubchannels);
+    }
+
+    /**
+     * build the pick sequence, each index appears in proportion to its weight.
+     *
+     * @param weights positive weights
+     * @return sequence of indexes
+     */
+    static int[] buildSchedule(int[] weights) {
+        int gcd = weights[0];
+        long total = 0;
+        for (int weight : weights) {
+            gcd = IntMath.gcd(gcd, weight);
+            total += weight;
+        }
+        int[] normalized = new int[weights.length];
+        int length = 0;
+        for (int i = 0; i < weights.length; i++) {
+            normalized[i] = weights[i] / gcd;
+            if (total / gcd > MAX_SCHEDULE_LENGTH) {
+                normalized[i] = Math.max(1, (int) Math.round((double) weights[i] * MAX_SCHEDULE_LENGTH / total));
+            }
+            length += normalized[i];
+        }
+
+        int[] schedule = new int[length];
+        int[] current = new int[weights.length];
+        for (int n = 0; n < length; n++) {
+            int best = 0;
+            for (int i = 0; i < normalized.length; i++) {
+                current[i] += normalized[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= length;
+            schedule[n] = best;
+        }
+        return schedule;
+    }
+
+    static final class WeightedRoundRobinPicker extends ReadyPicker {
+        private final int[] schedule;
+        private final AtomicInteger index = new AtomicInteger(ThreadLocalRandom.current().nextInt(1 << 16));
+
+        WeightedRoundRobinPicker(List<TrackedSubchannel> subchannels) {
+            super(subchannels);
+            int[] weights = new int[subchannels.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = subchannels.get(i).getWeight();
+            }
+            this.schedule = buildSchedule(weights);
+        }
+
+        @Override
+        TrackedSubchannel choose(PickSubchannelArgs args) {
+            return subchannels.get(schedule[(index.getAndIncrement() & Integer.MAX_VALUE) % schedule.length]);
+        }
+    }
+}
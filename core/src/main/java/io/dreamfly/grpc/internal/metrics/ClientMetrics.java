@@ -0,0 +1,257 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link MetricsRecorder} keeping lock-free metrics per method and per resolver authority.
+ *
+ * <p>Share one instance among channels to aggregate their metrics, read them by {@link #getMethods()} and
+ * {@link #getResolutions()}.
+ */
+public class ClientMetrics implements MetricsRecorder {
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final Map<String, ResolutionMetrics> resolutions = new ConcurrentHashMap<>();
+
+    /**
+     * @return metrics by full method name
+     */
+    public Map<String, MethodMetrics> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    /**
+     * @param fullMethodName full method name like "package.Service/Method"
+     * @return metrics of the method, null if never called
+     */
+    public MethodMetrics getMethod(String fullMethodName) {
+        return methods.get(fullMethodName);
+    }
+
+    /**
+     * @return metrics of resolutions by authority
+     */
+    public Map<String, ResolutionMetrics> getResolutions() {
+        return Collections.unmodifiableMap(resolutions);
+    }
+
+    @Override
+    public void callStarted(String fullMethodName) {
+        MethodMetrics metrics = method(fullMethodName);
+        metrics.inFlight.increment();
+        metrics.started.increment();
+    }
+
+    @Override
+    public void callCompleted(String fullMethodName, Status.Code code, long latencyNanos) {
+        MethodMetrics metrics = method(fullMethodName);
+        metrics.inFlight.decrement();
+        metrics.completed[code.ordinal()].increment();
+        metrics.latency.record(latencyNanos);
+    }
+
+    @Override
+    public void messageSent(String fullMethodName, long size) {
+        method(fullMethodName).sentMessageSize.record(size);
+    }
+
+    @Override
+    public void messageReceived(String fullMethodName, long size) {
+        method(fullMethodName).receivedMessageSize.record(size);
+    }
+
+    @Override
+    public void resolutionCompleted(String authority, long durationNanos, List<String> failedHosts) {
+        ResolutionMetrics metrics = resolution(authority);
+        metrics.failedHosts = failedHosts;
+        if (failedHosts.isEmpty()) {
+            metrics.success.increment();
+        } else {
+            metrics.failure.increment();
+        }
+        metrics.duration.record(durationNanos);
+    }
+
+    @Override
+    public void resolutionBackoff(String authority, int consecutiveFailures, long delayNanos) {
+        ResolutionMetrics metrics = resolution(authority);
+        metrics.consecutiveFailures = consecutiveFailures;
+        metrics.backoffDelayNanos = delayNanos;
+    }
+
+    private ResolutionMetrics resolution(String authority) {
+        ResolutionMetrics metrics = resolutions.get(authority);
+        if (metrics == null) {
+            metrics = resolutions.computeIfAbsent(authority, key -> new ResolutionMetrics());
+        }
+        return metrics;
+    }
+
+    private MethodMetrics method(String fullMethodName) {
+        // get first, computeIfAbsent of java 8 locks even if the key is present
+        MethodMetrics metrics = methods.get(fullMethodName);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(fullMethodName, key -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Metrics of calls to one method.
+     */
+    public static class MethodMetrics {
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder[] completed = new LongAdder[Status.Code.values().length];
+        private final Histogram latency = new Histogram();
+        private final Histogram sentMessageSize = new Histogram();
+        private final Histogram receivedMessageSize = new Histogram();
+
+        MethodMetrics() {
+            for (int i = 0; i < completed.length; i++) {
+                completed[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @return count of calls started but not completed
+         */
+        public long getInFlight() {
+            return inFlight.sum();
+        }
+
+        public long getStartedCount() {
+            return started.sum();
+        }
+
+        /**
+         * @param code status code
+         * @return count of calls completed with the code
+         */
+        public long getCompletedCount(Status.Code code) {
+            return completed[code.ordinal()].sum();
+        }
+
+        /**
+         * @return count of completed calls by status code, codes never seen are absent
+         */
+        public Map<Status.Code, Long> getCompletedCounts() {
+            Map<Status.Code, Long> counts = new EnumMap<>(Status.Code.class);
+            for (Status.Code code : Status.Code.values()) {
+                long count = completed[code.ordinal()].sum();
+                if (count > 0) {
+                    counts.put(code, count);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * @return count of calls completed with status other than OK
+         */
+        public long getErrorCount() {
+            long count = 0;
+            for (Status.Code code : Status.Code.values()) {
+                if (code != Status.Code.OK) {
+                    count += completed[code.ordinal()].sum();
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return latency of completed calls in nanoseconds
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return size of sent messages in bytes
+         */
+        public Histogram getSentMessageSize() {
+            return sentMessageSize;
+        }
+
+        /**
+         * @return size of received messages in bytes
+         */
+        public Histogram getReceivedMessageSize() {
+            return receivedMessageSize;
+        }
+
+        @Override
+        public String toString() {
+            return "MethodMetrics{inFlight=" + getInFlight() + ", completed=" + getCompletedCounts()
+                    + ", latency=" + latency + "}";
+        }
+    }
+
+    /**
+     * Metrics of resolutions of one authority.
+     */
+    public static class ResolutionMetrics {
+        private final LongAdder success = new LongAdder();
+        private final LongAdder failure = new LongAdder();
+        private final Histogram duration = new Histogram();
+        private volatile List<String> failedHosts = Collections.emptyList();
+        private volatile int consecutiveFailures;
+        private volatile long backoffDelayNanos;
+
+        ResolutionMetrics() {
+        }
+
+        public long getSuccessCount() {
+            return success.sum();
+        }
+
+        /**
+         * @return count of resolutions in which any host failed to resolve
+         */
+        public long getFailureCount() {
+            return failure.sum();
+        }
+
+        /**
+         * @return duration of resolutions in nanoseconds
+         */
+        public Histogram getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return hosts failed to resolve in the latest resolution, in "host:port" format
+         */
+        public List<String> getFailedHosts() {
+            return failedHosts;
+        }
+
+        /**
+         * @return count of failed resolutions since the last success, 0 if not backing off
+         */
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return delay of the latest scheduled retry in nanoseconds, 0 if not backing off
+         */
+        public long getBackoffDelayNanos() {
+            return backoffDelayNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ResolutionMetrics{success=" + getSuccessCount() + ", failure=" + getFailureCount()
+                    + ", failedHosts=" + failedHosts + ", consecutiveFailures=" + consecutiveFailures
+                    + ", duration=" + duration + "}";
+        }
+    }
+}
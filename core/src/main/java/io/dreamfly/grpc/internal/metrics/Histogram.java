@@ -0,0 +1,119 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lock-free histogram of non-negative long values like latency in nanoseconds or message size in bytes.
+ *
+ * <p>Values below 256 are counted exactly, larger values are counted in 128 buckets per power of two, so the value
+ * reported by {@link #getValueAtPercentile(double)} is at most 1/128 above the recorded one. Recording is a few
+ * atomic additions without allocation.
+ */
+public class Histogram {
+
+    private static final int EXACT_BITS = 8;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int EXACT_COUNT = 1 << EXACT_BITS;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = EXACT_COUNT + (Long.SIZE - 1 - EXACT_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record a value, negative values are recorded as 0.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        long normalized = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(normalized));
+        totalCount.increment();
+        sum.add(normalized);
+        long current;
+        while (normalized > (current = max.get()) && !max.compareAndSet(current, normalized)) {
+            // retry until updated or a larger value is recorded by other thread
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of values, 0 if empty
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * get the value at percentile, the highest value equivalent to the recorded one is reported.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return value, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "invalid percentile " + percentile);
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += snapshot[i];
+            if (accumulated >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getValueAtPercentile(50)
+                + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "}";
+    }
+
+    static int bucketIndex(long value) {
+        if (value < EXACT_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return EXACT_COUNT + (exponent - EXACT_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < EXACT_COUNT) {
+            return index;
+        }
+        int exponent = (index - EXACT_COUNT) / SUB_BUCKET_COUNT + EXACT_BITS;
+        int subBucket = (index - EXACT_COUNT) % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
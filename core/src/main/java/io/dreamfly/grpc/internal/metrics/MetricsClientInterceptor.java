@@ -0,0 +1,105 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Interceptor recording latency, status and message sizes of calls to {@link MetricsRecorder}.
+ *
+ * <p>Latency is measured from the start to the close of a call, including the time waiting for name resolution,
+ * load balancing and retries. Message sizes are reported by the stream tracer of each attempt.
+ */
+public class MetricsClientInterceptor implements ClientInterceptor {
+
+    private final MetricsRecorder recorder;
+
+    public MetricsClientInterceptor(MetricsRecorder recorder) {
+        this.recorder = checkNotNull(recorder, "recorder should not be null");
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        String fullMethodName = method.getFullMethodName();
+        ClientCall<ReqT, RespT> call = next.newCall(method,
+                callOptions.withStreamTracerFactory(new SizeTracerFactory(fullMethodName)));
+        return new MetricsClientCall<>(call, fullMethodName);
+    }
+
+    private class MetricsClientCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+        private final String fullMethodName;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long startNanos;
+
+        MetricsClientCall(ClientCall<ReqT, RespT> delegate, String fullMethodName) {
+            super(delegate);
+            this.fullMethodName = fullMethodName;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            startNanos = System.nanoTime();
+            recorder.callStarted(fullMethodName);
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                        responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        complete(status.getCode());
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                complete(Status.fromThrowable(e).getCode());
+                throw e;
+            }
+        }
+
+        private void complete(Status.Code code) {
+            // the call may be closed by listener and failed start at the same time, only record once
+            if (closed.compareAndSet(false, true)) {
+                recorder.callCompleted(fullMethodName, code, System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private class SizeTracerFactory extends ClientStreamTracer.Factory {
+        private final String fullMethodName;
+
+        SizeTracerFactory(String fullMethodName) {
+            this.fullMethodName = fullMethodName;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+            return new ClientStreamTracer() {
+                @Override
+                public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+                    recorder.messageSent(fullMethodName, size(optionalWireSize, optionalUncompressedSize));
+                }
+
+                @Override
+                public void inboundMessageRead(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+                    recorder.messageReceived(fullMethodName, size(optionalWireSize, optionalUncompressedSize));
+                }
+            };
+        }
+
+        private long size(long wireSize, long uncompressedSize) {
+            // -1 if unknown
+            return uncompressedSize >= 0 ? uncompressedSize : Math.max(0, wireSize);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import io.grpc.Status;
+
+import java.util.List;
+
+/**
+ * SPI to record client metrics, implement it to bridge metrics to a monitoring system like Micrometer or Prometheus.
+ *
+ * <p>Methods are called on the threads of calls and resolutions, so implementations should be thread safe and
+ * never block. All methods do nothing by default. See {@link ClientMetrics} for the in-memory implementation.
+ */
+public interface MetricsRecorder {
+
+    /**
+     * recorder doing nothing.
+     */
+    MetricsRecorder NOOP = new MetricsRecorder() {
+    };
+
+    /**
+     * a call is started.
+     *
+     * @param fullMethodName full method name like "package.Service/Method"
+     */
+    default void callStarted(String fullMethodName) {
+    }
+
+    /**
+     * a call is closed, every started call is closed exactly once.
+     *
+     * @param fullMethodName full method name
+     * @param code status code
+     * @param latencyNanos time from start to close in nanoseconds
+     */
+    default void callCompleted(String fullMethodName, Status.Code code, long latencyNanos) {
+    }
+
+    /**
+     * a message is sent to server, it may be called for each attempt of the call.
+     *
+     * @param fullMethodName full method name
+     * @param size uncompressed size in bytes, or wire size if unknown
+     */
+    default void messageSent(String fullMethodName, long size) {
+    }
+
+    /**
+     * a message is received from server.
+     *
+     * @param fullMethodName full method name
+     * @param size uncompressed size in bytes, or wire size if unknown
+     */
+    default void messageReceived(String fullMethodName, long size) {
+    }
+
+    /**
+     * a resolution of name resolver is completed.
+     *
+     * @param authority authority of target, like "host1:port1,host2:port2"
+     * @param durationNanos time to resolve all hosts in nanoseconds
+     * @param failedHosts hosts failed to resolve in "host:port" format, empty if succeeded, they are retried in
+     *                    background
+     */
+    default void resolutionCompleted(String authority, long durationNanos, List<String> failedHosts) {
+    }
+
+    /**
+     * the backoff of failed resolutions is changed: a retry is scheduled after a failure, or the backoff is reset
+     * with 0 failures after a success.
+     *
+     * @param authority authority of target
+     * @param consecutiveFailures count of failed resolutions since the last success
+     * @param delayNanos delay before the retry in nanoseconds, 0 if reset
+     */
+    default void resolutionBackoff(String authority, int consecutiveFailures, long delayNanos) {
+    }
+}
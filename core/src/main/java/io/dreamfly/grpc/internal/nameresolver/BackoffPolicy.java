@@ -0,0 +1,110 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Exponential backoff with jitter used to retry failed resolutions.
+ *
+ * <p>The n-th consecutive failure is retried after {@code min(initialDelay * multiplier^(n-1), maxDelay)},
+ * randomized in [1 - jitter, 1 + jitter].
+ */
+public class BackoffPolicy {
+
+    /**
+     * default policy: 1 second initial delay, multiplier 1.6, max delay 2 minutes and jitter 0.2.
+     */
+    public static final BackoffPolicy DEFAULT = newBuilder().build();
+
+    private final long initialDelayNanos;
+    private final double multiplier;
+    private final long maxDelayNanos;
+    private final double jitter;
+
+    private BackoffPolicy(Builder builder) {
+        this.initialDelayNanos = builder.initialDelayNanos;
+        this.multiplier = builder.multiplier;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.jitter = builder.jitter;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * get the delay before next retry.
+     *
+     * @param consecutiveFailures count of consecutive failures, start from 1
+     * @return delay in nanoseconds
+     */
+    public long getDelayNanos(int consecutiveFailures) {
+        checkArgument(consecutiveFailures > 0, "invalid consecutiveFailures " + consecutiveFailures);
+        double delay = Math.min(initialDelayNanos * Math.pow(multiplier, consecutiveFailures - 1), maxDelayNanos);
+        return (long) (delay * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public long getInitialDelayNanos() {
+        return initialDelayNanos;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public long getMaxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public static class Builder {
+        private long initialDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        private double multiplier = 1.6;
+        private long maxDelayNanos = TimeUnit.MINUTES.toNanos(2);
+        private double jitter = 0.2;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        public Builder initialDelay(long delay, TimeUnit unit) {
+            checkArgument(delay > 0, "invalid initial delay " + delay);
+            this.initialDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        public Builder multiplier(double multiplier) {
+            checkArgument(multiplier >= 1, "multiplier should not be less than 1: multiplier=%s", multiplier);
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        public Builder maxDelay(long delay, TimeUnit unit) {
+            checkArgument(delay > 0, "invalid max delay " + delay);
+            this.maxDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * set the jitter of delay.
+         *
+         * @param jitter jitter between 0 and 1, default to 0.2
+         * @return Builder
+         */
+        public Builder jitter(double jitter) {
+            checkArgument(jitter >= 0 && jitter <= 1, "jitter should between 0 and 1: jitter=%s", jitter);
+            this.jitter = jitter;
+            return this;
+        }
+
+        public BackoffPolicy build() {
+            checkArgument(initialDelayNanos <= maxDelayNanos, "initial delay should not be greater than max delay");
+            return new BackoffPolicy(this);
+        }
+    }
+}
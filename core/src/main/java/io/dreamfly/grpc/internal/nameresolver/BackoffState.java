@@ -0,0 +1,41 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+/**
+ * Snapshot of the retry backoff of a name resolver, for monitoring.
+ */
+public class BackoffState {
+
+    static final BackoffState INITIAL = new BackoffState(0, 0);
+
+    private final int consecutiveFailures;
+    private final long currentDelayNanos;
+
+    BackoffState(int consecutiveFailures, long currentDelayNanos) {
+        this.consecutiveFailures = consecutiveFailures;
+        this.currentDelayNanos = currentDelayNanos;
+    }
+
+    /**
+     * @return count of failed resolutions since the last success
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return delay before the pending retry, 0 if not backing off
+     */
+    public long getCurrentDelayNanos() {
+        return currentDelayNanos;
+    }
+
+    public boolean isBackingOff() {
+        return consecutiveFailures > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BackoffState{consecutiveFailures=" + consecutiveFailures
+                + ", currentDelayNanos=" + currentDelayNanos + "}";
+    }
+}
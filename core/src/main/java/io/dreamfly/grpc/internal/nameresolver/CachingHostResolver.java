@@ -0,0 +1,207 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * HostResolver which caches the lookup results of the delegated resolver.
+ *
+ * <p>The cache is bounded by size, successful lookups are kept for ttl and failed lookups for negativeTtl.
+ * Concurrent misses for the same host share one lookup of the delegated resolver, a pending lookup is shared for
+ * lookupTimeout at most and replaced by a new lookup after that. Ip literals are never cached.
+ *
+ * <p>{@link #getDefault()} is shared by all channels in the process which don't set their own HostResolver.
+ */
+public class CachingHostResolver implements HostResolver {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TTL_SECONDS = 30;
+    public static final long DEFAULT_NEGATIVE_TTL_SECONDS = 5;
+    public static final long DEFAULT_LOOKUP_TIMEOUT_SECONDS = 10;
+
+    private static class DefaultHolder {
+        private static final CachingHostResolver INSTANCE = new CachingHostResolver(JdkHostResolver.getInstance(),
+                DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS, DEFAULT_NEGATIVE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private final HostResolver delegate;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final long lookupTimeoutNanos;
+    private final Ticker ticker;
+    private final Cache<String, CacheEntry> cache;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * create caching resolver.
+     *
+     * @param delegate resolver to do the real lookup
+     * @param maxSize max count of cached hosts
+     * @param ttl time to keep successful lookups
+     * @param negativeTtl time to keep failed lookups
+     * @param unit time unit of ttl and negativeTtl
+     */
+    public CachingHostResolver(HostResolver delegate, int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this(delegate, maxSize, unit.toNanos(ttl), unit.toNanos(negativeTtl),
+                TimeUnit.SECONDS.toNanos(DEFAULT_LOOKUP_TIMEOUT_SECONDS), TimeUnit.NANOSECONDS, Ticker.systemTicker());
+    }
+
+    /**
+     * create caching resolver.
+     *
+     * @param delegate resolver to do the real lookup
+     * @param maxSize max count of cached hosts
+     * @param ttl time to keep successful lookups
+     * @param negativeTtl time to keep failed lookups
+     * @param lookupTimeout time to share a pending lookup, a new lookup is started after that
+     * @param unit time unit of ttl, negativeTtl and lookupTimeout
+     */
+    public CachingHostResolver(HostResolver delegate, int maxSize, long ttl, long negativeTtl, long lookupTimeout,
+                               TimeUnit unit) {
+        this(delegate, maxSize, ttl, negativeTtl, lookupTimeout, unit, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingHostResolver(HostResolver delegate, int maxSize, long ttl, long negativeTtl, long lookupTimeout,
+                        TimeUnit unit, Ticker ticker) {
+        checkArgument(maxSize > 0, "invalid maxSize " + maxSize);
+        checkArgument(ttl >= 0, "invalid ttl " + ttl);
+        checkArgument(negativeTtl >= 0, "invalid negativeTtl " + negativeTtl);
+        checkArgument(lookupTimeout > 0, "invalid lookupTimeout " + lookupTimeout);
+
+        this.delegate = checkNotNull(delegate, "delegate should not be null");
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        this.lookupTimeoutNanos = unit.toNanos(lookupTimeout);
+        this.ticker = checkNotNull(ticker, "ticker should not be null");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .<String, CacheEntry>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        evictionCount.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * get the process wide cache on top of the blocking JDK resolver.
+     *
+     * @return shared CachingHostResolver
+     */
+    public static CachingHostResolver getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    @Override
+    public ListenableFuture<List<InetAddress>> resolve(final String host, final Executor executor) {
+        if (InetAddresses.isInetAddress(host)) {
+            return delegate.resolve(host, executor);
+        }
+
+        CacheEntry entry = cache.getIfPresent(host);
+        if (entry != null && entry.isExpired(ticker.read())) {
+            cache.asMap().remove(host, entry);
+            entry = null;
+        }
+        if (entry != null) {
+            hitCount.increment();
+            return Futures.nonCancellationPropagating(entry.future);
+        }
+
+        final boolean[] loaded = new boolean[1];
+        try {
+            entry = cache.get(host, () -> {
+                loaded[0] = true;
+                return load(host, executor);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("fail to resolve host " + host, e.getCause());
+        }
+        if (loaded[0]) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return Futures.nonCancellationPropagating(entry.future);
+    }
+
+    private CacheEntry load(String host, Executor executor) {
+        final CacheEntry entry = new CacheEntry(delegate.resolve(host, executor));
+        entry.future.addListener(entry::onComplete, MoreExecutors.directExecutor());
+        return entry;
+    }
+
+    /**
+     * invalidate all cached hosts.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    private class CacheEntry {
+        private final ListenableFuture<List<InetAddress>> future;
+        // concurrent misses share the pending lookup until it times out, so a hung lookup is replaced
+        private volatile long expireAtNanos = ticker.read() + lookupTimeoutNanos;
+
+        CacheEntry(ListenableFuture<List<InetAddress>> future) {
+            this.future = future;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expireAtNanos >= 0;
+        }
+
+        void onComplete() {
+            long ttl;
+            if (future.isCancelled()) {
+                ttl = 0;
+            } else {
+                try {
+                    future.get();
+                    ttl = ttlNanos;
+                } catch (Exception e) {
+                    ttl = negativeTtlNanos;
+                }
+            }
+            expireAtNanos = ticker.read() + ttl;
+        }
+    }
+}
@@ -1,15 +1,30 @@
 package io.dreamfly.grpc.internal.nameresolver;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.grpc.Attributes;
+
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * Helper class to parse gRPC address.
  */
 public class GrpcAddressParser {
 
+    private static final String ZONE = "zone";
+    private static final String WEIGHT = "weight";
+
     public static class IpPortPair {
         private final String ip;
         private final int port;
@@ -28,36 +43,282 @@ public class GrpcAddressParser {
         }
     }
 
+    /**
+     * Host and port of an address entry, with the attributes annotated to the entry. Attributes are not part of the
+     * equality.
+     */
+    public static class HostPortPair {
+        private final String host;
+        private final int port;
+        private final Attributes attributes;
+
+        HostPortPair(String host, int port) {
+            this(host, port, Attributes.EMPTY);
+        }
+
+        HostPortPair(String host, int port, Attributes attributes) {
+            this.host = host;
+            this.port = port;
+            this.attributes = attributes;
+        }
+
+        String getHost() {
+            return host;
+        }
+
+        int getPort() {
+            return port;
+        }
+
+        /**
+         * @return attributes of the resolved address groups, e.g. {@link LoadBalancerAttributes#ZONE}
+         */
+        Attributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HostPortPair)) {
+                return false;
+            }
+            HostPortPair that = (HostPortPair) o;
+            return port == that.port && host.equals(that.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * host.hashCode() + port;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * Result of resolving multiple hosts, a host failed to resolve doesn't affect others.
+     */
+    public static class ResolutionResult {
+        private final Map<HostPortPair, List<IpPortPair>> resolved;
+        private final Map<HostPortPair, Throwable> failures;
+
+        ResolutionResult(Map<HostPortPair, List<IpPortPair>> resolved, Map<HostPortPair, Throwable> failures) {
+            this.resolved = resolved;
+            this.failures = failures;
+        }
+
+        /**
+         * @return resolved addresses of each succeeded host, in the order of input
+         */
+        Map<HostPortPair, List<IpPortPair>> getResolved() {
+            return resolved;
+        }
+
+        /**
+         * @return cause of each failed host, in the order of input
+         */
+        Map<HostPortPair, Throwable> getFailures() {
+            return failures;
+        }
+
+        List<IpPortPair> getIpPortPairs() {
+            List<IpPortPair> ipPortPairList = new ArrayList<>();
+            for (List<IpPortPair> ipPortPairs : resolved.values()) {
+                ipPortPairList.addAll(ipPortPairs);
+            }
+            return ipPortPairList;
+        }
+    }
+
+    private static class HostLookup {
+        private final List<InetAddress> addresses;
+        private final Throwable cause;
+
+        HostLookup(List<InetAddress> addresses, Throwable cause) {
+            this.addresses = addresses;
+            this.cause = cause;
+        }
+    }
+
     private GrpcAddressParser() {
         // no instance
     }
 
+    /**
+     * Parse and resolve addresses, hosts failed to resolve are skipped unless all of them fail.
+     */
     static List<IpPortPair> parse(String addressContent, int defaultPort) throws UnknownHostException {
+        List<HostPortPair> hostPortPairList = parseHostPortPairs(addressContent, defaultPort);
+        List<IpPortPair> resolvedAddress = new ArrayList<>(hostPortPairList.size());
+        UnknownHostException failure = null;
+        for (HostPortPair hostPortPair : hostPortPairList) {
+            try {
+                for (String ip : parseIpFromHost(hostPortPair.getHost())) {
+                    resolvedAddress.add(new IpPortPair(ip, hostPortPair.getPort()));
+                }
+            } catch (UnknownHostException e) {
+                failure = e;
+            }
+        }
+        if (resolvedAddress.isEmpty() && failure != null) {
+            throw failure;
+        }
+        return resolvedAddress;
+    }
+
+    /**
+     * Parse address entries separated by comma, each entry is {@code host[:port][;zone=zone][;weight=weight]}.
+     */
+    static List<HostPortPair> parseHostPortPairs(String addressContent, int defaultPort) {
         String[] addressArray = addressContent.split(",");
-        List<IpPortPair> resolvedAddress = new ArrayList<>(addressArray.length);
+        List<HostPortPair> hostPortPairList = new ArrayList<>(addressArray.length);
         for (String address : addressArray) {
-            resolvedAddress.addAll(parseOneAddress(address, defaultPort));
+            String[] parts = address.split(";");
+            String[] addressPortPair = parts[0].split(":");
+            final String host = addressPortPair[0].trim();
+            final int port = parsePort(addressPortPair, defaultPort);
+            hostPortPairList.add(new HostPortPair(host, port, parseAttributes(parts)));
         }
-        return resolvedAddress;
+        return hostPortPairList;
     }
 
-    private static List<IpPortPair> parseOneAddress(String address, int defaultPort) throws UnknownHostException {
-        String[] addressPortPair = address.split(":");
-        final String host = addressPortPair[0].trim();
-        final int port = parsePort(addressPortPair, defaultPort);
+    /**
+     * Parse names of local addresses separated by comma, e.g. unix domain socket paths or in-process server names,
+     * each entry is {@code name[;zone=zone][;weight=weight]}.
+     */
+    static List<HostPortPair> parseNames(String addressContent) {
+        String[] addressArray = addressContent.split(",");
+        List<HostPortPair> hostPortPairList = new ArrayList<>(addressArray.length);
+        for (String address : addressArray) {
+            String[] parts = address.split(";");
+            String name = parts[0].trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("empty name in addresses: " + addressContent);
+            }
+            hostPortPairList.add(new HostPortPair(name, 0, parseAttributes(parts)));
+        }
+        return hostPortPairList;
+    }
 
-        List<IpPortPair> ipPortPair = new ArrayList<>();
-        List<String> ipList = parseIpFromHost(host);
-        for (String ip : ipList) {
-            ipPortPair.add(new IpPortPair(ip, port));
+    /**
+     * Resolve names of local addresses, which are used as they are.
+     */
+    static ResolutionResult resolveNames(List<HostPortPair> hostPortPairList) {
+        Map<HostPortPair, List<IpPortPair>> resolved = new LinkedHashMap<>();
+        for (HostPortPair hostPortPair : hostPortPairList) {
+            resolved.put(hostPortPair, Collections.singletonList(
+                    new IpPortPair(hostPortPair.getHost(), hostPortPair.getPort())));
         }
+        return new ResolutionResult(resolved, Collections.<HostPortPair, Throwable>emptyMap());
+    }
 
-        return ipPortPair;
+    private static Attributes parseAttributes(String[] parts) {
+        if (parts.length == 1) {
+            return Attributes.EMPTY;
+        }
+        Attributes.Builder builder = Attributes.newBuilder();
+        for (int i = 1; i < parts.length; i++) {
+            String[] keyValue = parts[i].split("=", 2);
+            String key = keyValue[0].trim();
+            String value = keyValue.length > 1 ? keyValue[1].trim() : "";
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("invalid annotation in address: " + parts[i]);
+            }
+            if (ZONE.equals(key)) {
+                builder.set(LoadBalancerAttributes.ZONE, value);
+            } else if (WEIGHT.equals(key)) {
+                builder.set(LoadBalancerAttributes.WEIGHT, parseWeight(value));
+            } else {
+                throw new IllegalArgumentException("unknown annotation in address: " + parts[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int parseWeight(String value) {
+        int weight;
+        try {
+            weight = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid weight in address: weight=" + value, e);
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("invalid weight in address: weight=" + value);
+        }
+        return weight;
+    }
+
+    /**
+     * Resolve all hosts in parallel.
+     *
+     * <p>Each distinct host is looked up only once. The returned future never fails, hosts failed to resolve are
+     * reported in {@link ResolutionResult#getFailures()}.
+     */
+    static ListenableFuture<ResolutionResult> resolve(final List<HostPortPair> hostPortPairList,
+                                                      HostResolver hostResolver, Executor executor) {
+        Map<String, ListenableFuture<HostLookup>> lookups = new HashMap<>();
+        final List<ListenableFuture<HostLookup>> futures = new ArrayList<>(hostPortPairList.size());
+        for (HostPortPair hostPortPair : hostPortPairList) {
+            ListenableFuture<HostLookup> future = lookups.get(hostPortPair.getHost());
+            if (future == null) {
+                future = lookup(hostPortPair.getHost(), hostResolver, executor);
+                lookups.put(hostPortPair.getHost(), future);
+            }
+            futures.add(future);
+        }
+
+        return Futures.transform(Futures.allAsList(futures), (List<HostLookup> hostLookups) -> {
+            Map<HostPortPair, List<IpPortPair>> resolved = new LinkedHashMap<>();
+            Map<HostPortPair, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < hostPortPairList.size(); i++) {
+                HostPortPair hostPortPair = hostPortPairList.get(i);
+                HostLookup hostLookup = hostLookups.get(i);
+                if (hostLookup.cause != null) {
+                    failures.put(hostPortPair, hostLookup.cause);
+                    continue;
+                }
+                List<IpPortPair> ipPortPairs = new ArrayList<>(hostLookup.addresses.size());
+                for (InetAddress inetAddress : hostLookup.addresses) {
+                    ipPortPairs.add(new IpPortPair(inetAddress.getHostAddress(), hostPortPair.getPort()));
+                }
+                resolved.put(hostPortPair, ipPortPairs);
+            }
+            return new ResolutionResult(resolved, failures);
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static ListenableFuture<HostLookup> lookup(String host, HostResolver hostResolver, Executor executor) {
+        ListenableFuture<List<InetAddress>> future;
+        try {
+            future = hostResolver.resolve(host, executor);
+        } catch (RuntimeException e) {
+            future = Futures.immediateFailedFuture(e);
+        }
+        return Futures.catching(
+                Futures.transform(future, (List<InetAddress> addresses) -> new HostLookup(addresses, null),
+                        MoreExecutors.directExecutor()),
+                Throwable.class, (Throwable cause) -> new HostLookup(null, cause), MoreExecutors.directExecutor());
     }
 
     static List<String> parseIpFromHost(String host) throws UnknownHostException {
-        InetAddress[] addresses = InetAddress.getAllByName(host);
-        List<String> ipList = new ArrayList<>(addresses.length);
+        List<InetAddress> addresses;
+        try {
+            addresses = CachingHostResolver.getDefault().resolve(host, MoreExecutors.directExecutor()).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw new IllegalStateException("fail to resolve host " + host, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while resolving host " + host, e);
+        }
+        List<String> ipList = new ArrayList<>(addresses.size());
         for (InetAddress inetAddress : addresses) {
             ipList.add(inetAddress.getHostAddress());
         }
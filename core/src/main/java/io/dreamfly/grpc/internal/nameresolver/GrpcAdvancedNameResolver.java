@@ -1,7 +1,14 @@
 package io.dreamfly.grpc.internal.nameresolver;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dreamfly.grpc.internal.discovery.ServiceDiscovery;
+import io.dreamfly.grpc.internal.transport.NettyTransports;
 import io.grpc.*;
+import io.grpc.inprocess.InProcessSocketAddress;
+import io.grpc.internal.GrpcAttributes;
 import io.grpc.internal.LogExceptionRunnable;
 import io.grpc.internal.SharedResourceHolder;
 import org.slf4j.Logger;
@@ -9,13 +16,24 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.GuardedBy;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.URI;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -32,15 +50,42 @@ import static com.google.common.base.Preconditions.checkState;
  * <p>You can also use host, this resolver will act like DnsNameResolver to parse the host to ip address：
  *
  * <p>grpc://grpc.dreamfly.io:2379
+ *
+ * <p>Local services are addressed by unix domain socket paths or in-process server names, which need no lookup:
+ *
+ * <p>grpc+unix:///var/run/a.sock,/var/run/b.sock
+ *
+ * <p>grpc+inprocess://server-a,server-b
+ *
+ * <p>All hosts are resolved in parallel by the given {@link HostResolver}, the listener is notified when the last
+ * lookup completes.
+ *
+ * <p>If refresh interval is set in {@link GrpcNameResolverOptions}, addresses are re-resolved periodically with
+ * jitter, and the listener is only notified when the resolved addresses changed.
+ *
+ * <p>With a {@link ServiceDiscovery} in {@link GrpcNameResolverOptions}, the authority of grpc uri is a service name
+ * like "grpc://user-service". Addresses of the service are watched, and each change is resolved and published at
+ * once.
+ *
+ * <p>If subset size is set in {@link GrpcNameResolverOptions}, only a subset of the resolved addresses is published,
+ * which is chosen by the client id, see {@link Subsetting}.
+ *
+ * <p>A host failed to resolve doesn't affect others: addresses of the other hosts are still published, while only the
+ * failed hosts are retried with the exponential {@link BackoffPolicy}, which is reset after all hosts succeed. A failed
+ * host keeps its last resolved addresses, if any.
  */
 public class GrpcAdvancedNameResolver extends NameResolver {
 
     private static Logger logger = LoggerFactory.getLogger(GrpcAdvancedNameResolver.class);
 
+    private static final String LOCAL_AUTHORITY = "localhost";
+
     private final String scheme;
     private final String authority;
-    private final String addresses;
     private final int defaultPort;
+    // service to discover, null if addresses are in the uri
+    private final String service;
+    private final GrpcNameResolverOptions options;
 
     private final SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource;
     private final SharedResourceHolder.Resource<ExecutorService> executorResource;
@@ -56,16 +101,41 @@ public class GrpcAdvancedNameResolver extends NameResolver {
     @GuardedBy("this")
     private boolean resolving;
     @GuardedBy("this")
+    private boolean resolutionPending;
+    @GuardedBy("this")
+    private List<GrpcAddressParser.HostPortPair> hostPortPairList;
+    @GuardedBy("this")
+    private ServiceDiscovery.Watch discoveryWatch;
+    @GuardedBy("this")
     private Listener listener;
+    @GuardedBy("this")
+    private Set<EquivalentAddressGroup> lastServers;
+    @GuardedBy("this")
+    private BackoffState backoffState = BackoffState.INITIAL;
+    @GuardedBy("this")
+    private final Map<GrpcAddressParser.HostPortPair, List<GrpcAddressParser.IpPortPair>> resolvedAddresses =
+            new HashMap<>();
+    @GuardedBy("this")
+    private Set<GrpcAddressParser.HostPortPair> failedHostPortPairs = Collections.emptySet();
 
-    private final Runnable resolutionRunnable = new ResolutionRunnable();
+    private final Runnable resolutionRunnable = new ResolutionRunnable(false);
+    private final Runnable retryRunnable = new ResolutionRunnable(true);
     private final Runnable resolutionRunnableOnExecutor = new Runnable() {
 
         @Override
         public void run() {
             synchronized (GrpcAdvancedNameResolver.this) {
-                if (!shutdown) {
-                    executor.execute(resolutionRunnable);
+                resolve();
+            }
+        }
+    };
+    private final Runnable retryRunnableOnExecutor = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (GrpcAdvancedNameResolver.this) {
+                if (!resolving && !shutdown) {
+                    execute(retryRunnable);
                 }
             }
         }
@@ -74,25 +144,45 @@ public class GrpcAdvancedNameResolver extends NameResolver {
     public GrpcAdvancedNameResolver(String scheme,
                                     String addresses,
                                     int defaultPort,
-                                    SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource,
-                                    SharedResourceHolder.Resource<ExecutorService> executorResource) {
+                                    GrpcNameResolverOptions options) {
         checkArgument(!Strings.isNullOrEmpty(scheme), "scheme should not be null or empty");
         checkArgument(!Strings.isNullOrEmpty(addresses), "addresses should not be null or empty");
         checkArgument(defaultPort > 0 && defaultPort < 65536, "invalid port " + defaultPort);
-        checkNotNull(timerServiceResource, "timerServiceResource should not be null");
-        checkNotNull(executorResource, "executorResource should not be null");
+        checkNotNull(options, "options should not be null");
 
         this.scheme = scheme;
-        this.addresses = addresses;
         this.defaultPort = defaultPort;
-        this.timerServiceResource = timerServiceResource;
-        this.executorResource = executorResource;
+        this.options = options;
+        this.timerServiceResource = options.getTimerServiceResource();
+        this.executorResource = options.getExecutorResource();
 
-        // Must prepend a "//" to the name when constructing a URI, otherwise it will be treated as an
-        // opaque URI, thus the authority and host of the resulted URI would be null.
-        URI nameUri = URI.create("//" + addresses);
-        authority = checkNotNull(nameUri.getAuthority(),
-                "nameUri (%s) doesn't have an authority", nameUri);
+        if (isLocal()) {
+            this.service = null;
+            this.hostPortPairList = GrpcAddressParser.parseNames(addresses);
+            authority = LOCAL_AUTHORITY;
+        } else {
+            if (options.getServiceDiscovery() != null) {
+                // addresses are unknown until discovered
+                this.service = addresses;
+                this.hostPortPairList = Collections.emptyList();
+            } else {
+                this.service = null;
+                this.hostPortPairList = GrpcAddressParser.parseHostPortPairs(addresses, defaultPort);
+            }
+            // Must prepend a "//" to the name when constructing a URI, otherwise it will be treated as an
+            // opaque URI, thus the authority and host of the resulted URI would be null.
+            URI nameUri = URI.create("//" + addresses);
+            authority = checkNotNull(nameUri.getAuthority(),
+                    "nameUri (%s) doesn't have an authority", nameUri);
+        }
+    }
+
+    /**
+     * @return true if addresses are unix domain socket paths or in-process server names
+     */
+    private boolean isLocal() {
+        return GrpcNameResolverProvider.GRPC_UNIX_SCHEME.equals(scheme)
+                || GrpcNameResolverProvider.GRPC_INPROCESS_SCHEME.equals(scheme);
     }
 
     @Override
@@ -101,13 +191,26 @@ public class GrpcAdvancedNameResolver extends NameResolver {
     }
 
     @Override
-    public final synchronized void start(Listener listener) {
+    public final void start(Listener listener) {
         try {
-            checkState(this.listener == null, "already started");
-            timerService = SharedResourceHolder.get(timerServiceResource);
-            executor = SharedResourceHolder.get(executorResource);
-            this.listener = checkNotNull(listener, "listener");
-            resolve();
+            synchronized (this) {
+                checkState(this.listener == null, "already started");
+                timerService = SharedResourceHolder.get(timerServiceResource);
+                executor = SharedResourceHolder.get(executorResource);
+                this.listener = checkNotNull(listener, "listener");
+                resolve();
+            }
+            if (service != null) {
+                // watch without the lock, the current addresses may be notified in this thread
+                ServiceDiscovery.Watch watch = options.getServiceDiscovery().watch(service, new DiscoveryListener());
+                synchronized (this) {
+                    if (!shutdown) {
+                        discoveryWatch = watch;
+                        return;
+                    }
+                }
+                watch.close();
+            }
         } catch (Exception t) {
             logger.error("fail to start name resolver", t);
             throw new GrpcNameResolverException("fail to start name resolver", t);
@@ -123,27 +226,139 @@ public class GrpcAdvancedNameResolver extends NameResolver {
 
     @GuardedBy("this")
     private void resolve() {
-        if (resolving || shutdown) {
+        // no address to resolve before the first discovery
+        if (resolving || shutdown || hostPortPairList.isEmpty()) {
             return;
         }
-        executor.execute(resolutionRunnable);
+        execute(resolutionRunnable);
     }
 
-    @Override
-    public final synchronized void shutdown() {
-        if (shutdown) {
-            return;
+    @GuardedBy("this")
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            // the executor is bounded and overloaded, back off instead of failing the caller
+            logger.warn("resolver executor rejected resolution of {}", authority, e);
+            scheduleRetry();
         }
-        shutdown = true;
+    }
+
+    @GuardedBy("this")
+    private void scheduleRetry() {
         if (resolutionTask != null) {
             resolutionTask.cancel(false);
         }
-        if (timerService != null) {
-            timerService = SharedResourceHolder.release(timerServiceResource, timerService);
+        int consecutiveFailures = backoffState.getConsecutiveFailures() + 1;
+        long delayNanos = options.getBackoffPolicy().getDelayNanos(consecutiveFailures);
+        backoffState = new BackoffState(consecutiveFailures, delayNanos);
+        logger.info("retry to resolve {} later: {}", authority, backoffState);
+        options.getMetricsRecorder().resolutionBackoff(authority, consecutiveFailures, delayNanos);
+        // Because timerService is the single-threaded GrpcUtil.TIMER_SERVICE in production,
+        // we need to delegate the blocking work to the executor
+        resolutionTask = timerService.schedule(
+                new LogExceptionRunnable(retryRunnableOnExecutor), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public final void shutdown() {
+        ServiceDiscovery.Watch watch;
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            if (resolutionTask != null) {
+                resolutionTask.cancel(false);
+            }
+            if (timerService != null) {
+                timerService = SharedResourceHolder.release(timerServiceResource, timerService);
+            }
+            if (executor != null) {
+                executor = SharedResourceHolder.release(executorResource, executor);
+            }
+            watch = discoveryWatch;
+            discoveryWatch = null;
+        }
+        if (watch != null) {
+            watch.close();
+        }
+    }
+
+    /**
+     * get the current backoff state of failed resolutions, it is also reported to
+     * {@link io.dreamfly.grpc.internal.metrics.MetricsRecorder#resolutionBackoff(String, int, long)}.
+     *
+     * @return backoff state
+     */
+    public synchronized BackoffState getBackoffState() {
+        return backoffState;
+    }
+
+    /**
+     * get the hosts failed to resolve in the last resolution, they are retried in background. They are also reported
+     * to {@link io.dreamfly.grpc.internal.metrics.MetricsRecorder#resolutionCompleted(String, long, List)}.
+     *
+     * @return failed hosts in "host:port" format
+     */
+    public synchronized List<String> getFailedHosts() {
+        return toStrings(failedHostPortPairs);
+    }
+
+    private static List<String> toStrings(Collection<GrpcAddressParser.HostPortPair> hostPortPairs) {
+        List<String> hosts = new ArrayList<>(hostPortPairs.size());
+        for (GrpcAddressParser.HostPortPair hostPortPair : hostPortPairs) {
+            hosts.add(hostPortPair.toString());
+        }
+        return hosts;
+    }
+
+    @GuardedBy("this")
+    private List<EquivalentAddressGroup> buildServers() {
+        List<EquivalentAddressGroup> servers = new ArrayList<>();
+        for (GrpcAddressParser.HostPortPair hostPortPair : hostPortPairList) {
+            List<GrpcAddressParser.IpPortPair> ipPortPairList = resolvedAddresses.get(hostPortPair);
+            if (ipPortPairList == null) {
+                continue;
+            }
+            for (GrpcAddressParser.IpPortPair ipPortPair : ipPortPairList) {
+                servers.add(new EquivalentAddressGroup(socketAddress(ipPortPair), hostPortPair.getAttributes()));
+            }
+        }
+        if (options.getSubsetSize() > 0) {
+            return Subsetting.select(servers, options.getClientId(), options.getSubsetSize());
+        }
+        return servers;
+    }
+
+    private SocketAddress socketAddress(GrpcAddressParser.IpPortPair ipPortPair) {
+        if (GrpcNameResolverProvider.GRPC_UNIX_SCHEME.equals(scheme)) {
+            return NettyTransports.newDomainSocketAddress(ipPortPair.getIp());
+        } else if (GrpcNameResolverProvider.GRPC_INPROCESS_SCHEME.equals(scheme)) {
+            return new InProcessSocketAddress(ipPortPair.getIp());
+        }
+        return new InetSocketAddress(ipPortPair.getIp(), ipPortPair.getPort());
+    }
+
+    @GuardedBy("this")
+    private void scheduleRefresh() {
+        long intervalNanos = options.getRefreshIntervalNanos();
+        if (intervalNanos <= 0) {
+            return;
         }
-        if (executor != null) {
-            executor = SharedResourceHolder.release(executorResource, executor);
+        // randomize the interval so that resolvers started together don't query DNS at the same time
+        double jitter = options.getRefreshJitter();
+        long delayNanos = (long) (intervalNanos * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble()));
+        resolutionTask = timerService.schedule(
+                new LogExceptionRunnable(resolutionRunnableOnExecutor), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Attributes attributes() {
+        Map<String, Object> serviceConfig = options.getServiceConfig();
+        if (serviceConfig == null) {
+            return Attributes.EMPTY;
         }
+        return Attributes.newBuilder().set(GrpcAttributes.NAME_RESOLVER_SERVICE_CONFIG, serviceConfig).build();
     }
 
     private class GrpcNameResolverException extends RuntimeException {
@@ -154,9 +369,18 @@ public class GrpcAdvancedNameResolver extends NameResolver {
 
     private class ResolutionRunnable implements Runnable {
 
+        private final boolean failedOnly;
+
+        ResolutionRunnable(boolean failedOnly) {
+            this.failedOnly = failedOnly;
+        }
+
         @Override
         public void run() {
-            Listener savedListener;
+            final Listener savedListener;
+            final ExecutorService savedExecutor;
+            final List<GrpcAddressParser.HostPortPair> targets;
+            final long startNanos = System.nanoTime();
             synchronized (GrpcAdvancedNameResolver.this) {
                 // If this task is started by refresh(), there might already be a scheduled task.
                 if (resolutionTask != null) {
@@ -167,40 +391,169 @@ public class GrpcAdvancedNameResolver extends NameResolver {
                     return;
                 }
                 savedListener = listener;
+                savedExecutor = executor;
+                targets = failedOnly && !failedHostPortPairs.isEmpty()
+                        ? new ArrayList<>(failedHostPortPairs) : hostPortPairList;
                 resolving = true;
             }
 
-            try {
-                List<GrpcAddressParser.IpPortPair> ipPortPairList;
+            // the callback must run even if a bounded executor rejects it, otherwise resolving is never reset
+            Executor callbackExecutor = runnable -> {
                 try {
-                    ipPortPairList = GrpcAddressParser.parse(addresses, defaultPort);
-                } catch (UnknownHostException e) {
-                    synchronized (GrpcAdvancedNameResolver.this) {
-                        if (shutdown) {
-                            return;
-                        }
-                        // Because timerService is the single-threaded GrpcUtil.TIMER_SERVICE in production,
-                        // we need to delegate the blocking work to the executor
-                        resolutionTask = timerService.schedule(
-                                new LogExceptionRunnable(resolutionRunnableOnExecutor), 1, TimeUnit.MINUTES);
+                    savedExecutor.execute(runnable);
+                } catch (RejectedExecutionException e) {
+                    runnable.run();
+                }
+            };
+            ListenableFuture<GrpcAddressParser.ResolutionResult> future = isLocal()
+                    ? Futures.immediateFuture(GrpcAddressParser.resolveNames(targets))
+                    : GrpcAddressParser.resolve(targets, options.getHostResolver(), savedExecutor);
+            Futures.addCallback(future, new ResolutionCallback(savedListener, targets, startNanos), callbackExecutor);
+        }
+    }
+
+    private class ResolutionCallback implements FutureCallback<GrpcAddressParser.ResolutionResult> {
+
+        private final Listener savedListener;
+        private final List<GrpcAddressParser.HostPortPair> targets;
+        private final long startNanos;
+
+        ResolutionCallback(Listener savedListener, List<GrpcAddressParser.HostPortPair> targets, long startNanos) {
+            this.savedListener = savedListener;
+            this.targets = targets;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onSuccess(GrpcAddressParser.ResolutionResult result) {
+            handleResult(result);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            // should not happen since failures of hosts are collected in result, treat all targets as failed
+            Map<GrpcAddressParser.HostPortPair, Throwable> failures = new LinkedHashMap<>();
+            for (GrpcAddressParser.HostPortPair hostPortPair : targets) {
+                failures.put(hostPortPair, t);
+            }
+            onSuccess(new GrpcAddressParser.ResolutionResult(
+                    Collections.<GrpcAddressParser.HostPortPair, List<GrpcAddressParser.IpPortPair>>emptyMap(),
+                    failures));
+        }
+
+        private void handleResult(GrpcAddressParser.ResolutionResult result) {
+            options.getMetricsRecorder().resolutionCompleted(authority, System.nanoTime() - startNanos,
+                    toStrings(result.getFailures().keySet()));
+
+            List<EquivalentAddressGroup> servers;
+            boolean changed = false;
+            Throwable failure = null;
+            synchronized (GrpcAdvancedNameResolver.this) {
+                // reset in the same critical section as scheduling the next resolution, so it is never skipped
+                resolving = false;
+                if (shutdown) {
+                    return;
+                }
+                // hosts failed this time keep their last resolved addresses
+                resolvedAddresses.putAll(result.getResolved());
+                failedHostPortPairs = new LinkedHashSet<>(result.getFailures().keySet());
+                // forget hosts removed by discovery during the resolution
+                Set<GrpcAddressParser.HostPortPair> current = new HashSet<>(hostPortPairList);
+                resolvedAddresses.keySet().retainAll(current);
+                failedHostPortPairs.retainAll(current);
+                servers = buildServers();
+
+                if (failedHostPortPairs.isEmpty()) {
+                    if (backoffState.isBackingOff()) {
+                        backoffState = BackoffState.INITIAL;
+                        options.getMetricsRecorder().resolutionBackoff(authority, 0, 0);
                     }
-                    savedListener.onError(Status.UNAVAILABLE.withCause(e));
+                    scheduleRefresh();
+                } else {
+                    failure = result.getFailures().values().iterator().next();
+                    logger.warn("fail to resolve hosts {} of {}", failedHostPortPairs, authority, failure);
+                    scheduleRetry();
+                }
+
+                if (servers.isEmpty()) {
+                    // always notify listener after recovered from failure
+                    lastServers = null;
+                } else {
+                    Set<EquivalentAddressGroup> currentServers = new HashSet<>(servers);
+                    changed = !currentServers.equals(lastServers);
+                    lastServers = currentServers;
+                }
+
+                if (resolutionPending) {
+                    // addresses were discovered during the resolution
+                    resolutionPending = false;
+                    resolve();
+                }
+            }
+
+            if (servers.isEmpty()) {
+                Status status = Status.UNAVAILABLE.withDescription("no address resolved for " + authority);
+                savedListener.onError(failure != null ? status.withCause(failure) : status);
+            } else if (changed) {
+                savedListener.onAddresses(servers, attributes());
+            } else {
+                logger.debug("resolved addresses not changed, skip to notify listener: {}", authority);
+            }
+        }
+    }
+
+    private class DiscoveryListener implements ServiceDiscovery.Listener {
+
+        @Override
+        public void onAddresses(List<String> addresses) {
+            List<GrpcAddressParser.HostPortPair> discovered = new ArrayList<>(addresses.size());
+            for (String address : addresses) {
+                try {
+                    discovered.addAll(GrpcAddressParser.parseHostPortPairs(address, defaultPort));
+                } catch (IllegalArgumentException e) {
+                    // skip the invalid entry rather than all addresses of the service
+                    logger.warn("invalid address {} discovered for {}", address, authority, e);
+                }
+            }
+
+            final Listener savedListener;
+            synchronized (GrpcAdvancedNameResolver.this) {
+                if (shutdown) {
                     return;
                 }
-                List<EquivalentAddressGroup> servers = new ArrayList<>();
-                if (ipPortPairList != null) {
-                    for (GrpcAddressParser.IpPortPair ipPortPair : ipPortPairList) {
-                        servers.add(new EquivalentAddressGroup(new InetSocketAddress(
-                                ipPortPair.getIp(), ipPortPair.getPort())));
+                hostPortPairList = discovered;
+                if (!discovered.isEmpty()) {
+                    if (resolving) {
+                        resolutionPending = true;
+                    } else {
+                        resolve();
                     }
+                    return;
                 }
+                resolvedAddresses.clear();
+                failedHostPortPairs = Collections.emptySet();
+                lastServers = null;
+                savedListener = listener;
+            }
+            savedListener.onError(Status.UNAVAILABLE.withDescription("no address discovered for " + authority));
+        }
 
-                savedListener.onAddresses(servers, Attributes.EMPTY);
-            } finally {
-                synchronized (GrpcAdvancedNameResolver.this) {
-                    resolving = false;
+        @Override
+        public void onError(Throwable error) {
+            final Listener savedListener;
+            synchronized (GrpcAdvancedNameResolver.this) {
+                if (shutdown) {
+                    return;
                 }
+                logger.warn("fail to discover addresses of {}", authority, error);
+                if (lastServers != null) {
+                    // keep the last addresses
+                    return;
+                }
+                savedListener = listener;
             }
+            savedListener.onError(Status.UNAVAILABLE.withDescription("fail to discover addresses of " + authority)
+                    .withCause(error));
         }
     }
 }
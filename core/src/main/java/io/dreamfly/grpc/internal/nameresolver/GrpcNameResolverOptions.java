@@ -0,0 +1,304 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.base.Strings;
+import io.dreamfly.grpc.internal.discovery.ServiceDiscovery;
+import io.dreamfly.grpc.internal.metrics.MetricsRecorder;
+import io.grpc.internal.SharedResourceHolder;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options of {@link GrpcAdvancedNameResolver}.
+ */
+public class GrpcNameResolverOptions {
+
+    /**
+     * default options: resolve with the process wide cache and never refresh in background.
+     */
+    public static final GrpcNameResolverOptions DEFAULT = newBuilder().build();
+
+    private final HostResolver hostResolver;
+    private final long refreshIntervalNanos;
+    private final double refreshJitter;
+    private final BackoffPolicy backoffPolicy;
+    private final SharedResourceHolder.Resource<ExecutorService> executorResource;
+    private final SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource;
+    private final MetricsRecorder metricsRecorder;
+    private final Map<String, Object> serviceConfig;
+    private final ServiceDiscovery serviceDiscovery;
+    private final int subsetSize;
+    private final String clientId;
+
+    private GrpcNameResolverOptions(Builder builder) {
+        this.hostResolver = builder.hostResolver != null ? builder.hostResolver : CachingHostResolver.getDefault();
+        this.refreshIntervalNanos = builder.refreshIntervalNanos;
+        this.refreshJitter = builder.refreshJitter;
+        this.backoffPolicy = builder.backoffPolicy;
+        this.executorResource = builder.executorResource;
+        this.timerServiceResource = builder.timerServiceResource;
+        this.metricsRecorder = builder.metricsRecorder;
+        this.serviceConfig = builder.serviceConfig;
+        this.serviceDiscovery = builder.serviceDiscovery;
+        this.subsetSize = builder.subsetSize;
+        this.clientId = builder.clientId;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public HostResolver getHostResolver() {
+        return hostResolver;
+    }
+
+    /**
+     * @return interval of background re-resolution, 0 if disabled
+     */
+    public long getRefreshIntervalNanos() {
+        return refreshIntervalNanos;
+    }
+
+    public double getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    public BackoffPolicy getBackoffPolicy() {
+        return backoffPolicy;
+    }
+
+    public SharedResourceHolder.Resource<ExecutorService> getExecutorResource() {
+        return executorResource;
+    }
+
+    public SharedResourceHolder.Resource<ScheduledExecutorService> getTimerServiceResource() {
+        return timerServiceResource;
+    }
+
+    public MetricsRecorder getMetricsRecorder() {
+        return metricsRecorder;
+    }
+
+    /**
+     * @return service config supplied with resolved addresses, null if none
+     */
+    public Map<String, Object> getServiceConfig() {
+        return serviceConfig;
+    }
+
+    /**
+     * @return service discovery of service names in grpc uri, null if the uri contains addresses
+     */
+    @Nullable
+    public ServiceDiscovery getServiceDiscovery() {
+        return serviceDiscovery;
+    }
+
+    /**
+     * @return max count of addresses published, 0 if not subsetting
+     */
+    public int getSubsetSize() {
+        return subsetSize;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * options are equal if they configure the same resolution, objects like HostResolver are compared by equals.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GrpcNameResolverOptions)) {
+            return false;
+        }
+        GrpcNameResolverOptions that = (GrpcNameResolverOptions) o;
+        return refreshIntervalNanos == that.refreshIntervalNanos
+                && subsetSize == that.subsetSize
+                && Double.compare(refreshJitter, that.refreshJitter) == 0
+                && hostResolver.equals(that.hostResolver)
+                && backoffPolicy.equals(that.backoffPolicy)
+                && Objects.equals(executorResource, that.executorResource)
+                && Objects.equals(timerServiceResource, that.timerServiceResource)
+                && Objects.equals(metricsRecorder, that.metricsRecorder)
+                && Objects.equals(serviceConfig, that.serviceConfig)
+                && Objects.equals(serviceDiscovery, that.serviceDiscovery)
+                && clientId.equals(that.clientId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hostResolver, refreshIntervalNanos, refreshJitter, backoffPolicy, executorResource,
+                timerServiceResource, metricsRecorder, serviceConfig, serviceDiscovery,
+                subsetSize, clientId);
+    }
+
+    public static class Builder {
+        private HostResolver hostResolver;
+        private long refreshIntervalNanos;
+        private double refreshJitter = 0.2;
+        private BackoffPolicy backoffPolicy = BackoffPolicy.DEFAULT;
+        private SharedResourceHolder.Resource<ExecutorService> executorResource =
+                ResolverExecutors.DEFAULT_EXECUTOR;
+        private SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource =
+                ResolverExecutors.DEFAULT_TIMER_SERVICE;
+        private MetricsRecorder metricsRecorder = MetricsRecorder.NOOP;
+        private Map<String, Object> serviceConfig;
+        private ServiceDiscovery serviceDiscovery;
+        private int subsetSize;
+        private String clientId = Subsetting.DEFAULT_CLIENT_ID;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the resolver used to resolve hosts.
+         *
+         * @param hostResolver host resolver
+         * @return Builder
+         */
+        public Builder hostResolver(HostResolver hostResolver) {
+            this.hostResolver = checkNotNull(hostResolver, "hostResolver should not be null");
+            return this;
+        }
+
+        /**
+         * set the interval to re-resolve addresses in background, 0 to disable.
+         *
+         * @param interval refresh interval
+         * @param unit time unit of interval
+         * @return Builder
+         */
+        public Builder refreshInterval(long interval, TimeUnit unit) {
+            checkArgument(interval >= 0, "invalid refresh interval " + interval);
+            this.refreshIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * set the jitter of refresh interval, the actual interval is randomized in [1 - jitter, 1 + jitter].
+         *
+         * @param jitter jitter between 0 and 1, default to 0.2
+         * @return Builder
+         */
+        public Builder refreshJitter(double jitter) {
+            checkArgument(jitter >= 0 && jitter <= 1, "jitter should between 0 and 1: jitter=%s", jitter);
+            this.refreshJitter = jitter;
+            return this;
+        }
+
+        /**
+         * set the backoff policy to retry failed resolutions.
+         *
+         * @param backoffPolicy backoff policy, default to {@link BackoffPolicy#DEFAULT}
+         * @return Builder
+         */
+        public Builder backoffPolicy(BackoffPolicy backoffPolicy) {
+            this.backoffPolicy = checkNotNull(backoffPolicy, "backoffPolicy should not be null");
+            return this;
+        }
+
+        /**
+         * set the executor to run resolutions and blocking lookups, see {@link ResolverExecutors}.
+         *
+         * @param executorResource executor resource, default to {@link ResolverExecutors#DEFAULT_EXECUTOR}
+         * @return Builder
+         */
+        public Builder executor(SharedResourceHolder.Resource<ExecutorService> executorResource) {
+            this.executorResource = checkNotNull(executorResource, "executorResource should not be null");
+            return this;
+        }
+
+        /**
+         * set the timer service to schedule refreshes and retries, see {@link ResolverExecutors}.
+         *
+         * @param timerServiceResource timer service resource, default to
+         *                             {@link ResolverExecutors#DEFAULT_TIMER_SERVICE}
+         * @return Builder
+         */
+        public Builder timerService(SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource) {
+            this.timerServiceResource = checkNotNull(timerServiceResource, "timerServiceResource should not be null");
+            return this;
+        }
+
+        /**
+         * set the recorder of resolution duration and failures.
+         *
+         * @param metricsRecorder metrics recorder, default to {@link MetricsRecorder#NOOP}
+         * @return Builder
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            this.metricsRecorder = checkNotNull(metricsRecorder, "metricsRecorder should not be null");
+            return this;
+        }
+
+        /**
+         * set the service config supplied to channels with resolved addresses, like retry policies, see
+         * {@link io.dreamfly.grpc.internal.retry.ServiceConfigs}.
+         *
+         * @param serviceConfig service config in the parsed json form of grpc, null to supply none
+         * @return Builder
+         */
+        public Builder serviceConfig(Map<String, Object> serviceConfig) {
+            this.serviceConfig = serviceConfig == null ? null
+                    : Collections.unmodifiableMap(new LinkedHashMap<>(serviceConfig));
+            return this;
+        }
+
+        /**
+         * set the service discovery, then the authority of grpc uri is a service name to discover, like
+         * "grpc://user-service".
+         *
+         * @param serviceDiscovery service discovery
+         * @return Builder
+         */
+        public Builder serviceDiscovery(ServiceDiscovery serviceDiscovery) {
+            this.serviceDiscovery = checkNotNull(serviceDiscovery, "serviceDiscovery should not be null");
+            return this;
+        }
+
+        /**
+         * set the max count of addresses published, clients choose different subsets of a large cluster by rendezvous
+         * hashing of their client ids, see {@link Subsetting}.
+         *
+         * @param subsetSize subset size, default to 0 which publishes all addresses
+         * @return Builder
+         */
+        public Builder subsetSize(int subsetSize) {
+            checkArgument(subsetSize >= 0, "invalid subsetSize " + subsetSize);
+            this.subsetSize = subsetSize;
+            return this;
+        }
+
+        /**
+         * set the id of the client to choose the subset, a stable id like the host name keeps the subset after
+         * restart.
+         *
+         * @param clientId client id, default to a random id of the process
+         * @return Builder
+         */
+        public Builder clientId(String clientId) {
+            checkArgument(!Strings.isNullOrEmpty(clientId), "clientId should not be null or empty");
+            this.clientId = clientId;
+            return this;
+        }
+
+        public GrpcNameResolverOptions build() {
+            return new GrpcNameResolverOptions(this);
+        }
+    }
+}
@@ -1,22 +1,15 @@
 package io.dreamfly.grpc.internal.nameresolver;
 
-
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 
 import javax.annotation.Nullable;
 
 import io.grpc.Attributes;
 import io.grpc.NameResolver;
 import io.grpc.NameResolverProvider;
-import io.grpc.internal.SharedResourceHolder;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -26,39 +19,28 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class GrpcNameResolverProvider extends NameResolverProvider {
 
     public static final String GRPC_SCHEME = "grpc";
+    /**
+     * scheme of unix domain socket paths, like "grpc+unix:///var/run/a.sock".
+     */
+    public static final String GRPC_UNIX_SCHEME = "grpc+unix";
+    /**
+     * scheme of in-process server names, like "grpc+inprocess://server-a".
+     */
+    public static final String GRPC_INPROCESS_SCHEME = "grpc+inprocess";
     private static Logger logger = LoggerFactory.getLogger(GrpcNameResolverProvider.class);
 
+    private final GrpcNameResolverOptions options;
 
-    private static SharedResourceHolder.Resource<ScheduledExecutorService> timerServiceResource =
-            new SharedResourceHolder.Resource<ScheduledExecutorService>() {
-                @Override
-                public ScheduledExecutorService create() {
-                    return Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat
-                            ("grpc-resolver-timerService-").build());
-                }
-
-                @Override
-                public void close(ScheduledExecutorService instance) {
-                    instance.shutdownNow();
-                }
-            };
-
-
-    private static SharedResourceHolder.Resource<ExecutorService> executorResource =
-            new SharedResourceHolder.Resource<ExecutorService>() {
-
-                @Override
-                public ExecutorService create() {
-                    return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat
-                            ("grpc-resolver-executor-%d").build());
-                }
-
-                @Override
-                public void close(ExecutorService instance) {
-                    instance.shutdownNow();
-                }
-            };
+    /**
+     * create provider with default options, used by SPI.
+     */
+    public GrpcNameResolverProvider() {
+        this(GrpcNameResolverOptions.DEFAULT);
+    }
 
+    public GrpcNameResolverProvider(GrpcNameResolverOptions options) {
+        this.options = checkNotNull(options, "options should not be null");
+    }
 
     @Override
     protected boolean isAvailable() {
@@ -80,15 +62,20 @@ public class GrpcNameResolverProvider extends NameResolverProvider {
     @Nullable
     @Override
     public NameResolver newNameResolver(URI targetUri, Attributes params) {
-        if (!GRPC_SCHEME.equals(targetUri.getScheme())) {
-            // only resolve scheme starts with "grpc://"
+        final String scheme = targetUri.getScheme();
+        final String addresses;
+        if (GRPC_SCHEME.equals(scheme) || GRPC_INPROCESS_SCHEME.equals(scheme)) {
+            addresses = targetUri.getAuthority();
+        } else if (GRPC_UNIX_SCHEME.equals(scheme)) {
+            // paths of unix domain sockets are absolute, like "grpc+unix:///var/run/a.sock"
+            addresses = targetUri.getPath();
+        } else {
+            // only resolve scheme starts with "grpc://", "grpc+unix://" or "grpc+inprocess://"
             return null;
         }
-
-        final String authority = targetUri.getAuthority();
-        checkNotNull(authority, "uri content should not be empty");
+        checkNotNull(addresses, "uri content should not be empty");
 
         logger.info("Grpc NameResolver is activated");
-        return new GrpcAdvancedNameResolver(GRPC_SCHEME, authority, 80, timerServiceResource, executorResource);
+        return new GrpcAdvancedNameResolver(scheme, addresses, 80, options);
     }
 }
@@ -0,0 +1,25 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolve host to ip addresses asynchronously.
+ *
+ * <p>Implementations should never block the calling thread. Blocking implementations can run the lookup on the
+ * given executor, non-blocking implementations (like {@link NettyDnsHostResolver}) can simply ignore it.
+ */
+public interface HostResolver {
+
+    /**
+     * resolve host to ip addresses.
+     *
+     * @param host host name or ip literal
+     * @param executor executor which can be used to run blocking lookup
+     * @return future of resolved ip addresses, fail with UnknownHostException if the host can not be resolved
+     */
+    ListenableFuture<List<InetAddress>> resolve(String host, Executor executor);
+}
@@ -0,0 +1,43 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * HostResolver based on the blocking {@link InetAddress#getAllByName(String)}.
+ *
+ * <p>Each lookup runs as an individual task on the given executor, so multiple hosts are resolved in parallel.
+ * Ip literals are returned immediately without touching the executor.
+ */
+public class JdkHostResolver implements HostResolver {
+
+    private static final JdkHostResolver INSTANCE = new JdkHostResolver();
+
+    private JdkHostResolver() {
+        // use getInstance()
+    }
+
+    public static JdkHostResolver getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public ListenableFuture<List<InetAddress>> resolve(final String host, Executor executor) {
+        if (InetAddresses.isInetAddress(host)) {
+            return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString(host)));
+        }
+
+        ListenableFutureTask<List<InetAddress>> task = ListenableFutureTask.create(
+                () -> Arrays.asList(InetAddress.getAllByName(host)));
+        executor.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,91 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Non-blocking HostResolver based on netty's {@link DnsNameResolver}.
+ *
+ * <p>Lookups are sent over UDP from a single event loop thread, no thread is parked while waiting for the DNS
+ * server. Resolved records are cached by netty according to their TTL, bounded by the given min/max TTL.
+ *
+ * <p>netty-resolver-dns is an optional dependency, add it to the classpath to use this resolver.
+ */
+public class NettyDnsHostResolver implements HostResolver, Closeable {
+
+    private static class DefaultHolder {
+        private static final NettyDnsHostResolver INSTANCE = new NettyDnsHostResolver(0, Integer.MAX_VALUE, 0);
+    }
+
+    private final EventLoopGroup eventLoopGroup;
+    private final DnsNameResolver resolver;
+
+    /**
+     * create a new resolver with its own event loop thread.
+     *
+     * @param minTtl min TTL in seconds of the cached records
+     * @param maxTtl max TTL in seconds of the cached records
+     * @param negativeTtl TTL in seconds of the cached failed lookups
+     */
+    public NettyDnsHostResolver(int minTtl, int maxTtl, int negativeTtl) {
+        checkArgument(minTtl >= 0 && minTtl <= maxTtl, "invalid ttl: minTtl=%s, maxTtl=%s", minTtl, maxTtl);
+        checkArgument(negativeTtl >= 0, "invalid negativeTtl " + negativeTtl);
+
+        this.eventLoopGroup = new NioEventLoopGroup(1, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("grpc-resolver-dns-%d").build());
+        this.resolver = new DnsNameResolverBuilder(eventLoopGroup.next())
+                .channelType(NioDatagramChannel.class)
+                .ttl(minTtl, maxTtl)
+                .negativeTtl(negativeTtl)
+                .build();
+    }
+
+    /**
+     * get the process wide resolver which respects the TTL of DNS records.
+     *
+     * @return shared NettyDnsHostResolver
+     */
+    public static NettyDnsHostResolver getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    @Override
+    public ListenableFuture<List<InetAddress>> resolve(String host, Executor executor) {
+        if (InetAddresses.isInetAddress(host)) {
+            return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString(host)));
+        }
+
+        final SettableFuture<List<InetAddress>> result = SettableFuture.create();
+        resolver.resolveAll(host).addListener((io.netty.util.concurrent.Future<List<InetAddress>> future) -> {
+            if (future.isSuccess()) {
+                result.set(future.getNow());
+            } else {
+                result.setException(future.cause());
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        resolver.close();
+        eventLoopGroup.shutdownGracefully();
+    }
+}
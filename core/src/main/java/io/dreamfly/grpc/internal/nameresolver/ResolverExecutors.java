@@ -0,0 +1,175 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.internal.SharedResourceHolder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory of executors used by {@link GrpcAdvancedNameResolver}.
+ *
+ * <p>Resources are reference counted by {@link SharedResourceHolder} per instance: pass the same resource to all
+ * channels to share one pool, the pool is created by the first resolver and closed after the last one shuts down.
+ */
+public class ResolverExecutors {
+
+    /**
+     * default executor: unbounded cached thread pool.
+     */
+    public static final SharedResourceHolder.Resource<ExecutorService> DEFAULT_EXECUTOR = cachedExecutor();
+
+    /**
+     * default timer service: single daemon thread.
+     */
+    public static final SharedResourceHolder.Resource<ScheduledExecutorService> DEFAULT_TIMER_SERVICE =
+            new SharedResourceHolder.Resource<ScheduledExecutorService>() {
+                @Override
+                public ScheduledExecutorService create() {
+                    return Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat
+                            ("grpc-resolver-timerService-%d").build());
+                }
+
+                @Override
+                public void close(ScheduledExecutorService instance) {
+                    instance.shutdownNow();
+                }
+            };
+
+    private ResolverExecutors() {
+        // no instance
+    }
+
+    /**
+     * create unbounded cached thread pool.
+     *
+     * @return executor resource
+     */
+    public static SharedResourceHolder.Resource<ExecutorService> cachedExecutor() {
+        return new SharedResourceHolder.Resource<ExecutorService>() {
+            @Override
+            public ExecutorService create() {
+                return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat
+                        ("grpc-resolver-executor-%d").build());
+            }
+
+            @Override
+            public void close(ExecutorService instance) {
+                instance.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * create bounded thread pool, idle threads are released after 60 seconds.
+     *
+     * <p>Tasks are rejected when all threads are busy and the queue is full, the rejected resolutions are retried
+     * with backoff.
+     *
+     * @param maxThreads max count of threads
+     * @param queueSize max count of waiting tasks
+     * @return executor resource
+     */
+    public static SharedResourceHolder.Resource<ExecutorService> boundedExecutor(final int maxThreads,
+                                                                                 final int queueSize) {
+        checkArgument(maxThreads > 0, "invalid maxThreads " + maxThreads);
+        checkArgument(queueSize > 0, "invalid queueSize " + queueSize);
+        return new SharedResourceHolder.Resource<ExecutorService>() {
+            @Override
+            public ExecutorService create() {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueSize), new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("grpc-resolver-executor-%d").build());
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+
+            @Override
+            public void close(ExecutorService instance) {
+                instance.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * create virtual-thread-per-task executor, requires JDK 21+.
+     *
+     * @return executor resource
+     * @throws IllegalStateException if virtual thread is not supported by current JDK
+     */
+    public static SharedResourceHolder.Resource<ExecutorService> virtualThreadExecutor() {
+        final Method factoryMethod;
+        try {
+            factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("virtual thread requires JDK 21+: java.version="
+                    + System.getProperty("java.version"), e);
+        }
+        return new SharedResourceHolder.Resource<ExecutorService>() {
+            @Override
+            public ExecutorService create() {
+                try {
+                    return (ExecutorService) factoryMethod.invoke(null);
+                } catch (Exception e) {
+                    throw new IllegalStateException("fail to create virtual thread executor", e);
+                }
+            }
+
+            @Override
+            public void close(ExecutorService instance) {
+                instance.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * use executor managed by caller, it will not be shut down by resolvers.
+     *
+     * @param executor executor
+     * @return executor resource
+     */
+    public static SharedResourceHolder.Resource<ExecutorService> sharedExecutor(final ExecutorService executor) {
+        checkNotNull(executor, "executor should not be null");
+        return new SharedResourceHolder.Resource<ExecutorService>() {
+            @Override
+            public ExecutorService create() {
+                return executor;
+            }
+
+            @Override
+            public void close(ExecutorService instance) {
+                // managed by caller
+            }
+        };
+    }
+
+    /**
+     * use timer service managed by caller, it will not be shut down by resolvers.
+     *
+     * @param timerService timer service
+     * @return timer service resource
+     */
+    public static SharedResourceHolder.Resource<ScheduledExecutorService> sharedTimerService(
+            final ScheduledExecutorService timerService) {
+        checkNotNull(timerService, "timerService should not be null");
+        return new SharedResourceHolder.Resource<ScheduledExecutorService>() {
+            @Override
+            public ScheduledExecutorService create() {
+                return timerService;
+            }
+
+            @Override
+            public void close(ScheduledExecutorService instance) {
+                // managed by caller
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.grpc.EquivalentAddressGroup;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deterministic subsetting of resolved addresses by rendezvous hashing, so a client connects to a subset of a large
+ * cluster.
+ *
+ * <p>Each address is scored by the hash of the client id and the address, a client keeps the addresses with the top
+ * scores. Since scores of different clients are independent, each address is chosen by about subsetSize / total of
+ * the clients, and adding or removing an address only changes subsets which contain it. Scores are weighted by
+ * {@link LoadBalancerAttributes#WEIGHT}, so heavier addresses are chosen by more clients.
+ */
+final class Subsetting {
+
+    /**
+     * client id of this process if not set, random so that processes choose different subsets.
+     */
+    static final String DEFAULT_CLIENT_ID = UUID.randomUUID().toString();
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private Subsetting() {
+        // no instance
+    }
+
+    /**
+     * select the subset of servers for the client.
+     *
+     * @param servers all servers
+     * @param clientId id of the client
+     * @param subsetSize max count of servers to select
+     * @return selected servers in their original order, or all servers if not more than subsetSize
+     */
+    static List<EquivalentAddressGroup> select(List<EquivalentAddressGroup> servers, String clientId,
+                                               int subsetSize) {
+        if (servers.size() <= subsetSize) {
+            return servers;
+        }
+        List<Scored> scored = new ArrayList<>(servers.size());
+        for (int i = 0; i < servers.size(); i++) {
+            scored.add(new Scored(i, score(servers.get(i), clientId)));
+        }
+        Collections.sort(scored);
+
+        boolean[] selected = new boolean[servers.size()];
+        for (int i = 0; i < subsetSize; i++) {
+            selected[scored.get(i).index] = true;
+        }
+        List<EquivalentAddressGroup> subset = new ArrayList<>(subsetSize);
+        for (int i = 0; i < servers.size(); i++) {
+            if (selected[i]) {
+                subset.add(servers.get(i));
+            }
+        }
+        return subset;
+    }
+
+    /**
+     * weighted rendezvous score -weight / ln(u), where u is the hash mapped to (0, 1).
+     */
+    static double score(EquivalentAddressGroup server, String clientId) {
+        Hasher hasher = HASH_FUNCTION.newHasher()
+                .putString(clientId, StandardCharsets.UTF_8);
+        for (SocketAddress address : server.getAddresses()) {
+            putAddress(hasher, address);
+        }
+        long hash = hasher.hash().asLong();
+        double u = ((hash >>> 11) + 0.5) / (1L << 53);
+        Integer weight = server.getAttributes().get(LoadBalancerAttributes.WEIGHT);
+        return -(weight != null && weight > 0 ? weight : 1) / Math.log(u);
+    }
+
+    /**
+     * hash the canonical form of the address, so scores don't depend on the toString of the JDK or on the host name
+     * carried by a resolved address.
+     */
+    private static void putAddress(Hasher hasher, SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inetAddress = (InetSocketAddress) address;
+            if (inetAddress.isUnresolved()) {
+                hasher.putString(inetAddress.getHostString() + ":" + inetAddress.getPort(), StandardCharsets.UTF_8);
+            } else {
+                hasher.putBytes(inetAddress.getAddress().getAddress()).putInt(inetAddress.getPort());
+            }
+        } else {
+            hasher.putString(address.toString(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Scored implements Comparable<Scored> {
+        private final int index;
+        private final double score;
+
+        Scored(int index, double score) {
+            this.index = index;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Scored o) {
+            // higher score first
+            return Double.compare(o.score, score);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package io.dreamfly.grpc.internal.retry;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Interceptor hedging unary calls by {@link HedgingPolicy}, since grpc executes retry policies but not hedging
+ * policies of service config.
+ *
+ * <p>The request is buffered, and each attempt is a new call on the next channel. Hedged attempts ask the load
+ * balancer to avoid the addresses of outstanding attempts by {@link LoadBalancerAttributes#AVOIDED_ADDRESSES}.
+ * Responses are buffered per attempt and only the winning attempt is delivered to the listener. Hedged attempts are
+ * throttled by the {@link RetryBudget} if any.
+ */
+public class HedgingClientInterceptor implements ClientInterceptor {
+
+    private final Map<String, HedgingPolicy> policies;
+    private final RetryBudget retryBudget;
+    private final ScheduledExecutorService timerService;
+
+    /**
+     * @param policies policies by "package.Service/Method", or "package.Service" for all methods of a service
+     * @param retryBudget budget to throttle hedged attempts, nullable
+     */
+    public HedgingClientInterceptor(Map<String, HedgingPolicy> policies, RetryBudget retryBudget) {
+        this(policies, retryBudget, TimerServiceHolder.TIMER_SERVICE);
+    }
+
+    HedgingClientInterceptor(Map<String, HedgingPolicy> policies, RetryBudget retryBudget,
+                             ScheduledExecutorService timerService) {
+        checkNotNull(policies, "policies should not be null");
+        for (String name : policies.keySet()) {
+            ServiceConfigs.checkMethodName(name);
+        }
+        this.policies = Collections.unmodifiableMap(new HashMap<>(policies));
+        this.retryBudget = retryBudget;
+        this.timerService = checkNotNull(timerService, "timerService should not be null");
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        if (method.getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.newCall(method, callOptions);
+        }
+        HedgingPolicy policy = policies.get(method.getFullMethodName());
+        if (policy == null) {
+            policy = policies.get(MethodDescriptor.extractFullServiceName(method.getFullMethodName()));
+        }
+        if (policy == null) {
+            return next.newCall(method, callOptions);
+        }
+        return new HedgingClientCall<>(method, callOptions, next, policy);
+    }
+
+    private static final class TimerServiceHolder {
+        static final ScheduledExecutorService TIMER_SERVICE = Executors.newScheduledThreadPool(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("grpc-hedging-timerService-%d").build());
+    }
+
+    private final class HedgingClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final HedgingPolicy policy;
+        private final Object lock = new Object();
+
+        @GuardedBy("lock")
+        private Listener<RespT> listener;
+        @GuardedBy("lock")
+        private Metadata headers;
+        @GuardedBy("lock")
+        private ReqT message;
+        @GuardedBy("lock")
+        private int requested;
+        @GuardedBy("lock")
+        private final List<Attempt> attempts = new ArrayList<>();
+        @GuardedBy("lock")
+        private int attemptCount;
+        @GuardedBy("lock")
+        private ScheduledFuture<?> hedgingTask;
+        @GuardedBy("lock")
+        private boolean cancelled;
+        // the listener is closed or about to be closed
+        @GuardedBy("lock")
+        private boolean closed;
+        @GuardedBy("lock")
+        private Attempt winner;
+
+        HedgingClientCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next,
+                          HedgingPolicy policy) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.policy = policy;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            synchronized (lock) {
+                checkState(listener == null, "already started");
+                this.listener = checkNotNull(responseListener, "responseListener should not be null");
+                this.headers = checkNotNull(headers, "headers should not be null");
+            }
+        }
+
+        @Override
+        public void request(int numMessages) {
+            List<Attempt> outstanding;
+            synchronized (lock) {
+                requested += numMessages;
+                outstanding = new ArrayList<>(attempts);
+            }
+            for (Attempt attempt : outstanding) {
+                attempt.call.request(numMessages);
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            synchronized (lock) {
+                checkState(this.message == null, "unary call should send only one message");
+                this.message = message;
+            }
+        }
+
+        @Override
+        public void halfClose() {
+            Attempt attempt;
+            synchronized (lock) {
+                checkState(listener != null, "not started");
+                if (closed) {
+                    return;
+                }
+                attempt = newAttempt();
+                scheduleHedging();
+            }
+            attempt.start();
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            List<Attempt> outstanding;
+            Listener<RespT> savedListener = null;
+            synchronized (lock) {
+                if (closed || cancelled) {
+                    return;
+                }
+                cancelled = true;
+                cancelHedging();
+                outstanding = new ArrayList<>(attempts);
+                if (outstanding.isEmpty() && listener != null) {
+                    // no attempt to report the cancellation
+                    closed = true;
+                    savedListener = listener;
+                }
+            }
+            for (Attempt attempt : outstanding) {
+                attempt.call.cancel(message, cause);
+            }
+            if (savedListener != null) {
+                Status status = Status.CANCELLED.withDescription(message).withCause(cause);
+                savedListener.onClose(status, new Metadata());
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            synchronized (lock) {
+                return !attempts.isEmpty() && attempts.get(0).call.isReady();
+            }
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            synchronized (lock) {
+                if (winner != null) {
+                    return winner.call.getAttributes();
+                }
+                return attempts.isEmpty() ? Attributes.EMPTY : attempts.get(0).call.getAttributes();
+            }
+        }
+
+        @GuardedBy("lock")
+        private Attempt newAttempt() {
+            CallOptions options = callOptions;
+            Set<SocketAddress> avoided = new HashSet<>();
+            for (Attempt attempt : attempts) {
+                SocketAddress address = attempt.call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+                if (address != null) {
+                    avoided.add(address);
+                }
+            }
+            if (!avoided.isEmpty()) {
+                options = options.withOption(LoadBalancerAttributes.AVOIDED_ADDRESSES, avoided);
+            }
+            Metadata attemptHeaders = new Metadata();
+            attemptHeaders.merge(headers);
+            Attempt attempt = new Attempt(next.newCall(method, options), attemptHeaders, message, requested);
+            attempts.add(attempt);
+            attemptCount++;
+            return attempt;
+        }
+
+        @GuardedBy("lock")
+        private boolean canHedge() {
+            return !closed && !cancelled && attemptCount < policy.getMaxAttempts()
+                    && (retryBudget == null || retryBudget.allowRetry());
+        }
+
+        @GuardedBy("lock")
+        private void scheduleHedging() {
+            cancelHedging();
+            if (attemptCount < policy.getMaxAttempts()) {
+                hedgingTask = timerService.schedule(this::hedge, policy.getHedgingDelayNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @GuardedBy("lock")
+        private void cancelHedging() {
+            if (hedgingTask != null) {
+                hedgingTask.cancel(false);
+                hedgingTask = null;
+            }
+        }
+
+        private void hedge() {
+            Attempt attempt;
+            synchronized (lock) {
+                hedgingTask = null;
+                if (!canHedge()) {
+                    return;
+                }
+                attempt = newAttempt();
+                scheduleHedging();
+            }
+            attempt.start();
+        }
+
+        private void attemptClosed(Attempt attempt, Status status, Metadata trailers) {
+            List<Attempt> losers = Collections.emptyList();
+            Attempt nextAttempt = null;
+            Listener<RespT> savedListener = null;
+            synchronized (lock) {
+                attempts.remove(attempt);
+                if (closed) {
+                    // cancelled after another attempt won
+                    return;
+                }
+                if (retryBudget != null && !cancelled) {
+                    if (status.isOk()) {
+                        retryBudget.onSuccess();
+                    } else {
+                        retryBudget.onFailure();
+                    }
+                }
+
+                boolean nonFatal = !status.isOk() && !cancelled
+                        && policy.getNonFatalStatusCodes().contains(status.getCode());
+                if (nonFatal && canHedge()) {
+                    // a non-fatal failure sends the next attempt at once
+                    nextAttempt = newAttempt();
+                    scheduleHedging();
+                } else if (!nonFatal || attempts.isEmpty()) {
+                    closed = true;
+                    winner = attempt;
+                    cancelHedging();
+                    losers = new ArrayList<>(attempts);
+                    savedListener = listener;
+                }
+            }
+
+            for (Attempt loser : losers) {
+                loser.call.cancel("another hedged attempt completed", null);
+            }
+            if (nextAttempt != null) {
+                nextAttempt.start();
+            }
+            if (savedListener != null) {
+                if (attempt.responseHeaders != null) {
+                    savedListener.onHeaders(attempt.responseHeaders);
+                }
+                if (attempt.response != null) {
+                    savedListener.onMessage(attempt.response);
+                }
+                savedListener.onClose(status, trailers);
+            }
+        }
+
+        private final class Attempt extends ClientCall.Listener<RespT> {
+            private final ClientCall<ReqT, RespT> call;
+            private final Metadata requestHeaders;
+            private final ReqT request;
+            private final int requested;
+            // callbacks of one call are serialized
+            private Metadata responseHeaders;
+            private RespT response;
+
+            Attempt(ClientCall<ReqT, RespT> call, Metadata requestHeaders, ReqT request, int requested) {
+                this.call = call;
+                this.requestHeaders = requestHeaders;
+                this.request = request;
+                this.requested = requested;
+            }
+
+            void start() {
+                call.start(this, requestHeaders);
+                if (requested > 0) {
+                    call.request(requested);
+                }
+                if (request != null) {
+                    call.sendMessage(request);
+                }
+                call.halfClose();
+            }
+
+            @Override
+            public void onHeaders(Metadata headers) {
+                responseHeaders = headers;
+            }
+
+            @Override
+            public void onMessage(RespT message) {
+                response = message;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                attemptClosed(this, status, trailers);
+            }
+        }
+    }
+}
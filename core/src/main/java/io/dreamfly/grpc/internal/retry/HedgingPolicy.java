@@ -0,0 +1,112 @@
+package io.dreamfly.grpc.internal.retry;
+
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Policy to hedge unary calls of a method, executed by {@link HedgingClientInterceptor}.
+ *
+ * <p>If an attempt doesn't complete within {@code hedgingDelay}, another attempt is sent, preferably to a different
+ * address, until {@code maxAttempts} attempts are outstanding. The first attempt completed with OK or a fatal status
+ * wins and the others are cancelled. An attempt failed with a non-fatal status code triggers the next attempt
+ * immediately.
+ */
+public class HedgingPolicy {
+
+    private final int maxAttempts;
+    private final long hedgingDelayNanos;
+    private final Set<Status.Code> nonFatalStatusCodes;
+
+    private HedgingPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.hedgingDelayNanos = builder.hedgingDelayNanos;
+        this.nonFatalStatusCodes = Collections.unmodifiableSet(builder.nonFatalStatusCodes);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getHedgingDelayNanos() {
+        return hedgingDelayNanos;
+    }
+
+    public Set<Status.Code> getNonFatalStatusCodes() {
+        return nonFatalStatusCodes;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{maxAttempts=" + maxAttempts + ", hedgingDelayNanos=" + hedgingDelayNanos
+                + ", nonFatalStatusCodes=" + nonFatalStatusCodes + "}";
+    }
+
+    public static class Builder {
+        private int maxAttempts = 2;
+        private long hedgingDelayNanos = -1;
+        private Set<Status.Code> nonFatalStatusCodes = EnumSet.noneOf(Status.Code.class);
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the max attempts including the original one.
+         *
+         * @param maxAttempts max attempts, at least 2, default to 2
+         * @return Builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            checkArgument(maxAttempts > 1, "invalid maxAttempts " + maxAttempts);
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * set the delay to send the next attempt, usually around the p95 latency of the method.
+         *
+         * @param hedgingDelay hedging delay, required
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder hedgingDelay(long hedgingDelay, TimeUnit unit) {
+            checkArgument(hedgingDelay >= 0, "invalid hedgingDelay " + hedgingDelay);
+            this.hedgingDelayNanos = unit.toNanos(hedgingDelay);
+            return this;
+        }
+
+        /**
+         * set the status codes which don't fail the call but trigger the next attempt.
+         *
+         * @param codes status codes, default to none
+         * @return Builder
+         */
+        public Builder nonFatalStatusCodes(Status.Code... codes) {
+            Set<Status.Code> nonFatal = EnumSet.noneOf(Status.Code.class);
+            for (Status.Code code : codes) {
+                checkArgument(checkNotNull(code, "code should not be null") != Status.Code.OK,
+                        "OK is not a failure");
+                nonFatal.add(code);
+            }
+            this.nonFatalStatusCodes = nonFatal;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            checkState(hedgingDelayNanos >= 0, "please set hedgingDelay before build");
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.dreamfly.grpc.internal.retry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token budget limiting retries and hedged attempts, so they don't amplify an overload of servers.
+ *
+ * <p>The budget starts with {@code maxTokens}. Each failed call takes 1 token and each successful call returns
+ * {@code tokenRatio} tokens, up to {@code maxTokens}. Extra attempts are only allowed while more than half of the
+ * tokens are left, which is the retry throttling of gRFC A6.
+ *
+ * <p>Share one instance among channels to have a global budget for hedged attempts. Retries are executed by grpc,
+ * which throttles each channel by a budget of the same parameters.
+ */
+public class RetryBudget {
+
+    // tokens are kept in thousandths like grpc
+    private static final int SCALE = 1000;
+
+    private final int maxTokens;
+    private final int tokenRatio;
+    private final int threshold;
+    private final AtomicLong tokens;
+
+    /**
+     * @param maxTokens max tokens, between 1 and 1000
+     * @param tokenRatio tokens returned by a successful call, greater than 0
+     */
+    public RetryBudget(int maxTokens, double tokenRatio) {
+        checkArgument(maxTokens > 0 && maxTokens <= 1000, "invalid maxTokens " + maxTokens);
+        checkArgument(tokenRatio > 0, "invalid tokenRatio " + tokenRatio);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokenRatio = (int) (tokenRatio * SCALE);
+        this.threshold = this.maxTokens / 2;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * record a failed call or attempt.
+     */
+    public void onFailure() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current == 0) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.max(0, current - SCALE)));
+    }
+
+    /**
+     * record a successful call.
+     */
+    public void onSuccess() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current == maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokenRatio)));
+    }
+
+    /**
+     * @return true if an extra attempt is allowed
+     */
+    public boolean allowRetry() {
+        return tokens.get() > threshold;
+    }
+
+    /**
+     * @return tokens left
+     */
+    public double getTokens() {
+        return (double) tokens.get() / SCALE;
+    }
+
+    /**
+     * @return "retryThrottling" object of service config
+     */
+    Map<String, Object> toServiceConfig() {
+        Map<String, Object> retryThrottling = new LinkedHashMap<>();
+        retryThrottling.put("maxTokens", (double) (maxTokens / SCALE));
+        retryThrottling.put("tokenRatio", (double) tokenRatio / SCALE);
+        return retryThrottling;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryBudget{tokens=" + getTokens() + ", maxTokens=" + maxTokens / SCALE
+                + ", tokenRatio=" + (double) tokenRatio / SCALE + "}";
+    }
+}
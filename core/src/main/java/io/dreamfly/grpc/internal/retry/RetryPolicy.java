@@ -0,0 +1,172 @@
+package io.dreamfly.grpc.internal.retry;
+
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Policy to retry failed calls of a method, which is executed by grpc as the "retryPolicy" of service config.
+ *
+ * <p>A call is retried with exponential backoff when it fails with a retryable status code before any response is
+ * received, until {@code maxAttempts} attempts are made. grpc caps max attempts to 5.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double backoffMultiplier;
+    private final Set<Status.Code> retryableStatusCodes;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoffNanos;
+        this.maxBackoffNanos = builder.maxBackoffNanos;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.retryableStatusCodes = Collections.unmodifiableSet(EnumSet.copyOf(builder.retryableStatusCodes));
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffNanos() {
+        return initialBackoffNanos;
+    }
+
+    public long getMaxBackoffNanos() {
+        return maxBackoffNanos;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public Set<Status.Code> getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+
+    /**
+     * @return "retryPolicy" object of service config
+     */
+    Map<String, Object> toServiceConfig() {
+        Map<String, Object> retryPolicy = new LinkedHashMap<>();
+        // numbers of service config are parsed from json, so they should be double
+        retryPolicy.put("maxAttempts", (double) maxAttempts);
+        retryPolicy.put("initialBackoff", ServiceConfigs.duration(initialBackoffNanos));
+        retryPolicy.put("maxBackoff", ServiceConfigs.duration(maxBackoffNanos));
+        retryPolicy.put("backoffMultiplier", backoffMultiplier);
+        List<Object> codes = new ArrayList<>();
+        for (Status.Code code : retryableStatusCodes) {
+            codes.add(code.name());
+        }
+        retryPolicy.put("retryableStatusCodes", codes);
+        return retryPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxAttempts=" + maxAttempts + ", initialBackoffNanos=" + initialBackoffNanos
+                + ", maxBackoffNanos=" + maxBackoffNanos + ", backoffMultiplier=" + backoffMultiplier
+                + ", retryableStatusCodes=" + retryableStatusCodes + "}";
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        private double backoffMultiplier = 2;
+        private Set<Status.Code> retryableStatusCodes = EnumSet.of(Status.Code.UNAVAILABLE);
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the max attempts including the original one.
+         *
+         * @param maxAttempts max attempts, at least 2, default to 3
+         * @return Builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            checkArgument(maxAttempts > 1, "invalid maxAttempts " + maxAttempts);
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * set the backoff before the first retry, the actual backoff is randomized in [0, backoff].
+         *
+         * @param initialBackoff initial backoff, default to 100 milliseconds
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder initialBackoff(long initialBackoff, TimeUnit unit) {
+            checkArgument(initialBackoff > 0, "invalid initialBackoff " + initialBackoff);
+            this.initialBackoffNanos = unit.toNanos(initialBackoff);
+            return this;
+        }
+
+        /**
+         * set the max backoff between retries.
+         *
+         * @param maxBackoff max backoff, default to 1 second
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder maxBackoff(long maxBackoff, TimeUnit unit) {
+            checkArgument(maxBackoff > 0, "invalid maxBackoff " + maxBackoff);
+            this.maxBackoffNanos = unit.toNanos(maxBackoff);
+            return this;
+        }
+
+        /**
+         * set the multiplier of backoff after each retry.
+         *
+         * @param backoffMultiplier multiplier, default to 2
+         * @return Builder
+         */
+        public Builder backoffMultiplier(double backoffMultiplier) {
+            checkArgument(backoffMultiplier > 0, "invalid backoffMultiplier " + backoffMultiplier);
+            this.backoffMultiplier = backoffMultiplier;
+            return this;
+        }
+
+        /**
+         * set the status codes to retry.
+         *
+         * @param codes status codes, default to UNAVAILABLE
+         * @return Builder
+         */
+        public Builder retryableStatusCodes(Status.Code... codes) {
+            checkArgument(codes.length > 0, "retryableStatusCodes should not be empty");
+            Set<Status.Code> retryable = EnumSet.noneOf(Status.Code.class);
+            for (Status.Code code : codes) {
+                checkArgument(checkNotNull(code, "code should not be null") != Status.Code.OK,
+                        "OK is not retryable");
+                retryable.add(code);
+            }
+            this.retryableStatusCodes = retryable;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            checkArgument(maxBackoffNanos >= initialBackoffNanos, "maxBackoff should not be less than initialBackoff");
+            return new RetryPolicy(this);
+        }
+    }
+}
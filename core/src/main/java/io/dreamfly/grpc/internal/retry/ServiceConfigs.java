@@ -0,0 +1,77 @@
+package io.dreamfly.grpc.internal.retry;
+
+import io.grpc.MethodDescriptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Build service config maps of grpc, which are supplied to channels by the name resolver.
+ */
+public final class ServiceConfigs {
+
+    private ServiceConfigs() {
+        // no instance
+    }
+
+    /**
+     * build the service config of retry policies.
+     *
+     * @param retryPolicies policies by "package.Service/Method", or "package.Service" for all methods of a service
+     * @param retryBudget budget to throttle retries, nullable
+     * @return service config
+     */
+    public static Map<String, Object> retryServiceConfig(Map<String, RetryPolicy> retryPolicies,
+                                                         RetryBudget retryBudget) {
+        List<Object> methodConfigs = new ArrayList<>();
+        for (Map.Entry<String, RetryPolicy> entry : retryPolicies.entrySet()) {
+            Map<String, Object> methodConfig = new LinkedHashMap<>();
+            methodConfig.put("name", Collections.singletonList(methodName(entry.getKey())));
+            methodConfig.put("retryPolicy", entry.getValue().toServiceConfig());
+            methodConfigs.add(methodConfig);
+        }
+        Map<String, Object> serviceConfig = new LinkedHashMap<>();
+        serviceConfig.put("methodConfig", methodConfigs);
+        if (retryBudget != null) {
+            serviceConfig.put("retryThrottling", retryBudget.toServiceConfig());
+        }
+        return serviceConfig;
+    }
+
+    /**
+     * check the name of method or service which policies are applied to.
+     *
+     * @param name "package.Service/Method" or "package.Service"
+     */
+    public static void checkMethodName(String name) {
+        checkArgument(name != null && !name.isEmpty() && !name.startsWith("/") && !name.endsWith("/")
+                && name.indexOf('/') == name.lastIndexOf('/'), "invalid method name " + name);
+    }
+
+    private static Map<String, Object> methodName(String name) {
+        Map<String, Object> methodName = new LinkedHashMap<>();
+        String service = MethodDescriptor.extractFullServiceName(name);
+        if (service == null) {
+            methodName.put("service", name);
+        } else {
+            methodName.put("service", service);
+            methodName.put("method", name.substring(service.length() + 1));
+        }
+        return methodName;
+    }
+
+    /**
+     * @param nanos duration in nanoseconds
+     * @return duration in the json format of protobuf, like "1.500000000s"
+     */
+    static String duration(long nanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return String.format("%d.%09ds", seconds, nanos - TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,157 @@
+package io.dreamfly.grpc.internal.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadFactory;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Access to the native epoll transport of netty, including unix domain sockets.
+ *
+ * <p>Classes are loaded by reflection so netty-transport-native-epoll stays an optional runtime dependency: add
+ * {@code io.netty:netty-transport-native-epoll:linux-x86_64} to the classpath to enable it.
+ */
+public class NettyTransports {
+
+    private static Logger logger = LoggerFactory.getLogger(NettyTransports.class);
+
+    private static final String EPOLL_CLASS = "io.netty.channel.epoll.Epoll";
+    private static final String EPOLL_SOCKET_CHANNEL_CLASS = "io.netty.channel.epoll.EpollSocketChannel";
+    private static final String EPOLL_EVENT_LOOP_GROUP_CLASS = "io.netty.channel.epoll.EpollEventLoopGroup";
+    private static final String EPOLL_DOMAIN_SOCKET_CHANNEL_CLASS = "io.netty.channel.epoll.EpollDomainSocketChannel";
+    private static final String DOMAIN_SOCKET_ADDRESS_CLASS = "io.netty.channel.unix.DomainSocketAddress";
+
+    private static final Class<? extends Channel> EPOLL_CHANNEL_TYPE;
+    private static final Class<? extends Channel> EPOLL_DOMAIN_SOCKET_CHANNEL_TYPE;
+    private static final Constructor<? extends SocketAddress> DOMAIN_SOCKET_ADDRESS_CONSTRUCTOR;
+    private static final Constructor<? extends EventLoopGroup> EPOLL_EVENT_LOOP_GROUP_CONSTRUCTOR;
+    private static final Throwable EPOLL_UNAVAILABILITY_CAUSE;
+
+    static {
+        Class<? extends Channel> channelType = null;
+        Class<? extends Channel> domainSocketChannelType = null;
+        Constructor<? extends SocketAddress> domainSocketAddressConstructor = null;
+        Constructor<? extends EventLoopGroup> groupConstructor = null;
+        Throwable cause = null;
+        try {
+            Class<?> epoll = Class.forName(EPOLL_CLASS);
+            if ((Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+                channelType = Class.forName(EPOLL_SOCKET_CHANNEL_CLASS).asSubclass(Channel.class);
+                domainSocketChannelType = Class.forName(EPOLL_DOMAIN_SOCKET_CHANNEL_CLASS).asSubclass(Channel.class);
+                domainSocketAddressConstructor = Class.forName(DOMAIN_SOCKET_ADDRESS_CLASS)
+                        .asSubclass(SocketAddress.class).getConstructor(String.class);
+                groupConstructor = Class.forName(EPOLL_EVENT_LOOP_GROUP_CLASS).asSubclass(EventLoopGroup.class)
+                        .getConstructor(int.class, ThreadFactory.class);
+            } else {
+                cause = (Throwable) epoll.getMethod("unavailabilityCause").invoke(null);
+            }
+        } catch (ClassNotFoundException e) {
+            cause = e;
+        } catch (Exception e) {
+            cause = e;
+            logger.warn("fail to load netty epoll transport", e);
+        }
+        EPOLL_CHANNEL_TYPE = channelType;
+        EPOLL_DOMAIN_SOCKET_CHANNEL_TYPE = domainSocketChannelType;
+        DOMAIN_SOCKET_ADDRESS_CONSTRUCTOR = domainSocketAddressConstructor;
+        EPOLL_EVENT_LOOP_GROUP_CONSTRUCTOR = groupConstructor;
+        EPOLL_UNAVAILABILITY_CAUSE = cause;
+    }
+
+    private NettyTransports() {
+        // no instance
+    }
+
+    /**
+     * @return true if netty-transport-native-epoll is on classpath and supported by current platform
+     */
+    public static boolean isEpollAvailable() {
+        return EPOLL_CHANNEL_TYPE != null;
+    }
+
+    /**
+     * @return reason why epoll is unavailable, null if available
+     */
+    public static Throwable epollUnavailabilityCause() {
+        return EPOLL_UNAVAILABILITY_CAUSE;
+    }
+
+    /**
+     * @return EpollSocketChannel class
+     * @throws IllegalStateException if epoll is unavailable
+     */
+    public static Class<? extends Channel> epollChannelType() {
+        checkEpollAvailable();
+        return EPOLL_CHANNEL_TYPE;
+    }
+
+    /**
+     * @return EpollDomainSocketChannel class
+     * @throws IllegalStateException if epoll is unavailable
+     */
+    public static Class<? extends Channel> epollDomainSocketChannelType() {
+        checkEpollAvailable();
+        return EPOLL_DOMAIN_SOCKET_CHANNEL_TYPE;
+    }
+
+    /**
+     * create address of unix domain socket.
+     *
+     * @param path path of the socket file
+     * @return DomainSocketAddress
+     * @throws IllegalStateException if epoll is unavailable
+     */
+    public static SocketAddress newDomainSocketAddress(String path) {
+        checkEpollAvailable();
+        try {
+            return DOMAIN_SOCKET_ADDRESS_CONSTRUCTOR.newInstance(path);
+        } catch (Exception e) {
+            throw new IllegalStateException("fail to create domain socket address: path=" + path, e);
+        }
+    }
+
+    /**
+     * create new epoll event loop group with daemon threads, caller should shut it down.
+     *
+     * @param threads count of threads, 0 to use netty default (2 * cores)
+     * @param threadNamePrefix prefix of thread name
+     * @return EpollEventLoopGroup
+     * @throws IllegalStateException if epoll is unavailable
+     */
+    public static EventLoopGroup newEpollEventLoopGroup(int threads, String threadNamePrefix) {
+        checkEpollAvailable();
+        try {
+            return EPOLL_EVENT_LOOP_GROUP_CONSTRUCTOR.newInstance(threads,
+                    new DefaultThreadFactory(threadNamePrefix, true));
+        } catch (Exception e) {
+            throw new IllegalStateException("fail to create epoll event loop group", e);
+        }
+    }
+
+    /**
+     * process wide epoll event loop group shared by all channels using epoll, created on first use and never shut
+     * down. Threads are daemon so the group doesn't keep the process alive.
+     *
+     * @return shared EpollEventLoopGroup
+     * @throws IllegalStateException if epoll is unavailable
+     */
+    public static EventLoopGroup sharedEpollEventLoopGroup() {
+        checkEpollAvailable();
+        return SharedEpollEventLoopGroupHolder.INSTANCE;
+    }
+
+    private static void checkEpollAvailable() {
+        checkState(isEpollAvailable(), "netty epoll transport is unavailable: cause=%s", EPOLL_UNAVAILABILITY_CAUSE);
+    }
+
+    private static class SharedEpollEventLoopGroupHolder {
+        private static final EventLoopGroup INSTANCE = newEpollEventLoopGroup(0, "grpc-epoll-worker");
+    }
+}
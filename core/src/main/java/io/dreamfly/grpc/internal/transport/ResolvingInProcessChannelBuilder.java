@@ -0,0 +1,119 @@
+package io.dreamfly.grpc.internal.transport;
+
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessSocketAddress;
+import io.grpc.internal.AbstractManagedChannelImplBuilder;
+import io.grpc.internal.ClientTransportFactory;
+import io.grpc.internal.ConnectionClientTransport;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Channel builder of the in-process transport which resolves the target by the name resolver.
+ *
+ * <p>{@link InProcessChannelBuilder} of grpc is bound to a single server name and doesn't accept a name resolver.
+ * Channels built here connect to the server named by each resolved {@link InProcessSocketAddress}, so load
+ * balancing, service config and interceptors work the same as on network channels.
+ */
+public class ResolvingInProcessChannelBuilder
+        extends AbstractManagedChannelImplBuilder<ResolvingInProcessChannelBuilder> {
+
+    private static final Method BUILD_TRANSPORT_FACTORY;
+
+    static {
+        try {
+            BUILD_TRANSPORT_FACTORY = InProcessChannelBuilder.class.getDeclaredMethod("buildTransportFactory");
+            BUILD_TRANSPORT_FACTORY.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ResolvingInProcessChannelBuilder(String target) {
+        super(target);
+    }
+
+    /**
+     * @param target target resolved to {@link InProcessSocketAddress} by the name resolver
+     * @return ResolvingInProcessChannelBuilder
+     */
+    public static ResolvingInProcessChannelBuilder forTarget(String target) {
+        return new ResolvingInProcessChannelBuilder(target);
+    }
+
+    @Override
+    public void setStatsEnabled(boolean value) {
+        super.setStatsEnabled(value);
+    }
+
+    @Override
+    public void setTracingEnabled(boolean value) {
+        super.setTracingEnabled(value);
+    }
+
+    @Override
+    protected ClientTransportFactory buildTransportFactory() {
+        return new ResolvingTransportFactory();
+    }
+
+    /**
+     * Transport factory delegating to the factory of grpc bound to the name of each address.
+     */
+    private static final class ResolvingTransportFactory implements ClientTransportFactory {
+        @GuardedBy("this")
+        private final Map<String, ClientTransportFactory> factories = new HashMap<>();
+        // the scheduler is shared by all in-process factories
+        private final ClientTransportFactory defaultFactory = newFactory("");
+        @GuardedBy("this")
+        private boolean closed;
+
+        @Override
+        public ConnectionClientTransport newClientTransport(SocketAddress address, ClientTransportOptions options) {
+            checkArgument(address instanceof InProcessSocketAddress, "not an in-process address: %s", address);
+            String name = ((InProcessSocketAddress) address).getName();
+            ClientTransportFactory factory;
+            synchronized (this) {
+                checkState(!closed, "transport factory is closed");
+                factory = factories.get(name);
+                if (factory == null) {
+                    factory = newFactory(name);
+                    factories.put(name, factory);
+                }
+            }
+            return factory.newClientTransport(address, options);
+        }
+
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService() {
+            return defaultFactory.getScheduledExecutorService();
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                for (ClientTransportFactory factory : factories.values()) {
+                    factory.close();
+                }
+                factories.clear();
+            }
+            defaultFactory.close();
+        }
+
+        private static ClientTransportFactory newFactory(String name) {
+            try {
+                return (ClientTransportFactory) BUILD_TRANSPORT_FACTORY.invoke(InProcessChannelBuilder.forName(name));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("fail to create in-process transport factory: name=" + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.dreamfly.grpc.internal.util;
+
+import java.io.Reader;
+
+/**
+ * Reader of a char sequence without copying it to a string.
+ */
+final class CharSequenceReader extends Reader {
+    private final CharSequence content;
+    private int position;
+
+    CharSequenceReader(CharSequence content) {
+        this.content = content;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (position >= content.length()) {
+            return -1;
+        }
+        int count = Math.min(length, content.length() - position);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = content.charAt(position++);
+        }
+        return count;
+    }
+
+    @Override
+    public int read() {
+        return position < content.length() ? content.charAt(position++) : -1;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
@@ -0,0 +1,74 @@
+package io.dreamfly.grpc.internal.util;
+
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SerializingExecutor;
+import io.grpc.internal.SharedResourceHolder;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Call closed with the status once started, nothing is sent.
+ *
+ * <p>Like calls of the channel, the listener is closed on the executor of call options, or on the shared channel
+ * executor if there is none, never re-entrantly in {@link #start}.
+ */
+public class FailingClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+    private final Status status;
+    @Nullable
+    private final Executor executor;
+
+    /**
+     * @param status status to close the call with
+     * @param executor executor of call options, null to use the shared channel executor
+     */
+    public FailingClientCall(Status status, @Nullable Executor executor) {
+        checkArgument(!status.isOk(), "status should not be OK");
+        this.status = status;
+        this.executor = executor;
+    }
+
+    @Override
+    public void start(Listener<RespT> responseListener, Metadata headers) {
+        checkNotNull(responseListener, "responseListener should not be null");
+        if (executor != null) {
+            new SerializingExecutor(executor).execute(() -> responseListener.onClose(status, new Metadata()));
+            return;
+        }
+        ExecutorService sharedExecutor = SharedResourceHolder.get(GrpcUtil.SHARED_CHANNEL_EXECUTOR);
+        new SerializingExecutor(sharedExecutor).execute(() -> {
+            try {
+                responseListener.onClose(status, new Metadata());
+            } finally {
+                SharedResourceHolder.release(GrpcUtil.SHARED_CHANNEL_EXECUTOR, sharedExecutor);
+            }
+        });
+    }
+
+    @Override
+    public void request(int numMessages) {
+        // nothing to receive
+    }
+
+    @Override
+    public void cancel(String message, Throwable cause) {
+        // already closed
+    }
+
+    @Override
+    public void halfClose() {
+        // nothing to send
+    }
+
+    @Override
+    public void sendMessage(ReqT message) {
+        // discard the message
+    }
+}
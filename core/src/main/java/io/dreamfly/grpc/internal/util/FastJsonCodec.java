@@ -0,0 +1,212 @@
+package io.dreamfly.grpc.internal.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import io.dreamfly.grpc.internal.util.MessagePlan.FieldPlan;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * JSON codec of protobuf messages without reflection.
+ *
+ * <p>A plan is compiled once per message type from its descriptor. Messages are printed by walking their binary
+ * encoding with the plan, and json is parsed to the binary encoding which is merged to the builder, so no field is
+ * accessed by reflection. The output is identical to {@code JsonFormat.printer().includingDefaultValueFields()}
+ * and the parsed message is identical to the result of {@code JsonFormat.parser()}.
+ *
+ * <p>The codec only handles what it can do identically: proto3 messages without well known types, and canonical
+ * json merged to an empty builder. Otherwise {@code false} is returned and the caller should use JsonFormat.
+ * Values which don't survive the binary encoding are not supported either: negative zero of singular floating point
+ * fields and strings with unpaired surrogates, which are encoded as '?'. Both are checked on the message before
+ * printing, only fields which may hold them are read.
+ *
+ * <p>Printing copies the message to its binary encoding first. Serialization is generated code writing to a
+ * pre-sized array, it costs much less than the reflective field access and boxing of JsonFormat it replaces, see
+ * {@code SimpleJsonFormatBenchmark} in the benchmarks module.
+ */
+public final class FastJsonCodec {
+
+    private FastJsonCodec() {
+        // no instance
+    }
+
+    /**
+     * @param descriptor message type
+     * @return true if messages of the type can be converted by this codec
+     */
+    public static boolean isSupported(Descriptor descriptor) {
+        checkNotNull(descriptor, "descriptor should not be null");
+        return MessagePlan.of(descriptor).supported;
+    }
+
+    /**
+     * print message to json, nothing is appended if the message is not supported.
+     *
+     * @param message message or builder
+     * @param output output to append json
+     * @return true if printed
+     */
+    public static boolean print(MessageOrBuilder message, StringBuilder output) {
+        checkNotNull(message, "message should not be null");
+        checkNotNull(output, "output should not be null");
+        MessagePlan plan = MessagePlan.of(message.getDescriptorForType());
+        if (!plan.supported || hasNegativeZero(message, plan) || hasUnpairedSurrogate(message, plan)) {
+            return false;
+        }
+        byte[] encoded;
+        if (message instanceof Message) {
+            encoded = ((Message) message).toByteArray();
+        } else if (message instanceof Message.Builder) {
+            encoded = ((Message.Builder) message).buildPartial().toByteArray();
+        } else {
+            return false;
+        }
+
+        int length = output.length();
+        try {
+            new FastJsonPrinter(output).print(plan, CodedInputStream.newInstance(encoded));
+            return true;
+        } catch (IOException | UnsupportedContentException e) {
+            output.setLength(length);
+            return false;
+        }
+    }
+
+    /**
+     * @return true if a field which is skipped by serialization holds negative zero
+     */
+    private static boolean hasNegativeZero(MessageOrBuilder message, MessagePlan plan) {
+        for (FieldPlan field : plan.negativeZeroFields) {
+            if (field.map) {
+                for (Object entry : (List<?>) message.getField(field.descriptor)) {
+                    Object value = ((Message) entry).getField(field.value.descriptor);
+                    if (hasNegativeZero((Message) value, field.value.message)) {
+                        return true;
+                    }
+                }
+            } else if (field.repeated) {
+                for (Object value : (List<?>) message.getField(field.descriptor)) {
+                    if (hasNegativeZero((Message) value, field.message)) {
+                        return true;
+                    }
+                }
+            } else if (field.message != null) {
+                if (message.hasField(field.descriptor)
+                        && hasNegativeZero((Message) message.getField(field.descriptor), field.message)) {
+                    return true;
+                }
+            } else if (isNegativeZero(message.getField(field.descriptor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a string field holds unpaired surrogates, which serialization replaces with '?'
+     */
+    private static boolean hasUnpairedSurrogate(MessageOrBuilder message, MessagePlan plan) {
+        for (FieldPlan field : plan.stringFields) {
+            if (field.map) {
+                for (Object entry : (List<?>) message.getField(field.descriptor)) {
+                    if (hasUnpairedSurrogate((Message) entry, field.key)
+                            || hasUnpairedSurrogate((Message) entry, field.value)) {
+                        return true;
+                    }
+                }
+            } else if (field.repeated) {
+                for (Object value : (List<?>) message.getField(field.descriptor)) {
+                    if (field.message != null ? hasUnpairedSurrogate((Message) value, field.message)
+                            : hasUnpairedSurrogate((String) value)) {
+                        return true;
+                    }
+                }
+            } else if (hasUnpairedSurrogate(message, field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasUnpairedSurrogate(MessageOrBuilder message, FieldPlan field) {
+        if (field.message != null) {
+            return message.hasField(field.descriptor)
+                    && hasUnpairedSurrogate((Message) message.getField(field.descriptor), field.message);
+        }
+        return field.type == FieldDescriptor.Type.STRING
+                && hasUnpairedSurrogate((String) message.getField(field.descriptor));
+    }
+
+    private static boolean hasUnpairedSurrogate(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNegativeZero(Object value) {
+        if (value instanceof Float) {
+            return Float.floatToRawIntBits((Float) value) == Float.floatToRawIntBits(-0.0f);
+        }
+        return Double.doubleToRawLongBits((Double) value) == Double.doubleToRawLongBits(-0.0);
+    }
+
+    /**
+     * parse json and merge to builder, the builder is not changed if the json is not supported.
+     *
+     * @param json content in json format
+     * @param builder empty message builder
+     * @return true if merged
+     */
+    public static boolean merge(CharSequence json, Message.Builder builder) {
+        checkNotNull(json, "json should not be null");
+        checkNotNull(builder, "builder should not be null");
+        MessagePlan plan = MessagePlan.of(builder.getDescriptorForType());
+        // JsonFormat rejects fields which are already set, and replaces message fields instead of merging them
+        if (!plan.supported || builder.buildPartial().getSerializedSize() != 0) {
+            return false;
+        }
+
+        FastJsonParser.WireBuffer encoded;
+        try {
+            encoded = new FastJsonParser(new JsonReader(new CharSequenceReader(json))).parse(plan);
+        } catch (IOException | RuntimeException e) {
+            // malformed json or content in other forms, let JsonFormat parse or report it
+            return false;
+        }
+        try {
+            builder.mergeFrom(encoded.bytes(), 0, encoded.size());
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("fail to merge encoded json", e);
+        }
+        return true;
+    }
+
+    /**
+     * Content can't be converted identically to JsonFormat.
+     */
+    static final class UnsupportedContentException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // thrown for control flow only, no stack trace
+        static final UnsupportedContentException INSTANCE = new UnsupportedContentException();
+
+        private UnsupportedContentException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package io.dreamfly.grpc.internal.util;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.dreamfly.grpc.internal.util.MessagePlan.FieldPlan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parser of {@link FastJsonCodec}, encodes json to the binary encoding of message.
+ *
+ * <p>Only the canonical json accepted by {@code JsonFormat.parser()} with the same result is encoded: unknown,
+ * duplicated or null fields, integers not in plain digits and strings with unpaired surrogates are rejected by
+ * {@link FastJsonCodec.UnsupportedContentException} and left to JsonFormat.
+ */
+final class FastJsonParser {
+
+    // same as the default recursion limit of JsonFormat
+    private static final int RECURSION_LIMIT = 100;
+    // same as JsonFormat, printed floats may be a little out of range due to precision loss
+    private static final double FLOAT_RANGE = Float.MAX_VALUE * (1.0 + 1e-6);
+
+    private final JsonReader reader;
+    // one buffer per nesting level, nested messages are encoded before their length is known
+    private final List<WireBuffer> buffers = new ArrayList<>();
+
+    FastJsonParser(JsonReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * parse the json object of message.
+     *
+     * @param plan plan of message type
+     * @return buffer of binary encoding, valid until the next parse
+     */
+    WireBuffer parse(MessagePlan plan) throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        parseMessage(plan, 0, 1);
+        expect(JsonToken.END_DOCUMENT);
+        return buffer(0);
+    }
+
+    private void parseMessage(MessagePlan plan, int level, int depth) throws IOException {
+        if (depth > RECURSION_LIMIT) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        WireBuffer out = buffer(level);
+        out.reset();
+        boolean[] parsed = new boolean[plan.fields.length];
+        boolean[] oneofParsed = plan.oneofCount > 0 ? new boolean[plan.oneofCount] : null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            FieldPlan field = plan.findField(reader.nextName());
+            if (field == null || parsed[field.index]) {
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+            }
+            parsed[field.index] = true;
+            if (field.oneofIndex >= 0) {
+                if (oneofParsed[field.oneofIndex]) {
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+                oneofParsed[field.oneofIndex] = true;
+            }
+
+            if (field.map) {
+                parseMap(field, level, depth);
+            } else if (field.repeated) {
+                expect(JsonToken.BEGIN_ARRAY);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    parseValue(field, out, level, depth);
+                }
+                reader.endArray();
+            } else {
+                parseValue(field, out, level, depth);
+            }
+        }
+        reader.endObject();
+    }
+
+    private void parseMap(FieldPlan field, int level, int depth) throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        WireBuffer out = buffer(level);
+        WireBuffer entry = buffer(level + 1);
+        Set<String> keys = new HashSet<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (!keys.add(key)) {
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+            }
+            entry.reset();
+            writeKey(field.key, key, entry);
+            parseValue(field.value, entry, level + 1, depth);
+            out.writeLengthDelimited(field.tag, entry);
+        }
+        reader.endObject();
+    }
+
+    private void writeKey(FieldPlan key, String text, WireBuffer out) {
+        switch (key.type) {
+            case STRING:
+                out.writeString(key.tag, text);
+                break;
+            case BOOL:
+                if (!"true".equals(text) && !"false".equals(text)) {
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+                out.writeVarint(key.tag, "true".equals(text) ? 1 : 0);
+                break;
+            default:
+                writeInteger(key, text, out);
+                break;
+        }
+    }
+
+    private void parseValue(FieldPlan field, WireBuffer out, int level, int depth) throws IOException {
+        switch (field.type) {
+            case BOOL:
+                expect(JsonToken.BOOLEAN);
+                out.writeVarint(field.tag, reader.nextBoolean() ? 1 : 0);
+                break;
+            case FLOAT:
+                out.writeFixed32(field.tag, Float.floatToRawIntBits(parseFloat()));
+                break;
+            case DOUBLE:
+                out.writeFixed64(field.tag, Double.doubleToRawLongBits(parseDouble()));
+                break;
+            case STRING:
+                expect(JsonToken.STRING);
+                out.writeString(field.tag, reader.nextString());
+                break;
+            case BYTES:
+                expect(JsonToken.STRING);
+                byte[] bytes;
+                try {
+                    bytes = BaseEncoding.base64().decode(reader.nextString());
+                } catch (IllegalArgumentException e) {
+                    // url safe encoding is also accepted by JsonFormat
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+                out.writeBytes(field.tag, bytes, 0, bytes.length);
+                break;
+            case ENUM:
+                if (reader.peek() == JsonToken.NUMBER) {
+                    // unknown values are printed as number
+                    out.writeVarint(field.tag, (int) parseInteger(reader.nextString(), Integer.MIN_VALUE,
+                            Integer.MAX_VALUE));
+                    break;
+                }
+                expect(JsonToken.STRING);
+                Integer number = field.enumNumbers.get(reader.nextString());
+                if (number == null) {
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+                out.writeVarint(field.tag, number);
+                break;
+            case MESSAGE:
+                expect(JsonToken.BEGIN_OBJECT);
+                parseMessage(field.message, level + 1, depth + 1);
+                out.writeLengthDelimited(field.tag, buffer(level + 1));
+                break;
+            default:
+                JsonToken token = reader.peek();
+                if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+                writeInteger(field, reader.nextString(), out);
+                break;
+        }
+    }
+
+    private float parseFloat() throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return (float) parseSpecialDouble(reader.nextString());
+        }
+        if (token != JsonToken.NUMBER) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        double value = Double.parseDouble(reader.nextString());
+        if (value > FLOAT_RANGE || value < -FLOAT_RANGE) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        return (float) value;
+    }
+
+    private double parseDouble() throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return parseSpecialDouble(reader.nextString());
+        }
+        if (token != JsonToken.NUMBER) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        double value = Double.parseDouble(reader.nextString());
+        // JsonFormat checks the range with a tolerance, leave the boundary to it
+        if (Double.isInfinite(value) || Math.abs(value) == Double.MAX_VALUE) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        return value;
+    }
+
+    private static double parseSpecialDouble(String text) {
+        switch (text) {
+            case "NaN":
+                return Double.NaN;
+            case "Infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-Infinity":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    private static void writeInteger(FieldPlan field, String text, WireBuffer out) {
+        switch (field.type) {
+            case INT32:
+                out.writeVarint(field.tag, (int) parseInteger(text, Integer.MIN_VALUE, Integer.MAX_VALUE));
+                break;
+            case SINT32:
+                int sint32 = (int) parseInteger(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                out.writeVarint(field.tag, ((sint32 << 1) ^ (sint32 >> 31)) & 0xFFFFFFFFL);
+                break;
+            case SFIXED32:
+                out.writeFixed32(field.tag, (int) parseInteger(text, Integer.MIN_VALUE, Integer.MAX_VALUE));
+                break;
+            case UINT32:
+                out.writeVarint(field.tag, parseInteger(text, 0, 0xFFFFFFFFL));
+                break;
+            case FIXED32:
+                out.writeFixed32(field.tag, (int) parseInteger(text, 0, 0xFFFFFFFFL));
+                break;
+            case INT64:
+                out.writeVarint(field.tag, parseInteger(text, Long.MIN_VALUE, Long.MAX_VALUE));
+                break;
+            case SINT64:
+                long sint64 = parseInteger(text, Long.MIN_VALUE, Long.MAX_VALUE);
+                out.writeVarint(field.tag, (sint64 << 1) ^ (sint64 >> 63));
+                break;
+            case SFIXED64:
+                out.writeFixed64(field.tag, parseInteger(text, Long.MIN_VALUE, Long.MAX_VALUE));
+                break;
+            case UINT64:
+                out.writeVarint(field.tag, parseUnsignedLong(text));
+                break;
+            case FIXED64:
+                out.writeFixed64(field.tag, parseUnsignedLong(text));
+                break;
+            default:
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    private static long parseInteger(String text, long min, long max) {
+        checkPlainInteger(text, min < 0);
+        long value;
+        try {
+            value = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        if (value < min || value > max) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        return value;
+    }
+
+    private static long parseUnsignedLong(String text) {
+        checkPlainInteger(text, false);
+        try {
+            return Long.parseUnsignedLong(text);
+        } catch (NumberFormatException e) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    // integers like 1.0, 1e2, +1 or 01 are also accepted by JsonFormat
+    private static void checkPlainInteger(String text, boolean signed) {
+        int start = signed && text.startsWith("-") ? 1 : 0;
+        int length = text.length();
+        if (length == start || length - start > 20 || (text.charAt(start) == '0' && length - start > 1)) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+            }
+        }
+    }
+
+    private void expect(JsonToken token) throws IOException {
+        if (reader.peek() != token) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    private WireBuffer buffer(int level) {
+        while (buffers.size() <= level) {
+            buffers.add(new WireBuffer());
+        }
+        return buffers.get(level);
+    }
+
+    /**
+     * Growable buffer of binary encoding.
+     */
+    static final class WireBuffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeVarint(int tag, long value) {
+            writeRawVarint(tag);
+            writeRawVarint(value);
+        }
+
+        void writeFixed32(int tag, int value) {
+            writeRawVarint(tag);
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                bytes[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeFixed64(int tag, long value) {
+            writeRawVarint(tag);
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeString(int tag, String value) {
+            checkSurrogates(value);
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeBytes(tag, encoded, 0, encoded.length);
+        }
+
+        void writeLengthDelimited(int tag, WireBuffer content) {
+            writeBytes(tag, content.bytes, 0, content.size);
+        }
+
+        void writeBytes(int tag, byte[] value, int offset, int length) {
+            writeRawVarint(tag);
+            writeRawVarint(length);
+            ensure(length);
+            System.arraycopy(value, offset, bytes, size, length);
+            size += length;
+        }
+
+        private void writeRawVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+
+        // unpaired surrogates are kept by JsonFormat but replaced by the binary encoding
+        private static void checkSurrogates(String value) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        i++;
+                    } else {
+                        throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package io.dreamfly.grpc.internal.util;
+
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import io.dreamfly.grpc.internal.util.MessagePlan.FieldPlan;
+
+import java.io.IOException;
+
+/**
+ * Printer of {@link FastJsonCodec}, prints the binary encoding of a message in the layout of
+ * {@code JsonFormat.printer().includingDefaultValueFields()}.
+ *
+ * <p>The encoding is expected in the order of field number like protobuf serializes it, content in other order
+ * is rejected by {@link FastJsonCodec.UnsupportedContentException}.
+ */
+final class FastJsonPrinter {
+
+    private static final String INDENT = "                                                                ";
+
+    // same as the escaping of gson with html escaping disabled
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+    }
+
+    private final StringBuilder out;
+    private int depth;
+
+    FastJsonPrinter(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * print message.
+     *
+     * @param plan plan of message type
+     * @param input binary encoding of message, limited to the message
+     */
+    void print(MessagePlan plan, CodedInputStream input) throws IOException {
+        out.append("{\n");
+        depth++;
+        boolean printed = false;
+        int tag = input.readTag();
+        for (FieldPlan field : plan.fields) {
+            tag = skipUnknownFields(plan, input, tag, field.number);
+            boolean present = tag != 0 && WireFormat.getTagFieldNumber(tag) == field.number;
+            if (!present && !field.printedWhenAbsent) {
+                continue;
+            }
+            if (printed) {
+                out.append(",\n");
+            }
+            printed = true;
+            indent();
+            out.append(field.jsonKey);
+            if (field.map) {
+                tag = printMap(field, input, tag);
+            } else if (field.repeated) {
+                tag = printArray(field, input, tag);
+            } else if (present) {
+                checkWireType(field, tag);
+                printValue(field, input, false);
+                tag = input.readTag();
+                if (tag != 0 && WireFormat.getTagFieldNumber(tag) == field.number) {
+                    // the last value wins when parsing, but JsonFormat prints the merged value
+                    throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+                }
+            } else {
+                out.append(field.defaultJson);
+            }
+        }
+        skipUnknownFields(plan, input, tag, Integer.MAX_VALUE);
+        if (printed) {
+            out.append('\n');
+        }
+        depth--;
+        indent();
+        out.append('}');
+    }
+
+    private int skipUnknownFields(MessagePlan plan, CodedInputStream input, int tag, int untilNumber)
+            throws IOException {
+        while (tag != 0 && WireFormat.getTagFieldNumber(tag) < untilNumber) {
+            if (plan.findField(WireFormat.getTagFieldNumber(tag)) != null) {
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+            }
+            input.skipField(tag);
+            tag = input.readTag();
+        }
+        return tag;
+    }
+
+    private int printArray(FieldPlan field, CodedInputStream input, int tag) throws IOException {
+        out.append('[');
+        boolean printed = false;
+        while (tag != 0 && WireFormat.getTagFieldNumber(tag) == field.number) {
+            if (field.packable && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                int oldLimit = input.pushLimit(input.readRawVarint32());
+                while (input.getBytesUntilLimit() > 0) {
+                    if (printed) {
+                        out.append(", ");
+                    }
+                    printed = true;
+                    printValue(field, input, false);
+                }
+                input.popLimit(oldLimit);
+            } else {
+                checkWireType(field, tag);
+                if (printed) {
+                    out.append(", ");
+                }
+                printed = true;
+                printValue(field, input, false);
+            }
+            tag = input.readTag();
+        }
+        out.append(']');
+        return tag;
+    }
+
+    private int printMap(FieldPlan field, CodedInputStream input, int tag) throws IOException {
+        out.append("{\n");
+        depth++;
+        boolean printed = false;
+        while (tag != 0 && WireFormat.getTagFieldNumber(tag) == field.number) {
+            checkWireType(field, tag);
+            int oldLimit = input.pushLimit(input.readRawVarint32());
+            if (printed) {
+                out.append(",\n");
+            }
+            printed = true;
+            indent();
+
+            // key fields are always quoted
+            int entryTag = input.readTag();
+            if (entryTag == field.key.tag) {
+                printValue(field.key, input, true);
+                entryTag = input.readTag();
+            } else {
+                out.append(field.key.quotedDefaultJson);
+            }
+            out.append(": ");
+            if (entryTag == field.value.tag) {
+                printValue(field.value, input, false);
+                entryTag = input.readTag();
+            } else if (field.value.message != null) {
+                print(field.value.message, CodedInputStream.newInstance(new byte[0]));
+            } else {
+                out.append(field.value.defaultJson);
+            }
+            if (entryTag != 0) {
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+            }
+            input.popLimit(oldLimit);
+            tag = input.readTag();
+        }
+        if (printed) {
+            out.append('\n');
+        }
+        depth--;
+        indent();
+        out.append('}');
+        return tag;
+    }
+
+    private void printValue(FieldPlan field, CodedInputStream input, boolean quoted) throws IOException {
+        switch (field.type) {
+            case INT32:
+                printQuotedIf(quoted, Integer.toString(input.readInt32()));
+                break;
+            case SINT32:
+                printQuotedIf(quoted, Integer.toString(input.readSInt32()));
+                break;
+            case SFIXED32:
+                printQuotedIf(quoted, Integer.toString(input.readSFixed32()));
+                break;
+            case UINT32:
+                printQuotedIf(quoted, Integer.toUnsignedString(input.readUInt32()));
+                break;
+            case FIXED32:
+                printQuotedIf(quoted, Integer.toUnsignedString(input.readFixed32()));
+                break;
+            case INT64:
+                printQuotedIf(true, Long.toString(input.readInt64()));
+                break;
+            case SINT64:
+                printQuotedIf(true, Long.toString(input.readSInt64()));
+                break;
+            case SFIXED64:
+                printQuotedIf(true, Long.toString(input.readSFixed64()));
+                break;
+            case UINT64:
+                printQuotedIf(true, Long.toUnsignedString(input.readUInt64()));
+                break;
+            case FIXED64:
+                printQuotedIf(true, Long.toUnsignedString(input.readFixed64()));
+                break;
+            case BOOL:
+                printQuotedIf(quoted, input.readBool() ? "true" : "false");
+                break;
+            case FLOAT:
+                float floatValue = input.readFloat();
+                if (Float.isNaN(floatValue) || Float.isInfinite(floatValue)) {
+                    printQuotedIf(true, Float.toString(floatValue));
+                } else {
+                    printQuotedIf(quoted, Float.toString(floatValue));
+                }
+                break;
+            case DOUBLE:
+                double doubleValue = input.readDouble();
+                if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                    printQuotedIf(true, Double.toString(doubleValue));
+                } else {
+                    printQuotedIf(quoted, Double.toString(doubleValue));
+                }
+                break;
+            case STRING:
+                printString(input.readString());
+                break;
+            case BYTES:
+                out.append('"').append(BaseEncoding.base64().encode(input.readByteArray())).append('"');
+                break;
+            case ENUM:
+                int number = input.readEnum();
+                String name = field.enumNames.get(number);
+                // unknown values are printed as number
+                out.append(name != null ? name : Integer.toString(number));
+                break;
+            case MESSAGE:
+                int oldLimit = input.pushLimit(input.readRawVarint32());
+                print(field.message, input);
+                input.popLimit(oldLimit);
+                break;
+            default:
+                throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    private void printQuotedIf(boolean quoted, String value) {
+        if (quoted) {
+            out.append('"').append(value).append('"');
+        } else {
+            out.append(value);
+        }
+    }
+
+    private void printString(String value) {
+        out.append('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 128) {
+                replacement = REPLACEMENT_CHARS[c];
+                if (replacement == null) {
+                    continue;
+                }
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                continue;
+            }
+            out.append(value, last, i).append(replacement);
+            last = i + 1;
+        }
+        out.append(value, last, length).append('"');
+    }
+
+    private void checkWireType(FieldPlan field, int tag) {
+        if (WireFormat.getTagWireType(tag) != field.wireType) {
+            throw FastJsonCodec.UnsupportedContentException.INSTANCE;
+        }
+    }
+
+    private void indent() {
+        int width = depth * 2;
+        while (width > INDENT.length()) {
+            out.append(INDENT);
+            width -= INDENT.length();
+        }
+        out.append(INDENT, 0, width);
+    }
+}
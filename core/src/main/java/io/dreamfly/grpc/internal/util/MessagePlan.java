@@ -0,0 +1,342 @@
+package io.dreamfly.grpc.internal.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Conversion plan of a message type used by {@link FastJsonCodec}, compiled once per descriptor.
+ *
+ * <p>A plan is supported only if the message type and all types reachable from it are proto3 and don't need the
+ * special JSON mapping of well known types, other plans have no fields.
+ */
+final class MessagePlan {
+
+    // types printed by the well known type printers of JsonFormat
+    private static final Set<String> SPECIAL_TYPES = ImmutableSet.of(
+            "google.protobuf.Any", "google.protobuf.Timestamp", "google.protobuf.Duration",
+            "google.protobuf.FieldMask", "google.protobuf.Struct", "google.protobuf.Value",
+            "google.protobuf.ListValue", "google.protobuf.NullValue", "google.protobuf.DoubleValue",
+            "google.protobuf.FloatValue", "google.protobuf.Int64Value", "google.protobuf.UInt64Value",
+            "google.protobuf.Int32Value", "google.protobuf.UInt32Value", "google.protobuf.BoolValue",
+            "google.protobuf.StringValue", "google.protobuf.BytesValue");
+
+    // bounded since descriptors can be built at runtime, evicted plans are still referred by their parents
+    private static final int MAX_PLANS = 1024;
+    private static final ConcurrentMap<Descriptor, MessagePlan> plans = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PLANS)
+            .<Descriptor, MessagePlan>build()
+            .asMap();
+
+    final Descriptor descriptor;
+    final boolean supported;
+    // fields in the order of field number, which is also the order of JsonFormat
+    FieldPlan[] fields = new FieldPlan[0];
+    int oneofCount;
+    // fields which may hold negative zero not written by proto3 serialization, directly or in nested messages
+    FieldPlan[] negativeZeroFields = new FieldPlan[0];
+    // fields which may hold strings with unpaired surrogates written as '?', directly or in nested messages
+    FieldPlan[] stringFields = new FieldPlan[0];
+    private int[] numbers = new int[0];
+    private Map<String, FieldPlan> fieldsByName = new HashMap<>();
+
+    private MessagePlan(Descriptor descriptor, boolean supported) {
+        this.descriptor = descriptor;
+        this.supported = supported;
+    }
+
+    /**
+     * get the plan of message type, compile it if not cached.
+     *
+     * @param descriptor message type
+     * @return plan
+     */
+    static MessagePlan of(Descriptor descriptor) {
+        MessagePlan plan = plans.get(descriptor);
+        return plan != null ? plan : compile(descriptor);
+    }
+
+    /**
+     * @param number field number
+     * @return field of the number, null if unknown
+     */
+    FieldPlan findField(int number) {
+        int index = Arrays.binarySearch(numbers, number);
+        return index >= 0 ? fields[index] : null;
+    }
+
+    /**
+     * @param name json name or original name of field
+     * @return field of the name, null if unknown
+     */
+    FieldPlan findField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    private static synchronized MessagePlan compile(Descriptor descriptor) {
+        MessagePlan plan = plans.get(descriptor);
+        if (plan != null) {
+            return plan;
+        }
+        // plans of recursive types refer to each other, publish them after all of them are compiled
+        Map<Descriptor, MessagePlan> compiled = new HashMap<>();
+        plan = compile(descriptor, compiled);
+        plans.putAll(compiled);
+        return plan;
+    }
+
+    private static MessagePlan compile(Descriptor descriptor, Map<Descriptor, MessagePlan> compiled) {
+        MessagePlan plan = plans.get(descriptor);
+        if (plan == null) {
+            plan = compiled.get(descriptor);
+        }
+        if (plan != null) {
+            return plan;
+        }
+        plan = new MessagePlan(descriptor, isSupported(descriptor, new HashSet<>()));
+        compiled.put(descriptor, plan);
+        if (!plan.supported) {
+            return plan;
+        }
+
+        List<FieldDescriptor> descriptors = descriptor.getFields();
+        FieldPlan[] fields = new FieldPlan[descriptors.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new FieldPlan(descriptors.get(i), compiled);
+        }
+        Arrays.sort(fields, Comparator.comparingInt(field -> field.number));
+        int[] numbers = new int[fields.length];
+        Map<String, FieldPlan> fieldsByName = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            fields[i].index = i;
+            numbers[i] = fields[i].number;
+            fieldsByName.put(fields[i].descriptor.getName(), fields[i]);
+            fieldsByName.put(fields[i].descriptor.getJsonName(), fields[i]);
+        }
+        plan.fields = fields;
+        plan.numbers = numbers;
+        plan.fieldsByName = fieldsByName;
+        plan.oneofCount = descriptor.getOneofs().size();
+        List<FieldPlan> negativeZeroFields = new ArrayList<>();
+        List<FieldPlan> stringFields = new ArrayList<>();
+        for (FieldPlan field : fields) {
+            if (field.mayDropNegativeZero()) {
+                negativeZeroFields.add(field);
+            }
+            if (field.mayHoldString()) {
+                stringFields.add(field);
+            }
+        }
+        plan.negativeZeroFields = negativeZeroFields.toArray(new FieldPlan[0]);
+        plan.stringFields = stringFields.toArray(new FieldPlan[0]);
+        return plan;
+    }
+
+    private static boolean isSupported(Descriptor descriptor, Set<Descriptor> visited) {
+        if (!visited.add(descriptor)) {
+            return true;
+        }
+        if (descriptor.getFile().getSyntax() != FileDescriptor.Syntax.PROTO3
+                || SPECIAL_TYPES.contains(descriptor.getFullName())) {
+            return false;
+        }
+        for (FieldDescriptor field : descriptor.getFields()) {
+            switch (field.getType()) {
+                case GROUP:
+                    return false;
+                case ENUM:
+                    if (SPECIAL_TYPES.contains(field.getEnumType().getFullName())) {
+                        return false;
+                    }
+                    break;
+                case MESSAGE:
+                    if (!isSupported(field.getMessageType(), visited)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if messages of the type or types reachable from it have singular floating point fields, proto3
+     * serialization skips them if they are zero including negative zero, which JsonFormat prints as "-0.0"
+     */
+    private static boolean mayDropNegativeZero(Descriptor descriptor, Set<Descriptor> visited) {
+        if (!visited.add(descriptor)) {
+            return false;
+        }
+        for (FieldDescriptor field : descriptor.getFields()) {
+            if (isSingularFloatingPoint(field)) {
+                return true;
+            }
+            if (field.getType() == FieldDescriptor.Type.MESSAGE
+                    && mayDropNegativeZero(field.getMessageType(), visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if messages of the type or types reachable from it have string fields
+     */
+    private static boolean mayHoldString(Descriptor descriptor, Set<Descriptor> visited) {
+        if (!visited.add(descriptor)) {
+            return false;
+        }
+        for (FieldDescriptor field : descriptor.getFields()) {
+            if (field.getType() == FieldDescriptor.Type.STRING) {
+                return true;
+            }
+            if (field.getType() == FieldDescriptor.Type.MESSAGE && mayHoldString(field.getMessageType(), visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSingularFloatingPoint(FieldDescriptor field) {
+        return !field.isRepeated() && field.getContainingOneof() == null
+                && (field.getType() == FieldDescriptor.Type.FLOAT || field.getType() == FieldDescriptor.Type.DOUBLE);
+    }
+
+    /**
+     * Conversion plan of a field, map entry fields are planned as key and value.
+     */
+    static final class FieldPlan {
+        final FieldDescriptor descriptor;
+        final FieldDescriptor.Type type;
+        final int number;
+        // tag of a single value, packed values are read but never written
+        final int tag;
+        final int wireType;
+        final boolean repeated;
+        final boolean map;
+        final boolean packable;
+        // JsonFormat skips unset message fields and unset oneof fields
+        final boolean printedWhenAbsent;
+        final int oneofIndex;
+        // "jsonName": of the field
+        final String jsonKey;
+        // default value in json, also quoted for map keys
+        final String defaultJson;
+        final String quotedDefaultJson;
+        final MessagePlan message;
+        final FieldPlan key;
+        final FieldPlan value;
+        final Map<Integer, String> enumNames;
+        final Map<String, Integer> enumNumbers;
+        int index;
+
+        FieldPlan(FieldDescriptor descriptor, Map<Descriptor, MessagePlan> compiled) {
+            this.descriptor = descriptor;
+            this.type = descriptor.getType();
+            this.number = descriptor.getNumber();
+            this.wireType = descriptor.getLiteType().getWireType();
+            this.tag = number << 3 | wireType;
+            this.repeated = descriptor.isRepeated();
+            this.map = descriptor.isMapField();
+            this.packable = descriptor.isPackable();
+            this.printedWhenAbsent = repeated
+                    || (type != FieldDescriptor.Type.MESSAGE && descriptor.getContainingOneof() == null);
+            this.oneofIndex = descriptor.getContainingOneof() != null ? descriptor.getContainingOneof().getIndex() : -1;
+            this.jsonKey = "\"" + descriptor.getJsonName() + "\": ";
+
+            if (map) {
+                Descriptor entry = descriptor.getMessageType();
+                this.key = new FieldPlan(entry.findFieldByName("key"), compiled);
+                this.value = new FieldPlan(entry.findFieldByName("value"), compiled);
+                this.message = null;
+            } else {
+                this.key = null;
+                this.value = null;
+                this.message = type == FieldDescriptor.Type.MESSAGE
+                        ? compile(descriptor.getMessageType(), compiled) : null;
+            }
+
+            if (type == FieldDescriptor.Type.ENUM) {
+                this.enumNames = new HashMap<>();
+                this.enumNumbers = new HashMap<>();
+                for (EnumValueDescriptor enumValue : descriptor.getEnumType().getValues()) {
+                    // aliases print the first name of the number
+                    enumNames.putIfAbsent(enumValue.getNumber(), "\"" + enumValue.getName() + "\"");
+                    enumNumbers.put(enumValue.getName(), enumValue.getNumber());
+                }
+            } else {
+                this.enumNames = null;
+                this.enumNumbers = null;
+            }
+
+            this.defaultJson = defaultJson(false);
+            this.quotedDefaultJson = defaultJson(true);
+        }
+
+        private boolean mayDropNegativeZero() {
+            if (map) {
+                return value.message != null && MessagePlan.mayDropNegativeZero(value.descriptor.getMessageType(),
+                        new HashSet<>());
+            }
+            if (message != null) {
+                return MessagePlan.mayDropNegativeZero(descriptor.getMessageType(), new HashSet<>());
+            }
+            return isSingularFloatingPoint(descriptor);
+        }
+
+        private boolean mayHoldString() {
+            if (map) {
+                return key.type == FieldDescriptor.Type.STRING || value.mayHoldString();
+            }
+            if (message != null) {
+                return MessagePlan.mayHoldString(descriptor.getMessageType(), new HashSet<>());
+            }
+            return type == FieldDescriptor.Type.STRING;
+        }
+
+        private String defaultJson(boolean quoted) {
+            switch (type) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                case UINT32:
+                case FIXED32:
+                    return quoted ? "\"0\"" : "0";
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                case UINT64:
+                case FIXED64:
+                    return "\"0\"";
+                case FLOAT:
+                case DOUBLE:
+                    return quoted ? "\"0.0\"" : "0.0";
+                case BOOL:
+                    return quoted ? "\"false\"" : "false";
+                case STRING:
+                case BYTES:
+                    return "\"\"";
+                case ENUM:
+                    return enumNames.get(descriptor.getEnumType().getValues().get(0).getNumber());
+                default:
+                    // messages are printed by their plans
+                    return null;
+            }
+        }
+    }
+}
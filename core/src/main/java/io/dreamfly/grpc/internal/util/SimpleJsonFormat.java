@@ -3,10 +3,28 @@ package io.dreamfly.grpc.internal.util;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
 import com.google.protobuf.Message.Builder;
 import com.google.protobuf.MessageOrBuilder;
 import com.google.protobuf.util.JsonFormat;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -14,16 +32,52 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * <p>
  * This class warps the JsonFormat with default configuration and wraps the
  * InvalidProtocolBufferException as RuntimeException.
+ * <p>
+ * The printer and parser are configured once and shared. Conversions to/from streams use per-thread buffers,
+ * so converting a message doesn't allocate more than the result.
+ * <p>
+ * The codec can be switched to {@link FastJsonCodec} by {@link #setCodec(Codec)}, which produces the same json.
  */
 public class SimpleJsonFormat {
 
+    /**
+     * Codec to convert messages.
+     */
+    public enum Codec {
+        /**
+         * protobuf JsonFormat.
+         */
+        JSON_FORMAT,
+        /**
+         * {@link FastJsonCodec}, messages and json it doesn't support are converted by JsonFormat.
+         */
+        FAST
+    }
+
     private static final JsonFormat.Parser defaultParser = JsonFormat.parser();
-    private static final JsonFormat.Printer defaultPrinter = JsonFormat.printer();
+    private static final JsonFormat.Printer defaultPrinter = JsonFormat.printer().includingDefaultValueFields();
+
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private static volatile Codec codec = Codec.JSON_FORMAT;
 
     private SimpleJsonFormat() {
         // no instance
     }
 
+    /**
+     * set the codec to convert messages.
+     *
+     * @param codec codec, default to {@link Codec#JSON_FORMAT}
+     */
+    public static void setCodec(Codec codec) {
+        SimpleJsonFormat.codec = checkNotNull(codec, "codec should not be null");
+    }
+
+    public static Codec getCodec() {
+        return codec;
+    }
+
     /**
      * convert json to message.
      *
@@ -35,12 +89,94 @@ public class SimpleJsonFormat {
                 "jsonContent should not be null or empty");
         checkNotNull(message, "message should not be null");
         try {
+            if (codec == Codec.FAST && FastJsonCodec.merge(jsonContent, message)) {
+                return;
+            }
             defaultParser.merge(jsonContent, message);
         } catch (InvalidProtocolBufferException e) {
             throw new IllegalArgumentException("fail to parse json", e);
         }
     }
 
+    /**
+     * convert json read from reader to message, the reader is not closed.
+     *
+     * @param reader reader of content in json format
+     * @param message message builder
+     */
+    public static void json2message(Reader reader, Builder message) {
+        checkNotNull(reader, "reader should not be null");
+        checkNotNull(message, "message should not be null");
+        if (codec == Codec.JSON_FORMAT) {
+            try {
+                defaultParser.merge(reader, message);
+            } catch (InvalidProtocolBufferException e) {
+                throw new IllegalArgumentException("fail to parse json", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException("fail to read json", e);
+            }
+            return;
+        }
+
+        // read the content first so it can be parsed again by JsonFormat
+        Buffers buffer = buffers.get();
+        StringBuilder content = buffer.acquire();
+        try {
+            buffer.read(reader, content);
+            merge(content, message);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("fail to parse json", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to read json", e);
+        } finally {
+            buffer.release(content);
+        }
+    }
+
+    /**
+     * convert UTF-8 json read from input stream to message, the stream is not closed.
+     *
+     * @param input input stream of content in json format
+     * @param message message builder
+     */
+    public static void json2message(InputStream input, Builder message) {
+        checkNotNull(input, "input should not be null");
+        checkNotNull(message, "message should not be null");
+        Buffers buffer = buffers.get();
+        StringBuilder content = buffer.acquire();
+        try {
+            buffer.decode(input, content);
+            merge(content, message);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("fail to parse json", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to read json", e);
+        } finally {
+            buffer.release(content);
+        }
+    }
+
+    /**
+     * convert json contents to messages.
+     *
+     * @param jsonContents contents in json format
+     * @param defaultInstance default instance of message type
+     * @param <T> message type
+     * @return messages in the order of contents
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Message> List<T> json2messages(Collection<String> jsonContents, T defaultInstance) {
+        checkNotNull(jsonContents, "jsonContents should not be null");
+        checkNotNull(defaultInstance, "defaultInstance should not be null");
+        List<T> messages = new ArrayList<>(jsonContents.size());
+        for (String jsonContent : jsonContents) {
+            Builder builder = defaultInstance.newBuilderForType();
+            json2message(jsonContent, builder);
+            messages.add((T) builder.build());
+        }
+        return messages;
+    }
+
     /**
      * convert message to json.
      *
@@ -49,11 +185,259 @@ public class SimpleJsonFormat {
      */
     public static String message2Json(MessageOrBuilder message) {
         checkNotNull(message, "message should not be null");
+        Buffers buffer = buffers.get();
+        StringBuilder content = buffer.acquire();
+        try {
+            appendTo(message, content);
+            return content.toString();
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("fail to generate json", e);
+        } catch (IOException e) {
+            // never happen for StringBuilder
+            throw new UncheckedIOException("fail to generate json", e);
+        } finally {
+            buffer.release(content);
+        }
+    }
+
+    /**
+     * convert message to json and append to output.
+     *
+     * @param message message contains content
+     * @param output output to append content in json format
+     */
+    public static void message2Json(MessageOrBuilder message, Appendable output) {
+        checkNotNull(message, "message should not be null");
+        checkNotNull(output, "output should not be null");
+        try {
+            appendTo(message, output);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("fail to generate json", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to write json", e);
+        }
+    }
+
+    /**
+     * convert message to json and write to output stream in UTF-8, the stream is neither flushed nor closed.
+     *
+     * @param message message contains content
+     * @param output output stream to write content in json format
+     */
+    public static void message2Json(MessageOrBuilder message, OutputStream output) {
+        checkNotNull(message, "message should not be null");
+        checkNotNull(output, "output should not be null");
+        Buffers buffer = buffers.get();
+        StringBuilder content = buffer.acquire();
+        try {
+            appendTo(message, content);
+            buffer.encode(content, output);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("fail to generate json", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to write json", e);
+        } finally {
+            buffer.release(content);
+        }
+    }
+
+    /**
+     * convert messages to json.
+     *
+     * @param messages messages contain content
+     * @return contents in json format in the order of messages
+     */
+    public static List<String> messages2Json(Collection<? extends MessageOrBuilder> messages) {
+        checkNotNull(messages, "messages should not be null");
+        List<String> contents = new ArrayList<>(messages.size());
+        for (MessageOrBuilder message : messages) {
+            contents.add(message2Json(message));
+        }
+        return contents;
+    }
+
+    /**
+     * convert messages to a json array and append to output.
+     *
+     * @param messages messages contain content
+     * @param output output to append json array
+     */
+    public static void messages2JsonArray(Iterable<? extends MessageOrBuilder> messages, Appendable output) {
+        checkNotNull(messages, "messages should not be null");
+        checkNotNull(output, "output should not be null");
         try {
-            return defaultPrinter.includingDefaultValueFields().print(message);
+            output.append('[');
+            boolean first = true;
+            for (MessageOrBuilder message : messages) {
+                if (!first) {
+                    output.append(',');
+                }
+                first = false;
+                appendTo(checkNotNull(message, "message should not be null"), output);
+            }
+            output.append(']');
         } catch (InvalidProtocolBufferException e) {
             throw new IllegalArgumentException("fail to generate json", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("fail to write json", e);
+        }
+    }
+
+    /**
+     * convert messages to a json array.
+     *
+     * @param messages messages contain content
+     * @return json array
+     */
+    public static String messages2JsonArray(Iterable<? extends MessageOrBuilder> messages) {
+        Buffers buffer = buffers.get();
+        StringBuilder content = buffer.acquire();
+        try {
+            messages2JsonArray(messages, content);
+            return content.toString();
+        } finally {
+            buffer.release(content);
+        }
+    }
+
+    private static void merge(CharSequence content, Builder message) throws IOException {
+        if (codec == Codec.FAST && FastJsonCodec.merge(content, message)) {
+            return;
         }
+        defaultParser.merge(new CharSequenceReader(content), message);
     }
 
+    private static void appendTo(MessageOrBuilder message, Appendable output) throws IOException {
+        if (codec == Codec.FAST) {
+            if (output instanceof StringBuilder) {
+                if (FastJsonCodec.print(message, (StringBuilder) output)) {
+                    return;
+                }
+            } else {
+                Buffers buffer = buffers.get();
+                StringBuilder content = buffer.acquire();
+                try {
+                    if (FastJsonCodec.print(message, content)) {
+                        output.append(content);
+                        return;
+                    }
+                } finally {
+                    buffer.release(content);
+                }
+            }
+        }
+        defaultPrinter.appendTo(message, output);
+    }
+
+    /**
+     * Per-thread buffers, large buffers are dropped after use so a huge message doesn't pin memory.
+     */
+    private static final class Buffers {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+        private static final int CHUNK_SIZE = 4096;
+
+        private StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+        private final char[] chars = new char[CHUNK_SIZE];
+        private final byte[] bytes = new byte[CHUNK_SIZE * 3];
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // true if the builder is in use, nested use on the same thread gets a new builder
+        private boolean inUse;
+
+        StringBuilder acquire() {
+            if (inUse) {
+                return new StringBuilder(INITIAL_CAPACITY);
+            }
+            inUse = true;
+            builder.setLength(0);
+            return builder;
+        }
+
+        void release(StringBuilder used) {
+            if (used != builder) {
+                return;
+            }
+            if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+                builder = new StringBuilder(INITIAL_CAPACITY);
+            }
+            inUse = false;
+        }
+
+        void read(Reader reader, StringBuilder content) throws IOException {
+            int read;
+            while ((read = reader.read(chars)) >= 0) {
+                content.append(chars, 0, read);
+            }
+        }
+
+        void encode(CharSequence content, OutputStream output) throws IOException {
+            encoder.reset();
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            int length = content.length();
+            int offset = 0;
+            while (offset < length) {
+                int end = Math.min(offset + CHUNK_SIZE, length);
+                // don't split surrogate pair between chunks
+                if (end < length && Character.isHighSurrogate(content.charAt(end - 1))) {
+                    end--;
+                }
+                for (int i = offset; i < end; i++) {
+                    chars[i - offset] = content.charAt(i);
+                }
+                CharBuffer in = CharBuffer.wrap(chars, 0, end - offset);
+                out.clear();
+                encoder.encode(in, out, end == length);
+                output.write(bytes, 0, out.position());
+                offset = end;
+            }
+            out.clear();
+            encoder.flush(out);
+            output.write(bytes, 0, out.position());
+        }
+
+        void decode(InputStream input, StringBuilder content) throws IOException {
+            decoder.reset();
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            CharBuffer out = CharBuffer.wrap(chars);
+            in.limit(0);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                in.compact();
+                int read = input.read(bytes, in.position(), in.remaining());
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    in.position(in.position() + read);
+                }
+                in.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(in, out, endOfInput);
+                } while (drain(result, out, content));
+            }
+            while (drain(decoder.flush(out), out, content)) {
+                // flush until all chars are drained
+            }
+        }
+
+        /**
+         * move decoded chars to content.
+         *
+         * @return true if the output was full and decoding should continue
+         */
+        private boolean drain(CoderResult result, CharBuffer out, StringBuilder content)
+                throws CharacterCodingException {
+            if (result.isError()) {
+                result.throwException();
+            }
+            content.append(chars, 0, out.position());
+            out.clear();
+            return result.isOverflow();
+        }
+    }
 }
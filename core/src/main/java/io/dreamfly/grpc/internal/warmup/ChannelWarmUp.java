@@ -0,0 +1,190 @@
+package io.dreamfly.grpc.internal.warmup;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.dreamfly.grpc.internal.loadbalancer.TrackingLoadBalancerFactory;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
+import io.grpc.stub.ClientCalls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Warm-up of a channel, see {@link WarmUpConfig}.
+ *
+ * <p>The channel leaves idle mode at once, so the name resolver starts and the load balancer connects to the
+ * resolved backends. READY backends are counted by the {@link TrackingLoadBalancerFactory} of the channel, and each
+ * of them is probed by avoiding the others with {@link LoadBalancerAttributes#AVOIDED_ADDRESSES}.
+ */
+public class ChannelWarmUp {
+
+    private static Logger logger = LoggerFactory.getLogger(ChannelWarmUp.class);
+
+    private final ManagedChannel channel;
+    private final TrackingLoadBalancerFactory tracker;
+    private final WarmUpConfig config;
+    private final SettableFuture<ManagedChannel> result = SettableFuture.create();
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService timerService;
+    private volatile ScheduledFuture<?> timeoutFuture;
+
+    private ChannelWarmUp(ManagedChannel channel, TrackingLoadBalancerFactory tracker, WarmUpConfig config) {
+        this.channel = checkNotNull(channel, "channel should not be null");
+        this.tracker = checkNotNull(tracker, "tracker should not be null");
+        this.config = checkNotNull(config, "config should not be null");
+    }
+
+    /**
+     * start to warm up the channel.
+     *
+     * @param channel channel built with the tracker
+     * @param tracker load balancer factory of the channel
+     * @param config warm-up config
+     * @return future of the channel, failed with DEADLINE_EXCEEDED if not warmed up in time
+     */
+    public static ListenableFuture<ManagedChannel> start(ManagedChannel channel, TrackingLoadBalancerFactory tracker,
+                                                         WarmUpConfig config) {
+        ChannelWarmUp warmUp = new ChannelWarmUp(channel, tracker, config);
+        warmUp.start();
+        return warmUp.result;
+    }
+
+    private void start() {
+        timerService = SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
+        timeoutFuture = timerService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                finish(timeoutError());
+            }
+        }, config.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+
+        tracker.setListener(new Runnable() {
+            @Override
+            public void run() {
+                checkReady();
+            }
+        });
+        channel.getState(true);
+        // the channel may be connected before the listener is set
+        checkReady();
+    }
+
+    private void checkReady() {
+        int backends = tracker.getBackendCount();
+        if (backends == 0 || tracker.getReadyCount() < Math.ceil(backends * config.getReadyFraction())) {
+            return;
+        }
+        if (!connected.compareAndSet(false, true)) {
+            return;
+        }
+        tracker.setListener(null);
+        logger.debug("channel connected in {} ms: ready={}, backends={}", elapsedMillis(), tracker.getReadyCount(),
+                backends);
+        if (config.getProbeMethod() == null) {
+            finish(null);
+        } else {
+            probe(tracker.getReadyAddresses());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void probe(final List<EquivalentAddressGroup> targets) {
+        long remainingNanos = config.getTimeoutNanos() - (System.nanoTime() - startNanos);
+        if (remainingNanos <= 0) {
+            finish(timeoutError());
+            return;
+        }
+        final MethodDescriptor<Object, Object> method = (MethodDescriptor<Object, Object>) config.getProbeMethod();
+        CallOptions callOptions = CallOptions.DEFAULT.withDeadlineAfter(remainingNanos, TimeUnit.NANOSECONDS);
+        Set<SocketAddress> readyAddresses = new HashSet<>();
+        for (EquivalentAddressGroup target : targets) {
+            readyAddresses.addAll(target.getAddresses());
+        }
+        List<ListenableFuture<Object>> futures = new ArrayList<>(targets.size());
+        for (final EquivalentAddressGroup target : targets) {
+            // the load balancer picks the target since all other ready backends are avoided
+            Set<SocketAddress> avoided = new HashSet<>(readyAddresses);
+            avoided.removeAll(target.getAddresses());
+            ClientCall<Object, Object> call = channel.newCall(method,
+                    callOptions.withOption(LoadBalancerAttributes.AVOIDED_ADDRESSES, avoided));
+            ListenableFuture<Object> future = ClientCalls.futureUnaryCall(call, config.getProbeRequest());
+            futures.add(Futures.catching(future, Throwable.class, t -> {
+                logger.warn("probe call failed in warm-up: method={}, address={}, status={}",
+                        method.getFullMethodName(), target, Status.fromThrowable(t));
+                return null;
+            }, MoreExecutors.directExecutor()));
+        }
+        Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<Object>>() {
+            @Override
+            public void onSuccess(List<Object> responses) {
+                int failed = 0;
+                for (Object response : responses) {
+                    if (response == null) {
+                        failed++;
+                    }
+                }
+                if (failed > 0) {
+                    finish(Status.UNAVAILABLE.withDescription("probe calls failed in warm-up: method="
+                            + method.getFullMethodName() + ", failed=" + failed + "/" + responses.size())
+                            .asRuntimeException());
+                } else {
+                    finish(null);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                finish(t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private RuntimeException timeoutError() {
+        return Status.DEADLINE_EXCEEDED.withDescription("warm-up timed out: ready=" + tracker.getReadyCount()
+                + ", backends=" + tracker.getBackendCount()).asRuntimeException();
+    }
+
+    private void finish(Throwable error) {
+        boolean done = error == null ? result.set(channel) : result.setException(error);
+        if (!done) {
+            return;
+        }
+        tracker.setListener(null);
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+        }
+        SharedResourceHolder.release(GrpcUtil.TIMER_SERVICE, timerService);
+        if (error == null) {
+            logger.info("channel warmed up in {} ms: authority={}, ready={}, backends={}", elapsedMillis(),
+                    channel.authority(), tracker.getReadyCount(), tracker.getBackendCount());
+        }
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
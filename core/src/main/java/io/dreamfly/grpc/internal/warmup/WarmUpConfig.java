@@ -0,0 +1,124 @@
+package io.dreamfly.grpc.internal.warmup;
+
+import io.grpc.MethodDescriptor;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config of warming up a channel: resolve and connect to all backends when the channel is built, instead of on the
+ * first calls.
+ *
+ * <p>Warm-up completes when readyFraction of the resolved backends are READY, and the probe calls, if set, are
+ * answered. It fails if not completed before the timeout, or if a probe call fails.
+ */
+public class WarmUpConfig {
+
+    /**
+     * default config: wait for all backends in 10 seconds, no probe.
+     */
+    public static final WarmUpConfig DEFAULT = newBuilder().build();
+
+    private final double readyFraction;
+    private final long timeoutNanos;
+    private final MethodDescriptor<?, ?> probeMethod;
+    private final Object probeRequest;
+
+    private WarmUpConfig(Builder builder) {
+        this.readyFraction = builder.readyFraction;
+        this.timeoutNanos = builder.timeoutNanos;
+        this.probeMethod = builder.probeMethod;
+        this.probeRequest = builder.probeRequest;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public double getReadyFraction() {
+        return readyFraction;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * @return unary method called on each ready backend, null if no probe
+     */
+    @Nullable
+    public MethodDescriptor<?, ?> getProbeMethod() {
+        return probeMethod;
+    }
+
+    @Nullable
+    public Object getProbeRequest() {
+        return probeRequest;
+    }
+
+    public static class Builder {
+        private double readyFraction = 1.0;
+        private long timeoutNanos = TimeUnit.SECONDS.toNanos(10);
+        private MethodDescriptor<?, ?> probeMethod;
+        private Object probeRequest;
+
+        private Builder() {
+            // use newBuilder()
+        }
+
+        /**
+         * set the fraction of resolved backends which should be READY.
+         *
+         * @param readyFraction fraction between 0 and 1, default to 1
+         * @return Builder
+         */
+        public Builder readyFraction(double readyFraction) {
+            checkArgument(readyFraction > 0 && readyFraction <= 1, "invalid readyFraction " + readyFraction);
+            this.readyFraction = readyFraction;
+            return this;
+        }
+
+        /**
+         * set the deadline of warm-up, including the probe calls.
+         *
+         * @param timeout timeout, default to 10 seconds
+         * @param unit time unit of timeout
+         * @return Builder
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            checkArgument(timeout > 0, "invalid timeout " + timeout);
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * set the unary call sent once to each READY backend after they are connected, to warm up the code paths of
+         * both sides. Warm-up fails with UNAVAILABLE if a probe call doesn't complete with OK.
+         *
+         * <p>Each probe call reaches its backend by avoiding the others with
+         * {@code LoadBalancerAttributes.AVOIDED_ADDRESSES}, which only the load balancing policies other than
+         * PICK_FIRST honour, so a channel with PICK_FIRST or a custom load balancer factory fails to build with a
+         * probe.
+         *
+         * @param method unary method
+         * @param request request of the probe call
+         * @param <ReqT> type of request
+         * @return Builder
+         */
+        public <ReqT> Builder probe(MethodDescriptor<ReqT, ?> method, ReqT request) {
+            checkNotNull(method, "method should not be null");
+            checkArgument(method.getType() == MethodDescriptor.MethodType.UNARY,
+                    "probe method should be unary: %s", method.getFullMethodName());
+            this.probeMethod = method;
+            this.probeRequest = checkNotNull(request, "request should not be null");
+            return this;
+        }
+
+        public WarmUpConfig build() {
+            return new WarmUpConfig(this);
+        }
+    }
+}
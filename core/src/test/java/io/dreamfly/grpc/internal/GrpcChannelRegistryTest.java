@@ -0,0 +1,116 @@
+package io.dreamfly.grpc.internal;
+
+import io.dreamfly.grpc.GrpcChannelRegistry;
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicy;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class GrpcChannelRegistryTest extends ControllableServiceAware {
+
+    public GrpcChannelRegistryTest() {
+        super(10081);
+    }
+
+    @Test
+    public void acquire_shareSameTarget() throws Exception {
+        GrpcChannelRegistry registry = new GrpcChannelRegistry();
+        ManagedChannel channel1 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://localhost:10081"));
+        ManagedChannel channel2 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://LocalHost:10081"));
+        assertThat(registry.channelCount()).isEqualTo(1);
+        assertThat(registry.referenceCount()).isEqualTo(2);
+
+        execute(channel1);
+        execute(channel2);
+        assertThat(registry.connectionCount()).isEqualTo(1);
+
+        // released handle fails calls, other users are not affected
+        channel1.shutdown();
+        assertThat(channel1.isShutdown()).isTrue();
+        assertThat(channel1.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> execute(channel1))
+                .isInstanceOf(StatusRuntimeException.class)
+                .hasMessageContaining("UNAVAILABLE");
+        execute(channel2);
+        assertThat(registry.channelCount()).isEqualTo(1);
+        assertThat(registry.referenceCount()).isEqualTo(1);
+
+        // released twice only counts once
+        channel1.shutdownNow();
+        assertThat(registry.referenceCount()).isEqualTo(1);
+
+        channel2.shutdown();
+        assertThat(channel2.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.channelCount()).isEqualTo(0);
+        assertThat(registry.connectionCount()).isEqualTo(0);
+
+        // a new channel is built after all handles are released
+        ManagedChannel channel3 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081"));
+        execute(channel3);
+        assertThat(registry.channelCount()).isEqualTo(1);
+        channel3.shutdownNow();
+    }
+
+    @Test
+    public void acquire_differentSettings() {
+        GrpcChannelRegistry registry = new GrpcChannelRegistry();
+        ManagedChannel channel1 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081"));
+        ManagedChannel channel2 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081")
+                .loadBalancingPolicy(LoadBalancingPolicy.PICK_FIRST));
+        ManagedChannel channel3 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081")
+                .loadBalancingPolicy(LoadBalancingPolicy.PICK_FIRST));
+        ManagedChannel channel4 = registry.acquire(GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://127.0.0.1:10081;zone=zone-a"));
+        assertThat(registry.channelCount()).isEqualTo(3);
+        assertThat(registry.referenceCount()).isEqualTo(4);
+
+        channel1.shutdownNow();
+        channel2.shutdownNow();
+        channel3.shutdownNow();
+        channel4.shutdownNow();
+        assertThat(registry.channelCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void handle_connectivityState() throws Exception {
+        GrpcChannelRegistry registry = new GrpcChannelRegistry();
+        ManagedChannel channel1 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081"));
+        ManagedChannel channel2 = registry.acquire(GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10081"));
+        assertThat(channel1.getState(false)).isEqualTo(ConnectivityState.IDLE);
+
+        CountDownLatch changed = new CountDownLatch(1);
+        channel1.notifyWhenStateChanged(ConnectivityState.IDLE, changed::countDown);
+        channel1.getState(true);
+        assertThat(changed.await(5, TimeUnit.SECONDS)).isTrue();
+        channel1.resetConnectBackoff();
+        execute(channel2);
+        assertThat(channel2.getState(false)).isEqualTo(ConnectivityState.READY);
+
+        // a released handle is SHUTDOWN while the shared channel is still used
+        channel1.shutdown();
+        assertThat(channel1.getState(true)).isEqualTo(ConnectivityState.SHUTDOWN);
+        CountDownLatch notified = new CountDownLatch(1);
+        channel1.notifyWhenStateChanged(ConnectivityState.READY, notified::countDown);
+        assertThat(notified.getCount()).isEqualTo(0);
+        channel1.enterIdle();
+        assertThat(channel2.getState(false)).isEqualTo(ConnectivityState.READY);
+        channel2.shutdownNow();
+    }
+
+    private static void execute(ManagedChannel channel) {
+        ControllableServiceGrpc.newBlockingStub(channel).execute(ControllableRequest.getDefaultInstance());
+    }
+}
@@ -1,14 +1,24 @@
 package io.dreamfly.grpc.internal;
 
 import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicy;
+import io.dreamfly.grpc.internal.nameresolver.NettyDnsHostResolver;
+import io.dreamfly.grpc.internal.transport.NettyTransports;
 import io.dreamfly.grpc.test.*;
 import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.dreamfly.grpc.test.load.LoadGenerator;
+import io.dreamfly.grpc.test.load.LoadReport;
 import io.grpc.ManagedChannel;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.netty.NettyChannelBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -43,4 +53,149 @@ public class GrpcConnectionBuilderTest extends ControllableServiceAware {
         assertThat(response.getRequestId()).isEqualTo(1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void build_withNettyDnsHostResolver() {
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder().uri(url)
+                .hostResolver(NettyDnsHostResolver.getDefault())
+                .build();
+
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(managedChannel);
+        ControllableRequest request = ControllableRequest.newBuilder()
+                .setExpectedLatency(0)
+                .setRequestId(2)
+                .build();
+        ControllableResponse response = controllableService.execute(request);
+        assertThat(response.getRequestId()).isEqualTo(2);
+        managedChannel.shutdownNow();
+    }
+
+    @Test
+    public void build_preferLocalZone() {
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://127.0.0.1:10011;zone=zone-a,127.0.0.1:10012;zone=zone-b;weight=2,127.0.0.1:10013")
+                .localZone("zone-a")
+                .build();
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(managedChannel);
+        // other zones are used until the local address is ready
+        long localExecuted = services.get(0).getExecutedCount();
+        for (int i = 0; i < 100 && services.get(0).getExecutedCount() == localExecuted; i++) {
+            controllableService.execute(ControllableRequest.getDefaultInstance());
+        }
+        long[] executed = new long[services.size()];
+        for (int i = 0; i < executed.length; i++) {
+            executed[i] = services.get(i).getExecutedCount();
+        }
+        for (int i = 0; i < 10; i++) {
+            controllableService.execute(ControllableRequest.newBuilder().setRequestId(i).build());
+        }
+        assertThat(services.get(0).getExecutedCount() - executed[0]).isEqualTo(10);
+        assertThat(services.get(1).getExecutedCount()).isEqualTo(executed[1]);
+        assertThat(services.get(2).getExecutedCount()).isEqualTo(executed[2]);
+        managedChannel.shutdownNow();
+    }
+
+    @Test
+    public void build_withTransportTuning() {
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder().uri(url)
+                .useEpoll(true)
+                .flowControlWindow(4 * 1024 * 1024)
+                .maxInboundMessageSize(16 * 1024 * 1024)
+                .keepAliveTime(30, TimeUnit.SECONDS)
+                .keepAliveTimeout(5, TimeUnit.SECONDS)
+                .keepAliveWithoutCalls(false)
+                .pooledAllocator(true)
+                .build();
+
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(managedChannel);
+        ControllableRequest request = ControllableRequest.newBuilder()
+                .setExpectedLatency(0)
+                .setRequestId(3)
+                .build();
+        assertThat(controllableService.execute(request).getRequestId()).isEqualTo(3);
+        managedChannel.shutdownNow();
+    }
+
+    @Test
+    public void build_withSharedEventLoopGroup() throws Exception {
+        EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+        GrpcConnectionBuilder builder = GrpcConnectionBuilder.newBuilder().uri(url)
+                .eventLoopGroup(eventLoopGroup, NioSocketChannel.class);
+        ManagedChannel channel1 = builder.build();
+        ManagedChannel channel2 = builder.build();
+
+        ControllableRequest request = ControllableRequest.newBuilder()
+                .setExpectedLatency(0)
+                .setRequestId(4)
+                .build();
+        assertThat(ControllableServiceGrpc.newBlockingStub(channel1).execute(request).getRequestId()).isEqualTo(4);
+        assertThat(ControllableServiceGrpc.newBlockingStub(channel2).execute(request).getRequestId()).isEqualTo(4);
+
+        channel1.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        channel2.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        // managed by caller
+        assertThat(eventLoopGroup.isShuttingDown()).isFalse();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void build_inProcess() throws Exception {
+        ControllableServiceImpl serviceA = new ControllableServiceImpl();
+        ControllableServiceImpl serviceB = new ControllableServiceImpl();
+        Server serverA = InProcessServerBuilder.forName("builder-test-a").addService(serviceA).build().start();
+        Server serverB = InProcessServerBuilder.forName("builder-test-b").addService(serviceB).build().start();
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc+inprocess://builder-test-a,builder-test-b")
+                .loadBalancingPolicy(LoadBalancingPolicy.ROUND_ROBIN)
+                .build();
+
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(managedChannel);
+        for (int i = 0; i < 20; i++) {
+            ControllableRequest request = ControllableRequest.newBuilder().setRequestId(i).build();
+            assertThat(controllableService.execute(request).getRequestId()).isEqualTo(i);
+        }
+        assertThat(serviceA.getExecutedCount()).isGreaterThan(0);
+        assertThat(serviceB.getExecutedCount()).isGreaterThan(0);
+        assertThat(serviceA.getExecutedCount() + serviceB.getExecutedCount()).isEqualTo(20);
+
+        managedChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        serverA.shutdownNow();
+        serverB.shutdownNow();
+    }
+
+    @Test
+    public void build_unixDomainSocket() {
+        GrpcConnectionBuilder builder = GrpcConnectionBuilder.newBuilder().uri("grpc+unix:///tmp/builder-test.sock");
+        Assumptions.assumeFalse(NettyTransports.isEpollAvailable(), "only checks the failure without epoll");
+        Assertions.assertThatThrownBy(builder::build)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("epoll");
+    }
+
+    @Test
+    public void uri_invalidScheme() {
+        Assertions.assertThatThrownBy(() -> GrpcConnectionBuilder.newBuilder().uri("dns:///127.0.0.1:10011"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void build_underLoad() throws Exception {
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .loadBalancingPolicy(LoadBalancingPolicy.ROUND_ROBIN)
+                .build();
+        long[] executedBefore = services.stream().mapToLong(ControllableServiceImpl::getExecutedCount).toArray();
+
+        LoadReport report = LoadGenerator.newBuilder(managedChannel)
+                .concurrency(6)
+                .expectedLatency(1)
+                .duration(300, TimeUnit.MILLISECONDS)
+                .build().run();
+        logger.info("load through grpc:// with round robin: {}", report);
+
+        assertThat(report.getFailedCount()).isEqualTo(0);
+        assertThat(report.getCompletedCount()).isGreaterThan(0);
+        for (int i = 0; i < services.size(); i++) {
+            assertThat(services.get(i).getExecutedCount()).isGreaterThan(executedBefore[i]);
+        }
+        managedChannel.shutdownNow();
+    }
+}
@@ -0,0 +1,143 @@
+package io.dreamfly.grpc.internal;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.GrpcConnectionPool;
+import io.dreamfly.grpc.test.*;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceFutureStub;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.stub.ClientCalls;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class GrpcConnectionPoolTest extends ControllableServiceAware {
+    private final String url = "grpc://127.0.0.1:10021,127.0.0.1:10022";
+
+    public GrpcConnectionPoolTest() {
+        super(new int[]{10021, 10022});
+    }
+
+    @Test
+    public void roundRobin() throws Exception {
+        GrpcConnectionPool pool = GrpcConnectionPool.newBuilder(GrpcConnectionBuilder.newBuilder().uri(url))
+                .minChannels(3)
+                .maxChannels(3)
+                .build();
+        assertThat(pool.size()).isEqualTo(3);
+
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(pool);
+        for (int i = 0; i < 10; i++) {
+            ControllableResponse response = controllableService.execute(request(i, 0));
+            assertThat(response.getRequestId()).isEqualTo(i);
+        }
+        assertThat(pool.inFlightCalls()).isEqualTo(0);
+
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(pool.isTerminated()).isTrue();
+    }
+
+    @Test
+    public void leastBusy_growAndShrink() throws Exception {
+        GrpcConnectionPool pool = GrpcConnectionPool.newBuilder(GrpcConnectionBuilder.newBuilder().uri(url))
+                .strategy(GrpcConnectionPool.Strategy.LEAST_BUSY)
+                .minChannels(1)
+                .maxChannels(4)
+                .maxInFlightPerChannel(2)
+                .build();
+        assertThat(pool.size()).isEqualTo(1);
+
+        ControllableServiceFutureStub controllableService = ControllableServiceGrpc.newFutureStub(pool);
+        List<ListenableFuture<ControllableResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(controllableService.execute(request(i, 500)));
+        }
+        assertThat(pool.size()).isEqualTo(4);
+        assertThat(pool.inFlightCalls()).isEqualTo(10);
+
+        List<ControllableResponse> responses = Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+        assertThat(responses).hasSize(10);
+        assertThat(pool.inFlightCalls()).isEqualTo(0);
+
+        // shrink at most once per second, when calls complete
+        ControllableServiceBlockingStub blockingStub = ControllableServiceGrpc.newBlockingStub(pool);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.size() > 1 && System.nanoTime() < deadline) {
+            blockingStub.execute(request(0, 0));
+            Thread.sleep(100);
+        }
+        assertThat(pool.size()).isEqualTo(1);
+
+        pool.shutdownNow();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shrink_callsCreatedBeforeStart() throws Exception {
+        GrpcConnectionPool pool = GrpcConnectionPool.newBuilder(GrpcConnectionBuilder.newBuilder().uri(url))
+                .minChannels(1)
+                .maxChannels(2)
+                .maxInFlightPerChannel(1)
+                .build();
+        // shrink at most once per second since the pool is built
+        Thread.sleep(1100);
+        ControllableServiceFutureStub futureStub = ControllableServiceGrpc.newFutureStub(pool);
+        ListenableFuture<ControllableResponse> first = futureStub.execute(request(1, 300));
+        ListenableFuture<ControllableResponse> second = futureStub.execute(request(2, 300));
+        assertThat(pool.size()).isEqualTo(2);
+
+        // created before the shrink but not started, they pick a channel on start
+        List<ClientCall<ControllableRequest, ControllableResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            calls.add(pool.newCall(ControllableServiceGrpc.getExecuteMethod(), CallOptions.DEFAULT));
+        }
+        Futures.allAsList(first, second).get(5, TimeUnit.SECONDS);
+        assertThat(pool.size()).isEqualTo(1);
+
+        for (int i = 0; i < calls.size(); i++) {
+            assertThat(ClientCalls.blockingUnaryCall(calls.get(i), request(i, 0)).getRequestId()).isEqualTo(i);
+        }
+        pool.shutdownNow();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void connectivityState() throws Exception {
+        GrpcConnectionPool pool = GrpcConnectionPool.newBuilder(GrpcConnectionBuilder.newBuilder().uri(url))
+                .minChannels(2)
+                .maxChannels(2)
+                .build();
+        assertThat(pool.authority()).isEqualTo("127.0.0.1:10021,127.0.0.1:10022");
+        assertThat(pool.getState(false)).isEqualTo(ConnectivityState.IDLE);
+
+        CountDownLatch changed = new CountDownLatch(1);
+        pool.notifyWhenStateChanged(ConnectivityState.IDLE, changed::countDown);
+        pool.getState(true);
+        assertThat(changed.await(5, TimeUnit.SECONDS)).isTrue();
+        ControllableServiceGrpc.newBlockingStub(pool).execute(request(0, 0));
+        assertThat(pool.getState(false)).isEqualTo(ConnectivityState.READY);
+
+        pool.shutdownNow();
+        assertThat(pool.getState(false)).isEqualTo(ConnectivityState.SHUTDOWN);
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private ControllableRequest request(int requestId, int expectedLatency) {
+        return ControllableRequest.newBuilder()
+                .setExpectedLatency(expectedLatency)
+                .setRequestId(requestId)
+                .build();
+    }
+}
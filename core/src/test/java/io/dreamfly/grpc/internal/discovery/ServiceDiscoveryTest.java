@@ -0,0 +1,131 @@
+package io.dreamfly.grpc.internal.discovery;
+
+import io.dreamfly.grpc.internal.nameresolver.GrpcAdvancedNameResolver;
+import io.dreamfly.grpc.internal.nameresolver.GrpcNameResolverOptions;
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceDiscoveryTest {
+
+    private final BlockingQueue<List<EquivalentAddressGroup>> addresses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Status> errors = new LinkedBlockingQueue<>();
+    private final NameResolver.Listener listener = new NameResolver.Listener() {
+        @Override
+        public void onAddresses(List<EquivalentAddressGroup> servers, Attributes attributes) {
+            addresses.add(servers);
+        }
+
+        @Override
+        public void onError(Status error) {
+            errors.add(error);
+        }
+    };
+
+    private GrpcAdvancedNameResolver resolver;
+    private Path directory;
+
+    @AfterEach
+    public void shutdown() throws IOException {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+        if (directory != null) {
+            for (Path file : Files.newDirectoryStream(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void file_pushChanges() throws Exception {
+        directory = Files.createTempDirectory("grpc-discovery");
+        writeAtomically("user-service", "# instances\n10.0.0.1:8080\n10.0.0.2:8080\n");
+        resolver = start(new FileServiceDiscovery(directory), "user-service");
+        assertThat(addresses.poll(5, TimeUnit.SECONDS))
+                .containsExactly(addressGroup("10.0.0.1", 8080), addressGroup("10.0.0.2", 8080));
+
+        writeAtomically("user-service", "10.0.0.2:8080,10.0.0.3:8080\n");
+        assertThat(addresses.poll(10, TimeUnit.SECONDS))
+                .containsExactly(addressGroup("10.0.0.2", 8080), addressGroup("10.0.0.3", 8080));
+
+        Files.delete(directory.resolve("user-service"));
+        assertThat(errors.poll(10, TimeUnit.SECONDS).getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+    }
+
+    @Test
+    public void keyValue_applyChanges() throws Exception {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        store.put("/services/user-service/a", "10.0.0.1:8080");
+        store.put("/services/user-service/b", "10.0.0.2");
+        // other services are not watched
+        store.put("/services/user-service-v2/a", "10.0.0.9:8080");
+        resolver = start(new KeyValueServiceDiscovery(store, "/services/"), "user-service");
+        assertThat(addresses.poll(5, TimeUnit.SECONDS))
+                .containsExactly(addressGroup("10.0.0.1", 8080), addressGroup("10.0.0.2", 80));
+
+        store.put("/services/user-service/c", "10.0.0.3:8080");
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 8080),
+                addressGroup("10.0.0.2", 80), addressGroup("10.0.0.3", 8080));
+
+        store.delete("/services/user-service/a");
+        // invalid entries are skipped
+        store.put("/services/user-service/d", "10.0.0.4:8080;weight=0");
+        assertThat(addresses.poll(5, TimeUnit.SECONDS))
+                .containsExactly(addressGroup("10.0.0.2", 80), addressGroup("10.0.0.3", 8080));
+        assertThat(addresses).isEmpty();
+
+        resolver.shutdown();
+        store.put("/services/user-service/e", "10.0.0.5:8080");
+        assertThat(addresses.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void keyValue_noAddress() throws Exception {
+        resolver = start(new KeyValueServiceDiscovery(new InMemoryKeyValueStore(), "/services"), "user-service");
+        assertThat(errors.poll(5, TimeUnit.SECONDS).getDescription()).contains("no address discovered");
+        assertThat(addresses).isEmpty();
+    }
+
+    @Test
+    public void parseAddresses() {
+        assertThat(FileServiceDiscovery.parseAddresses(Arrays.asList("# comment", "", " a:1 , b:2 ", "c;zone=z")))
+                .containsExactly("a:1", "b:2", "c;zone=z");
+    }
+
+    private GrpcAdvancedNameResolver start(ServiceDiscovery serviceDiscovery, String service) {
+        GrpcAdvancedNameResolver resolver = new GrpcAdvancedNameResolver("grpc", service, 80,
+                GrpcNameResolverOptions.newBuilder().serviceDiscovery(serviceDiscovery).build());
+        assertThat(resolver.getServiceAuthority()).isEqualTo(service);
+        resolver.start(listener);
+        return resolver;
+    }
+
+    private void writeAtomically(String service, String content) throws IOException {
+        Path temp = Files.createTempFile(directory, ".", ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, directory.resolve(service), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static EquivalentAddressGroup addressGroup(String ip, int port) {
+        return new EquivalentAddressGroup(new InetSocketAddress(ip, port));
+    }
+}
@@ -0,0 +1,225 @@
+package io.dreamfly.grpc.internal.limit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableResponse;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ConcurrencyLimiterTest extends ControllableServiceAware {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public ConcurrencyLimiterTest() {
+        super(10071);
+    }
+
+    @Test
+    public void tryAcquire_upToLimit() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder().initialLimit(3).build();
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(3);
+
+        limiter.onIgnored();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void aimd_increaseOnSuccessAndDecreaseOnDrop() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+                .algorithm(ConcurrencyLimiter.Algorithm.AIMD)
+                .initialLimit(10)
+                .maxLimit(12)
+                .build();
+
+        // not increased while less than half of the limit is used
+        limiter.tryAcquire();
+        limiter.onSuccess(MS);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        for (int i = 0; i < 8; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < 8; i++) {
+            limiter.onSuccess(MS);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(12);
+
+        limiter.tryAcquire();
+        limiter.onDropped(MS);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.onDropped(MS);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void gradient_shrinkWhenRttGrows() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder().initialLimit(10).build();
+        for (int i = 0; i < 100; i++) {
+            sampleAtFullLoad(limiter, 10 * MS);
+        }
+        int limit = limiter.getLimit();
+        assertThat(limit).isGreaterThan(10);
+
+        // latency grows with queueing in the server
+        for (int i = 0; i < 20; i++) {
+            sampleAtFullLoad(limiter, 50 * MS);
+        }
+        assertThat(limiter.getLimit()).isLessThan(limit / 2);
+        assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void build_invalidLimits() {
+        assertThatThrownBy(() -> ConcurrencyLimiter.newBuilder().initialLimit(10).maxLimit(5).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConcurrencyLimiter.newBuilder().backoffRatio(1).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void interceptor_rejectOverLimit() throws InterruptedException, ExecutionException {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+                .initialLimit(2)
+                .maxLimit(2)
+                .build();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .concurrencyLimiter(limiter)
+                .build();
+        ControllableServiceGrpc.ControllableServiceFutureStub stub = ControllableServiceGrpc.newFutureStub(channel);
+
+        List<ListenableFuture<ControllableResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(stub.execute(ControllableRequest.newBuilder().setRequestId(i).setExpectedLatency(200)
+                    .build()));
+        }
+        int rejected = 0;
+        for (ListenableFuture<ControllableResponse> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                assertThat(Status.fromThrowable(e).getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+                rejected++;
+            }
+        }
+        assertThat(rejected).isEqualTo(3);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        // permits are released, and a cancelled call doesn't leak its permit
+        stub.execute(ControllableRequest.newBuilder().setExpectedLatency(1000).build()).cancel(true);
+        assertThat(stub.execute(ControllableRequest.getDefaultInstance()).get().getRequestId()).isEqualTo(0);
+        for (int i = 0; i < 100 && limiter.getInFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void interceptor_acquireOnStart() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+                .initialLimit(1)
+                .maxLimit(1)
+                .build();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .concurrencyLimiter(limiter)
+                .build();
+
+        // calls dropped before start hold no permit
+        for (int i = 0; i < 3; i++) {
+            channel.newCall(ControllableServiceGrpc.getExecuteMethod(), CallOptions.DEFAULT);
+        }
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+        ControllableServiceGrpc.ControllableServiceBlockingStub stub = ControllableServiceGrpc.newBlockingStub(channel);
+        assertThat(stub.execute(ControllableRequest.newBuilder().setRequestId(1).build()).getRequestId())
+                .isEqualTo(1);
+
+        // rejected at start if no permit is available
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThatThrownBy(() -> stub.execute(ControllableRequest.getDefaultInstance()))
+                .satisfies(e -> assertThat(Status.fromThrowable(e).getCode())
+                        .isEqualTo(Status.Code.RESOURCE_EXHAUSTED));
+        limiter.onIgnored();
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void interceptor_rejectOnCallExecutor() throws InterruptedException {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+                .initialLimit(1)
+                .maxLimit(1)
+                .build();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .concurrencyLimiter(limiter)
+                .build();
+        assertThat(limiter.tryAcquire()).isTrue();
+
+        // the rejected call is closed by the executor of call options, not re-entrantly in start
+        BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        BlockingQueue<Status> closed = new LinkedBlockingQueue<>();
+        ClientCall<ControllableRequest, ControllableResponse> call = channel.newCall(
+                ControllableServiceGrpc.getExecuteMethod(), CallOptions.DEFAULT.withExecutor(tasks::add));
+        call.start(new ClientCall.Listener<ControllableResponse>() {
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                closed.add(status);
+            }
+        }, new Metadata());
+        assertThat(closed).isEmpty();
+        tasks.take().run();
+        assertThat(closed.poll().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+
+        // without an executor the call is closed on the shared channel executor
+        call = channel.newCall(ControllableServiceGrpc.getExecuteMethod(), CallOptions.DEFAULT);
+        Thread caller = Thread.currentThread();
+        BlockingQueue<Thread> closingThreads = new LinkedBlockingQueue<>();
+        call.start(new ClientCall.Listener<ControllableResponse>() {
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                closingThreads.add(Thread.currentThread());
+            }
+        }, new Metadata());
+        assertThat(closingThreads.poll(5, TimeUnit.SECONDS)).isNotNull().isNotSameAs(caller);
+        limiter.onIgnored();
+
+        channel.shutdownNow();
+    }
+
+    private static void sampleAtFullLoad(ConcurrencyLimiter limiter, long rttNanos) {
+        while (limiter.tryAcquire()) {
+            // acquire all permits
+        }
+        limiter.onSuccess(rttNanos);
+        while (limiter.getInFlight() > 0) {
+            limiter.onIgnored();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.ManagedChannel;
+import io.grpc.NameResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper recording subchannels and balancing state, tasks are run at once.
+ */
+class FakeHelper extends LoadBalancer.Helper {
+    final List<Subchannel> subchannels = new ArrayList<>();
+    final List<Subchannel> shutdownSubchannels = new ArrayList<>();
+    ConnectivityState state;
+    SubchannelPicker picker;
+
+    @Override
+    public Subchannel createSubchannel(final EquivalentAddressGroup addressGroup, final Attributes attrs) {
+        Subchannel subchannel = new Subchannel() {
+            @Override
+            public void shutdown() {
+                shutdownSubchannels.add(this);
+            }
+
+            @Override
+            public void requestConnection() {
+            }
+
+            @Override
+            public EquivalentAddressGroup getAddresses() {
+                return addressGroup;
+            }
+
+            @Override
+            public Attributes getAttributes() {
+                return attrs;
+            }
+        };
+        subchannels.add(subchannel);
+        return subchannel;
+    }
+
+    @Override
+    public ManagedChannel createOobChannel(EquivalentAddressGroup eag, String authority) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updateBalancingState(ConnectivityState newState, SubchannelPicker newPicker) {
+        this.state = newState;
+        this.picker = newPicker;
+    }
+
+    @Override
+    public void runSerialized(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public NameResolver.Factory getNameResolverFactory() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getAuthority() {
+        return "test";
+    }
+}
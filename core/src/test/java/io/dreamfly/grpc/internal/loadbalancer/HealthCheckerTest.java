@@ -0,0 +1,130 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.ServerCalls;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class HealthCheckerTest extends ControllableServiceAware {
+
+    // the servers of the parent have no health service, they are always healthy
+    private static final int CHECKED_PORT = 10103;
+
+    private final AtomicInteger servingStatus = new AtomicInteger(HealthCheckProtocol.SERVING);
+    private final ControllableServiceImpl checkedService = new ControllableServiceImpl();
+    private Server checkedServer;
+
+    public HealthCheckerTest() {
+        super(new int[]{10101, 10102});
+    }
+
+    @BeforeAll
+    public void startCheckedServer() throws IOException {
+        ServerServiceDefinition health = ServerServiceDefinition.builder("grpc.health.v1.Health")
+                .addMethod(HealthCheckProtocol.CHECK_METHOD, ServerCalls.asyncUnaryCall((service, observer) -> {
+                    observer.onNext(servingStatus.get());
+                    observer.onCompleted();
+                }))
+                .build();
+        checkedServer = ServerBuilder.forPort(CHECKED_PORT)
+                .addService(checkedService)
+                .addService(health)
+                .build()
+                .start();
+    }
+
+    @AfterAll
+    public void stopCheckedServer() {
+        if (checkedServer != null) {
+            checkedServer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void excludeUnhealthyAddress() throws InterruptedException {
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://" + getTarget() + ",127.0.0.1:" + CHECKED_PORT)
+                .loadBalancingPolicy(LoadBalancingPolicy.ROUND_ROBIN)
+                .healthCheck(HealthCheckConfig.newBuilder()
+                        .interval(100, TimeUnit.MILLISECONDS)
+                        .unhealthyThreshold(1)
+                        .build())
+                .build();
+        ControllableServiceGrpc.ControllableServiceBlockingStub stub = ControllableServiceGrpc.newBlockingStub(channel);
+        try {
+            assertThat(callsToCheckedServer(stub, 30)).isGreaterThan(0);
+
+            servingStatus.set(HealthCheckProtocol.NOT_SERVING);
+            assertThat(waitFor(stub, false)).isTrue();
+            assertThat(callsToCheckedServer(stub, 30)).isEqualTo(0);
+
+            servingStatus.set(HealthCheckProtocol.SERVING);
+            assertThat(waitFor(stub, true)).isTrue();
+        } finally {
+            servingStatus.set(HealthCheckProtocol.SERVING);
+            channel.shutdownNow();
+        }
+    }
+
+    @Test
+    public void protocol_roundTrip() {
+        String service = HealthCheckProtocol.CHECK_METHOD.parseRequest(
+                HealthCheckProtocol.CHECK_METHOD.streamRequest("foo.Bar"));
+        assertThat(service).isEqualTo("foo.Bar");
+        assertThat(HealthCheckProtocol.CHECK_METHOD.parseRequest(
+                HealthCheckProtocol.CHECK_METHOD.streamRequest(""))).isEmpty();
+        assertThat(HealthCheckProtocol.CHECK_METHOD.parseResponse(
+                HealthCheckProtocol.CHECK_METHOD.streamResponse(HealthCheckProtocol.NOT_SERVING)))
+                .isEqualTo(HealthCheckProtocol.NOT_SERVING);
+        assertThat(HealthCheckProtocol.CHECK_METHOD.parseResponse(
+                HealthCheckProtocol.CHECK_METHOD.streamResponse(HealthCheckProtocol.UNKNOWN)))
+                .isEqualTo(HealthCheckProtocol.UNKNOWN);
+    }
+
+    @Test
+    public void config_invalid() {
+        assertThatThrownBy(() -> HealthCheckConfig.newBuilder().interval(0, TimeUnit.SECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HealthCheckConfig.newBuilder().serviceNames())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HealthCheckConfig.newBuilder().unhealthyThreshold(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private long callsToCheckedServer(ControllableServiceGrpc.ControllableServiceBlockingStub stub, int calls) {
+        long executed = checkedService.getExecutedCount();
+        for (int i = 0; i < calls; i++) {
+            stub.execute(ControllableRequest.getDefaultInstance());
+        }
+        return checkedService.getExecutedCount() - executed;
+    }
+
+    private boolean waitFor(ControllableServiceGrpc.ControllableServiceBlockingStub stub, boolean healthy)
+            throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if ((callsToCheckedServer(stub, 6) > 0) == healthy) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
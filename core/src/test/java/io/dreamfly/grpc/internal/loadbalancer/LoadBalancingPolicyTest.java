@@ -0,0 +1,296 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.dreamfly.grpc.test.ControllableServiceImpl;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancer.PickResult;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.LoadBalancer.SubchannelPicker;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LoadBalancingPolicyTest extends ControllableServiceAware {
+    private final String url = "grpc://127.0.0.1:10031,127.0.0.1:10032,127.0.0.1:10033";
+
+    public LoadBalancingPolicyTest() {
+        super(new int[]{10031, 10032, 10033});
+    }
+
+    @Test
+    public void roundRobin_pickInTurn() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.ROUND_ROBIN.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(1, 1, 1), Attributes.EMPTY);
+        assertThat(helper.state).isEqualTo(ConnectivityState.CONNECTING);
+        readyAll(loadBalancer, helper);
+        assertThat(helper.state).isEqualTo(ConnectivityState.READY);
+
+        Map<Subchannel, Integer> counts = pick(helper.picker, 300);
+        assertThat(counts).hasSize(3);
+        assertThat(counts.values()).containsOnly(100);
+    }
+
+    @Test
+    public void roundRobin_skipNotReadyAndFailWhenAllFailed() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.ROUND_ROBIN.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(1, 1), Attributes.EMPTY);
+        Subchannel first = helper.subchannels.get(0);
+        Subchannel second = helper.subchannels.get(1);
+        loadBalancer.handleSubchannelState(first, ConnectivityStateInfo.forNonError(ConnectivityState.READY));
+        assertThat(pick(helper.picker, 10).keySet()).containsOnly(first);
+
+        Status unavailable = Status.UNAVAILABLE.withDescription("connection refused");
+        loadBalancer.handleSubchannelState(first, ConnectivityStateInfo.forTransientFailure(unavailable));
+        loadBalancer.handleSubchannelState(second, ConnectivityStateInfo.forTransientFailure(unavailable));
+        assertThat(helper.state).isEqualTo(ConnectivityState.TRANSIENT_FAILURE);
+        assertThat(helper.picker.pickSubchannel(args(CallOptions.DEFAULT)).getStatus()).isEqualTo(unavailable);
+
+        // removed address is shut down
+        loadBalancer.handleResolvedAddressGroups(servers(1), Attributes.EMPTY);
+        assertThat(helper.shutdownSubchannels).containsExactly(second);
+        loadBalancer.shutdown();
+        assertThat(helper.shutdownSubchannels).containsExactly(second, first);
+    }
+
+    @Test
+    public void roundRobin_avoidAddressesOfHedgedAttempts() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.ROUND_ROBIN.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        List<EquivalentAddressGroup> servers = servers(1, 1, 1);
+        loadBalancer.handleResolvedAddressGroups(servers, Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+
+        Set<SocketAddress> avoided = new HashSet<>(servers.get(0).getAddresses());
+        Map<Subchannel, Integer> counts = pick(helper.picker, 100,
+                CallOptions.DEFAULT.withOption(LoadBalancerAttributes.AVOIDED_ADDRESSES, avoided));
+        assertThat(counts.keySet()).containsOnly(helper.subchannels.get(1), helper.subchannels.get(2));
+
+        // the only ready address is picked even if avoided
+        loadBalancer.handleResolvedAddressGroups(servers.subList(0, 1), Attributes.EMPTY);
+        counts = pick(helper.picker, 10,
+                CallOptions.DEFAULT.withOption(LoadBalancerAttributes.AVOIDED_ADDRESSES, avoided));
+        assertThat(counts.keySet()).containsOnly(helper.subchannels.get(0));
+    }
+
+    @Test
+    public void roundRobin_preferLocalZone() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.ROUND_ROBIN.newLoadBalancer(helper,
+                LoadBalancerOptions.newBuilder().localZone("zone-a").build());
+        List<EquivalentAddressGroup> servers = new ArrayList<>();
+        String[] zones = {"zone-a", "zone-a", "zone-a", "zone-b", null};
+        for (int i = 0; i < zones.length; i++) {
+            Attributes attributes = zones[i] == null ? Attributes.EMPTY
+                    : Attributes.newBuilder().set(LoadBalancerAttributes.ZONE, zones[i]).build();
+            servers.add(new EquivalentAddressGroup(new InetSocketAddress("10.0.0." + (i + 1), 2379), attributes));
+        }
+        loadBalancer.handleResolvedAddressGroups(servers, Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+        assertThat(pick(helper.picker, 30).keySet()).containsOnly(
+                helper.subchannels.get(0), helper.subchannels.get(1), helper.subchannels.get(2));
+
+        loadBalancer.handleSubchannelState(helper.subchannels.get(0),
+                ConnectivityStateInfo.forTransientFailure(Status.UNAVAILABLE));
+        assertThat(pick(helper.picker, 30).keySet())
+                .containsOnly(helper.subchannels.get(1), helper.subchannels.get(2));
+
+        // spill over to other zones when less than half of the local zone is ready
+        loadBalancer.handleSubchannelState(helper.subchannels.get(1),
+                ConnectivityStateInfo.forTransientFailure(Status.UNAVAILABLE));
+        assertThat(pick(helper.picker, 30).keySet()).containsOnly(
+                helper.subchannels.get(2), helper.subchannels.get(3), helper.subchannels.get(4));
+    }
+
+    @Test
+    public void weightedRoundRobin_pickByWeight() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.WEIGHTED_ROUND_ROBIN.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(5, 3, 2), Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+
+        Map<Subchannel, Integer> counts = pick(helper.picker, 1000);
+        assertThat(counts.get(helper.subchannels.get(0))).isEqualTo(500);
+        assertThat(counts.get(helper.subchannels.get(1))).isEqualTo(300);
+        assertThat(counts.get(helper.subchannels.get(2))).isEqualTo(200);
+    }
+
+    @Test
+    public void weightedRoundRobin_interleaveSchedule() {
+        int[] schedule = WeightedRoundRobinLoadBalancer.buildSchedule(new int[]{10, 20, 10});
+        assertThat(schedule).hasSize(4);
+        assertThat(schedule).containsExactly(1, 0, 2, 1);
+
+        // weights too large are scaled down
+        schedule = WeightedRoundRobinLoadBalancer.buildSchedule(new int[]{1_000_000, 1});
+        assertThat(schedule.length).isLessThanOrEqualTo(WeightedRoundRobinLoadBalancer.MAX_SCHEDULE_LENGTH + 1);
+        assertThat(schedule).contains(1);
+    }
+
+    @Test
+    public void leastRequest_avoidBusySubchannel() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.LEAST_REQUEST.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(1, 1), Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+
+        // keep 5 calls in flight on the first subchannel
+        PickResult result;
+        do {
+            result = helper.picker.pickSubchannel(args(CallOptions.DEFAULT));
+        } while (result.getSubchannel() != helper.subchannels.get(0));
+        for (int i = 0; i < 5; i++) {
+            result.getStreamTracerFactory().newClientStreamTracer(CallOptions.DEFAULT, new Metadata());
+        }
+
+        assertThat(pick(helper.picker, 100).keySet()).containsOnly(helper.subchannels.get(1));
+    }
+
+    @Test
+    public void latencyEwma_preferFastSubchannel() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.LATENCY_EWMA.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(1, 1), Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+
+        long now = System.nanoTime();
+        TrackedSubchannel slow = helper.subchannels.get(0).getAttributes().get(TrackedSubchannel.KEY);
+        TrackedSubchannel fast = helper.subchannels.get(1).getAttributes().get(TrackedSubchannel.KEY);
+        slow.recordLatency(TimeUnit.MILLISECONDS.toNanos(100), now);
+        fast.recordLatency(TimeUnit.MILLISECONDS.toNanos(10), now);
+        assertThat(pick(helper.picker, 100).keySet()).containsOnly(helper.subchannels.get(1));
+
+        // peak is taken at once and decays slowly
+        fast.recordLatency(TimeUnit.MILLISECONDS.toNanos(200), now + 1);
+        assertThat(fast.getEwmaNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+        fast.recordLatency(TimeUnit.MILLISECONDS.toNanos(10), now + TimeUnit.SECONDS.toNanos(1));
+        assertThat(fast.getEwmaNanos()).isBetween(
+                (double) TimeUnit.MILLISECONDS.toNanos(150), (double) TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void latencyEwma_retrySlowSubchannelAfterDecay() {
+        FakeHelper helper = new FakeHelper();
+        LoadBalancer loadBalancer = LoadBalancingPolicy.LATENCY_EWMA.newLoadBalancer(helper, LoadBalancerOptions.DEFAULT);
+        loadBalancer.handleResolvedAddressGroups(servers(1, 1), Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+
+        long now = System.nanoTime();
+        TrackedSubchannel slow = helper.subchannels.get(0).getAttributes().get(TrackedSubchannel.KEY);
+        TrackedSubchannel fast = helper.subchannels.get(1).getAttributes().get(TrackedSubchannel.KEY);
+        long slowSampledAt = now - TimeUnit.SECONDS.toNanos(60);
+        slow.recordLatency(TimeUnit.MILLISECONDS.toNanos(100), slowSampledAt);
+        fast.recordLatency(TimeUnit.MILLISECONDS.toNanos(10), now);
+        assertThat(slow.getCost(slowSampledAt)).isGreaterThan(fast.getCost(slowSampledAt));
+
+        // the slow subchannel gets no sample while it loses, but its cost decays until it is picked again
+        assertThat(slow.getCost(now)).isLessThan(fast.getCost(now));
+        assertThat(pick(helper.picker, 100).keySet()).contains(helper.subchannels.get(0));
+    }
+
+    @Test
+    public void build_roundRobinAcrossServers() {
+        ManagedChannel managedChannel = GrpcConnectionBuilder.newBuilder().uri(url)
+                .loadBalancingPolicy(LoadBalancingPolicy.ROUND_ROBIN)
+                .build();
+        ControllableServiceBlockingStub controllableService = ControllableServiceGrpc.newBlockingStub(managedChannel);
+        ControllableRequest request = ControllableRequest.newBuilder().setRequestId(1).build();
+
+        // wait for all subchannels to be ready
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executedCounts().contains(0L) && System.nanoTime() < deadline) {
+            controllableService.execute(request);
+        }
+        List<Long> before = executedCounts();
+        for (int i = 0; i < 30; i++) {
+            controllableService.execute(request);
+        }
+        List<Long> after = executedCounts();
+        for (int i = 0; i < services.size(); i++) {
+            assertThat(after.get(i) - before.get(i)).isEqualTo(10);
+        }
+        managedChannel.shutdownNow();
+    }
+
+    private List<Long> executedCounts() {
+        List<Long> counts = new ArrayList<>();
+        for (ControllableServiceImpl service : services) {
+            counts.add(service.getExecutedCount());
+        }
+        return counts;
+    }
+
+    static List<EquivalentAddressGroup> servers(int... weights) {
+        List<EquivalentAddressGroup> servers = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            servers.add(new EquivalentAddressGroup(new InetSocketAddress("10.0.0." + (i + 1), 2379),
+                    Attributes.newBuilder().set(LoadBalancerAttributes.WEIGHT, weights[i]).build()));
+        }
+        return servers;
+    }
+
+    static void readyAll(LoadBalancer loadBalancer, FakeHelper helper) {
+        for (Subchannel subchannel : helper.subchannels) {
+            loadBalancer.handleSubchannelState(subchannel, ConnectivityStateInfo.forNonError(ConnectivityState.READY));
+        }
+    }
+
+    static Map<Subchannel, Integer> pick(SubchannelPicker picker, int times) {
+        return pick(picker, times, CallOptions.DEFAULT);
+    }
+
+    static Map<Subchannel, Integer> pick(SubchannelPicker picker, int times, CallOptions callOptions) {
+        Map<Subchannel, Integer> counts = new HashMap<>();
+        for (int i = 0; i < times; i++) {
+            counts.merge(picker.pickSubchannel(args(callOptions)).getSubchannel(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    static PickSubchannelArgs args(CallOptions callOptions) {
+        return new PickSubchannelArgs() {
+            @Override
+            public CallOptions getCallOptions() {
+                return callOptions;
+            }
+
+            @Override
+            public Metadata getHeaders() {
+                return new Metadata();
+            }
+
+            @Override
+            public MethodDescriptor<?, ?> getMethodDescriptor() {
+                return ControllableServiceGrpc.getExecuteMethod();
+            }
+        };
+    }
+}
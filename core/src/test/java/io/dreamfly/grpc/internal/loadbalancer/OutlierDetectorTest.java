@@ -0,0 +1,187 @@
+package io.dreamfly.grpc.internal.loadbalancer;
+
+import io.dreamfly.grpc.internal.loadbalancer.OutlierDetectionStats.EjectionType;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicyTest.pick;
+import static io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicyTest.readyAll;
+import static io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicyTest.servers;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutlierDetectorTest {
+
+    private final FakeHelper helper = new FakeHelper();
+    private AbstractLoadBalancer loadBalancer;
+
+    @AfterEach
+    public void shutdown() {
+        if (loadBalancer != null) {
+            loadBalancer.shutdown();
+        }
+    }
+
+    @Test
+    public void consecutiveFailures() {
+        OutlierDetectionConfig config = config().build();
+        start(config, 3);
+
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 4);
+        closeCalls(subchannel(0), Status.OK, 1);
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 4);
+        // client side errors are not counted
+        closeCalls(subchannel(0), Status.INVALID_ARGUMENT, 4);
+        assertThat(tracked(0).isEjected()).isFalse();
+
+        closeCalls(subchannel(0), Status.DEADLINE_EXCEEDED, 1);
+        assertThat(tracked(0).isEjected()).isTrue();
+        assertThat(pick(helper.picker, 100).keySet()).doesNotContain(subchannel(0));
+        assertThat(config.getStats().getEjectionCount(EjectionType.CONSECUTIVE_FAILURE)).isEqualTo(1);
+        assertThat(config.getStats().getCurrentlyEjected()).isEqualTo(1);
+
+        loadBalancer.shutdown();
+        loadBalancer = null;
+        assertThat(config.getStats().getCurrentlyEjected()).isEqualTo(0);
+    }
+
+    @Test
+    public void failurePercentage() {
+        OutlierDetectionConfig config = config().consecutiveFailures(0).build();
+        start(config, 2);
+
+        closeCalls(subchannel(0), Status.OK, 5);
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 15);
+        closeCalls(subchannel(1), Status.OK, 20);
+        loadBalancer.getOutlierDetector().evaluate();
+
+        assertThat(tracked(0).isEjected()).isTrue();
+        assertThat(tracked(1).isEjected()).isFalse();
+        assertThat(config.getStats().getEjectionCount(EjectionType.FAILURE_PERCENTAGE)).isEqualTo(1);
+    }
+
+    @Test
+    public void successRate() {
+        OutlierDetectionConfig config = config().consecutiveFailures(0).failurePercentageThreshold(0).build();
+        start(config, 5);
+
+        closeCalls(subchannel(0), Status.OK, 60);
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 40);
+        for (int i = 1; i < 5; i++) {
+            closeCalls(subchannel(i), Status.OK, 100);
+        }
+        loadBalancer.getOutlierDetector().evaluate();
+
+        assertThat(tracked(0).isEjected()).isTrue();
+        assertThat(config.getStats().getEjectionCount()).isEqualTo(1);
+        assertThat(config.getStats().getEjectionCount(EjectionType.SUCCESS_RATE)).isEqualTo(1);
+    }
+
+    @Test
+    public void latency() throws Exception {
+        OutlierDetectionConfig config = config().minLatencyDifference(10, TimeUnit.MILLISECONDS).build();
+        start(config, 3);
+
+        List<ClientStreamTracer> slowCalls = startCalls(subchannel(0), 20);
+        Thread.sleep(20);
+        for (ClientStreamTracer tracer : slowCalls) {
+            tracer.streamClosed(Status.OK);
+        }
+        closeCalls(subchannel(1), Status.OK, 20);
+        closeCalls(subchannel(2), Status.OK, 20);
+        loadBalancer.getOutlierDetector().evaluate();
+
+        assertThat(tracked(0).isEjected()).isTrue();
+        assertThat(config.getStats().getEjectionCount(EjectionType.LATENCY)).isEqualTo(1);
+    }
+
+    @Test
+    public void maxEjectionPercent() {
+        OutlierDetectionConfig config = config().maxEjectionPercent(100).build();
+        start(config, 2);
+
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 5);
+        closeCalls(subchannel(1), Status.UNAVAILABLE, 5);
+        // at least one address is kept
+        assertThat(tracked(0).isEjected()).isTrue();
+        assertThat(tracked(1).isEjected()).isFalse();
+        assertThat(pick(helper.picker, 10).keySet()).containsOnly(subchannel(1));
+    }
+
+    @Test
+    public void readmitAndRampUp() {
+        OutlierDetectionConfig config = config()
+                .baseEjectionTime(1, TimeUnit.NANOSECONDS)
+                .rampUpTime(1, TimeUnit.HOURS)
+                .build();
+        start(config, 3);
+
+        closeCalls(subchannel(0), Status.UNAVAILABLE, 5);
+        assertThat(tracked(0).isEjected()).isTrue();
+
+        loadBalancer.getOutlierDetector().evaluate();
+        assertThat(tracked(0).isEjected()).isFalse();
+        assertThat(config.getStats().getCurrentlyEjected()).isEqualTo(0);
+        assertThat(tracked(0).getAdmissionProbability()).isLessThan(0.2);
+
+        // about 0.1 * 1/3 share plus re-picks, far below 1/3
+        Map<Subchannel, Integer> counts = pick(helper.picker, 3000);
+        assertThat(counts.get(subchannel(0))).isBetween(1, 400);
+    }
+
+    @Test
+    public void ejectionTime() {
+        OutlierDetectionConfig config = config()
+                .baseEjectionTime(30, TimeUnit.SECONDS)
+                .maxEjectionTime(100, TimeUnit.SECONDS)
+                .build();
+        assertThat(config.getEjectionTimeNanos(1)).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+        assertThat(config.getEjectionTimeNanos(3)).isEqualTo(TimeUnit.SECONDS.toNanos(90));
+        assertThat(config.getEjectionTimeNanos(4)).isEqualTo(TimeUnit.SECONDS.toNanos(100));
+    }
+
+    private OutlierDetectionConfig.Builder config() {
+        // evaluate manually
+        return OutlierDetectionConfig.newBuilder().interval(1, TimeUnit.HOURS);
+    }
+
+    private void start(OutlierDetectionConfig config, int addresses) {
+        loadBalancer = (AbstractLoadBalancer) LoadBalancingPolicy.ROUND_ROBIN.newLoadBalancer(helper,
+                LoadBalancerOptions.newBuilder().outlierDetection(config).build());
+        loadBalancer.handleResolvedAddressGroups(servers(new int[addresses]), Attributes.EMPTY);
+        readyAll(loadBalancer, helper);
+    }
+
+    private Subchannel subchannel(int index) {
+        return helper.subchannels.get(index);
+    }
+
+    private TrackedSubchannel tracked(int index) {
+        return subchannel(index).getAttributes().get(TrackedSubchannel.KEY);
+    }
+
+    private List<ClientStreamTracer> startCalls(Subchannel subchannel, int count) {
+        ClientStreamTracer.Factory factory = subchannel.getAttributes().get(TrackedSubchannel.KEY).getTracerFactory();
+        List<ClientStreamTracer> tracers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tracers.add(factory.newClientStreamTracer(CallOptions.DEFAULT, new Metadata()));
+        }
+        return tracers;
+    }
+
+    private void closeCalls(Subchannel subchannel, Status status, int count) {
+        for (ClientStreamTracer tracer : startCalls(subchannel, count)) {
+            tracer.streamClosed(status);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import com.google.protobuf.ByteString;
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ClientMetricsTest extends ControllableServiceAware {
+
+    public ClientMetricsTest() {
+        super(new int[]{10051, 10052});
+    }
+
+    @Test
+    public void metrics_recordCallsAndResolutions() throws InterruptedException {
+        ClientMetrics metrics = new ClientMetrics();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .metrics(metrics)
+                .build();
+        ControllableServiceBlockingStub stub = ControllableServiceGrpc.newBlockingStub(channel);
+
+        for (int i = 0; i < 10; i++) {
+            stub.execute(ControllableRequest.newBuilder()
+                    .setRequestId(i)
+                    .setExpectedLatency(10)
+                    .setPayload(ByteString.copyFrom(new byte[100]))
+                    .setResponseSize(1000)
+                    .build());
+        }
+        assertThatThrownBy(() -> stub.execute(ControllableRequest.newBuilder()
+                .setFailureRate(1).setFailureCode(Status.Code.ABORTED.value()).build()))
+                .isInstanceOf(StatusRuntimeException.class);
+
+        ClientMetrics.MethodMetrics method = metrics.getMethod(ControllableServiceGrpc.getExecuteMethod()
+                .getFullMethodName());
+        assertThat(method.getStartedCount()).isEqualTo(11);
+        assertThat(method.getInFlight()).isEqualTo(0);
+        assertThat(method.getCompletedCount(Status.Code.OK)).isEqualTo(10);
+        assertThat(method.getCompletedCount(Status.Code.ABORTED)).isEqualTo(1);
+        assertThat(method.getErrorCount()).isEqualTo(1);
+        assertThat(method.getLatency().getCount()).isEqualTo(11);
+        assertThat(method.getLatency().getValueAtPercentile(50)).isGreaterThanOrEqualTo(
+                TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(method.getSentMessageSize().getCount()).isEqualTo(11);
+        assertThat(method.getSentMessageSize().getMax()).isGreaterThan(100);
+        assertThat(method.getReceivedMessageSize().getCount()).isEqualTo(10);
+        assertThat(method.getReceivedMessageSize().getMax()).isGreaterThan(1000);
+
+        ClientMetrics.ResolutionMetrics resolutions = metrics.getResolutions().get(getTarget());
+        assertThat(resolutions.getSuccessCount()).isGreaterThanOrEqualTo(1);
+        assertThat(resolutions.getFailureCount()).isEqualTo(0);
+
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void interceptor_recordFailedStart() {
+        ClientMetrics metrics = new ClientMetrics();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .metrics(metrics)
+                .build();
+        channel.shutdownNow();
+
+        assertThatThrownBy(() -> ControllableServiceGrpc.newBlockingStub(channel)
+                .execute(ControllableRequest.getDefaultInstance()))
+                .isInstanceOf(StatusRuntimeException.class);
+        ClientMetrics.MethodMetrics method = metrics.getMethod(ControllableServiceGrpc.getExecuteMethod()
+                .getFullMethodName());
+        assertThat(method.getInFlight()).isEqualTo(0);
+        assertThat(method.getCompletedCount(Status.Code.UNAVAILABLE)).isEqualTo(1);
+    }
+}
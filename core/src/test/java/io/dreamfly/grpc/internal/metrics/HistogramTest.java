@@ -0,0 +1,37 @@
+package io.dreamfly.grpc.internal.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketIndex_withinPrecision() {
+        long[] values = {0, 1, 255, 256, 257, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            long highest = Histogram.highestEquivalentValue(Histogram.bucketIndex(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / 128);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-1);
+
+        assertThat(histogram.getCount()).isEqualTo(1001);
+        assertThat(histogram.getSum()).isEqualTo(500500000L);
+        assertThat(histogram.getMax()).isEqualTo(1000000);
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(50)).isCloseTo(500000, within(500000L / 128));
+        assertThat(histogram.getValueAtPercentile(99)).isCloseTo(990000, within(990000L / 128));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000000);
+    }
+}
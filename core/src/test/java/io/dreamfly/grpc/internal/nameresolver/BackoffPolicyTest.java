@@ -0,0 +1,46 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BackoffPolicyTest {
+
+    @Test
+    public void getDelayNanos_exponentialAndCapped() {
+        BackoffPolicy policy = BackoffPolicy.newBuilder()
+                .initialDelay(100, TimeUnit.MILLISECONDS)
+                .multiplier(2)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .jitter(0)
+                .build();
+        assertThat(policy.getDelayNanos(1)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(policy.getDelayNanos(2)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(policy.getDelayNanos(4)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(800));
+        assertThat(policy.getDelayNanos(5)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(policy.getDelayNanos(100)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void getDelayNanos_withJitter() {
+        BackoffPolicy policy = BackoffPolicy.newBuilder()
+                .initialDelay(1, TimeUnit.SECONDS)
+                .jitter(0.5)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.getDelayNanos(1)).isBetween(TimeUnit.MILLISECONDS.toNanos(500),
+                    TimeUnit.MILLISECONDS.toNanos(1500));
+        }
+    }
+
+    @Test
+    public void build_wrong_initialGreaterThanMax() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BackoffPolicy.newBuilder()
+                .initialDelay(2, TimeUnit.MINUTES)
+                .maxDelay(1, TimeUnit.MINUTES)
+                .build());
+    }
+}
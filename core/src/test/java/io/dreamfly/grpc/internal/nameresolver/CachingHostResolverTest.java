@@ -0,0 +1,144 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.base.Ticker;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CachingHostResolverTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private HostResolver resolveTo(final String ip) {
+        return (host, executor) -> {
+            lookups.incrementAndGet();
+            return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString(ip)));
+        };
+    }
+
+    @Test
+    public void resolve_hitUntilTtl() throws Exception {
+        CachingHostResolver resolver = new CachingHostResolver(resolveTo("10.0.0.1"), 10, 30, 5, 10,
+                TimeUnit.SECONDS, ticker);
+
+        assertThat(resolve(resolver, "a.dreamfly.io")).containsExactly(InetAddresses.forString("10.0.0.1"));
+        assertThat(resolve(resolver, "a.dreamfly.io")).containsExactly(InetAddresses.forString("10.0.0.1"));
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(resolver.hitCount()).isEqualTo(1);
+        assertThat(resolver.missCount()).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        resolve(resolver, "a.dreamfly.io");
+        assertThat(lookups.get()).isEqualTo(2);
+        assertThat(resolver.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void resolve_concurrentMissesCoalesced() throws Exception {
+        final SettableFuture<List<InetAddress>> pending = SettableFuture.create();
+        CachingHostResolver resolver = new CachingHostResolver((host, executor) -> {
+            lookups.incrementAndGet();
+            return pending;
+        }, 10, 30, 5, 10, TimeUnit.SECONDS, ticker);
+
+        ListenableFuture<List<InetAddress>> first = resolver.resolve("a.dreamfly.io", MoreExecutors.directExecutor());
+        ListenableFuture<List<InetAddress>> second = resolver.resolve("a.dreamfly.io", MoreExecutors.directExecutor());
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(first.isDone()).isFalse();
+
+        pending.set(Collections.singletonList(InetAddresses.forString("10.0.0.1")));
+        assertThat(first.get()).isEqualTo(second.get());
+    }
+
+    @Test
+    public void resolve_hungLookupReplaced() throws Exception {
+        CachingHostResolver resolver = new CachingHostResolver((host, executor) -> {
+            // the first lookup never completes
+            return lookups.incrementAndGet() == 1 ? SettableFuture.create()
+                    : Futures.immediateFuture(Collections.singletonList(InetAddresses.forString("10.0.0.1")));
+        }, 10, 30, 5, 10, TimeUnit.SECONDS, ticker);
+
+        ListenableFuture<List<InetAddress>> hung = resolver.resolve("a.dreamfly.io", MoreExecutors.directExecutor());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertThat(resolver.resolve("a.dreamfly.io", MoreExecutors.directExecutor()).isDone()).isFalse();
+        assertThat(lookups.get()).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(resolve(resolver, "a.dreamfly.io")).containsExactly(InetAddresses.forString("10.0.0.1"));
+        assertThat(resolve(resolver, "a.dreamfly.io")).containsExactly(InetAddresses.forString("10.0.0.1"));
+        assertThat(lookups.get()).isEqualTo(2);
+        assertThat(hung.isDone()).isFalse();
+    }
+
+    @Test
+    public void create_coarseTimeUnit() throws Exception {
+        // the default lookup timeout is less than a minute
+        CachingHostResolver resolver = new CachingHostResolver(resolveTo("10.0.0.1"), 10, 5, 1, TimeUnit.MINUTES);
+        assertThat(resolve(resolver, "a.dreamfly.io")).containsExactly(InetAddresses.forString("10.0.0.1"));
+    }
+
+    @Test
+    public void resolve_negativeCached() throws Exception {
+        CachingHostResolver resolver = new CachingHostResolver((host, executor) -> {
+            lookups.incrementAndGet();
+            return Futures.immediateFailedFuture(new UnknownHostException(host));
+        }, 10, 30, 5, 10, TimeUnit.SECONDS, ticker);
+
+        for (int i = 0; i < 2; i++) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> resolve(resolver, "invalid_host"));
+            assertThat(e.getCause()).isInstanceOf(UnknownHostException.class);
+        }
+        assertThat(lookups.get()).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThrows(ExecutionException.class, () -> resolve(resolver, "invalid_host"));
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void resolve_evictedBySize() throws Exception {
+        CachingHostResolver resolver = new CachingHostResolver(resolveTo("10.0.0.1"), 2, 30, 5, 10,
+                TimeUnit.SECONDS, ticker);
+        for (int i = 0; i < 10; i++) {
+            resolve(resolver, "host" + i + ".dreamfly.io");
+        }
+        assertThat(resolver.size()).isLessThanOrEqualTo(2);
+        assertThat(resolver.evictionCount()).isEqualTo(10 - resolver.size());
+    }
+
+    @Test
+    public void resolve_ipNotCached() throws Exception {
+        CachingHostResolver resolver = new CachingHostResolver(JdkHostResolver.getInstance(), 10, 30, 5, 10,
+                TimeUnit.SECONDS, ticker);
+        assertThat(resolve(resolver, "127.0.0.1")).containsExactly(InetAddresses.forString("127.0.0.1"));
+        assertThat(resolver.size()).isEqualTo(0);
+        assertThat(resolver.missCount()).isEqualTo(0);
+    }
+
+    private List<InetAddress> resolve(CachingHostResolver resolver, String host) throws Exception {
+        return resolver.resolve(host, MoreExecutors.directExecutor()).get();
+    }
+}
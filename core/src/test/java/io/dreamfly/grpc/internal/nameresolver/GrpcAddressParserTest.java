@@ -1,10 +1,17 @@
 package io.dreamfly.grpc.internal.nameresolver;
 
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.grpc.Attributes;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -115,4 +122,87 @@ public class GrpcAddressParserTest {
         assertThat(ipList.size()).isEqualTo(1);
         assertThat(input).isEqualTo(ipList.get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void resolve_ipList() throws Exception {
+        final String input = "127.0.0.1:1111, 127.0.0.2";
+        List<GrpcAddressParser.IpPortPair> ipPortPairList = GrpcAddressParser.resolve(
+                GrpcAddressParser.parseHostPortPairs(input, defaultPort),
+                JdkHostResolver.getInstance(), MoreExecutors.directExecutor()).get().getIpPortPairs();
+        assertThat(ipPortPairList.size()).isEqualTo(2);
+        assertThat(ipPortPairList.get(0).getIp()).isEqualTo("127.0.0.1");
+        assertThat(ipPortPairList.get(0).getPort()).isEqualTo(1111);
+        assertThat(ipPortPairList.get(1).getIp()).isEqualTo("127.0.0.2");
+        assertThat(ipPortPairList.get(1).getPort()).isEqualTo(defaultPort);
+    }
+
+    @Test
+    public void resolve_sameHostOnlyOnce() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        HostResolver hostResolver = (host, executor) -> {
+            lookups.incrementAndGet();
+            return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString("127.0.0.1")));
+        };
+        List<GrpcAddressParser.IpPortPair> ipPortPairList = GrpcAddressParser.resolve(
+                GrpcAddressParser.parseHostPortPairs("a.dreamfly.io:1111,a.dreamfly.io:2222", defaultPort),
+                hostResolver, MoreExecutors.directExecutor()).get().getIpPortPairs();
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(ipPortPairList.size()).isEqualTo(2);
+        assertThat(ipPortPairList.get(1).getPort()).isEqualTo(2222);
+    }
+
+    @Test
+    public void resolve_partialFailure() throws Exception {
+        final String input = "127.0.0.1:1111,invalid_host:123";
+        GrpcAddressParser.ResolutionResult result = GrpcAddressParser.resolve(
+                GrpcAddressParser.parseHostPortPairs(input, defaultPort),
+                JdkHostResolver.getInstance(), MoreExecutors.directExecutor()).get();
+        assertThat(result.getIpPortPairs().size()).isEqualTo(1);
+        assertThat(result.getIpPortPairs().get(0).getIp()).isEqualTo("127.0.0.1");
+        assertThat(result.getFailures().size()).isEqualTo(1);
+        assertThat(result.getFailures().keySet().iterator().next().getHost()).isEqualTo("invalid_host");
+        assertThat(result.getFailures().values().iterator().next()).isInstanceOf(UnknownHostException.class);
+    }
+
+    @Test
+    public void parse_partialFailure() throws Exception {
+        final String input = "127.0.0.1:1111,invalid_host:123";
+        List<GrpcAddressParser.IpPortPair> ipPortPairList = GrpcAddressParser.parse(input, defaultPort);
+        assertThat(ipPortPairList.size()).isEqualTo(1);
+        assertThat(ipPortPairList.get(0).getIp()).isEqualTo("127.0.0.1");
+    }
+
+    @Test
+    public void parseHostPortPairs_annotations() {
+        final String input = "a.dreamfly.io:1111;zone=zone-a;weight=3, b.dreamfly.io ; weight = 2,c.dreamfly.io:3333";
+        List<GrpcAddressParser.HostPortPair> hostPortPairs = GrpcAddressParser.parseHostPortPairs(input, defaultPort);
+        assertThat(hostPortPairs).hasSize(3);
+        assertThat(hostPortPairs.get(0).toString()).isEqualTo("a.dreamfly.io:1111");
+        assertThat(hostPortPairs.get(0).getAttributes().get(LoadBalancerAttributes.ZONE)).isEqualTo("zone-a");
+        assertThat(hostPortPairs.get(0).getAttributes().get(LoadBalancerAttributes.WEIGHT)).isEqualTo(3);
+        assertThat(hostPortPairs.get(1).toString()).isEqualTo("b.dreamfly.io:" + defaultPort);
+        assertThat(hostPortPairs.get(1).getAttributes().get(LoadBalancerAttributes.ZONE)).isNull();
+        assertThat(hostPortPairs.get(1).getAttributes().get(LoadBalancerAttributes.WEIGHT)).isEqualTo(2);
+        assertThat(hostPortPairs.get(2).getAttributes()).isEqualTo(Attributes.EMPTY);
+
+        for (String invalid : new String[]{"a:1;weight=0", "a:1;weight=x", "a:1;zone=", "a:1;rack=r1", "a:1;zone"}) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> GrpcAddressParser.parseHostPortPairs(invalid, defaultPort), invalid);
+        }
+    }
+
+    @Test
+    public void parseNames_localAddresses() {
+        List<GrpcAddressParser.HostPortPair> names = GrpcAddressParser.parseNames("/tmp/a.sock;zone=zone-a, /tmp/b.sock");
+        assertThat(names).hasSize(2);
+        assertThat(names.get(0).getHost()).isEqualTo("/tmp/a.sock");
+        assertThat(names.get(0).getAttributes().get(LoadBalancerAttributes.ZONE)).isEqualTo("zone-a");
+        assertThat(names.get(1).getHost()).isEqualTo("/tmp/b.sock");
+
+        GrpcAddressParser.ResolutionResult result = GrpcAddressParser.resolveNames(names);
+        assertThat(result.getResolved().get(names.get(1)).get(0).getIp()).isEqualTo("/tmp/b.sock");
+        assertThat(result.getFailures()).isEmpty();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GrpcAddressParser.parseNames("a,,b"));
+    }
+}
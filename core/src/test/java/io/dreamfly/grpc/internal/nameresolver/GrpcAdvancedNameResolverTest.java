@@ -0,0 +1,254 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.dreamfly.grpc.internal.metrics.ClientMetrics;
+import io.dreamfly.grpc.internal.metrics.MetricsRecorder;
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GrpcAdvancedNameResolverTest {
+
+    private final AtomicReference<String> resolvedIp = new AtomicReference<>("10.0.0.1");
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final HostResolver hostResolver = (host, executor) -> {
+        lookups.incrementAndGet();
+        return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString(resolvedIp.get())));
+    };
+    private final BlockingQueue<List<EquivalentAddressGroup>> addresses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Status> errors = new LinkedBlockingQueue<>();
+    private final NameResolver.Listener listener = new NameResolver.Listener() {
+        @Override
+        public void onAddresses(List<EquivalentAddressGroup> servers, Attributes attributes) {
+            addresses.add(servers);
+        }
+
+        @Override
+        public void onError(Status error) {
+            errors.add(error);
+        }
+    };
+
+    private GrpcAdvancedNameResolver resolver;
+
+    @AfterEach
+    public void shutdown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void refresh_periodicallyAndNotifyOnlyWhenChanged() throws Exception {
+        resolver = newResolver(GrpcNameResolverOptions.newBuilder()
+                .hostResolver(hostResolver)
+                .refreshInterval(20, TimeUnit.MILLISECONDS)
+                .refreshJitter(0)
+                .build());
+        resolver.start(listener);
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379));
+
+        // unchanged addresses are not published again
+        while (lookups.get() < 4) {
+            Thread.sleep(10);
+        }
+        assertThat(addresses).isEmpty();
+
+        resolvedIp.set("10.0.0.2");
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.2", 2379));
+    }
+
+    @Test
+    public void refresh_disabledByDefault() throws Exception {
+        resolver = newResolver(GrpcNameResolverOptions.newBuilder().hostResolver(hostResolver).build());
+        resolver.start(listener);
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).hasSize(1);
+
+        Thread.sleep(100);
+        assertThat(lookups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void retry_withBackoffAndResetAfterSuccess() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(2);
+        final List<Integer> reportedFailures = new CopyOnWriteArrayList<>();
+        MetricsRecorder metricsRecorder = new MetricsRecorder() {
+            @Override
+            public void resolutionBackoff(String authority, int consecutiveFailures, long delayNanos) {
+                reportedFailures.add(consecutiveFailures);
+            }
+        };
+        HostResolver flakyResolver = (host, executor) -> {
+            if (failures.getAndDecrement() > 0) {
+                return Futures.immediateFailedFuture(new UnknownHostException(host));
+            }
+            return hostResolver.resolve(host, executor);
+        };
+        resolver = newResolver(GrpcNameResolverOptions.newBuilder()
+                .hostResolver(flakyResolver)
+                .backoffPolicy(BackoffPolicy.newBuilder()
+                        .initialDelay(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .metricsRecorder(metricsRecorder)
+                .build());
+        resolver.start(listener);
+
+        assertThat(errors.poll(5, TimeUnit.SECONDS).getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(errors.poll(5, TimeUnit.SECONDS).getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379));
+        assertThat(resolver.getBackoffState().isBackingOff()).isFalse();
+        assertThat(reportedFailures).containsExactly(1, 2, 0);
+    }
+
+    @Test
+    public void retry_onlyFailedHosts() throws Exception {
+        final AtomicInteger badLookups = new AtomicInteger();
+        final AtomicReference<Boolean> badFixed = new AtomicReference<>(false);
+        HostResolver partialResolver = (host, executor) -> {
+            if (host.startsWith("bad")) {
+                badLookups.incrementAndGet();
+                if (!badFixed.get()) {
+                    return Futures.immediateFailedFuture(new UnknownHostException(host));
+                }
+                return Futures.immediateFuture(Collections.singletonList(InetAddresses.forString("10.0.0.3")));
+            }
+            return hostResolver.resolve(host, executor);
+        };
+        ClientMetrics metrics = new ClientMetrics();
+        resolver = new GrpcAdvancedNameResolver("grpc", "good.dreamfly.io,bad.dreamfly.io", 2379,
+                GrpcNameResolverOptions.newBuilder()
+                        .hostResolver(partialResolver)
+                        .metricsRecorder(metrics)
+                        .backoffPolicy(BackoffPolicy.newBuilder()
+                                .initialDelay(10, TimeUnit.MILLISECONDS)
+                                .maxDelay(10, TimeUnit.MILLISECONDS)
+                                .build())
+                        .build());
+        resolver.start(listener);
+
+        // the good host is published at once
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379));
+        assertThat(errors).isEmpty();
+        assertThat(resolver.getFailedHosts()).containsExactly("bad.dreamfly.io:2379");
+        assertThat(metrics.getResolutions().get("good.dreamfly.io,bad.dreamfly.io").getFailedHosts())
+                .containsExactly("bad.dreamfly.io:2379");
+
+        // only the bad host is retried
+        while (badLookups.get() < 3) {
+            Thread.sleep(10);
+        }
+        assertThat(lookups.get()).isEqualTo(1);
+
+        badFixed.set(true);
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379),
+                addressGroup("10.0.0.3", 2379));
+        assertThat(resolver.getFailedHosts()).isEmpty();
+    }
+
+    @Test
+    public void start_manyResolversOnBoundedExecutor() throws Exception {
+        GrpcNameResolverOptions options = GrpcNameResolverOptions.newBuilder()
+                .hostResolver((host, executor) -> {
+                    ListenableFutureTask<List<InetAddress>> task = ListenableFutureTask.create(
+                            () -> Collections.singletonList(InetAddresses.forString("10.0.0.1")));
+                    executor.execute(task);
+                    return task;
+                })
+                .executor(ResolverExecutors.boundedExecutor(1, 1))
+                .backoffPolicy(BackoffPolicy.newBuilder()
+                        .initialDelay(10, TimeUnit.MILLISECONDS)
+                        .maxDelay(50, TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+        List<GrpcAdvancedNameResolver> resolvers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                GrpcAdvancedNameResolver resolver = newResolver(options);
+                resolvers.add(resolver);
+                resolver.start(listener);
+            }
+            // rejected resolutions are retried until all resolvers get their addresses
+            for (int i = 0; i < 20; i++) {
+                assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379));
+            }
+        } finally {
+            for (GrpcAdvancedNameResolver resolver : resolvers) {
+                resolver.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void metricsRecorder_recordResolutions() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(1);
+        HostResolver flakyResolver = (host, executor) -> {
+            if (failures.getAndDecrement() > 0) {
+                return Futures.immediateFailedFuture(new UnknownHostException(host));
+            }
+            return hostResolver.resolve(host, executor);
+        };
+        ClientMetrics metrics = new ClientMetrics();
+        resolver = newResolver(GrpcNameResolverOptions.newBuilder()
+                .hostResolver(flakyResolver)
+                .backoffPolicy(BackoffPolicy.newBuilder()
+                        .initialDelay(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .metricsRecorder(metrics)
+                .build());
+        resolver.start(listener);
+
+        assertThat(addresses.poll(5, TimeUnit.SECONDS)).containsExactly(addressGroup("10.0.0.1", 2379));
+        ClientMetrics.ResolutionMetrics resolutions = metrics.getResolutions().get("service.dreamfly.io");
+        assertThat(resolutions.getFailedHosts()).isEmpty();
+        assertThat(resolutions.getFailureCount()).isEqualTo(1);
+        assertThat(resolutions.getSuccessCount()).isEqualTo(1);
+        assertThat(resolutions.getDuration().getCount()).isEqualTo(2);
+        // backoff is reset after the success
+        assertThat(resolutions.getConsecutiveFailures()).isEqualTo(0);
+        assertThat(resolutions.getBackoffDelayNanos()).isEqualTo(0);
+    }
+
+    @Test
+    public void start_annotatedAddresses() throws Exception {
+        resolver = new GrpcAdvancedNameResolver("grpc", "a.dreamfly.io;zone=zone-a;weight=2,b.dreamfly.io:2380",
+                2379, GrpcNameResolverOptions.newBuilder().hostResolver(hostResolver).build());
+        resolver.start(listener);
+
+        List<EquivalentAddressGroup> servers = addresses.poll(5, TimeUnit.SECONDS);
+        assertThat(servers).containsExactly(
+                new EquivalentAddressGroup(new InetSocketAddress("10.0.0.1", 2379), Attributes.newBuilder()
+                        .set(LoadBalancerAttributes.ZONE, "zone-a")
+                        .set(LoadBalancerAttributes.WEIGHT, 2)
+                        .build()),
+                addressGroup("10.0.0.1", 2380));
+    }
+
+    private GrpcAdvancedNameResolver newResolver(GrpcNameResolverOptions options) {
+        return new GrpcAdvancedNameResolver("grpc", "service.dreamfly.io", 2379, options);
+    }
+
+    private static EquivalentAddressGroup addressGroup(String ip, int port) {
+        return new EquivalentAddressGroup(new InetSocketAddress(ip, port));
+    }
+}
@@ -0,0 +1,138 @@
+package io.dreamfly.grpc.internal.nameresolver;
+
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancerAttributes;
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SubsettingTest {
+
+    @Test
+    public void select_deterministic() {
+        List<EquivalentAddressGroup> servers = servers(100);
+        List<EquivalentAddressGroup> subset = Subsetting.select(servers, "client-1", 10);
+        assertThat(subset).hasSize(10);
+        assertThat(Subsetting.select(servers, "client-1", 10)).isEqualTo(subset);
+        assertThat(Subsetting.select(servers, "client-2", 10)).isNotEqualTo(subset);
+        // small clusters are not subset
+        assertThat(Subsetting.select(servers(5), "client-1", 10)).hasSize(5);
+    }
+
+    @Test
+    public void select_minimalReshuffling() {
+        List<EquivalentAddressGroup> servers = servers(100);
+        List<EquivalentAddressGroup> subset = Subsetting.select(servers, "client-1", 10);
+
+        // removing an address out of the subset changes nothing
+        List<EquivalentAddressGroup> removedOther = new ArrayList<>(servers);
+        for (EquivalentAddressGroup server : servers) {
+            if (!subset.contains(server)) {
+                removedOther.remove(server);
+                break;
+            }
+        }
+        assertThat(Subsetting.select(removedOther, "client-1", 10)).isEqualTo(subset);
+
+        // removing an address of the subset only replaces it
+        List<EquivalentAddressGroup> removedSelected = new ArrayList<>(servers);
+        removedSelected.remove(subset.get(0));
+        List<EquivalentAddressGroup> newSubset = Subsetting.select(removedSelected, "client-1", 10);
+        assertThat(newSubset).hasSize(10).containsAll(subset.subList(1, 10));
+    }
+
+    @Test
+    public void select_evenCoverage() {
+        List<EquivalentAddressGroup> servers = servers(50);
+        Map<EquivalentAddressGroup, Integer> counts = new HashMap<>();
+        int clients = 2000;
+        for (int i = 0; i < clients; i++) {
+            for (EquivalentAddressGroup server : Subsetting.select(servers, "client-" + i, 5)) {
+                counts.merge(server, 1, Integer::sum);
+            }
+        }
+        // each address is expected to be chosen by 2000 * 5 / 50 = 200 clients
+        assertThat(counts).hasSize(50);
+        for (int count : counts.values()) {
+            assertThat(count).isBetween(140, 260);
+        }
+    }
+
+    @Test
+    public void select_weighted() {
+        List<EquivalentAddressGroup> servers = servers(20);
+        servers.set(0, new EquivalentAddressGroup(servers.get(0).getAddresses(),
+                Attributes.newBuilder().set(LoadBalancerAttributes.WEIGHT, 4).build()));
+        int heavy = 0;
+        int light = 0;
+        for (int i = 0; i < 2000; i++) {
+            List<EquivalentAddressGroup> subset = Subsetting.select(servers, "client-" + i, 2);
+            heavy += subset.contains(servers.get(0)) ? 1 : 0;
+            light += subset.contains(servers.get(1)) ? 1 : 0;
+        }
+        assertThat(heavy).isGreaterThan(light * 2);
+    }
+
+    @Test
+    public void score_canonicalAddress() throws Exception {
+        byte[] ip = {10, 0, 0, 1};
+        EquivalentAddressGroup ipOnly = new EquivalentAddressGroup(
+                new InetSocketAddress(InetAddress.getByAddress(ip), 8080));
+        EquivalentAddressGroup withHostName = new EquivalentAddressGroup(
+                new InetSocketAddress(InetAddress.getByAddress("a.dreamfly.io", ip), 8080));
+        assertThat(Subsetting.score(withHostName, "client-1")).isEqualTo(Subsetting.score(ipOnly, "client-1"));
+
+        EquivalentAddressGroup otherPort = new EquivalentAddressGroup(
+                new InetSocketAddress(InetAddress.getByAddress(ip), 8081));
+        assertThat(Subsetting.score(otherPort, "client-1")).isNotEqualTo(Subsetting.score(ipOnly, "client-1"));
+    }
+
+    @Test
+    public void resolver_publishSubset() throws Exception {
+        StringBuilder addresses = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            addresses.append(addresses.length() > 0 ? "," : "").append("10.0.0.").append(i).append(":8080");
+        }
+        BlockingQueue<List<EquivalentAddressGroup>> published = new LinkedBlockingQueue<>();
+        GrpcAdvancedNameResolver resolver = new GrpcAdvancedNameResolver("grpc", addresses.toString(), 80,
+                GrpcNameResolverOptions.newBuilder().subsetSize(3).clientId("client-1").build());
+        resolver.start(new NameResolver.Listener() {
+            @Override
+            public void onAddresses(List<EquivalentAddressGroup> servers, Attributes attributes) {
+                published.add(servers);
+            }
+
+            @Override
+            public void onError(Status error) {
+            }
+        });
+        try {
+            List<EquivalentAddressGroup> servers = published.poll(5, TimeUnit.SECONDS);
+            assertThat(servers).hasSize(3);
+            assertThat(servers).isEqualTo(Subsetting.select(servers(20), "client-1", 3));
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    private static List<EquivalentAddressGroup> servers(int count) {
+        List<EquivalentAddressGroup> servers = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            servers.add(new EquivalentAddressGroup(new InetSocketAddress("10.0.0." + i, 8080)));
+        }
+        return servers;
+    }
+}
@@ -0,0 +1,182 @@
+package io.dreamfly.grpc.internal.retry;
+
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableResponse;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.dreamfly.grpc.test.ControllableServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class HedgingClientInterceptorTest {
+
+    private static final String EXECUTE = ControllableServiceGrpc.getExecuteMethod().getFullMethodName();
+    private static final int SLOW_LATENCY = 300;
+
+    private static final Metadata.Key<String> PREVIOUS_ATTEMPTS = Metadata.Key.of("grpc-previous-rpc-attempts",
+            Metadata.ASCII_STRING_MARSHALLER);
+
+    private final List<Server> servers = new ArrayList<>();
+    private final ControllableServiceImpl slowService = new LatencyService(SLOW_LATENCY);
+    private final ControllableServiceImpl fastService = new LatencyService(0);
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+
+    @BeforeAll
+    public void startServers() throws IOException {
+        servers.add(ServerBuilder.forPort(10061).addService(slowService).build().start());
+        servers.add(ServerBuilder.forPort(10062).addService(fastService).build().start());
+        // reject the first attempt of each call
+        servers.add(ServerBuilder.forPort(10063)
+                .addService(ServerInterceptors.intercept(new ControllableServiceImpl(), new ServerInterceptor() {
+                    @Override
+                    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                            ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                        if (headers.get(PREVIOUS_ATTEMPTS) == null) {
+                            rejectedCount.incrementAndGet();
+                            call.close(Status.UNAVAILABLE.withDescription("first attempt"), new Metadata());
+                            return new ServerCall.Listener<ReqT>() {
+                            };
+                        }
+                        return next.startCall(call, headers);
+                    }
+                })).build().start());
+    }
+
+    @AfterAll
+    public void stopServers() throws InterruptedException {
+        for (Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void hedging_cutTailLatency() {
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://127.0.0.1:10061,127.0.0.1:10062")
+                .hedgingPolicy(EXECUTE, HedgingPolicy.newBuilder()
+                        .maxAttempts(2)
+                        .hedgingDelay(50, TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+        ControllableServiceBlockingStub stub = ControllableServiceGrpc.newBlockingStub(channel);
+        stub.execute(ControllableRequest.getDefaultInstance());
+
+        long slowExecuted = slowService.getExecutedCount();
+        long fastExecuted = fastService.getExecutedCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            ControllableResponse response = stub.execute(ControllableRequest.newBuilder().setRequestId(i).build());
+            assertThat(response.getRequestId()).isEqualTo(i);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // half of the calls are first sent to the slow server, all of them are answered by the fast server
+        assertThat(elapsed).isLessThan(10L * SLOW_LATENCY / 2);
+        assertThat(fastService.getExecutedCount() - fastExecuted).isEqualTo(10);
+        assertThat(slowService.getExecutedCount() - slowExecuted).isBetween(1L, 10L);
+
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void hedging_throttledByBudget() {
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 10; i++) {
+            budget.onFailure();
+        }
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://127.0.0.1:10061,127.0.0.1:10062")
+                .hedgingPolicy(ControllableServiceGrpc.SERVICE_NAME, HedgingPolicy.newBuilder()
+                        .hedgingDelay(50, TimeUnit.MILLISECONDS)
+                        .build())
+                .retryBudget(budget)
+                .build();
+        ControllableServiceBlockingStub stub = ControllableServiceGrpc.newBlockingStub(channel);
+
+        long executed = slowService.getExecutedCount() + fastService.getExecutedCount();
+        for (int i = 0; i < 4; i++) {
+            stub.execute(ControllableRequest.getDefaultInstance());
+        }
+        assertThat(slowService.getExecutedCount() + fastService.getExecutedCount() - executed).isEqualTo(4);
+        assertThat(budget.getTokens()).isCloseTo(0.4, within(0.001));
+        assertThat(budget.allowRetry()).isFalse();
+
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void retry_byServiceConfig() {
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://127.0.0.1:10063")
+                .retryPolicy(EXECUTE, RetryPolicy.newBuilder()
+                        .maxAttempts(2)
+                        .initialBackoff(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .retryBudget(new RetryBudget(10, 0.1))
+                .build();
+        int rejected = rejectedCount.get();
+        ControllableResponse response = ControllableServiceGrpc.newBlockingStub(channel)
+                .execute(ControllableRequest.newBuilder().setRequestId(1).build());
+        assertThat(response.getRequestId()).isEqualTo(1);
+        assertThat(rejectedCount.get() - rejected).isEqualTo(1);
+        channel.shutdownNow();
+
+        ManagedChannel noRetry = GrpcConnectionBuilder.newBuilder().uri("grpc://127.0.0.1:10063").build();
+        assertThatThrownBy(() -> ControllableServiceGrpc.newBlockingStub(noRetry)
+                .execute(ControllableRequest.getDefaultInstance()))
+                .isInstanceOf(StatusRuntimeException.class)
+                .hasMessageContaining("UNAVAILABLE");
+        noRetry.shutdownNow();
+    }
+
+    @Test
+    public void builder_retryOrHedging() {
+        GrpcConnectionBuilder builder = GrpcConnectionBuilder.newBuilder()
+                .retryPolicy(EXECUTE, RetryPolicy.newBuilder().build());
+        assertThatThrownBy(() -> builder.hedgingPolicy(EXECUTE, HedgingPolicy.newBuilder()
+                .hedgingDelay(1, TimeUnit.MILLISECONDS).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HedgingPolicy.newBuilder().build()).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Service with a fixed latency added to each call.
+     */
+    private static class LatencyService extends ControllableServiceImpl {
+        private final int latency;
+
+        LatencyService(int latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public void execute(ControllableRequest request, StreamObserver<ControllableResponse> responseObserver) {
+            super.execute(request.toBuilder().setExpectedLatency(latency).build(), responseObserver);
+        }
+    }
+}
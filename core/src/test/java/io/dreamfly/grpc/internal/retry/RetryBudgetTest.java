@@ -0,0 +1,104 @@
+package io.dreamfly.grpc.internal.retry;
+
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void budget_throttleWhenHalfTokensLeft() {
+        RetryBudget budget = new RetryBudget(10, 0.5);
+        assertThat(budget.getTokens()).isEqualTo(10);
+        assertThat(budget.allowRetry()).isTrue();
+
+        for (int i = 0; i < 4; i++) {
+            budget.onFailure();
+        }
+        assertThat(budget.getTokens()).isEqualTo(6);
+        assertThat(budget.allowRetry()).isTrue();
+        budget.onFailure();
+        assertThat(budget.allowRetry()).isFalse();
+
+        budget.onSuccess();
+        assertThat(budget.getTokens()).isEqualTo(5.5);
+        assertThat(budget.allowRetry()).isTrue();
+
+        // tokens are kept between 0 and maxTokens
+        for (int i = 0; i < 20; i++) {
+            budget.onFailure();
+        }
+        assertThat(budget.getTokens()).isEqualTo(0);
+        for (int i = 0; i < 100; i++) {
+            budget.onSuccess();
+        }
+        assertThat(budget.getTokens()).isEqualTo(10);
+    }
+
+    @Test
+    public void budget_invalidArguments() {
+        assertThatThrownBy(() -> new RetryBudget(0, 0.1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new RetryBudget(1001, 0.1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new RetryBudget(10, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serviceConfig_retryPolicies() {
+        RetryPolicy policy = RetryPolicy.newBuilder()
+                .maxAttempts(4)
+                .initialBackoff(50, TimeUnit.MILLISECONDS)
+                .maxBackoff(2, TimeUnit.SECONDS)
+                .backoffMultiplier(1.5)
+                .retryableStatusCodes(Status.Code.UNAVAILABLE, Status.Code.ABORTED)
+                .build();
+        Map<String, Object> serviceConfig = ServiceConfigs.retryServiceConfig(
+                Collections.singletonMap("a.b.Service/Method", policy), new RetryBudget(20, 0.2));
+
+        List<Map<String, Object>> methodConfigs = (List<Map<String, Object>>) serviceConfig.get("methodConfig");
+        assertThat(methodConfigs).hasSize(1);
+        List<Map<String, Object>> names = (List<Map<String, Object>>) methodConfigs.get(0).get("name");
+        assertThat(names.get(0)).containsEntry("service", "a.b.Service").containsEntry("method", "Method");
+        Map<String, Object> retryPolicy = (Map<String, Object>) methodConfigs.get(0).get("retryPolicy");
+        assertThat(retryPolicy)
+                .containsEntry("maxAttempts", 4.0)
+                .containsEntry("initialBackoff", "0.050000000s")
+                .containsEntry("maxBackoff", "2.000000000s")
+                .containsEntry("backoffMultiplier", 1.5);
+        assertThat((List<Object>) retryPolicy.get("retryableStatusCodes"))
+                .containsExactlyInAnyOrder("UNAVAILABLE", "ABORTED");
+        assertThat((Map<String, Object>) serviceConfig.get("retryThrottling"))
+                .containsEntry("maxTokens", 20.0)
+                .containsEntry("tokenRatio", 0.2);
+
+        Map<String, Object> serviceOnly = ServiceConfigs.retryServiceConfig(
+                Collections.singletonMap("a.b.Service", policy), null);
+        methodConfigs = (List<Map<String, Object>>) serviceOnly.get("methodConfig");
+        names = (List<Map<String, Object>>) methodConfigs.get(0).get("name");
+        assertThat(names.get(0)).containsOnlyKeys("service");
+        assertThat(serviceOnly).doesNotContainKey("retryThrottling");
+    }
+
+    @Test
+    public void serviceConfig_duration() {
+        assertThat(ServiceConfigs.duration(0)).isEqualTo("0.000000000s");
+        assertThat(ServiceConfigs.duration(TimeUnit.MILLISECONDS.toNanos(1500))).isEqualTo("1.500000000s");
+        assertThat(ServiceConfigs.duration(1)).isEqualTo("0.000000001s");
+    }
+
+    @Test
+    public void serviceConfig_checkMethodName() {
+        ServiceConfigs.checkMethodName("a.b.Service/Method");
+        ServiceConfigs.checkMethodName("a.b.Service");
+        for (String name : new String[]{null, "", "/Method", "a.b.Service/", "a/b/c"}) {
+            assertThatThrownBy(() -> ServiceConfigs.checkMethodName(name)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
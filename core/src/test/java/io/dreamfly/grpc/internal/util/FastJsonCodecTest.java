@@ -0,0 +1,289 @@
+package io.dreamfly.grpc.internal.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+import com.google.rpc.DebugInfo;
+import com.google.rpc.Status;
+import io.dreamfly.grpc.test.AllTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FastJsonCodecTest {
+
+    private static final JsonFormat.Printer printer = JsonFormat.printer().includingDefaultValueFields();
+    private static final JsonFormat.Parser parser = JsonFormat.parser();
+
+    @Test
+    public void print_sameAsJsonFormat() throws InvalidProtocolBufferException {
+        assertSameJson(AllTypes.getDefaultInstance());
+        assertSameJson(DebugInfo.newBuilder().setDetail("detail").addStackEntries("a").addStackEntries("b").build());
+        assertSameJson(AllTypes.newBuilder()
+                .setInt32Value(-1).setInt64Value(Long.MIN_VALUE).setUint32Value(-1).setUint64Value(-1)
+                .setSint32Value(Integer.MIN_VALUE).setSint64Value(Long.MAX_VALUE).setFixed32Value(-2)
+                .setFixed64Value(-2).setSfixed32Value(-3).setSfixed64Value(-3)
+                .setFloatValue(Float.NaN).setDoubleValue(Double.NEGATIVE_INFINITY).setBoolValue(true)
+                .setStringValue("quote\" slash\\ tab\t nl\n ctl\u0001 html<>&=' sep\u2028\u2029 emoji\uD83D\uDE00 中文")
+                .setBytesValue(ByteString.copyFrom(new byte[]{0, 1, (byte) 0xFF}))
+                .setColorValue(7)
+                .setNested(AllTypes.Nested.getDefaultInstance())
+                .setEmpty(AllTypes.Empty.getDefaultInstance())
+                .addRepeatedColorValue(1).addRepeatedColorValue(9)
+                .addRepeatedFloat(Float.POSITIVE_INFINITY).addRepeatedDouble(-0.0)
+                .putInt64Map(1, AllTypes.Nested.getDefaultInstance())
+                .putBoolMap(true, AllTypes.Color.BLUE)
+                .setChoiceInt32(0)
+                .build());
+        assertSameJson(AllTypes.newBuilder().setChoiceNested(AllTypes.Nested.newBuilder().setChild(
+                AllTypes.Nested.newBuilder().setName("grandchild"))).build());
+
+        Random random = new Random(20181018);
+        for (int i = 0; i < 500; i++) {
+            assertSameJson(randomMessage(random, 3));
+        }
+    }
+
+    @Test
+    public void print_builder() throws InvalidProtocolBufferException {
+        AllTypes.Builder builder = AllTypes.newBuilder().setStringValue("builder").putStringMap("a", 1);
+        StringBuilder output = new StringBuilder();
+        assertThat(FastJsonCodec.print(builder, output)).isTrue();
+        assertThat(output.toString()).isEqualTo(printer.print(builder));
+    }
+
+    @Test
+    public void print_unsupported() {
+        // Status contains Any which has its special json mapping
+        assertThat(FastJsonCodec.isSupported(Status.getDescriptor())).isFalse();
+        StringBuilder output = new StringBuilder("prefix");
+        assertThat(FastJsonCodec.print(Status.newBuilder().setCode(1).build(), output)).isFalse();
+        assertThat(output.toString()).isEqualTo("prefix");
+    }
+
+    @Test
+    public void print_valuesLostByEncoding() throws InvalidProtocolBufferException {
+        // negative zero of singular fields is not serialized, also in nested messages and map values
+        assertNotPrinted(AllTypes.newBuilder().setDoubleValue(-0.0).build());
+        assertNotPrinted(AllTypes.newBuilder().setFloatValue(-0.0f).build());
+        assertNotPrinted(AllTypes.newBuilder().setRecursive(AllTypes.newBuilder().setFloatValue(-0.0f)).build());
+        // unpaired surrogates are serialized as '?'
+        assertNotPrinted(AllTypes.newBuilder().setStringValue("high\uD83D").build());
+        assertNotPrinted(AllTypes.newBuilder().putInt32Map(1, "low\uDE00").build());
+        assertNotPrinted(AllTypes.newBuilder().putStringMap("key\uD83D", 1).build());
+        assertNotPrinted(AllTypes.newBuilder().addRepeatedNested(AllTypes.Nested.newBuilder()
+                .setChild(AllTypes.Nested.newBuilder().setName("\uDE00\uD83D"))).build());
+
+        // values serialized as they are
+        assertSameJson(AllTypes.newBuilder().setDoubleValue(0.0).addRepeatedDouble(-0.0)
+                .setRecursive(AllTypes.newBuilder().setFloatValue(1.5f)).build());
+        assertSameJson(AllTypes.newBuilder().setStringValue("http://host/path?a=1&b=?").addRepeatedString("?")
+                .putStringMap("?", 1).putInt32Map(1, "smile \uD83D\uDE00?")
+                .setNested(AllTypes.Nested.newBuilder().setName("what?")).build());
+    }
+
+    @Test
+    public void merge_sameAsJsonFormat() throws InvalidProtocolBufferException {
+        Random random = new Random(20181019);
+        for (int i = 0; i < 500; i++) {
+            AllTypes message = randomMessage(random, 3);
+            String json = printer.print(message);
+            AllTypes.Builder builder = AllTypes.newBuilder();
+            assertThat(FastJsonCodec.merge(json, builder)).as(json).isTrue();
+
+            AllTypes.Builder expected = AllTypes.newBuilder();
+            parser.merge(json, expected);
+            assertThat(builder.build()).isEqualTo(expected.build());
+        }
+    }
+
+    @Test
+    public void merge_compactJson() throws InvalidProtocolBufferException {
+        String json = "{\"int32_value\":-5,\"int64Value\":\"-6\",\"uint64Value\":\"18446744073709551615\","
+                + "\"floatValue\":\"-Infinity\",\"doubleValue\":1.5e3,\"color\":\"GREEN\","
+                + "\"int32Map\":{\"-1\":\"x\"},\"boolMap\":{\"true\":\"BLUE\"},\"repeatedNested\":[{},{\"id\":1}],"
+                + "\"choiceString\":\"\",\"recursive\":{\"recursive\":{\"stringValue\":\"deep\"}}}";
+        AllTypes.Builder builder = AllTypes.newBuilder();
+        assertThat(FastJsonCodec.merge(json, builder)).isTrue();
+
+        AllTypes.Builder expected = AllTypes.newBuilder();
+        parser.merge(json, expected);
+        assertThat(builder.build()).isEqualTo(expected.build());
+        assertThat(builder.getChoiceCase()).isEqualTo(AllTypes.ChoiceCase.CHOICE_STRING);
+    }
+
+    @Test
+    public void merge_fallback() {
+        // content JsonFormat accepts in other forms, rejects or merges differently is left to JsonFormat
+        String[] jsons = {
+                "{\"int32Value\":1.0}", "{\"int32Value\":01}", "{\"color\":\"1\"}", "{\"int32Value\":null}",
+                "{\"unknown\":1}", "{\"int32Value\":1,\"int32_value\":2}", "{\"choiceString\":\"a\",\"choiceInt32\":1}",
+                "{\"boolValue\":\"true\"}", "{\"stringValue\":\"\\ud800\"}", "{int32Value:1}", "{} trailing", "[]",
+                "{\"stringMap\":{\"a\":1,\"a\":2}}", "{\"bytesValue\":\"_-8\"}", "{\"doubleValue\":1e309}"
+        };
+        for (String json : jsons) {
+            AllTypes.Builder builder = AllTypes.newBuilder();
+            assertThat(FastJsonCodec.merge(json, builder)).as(json).isFalse();
+            assertThat(builder.build()).isEqualTo(AllTypes.getDefaultInstance());
+        }
+
+        // JsonFormat rejects fields already set
+        assertThat(FastJsonCodec.merge("{\"int32Value\":1}", AllTypes.newBuilder().setInt32Value(2))).isFalse();
+    }
+
+    @Test
+    public void simpleJsonFormat_fastCodec() {
+        AllTypes message = randomMessage(new Random(1), 2);
+        String expected = SimpleJsonFormat.message2Json(message);
+        try {
+            SimpleJsonFormat.setCodec(SimpleJsonFormat.Codec.FAST);
+            assertThat(SimpleJsonFormat.message2Json(message)).isEqualTo(expected);
+
+            AllTypes.Builder builder = AllTypes.newBuilder();
+            SimpleJsonFormat.json2message(expected, builder);
+            assertThat(builder.build()).isEqualTo(message);
+
+            // unsupported messages fall back to JsonFormat
+            Status status = Status.newBuilder().setCode(3).setMessage("fallback").build();
+            Status.Builder statusBuilder = Status.newBuilder();
+            SimpleJsonFormat.json2message(SimpleJsonFormat.message2Json(status), statusBuilder);
+            assertThat(statusBuilder.build()).isEqualTo(status);
+        } finally {
+            SimpleJsonFormat.setCodec(SimpleJsonFormat.Codec.JSON_FORMAT);
+        }
+    }
+
+    private static void assertSameJson(MessageOrBuilder message)
+            throws InvalidProtocolBufferException {
+        StringBuilder output = new StringBuilder();
+        assertThat(FastJsonCodec.print(message, output)).isTrue();
+        assertThat(output.toString()).isEqualTo(printer.print(message));
+    }
+
+    private static void assertNotPrinted(MessageOrBuilder message) throws InvalidProtocolBufferException {
+        StringBuilder output = new StringBuilder();
+        assertThat(FastJsonCodec.print(message, output)).isFalse();
+        assertThat(output.toString()).isEmpty();
+        // SimpleJsonFormat falls back to JsonFormat
+        SimpleJsonFormat.setCodec(SimpleJsonFormat.Codec.FAST);
+        try {
+            assertThat(SimpleJsonFormat.message2Json(message)).isEqualTo(printer.print(message));
+        } finally {
+            SimpleJsonFormat.setCodec(SimpleJsonFormat.Codec.JSON_FORMAT);
+        }
+    }
+
+    private static AllTypes randomMessage(Random random, int depth) {
+        AllTypes.Builder builder = AllTypes.newBuilder();
+        if (random.nextBoolean()) {
+            builder.setInt32Value(random.nextInt()).setInt64Value(random.nextLong())
+                    .setUint32Value(random.nextInt()).setUint64Value(random.nextLong())
+                    .setSint32Value(random.nextInt()).setSint64Value(random.nextLong())
+                    .setFixed32Value(random.nextInt()).setFixed64Value(random.nextLong())
+                    .setSfixed32Value(random.nextInt()).setSfixed64Value(random.nextLong());
+        }
+        if (random.nextBoolean()) {
+            builder.setFloatValue(randomFloat(random)).setDoubleValue(randomDouble(random))
+                    .setBoolValue(random.nextBoolean()).setStringValue(randomString(random))
+                    .setBytesValue(randomBytes(random)).setColorValue(random.nextInt(4));
+        }
+        if (random.nextBoolean()) {
+            builder.setNested(randomNested(random, depth));
+        }
+        if (random.nextBoolean()) {
+            builder.setEmpty(AllTypes.Empty.getDefaultInstance());
+        }
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            builder.addRepeatedInt32(random.nextInt()).addRepeatedInt64(random.nextLong())
+                    .addRepeatedUint64(random.nextLong()).addRepeatedDouble(randomDouble(random))
+                    .addRepeatedFloat(randomFloat(random)).addRepeatedBool(random.nextBoolean())
+                    .addRepeatedString(randomString(random)).addRepeatedBytes(randomBytes(random))
+                    .addRepeatedColorValue(random.nextInt(3)).addRepeatedNested(randomNested(random, depth));
+            builder.putStringMap(randomString(random), random.nextInt())
+                    .putInt32Map(random.nextInt(), randomString(random))
+                    .putInt64Map(random.nextLong(), randomNested(random, depth))
+                    .putBoolMap(random.nextBoolean(), AllTypes.Color.forNumber(random.nextInt(3)))
+                    .putUint32Map(random.nextInt(), randomBytes(random));
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                builder.setChoiceString(randomString(random));
+                break;
+            case 1:
+                builder.setChoiceInt32(random.nextInt());
+                break;
+            case 2:
+                builder.setChoiceNested(randomNested(random, depth));
+                break;
+            default:
+                break;
+        }
+        if (depth > 0 && random.nextInt(3) == 0) {
+            builder.setRecursive(randomMessage(random, depth - 1));
+        }
+        return builder.build();
+    }
+
+    private static AllTypes.Nested randomNested(Random random, int depth) {
+        AllTypes.Nested.Builder builder = AllTypes.Nested.newBuilder()
+                .setId(random.nextInt(100) - 50).setName(randomString(random));
+        if (depth > 0 && random.nextBoolean()) {
+            builder.setChild(randomNested(random, depth - 1));
+        }
+        return builder.build();
+    }
+
+    private static float randomFloat(Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return Float.NaN;
+            case 1:
+                return Float.NEGATIVE_INFINITY;
+            case 2:
+                return Float.MIN_VALUE;
+            case 3:
+                return Float.MAX_VALUE;
+            default:
+                return (random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(20) - 10);
+        }
+    }
+
+    private static double randomDouble(Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return Double.NaN;
+            case 1:
+                return Double.POSITIVE_INFINITY;
+            case 2:
+                return Double.MIN_VALUE;
+            case 3:
+                return 1e300;
+            default:
+                return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+        }
+    }
+
+    private static String randomString(Random random) {
+        String alphabet = "ab\"\\/\n\t\u0000\u001f<>&='\u2028\u00e9\u4e2d";
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(10) == 0) {
+                builder.append("\uD83D\uDE00");
+            } else {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static ByteString randomBytes(Random random) {
+        byte[] bytes = new byte[random.nextInt(6)];
+        random.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+    }
+}
@@ -1,10 +1,19 @@
 package io.dreamfly.grpc.internal.util;
 
 
+import com.google.common.base.Strings;
 import com.google.rpc.DebugInfo;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class SimpleJsonFormatTest {
 
@@ -21,4 +30,59 @@ public class SimpleJsonFormatTest {
         assertThat(builder.getDetail()).isEqualTo("detail-1234567");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void message2Json_includingDefaultValueFields() {
+        String json = SimpleJsonFormat.message2Json(DebugInfo.getDefaultInstance());
+        assertThat(json).contains("\"detail\": \"\"").contains("\"stackEntries\": []");
+    }
+
+    @Test
+    public void stream() {
+        // larger than the buffer chunk, with multi-byte and surrogate pair characters
+        DebugInfo debugInfo = DebugInfo.newBuilder()
+                .setDetail(Strings.repeat("细节-😀-detail-", 2000))
+                .addStackEntries("entry-1")
+                .build();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SimpleJsonFormat.message2Json(debugInfo, output);
+        String json = SimpleJsonFormat.message2Json(debugInfo);
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(json);
+
+        DebugInfo.Builder builder = DebugInfo.newBuilder();
+        SimpleJsonFormat.json2message(new ByteArrayInputStream(output.toByteArray()), builder);
+        assertThat(builder.build()).isEqualTo(debugInfo);
+
+        builder = DebugInfo.newBuilder();
+        SimpleJsonFormat.json2message(new StringReader(json), builder);
+        assertThat(builder.build()).isEqualTo(debugInfo);
+
+        StringBuilder appendable = new StringBuilder("json=");
+        SimpleJsonFormat.message2Json(debugInfo, appendable);
+        assertThat(appendable.toString()).isEqualTo("json=" + json);
+    }
+
+    @Test
+    public void stream_invalidJson() {
+        byte[] invalid = "{\"detail\": 1".getBytes(StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> SimpleJsonFormat.json2message(new ByteArrayInputStream(invalid),
+                DebugInfo.newBuilder())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void batch() {
+        List<DebugInfo> messages = Arrays.asList(
+                DebugInfo.newBuilder().setDetail("detail-1").build(),
+                DebugInfo.newBuilder().setDetail("detail-2").build());
+
+        List<String> contents = SimpleJsonFormat.messages2Json(messages);
+        assertThat(contents).hasSize(2);
+        assertThat(SimpleJsonFormat.json2messages(contents, DebugInfo.getDefaultInstance()))
+                .isEqualTo(messages);
+
+        String array = SimpleJsonFormat.messages2JsonArray(messages);
+        assertThat(array).isEqualTo("[" + contents.get(0) + "," + contents.get(1) + "]");
+        assertThat(SimpleJsonFormat.messages2JsonArray(Arrays.<DebugInfo>asList())).isEqualTo("[]");
+    }
+
+}
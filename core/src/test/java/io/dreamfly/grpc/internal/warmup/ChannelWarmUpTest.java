@@ -0,0 +1,131 @@
+package io.dreamfly.grpc.internal.warmup;
+
+import io.dreamfly.grpc.GrpcConnectionBuilder;
+import io.dreamfly.grpc.internal.loadbalancer.LoadBalancingPolicy;
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.PickFirstBalancerFactory;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ChannelWarmUpTest extends ControllableServiceAware {
+
+    // nothing listens on it
+    private static final String UNAVAILABLE_ADDRESS = "127.0.0.1:10099";
+
+    public ChannelWarmUpTest() {
+        super(new int[]{10091, 10092});
+    }
+
+    @Test
+    public void buildAndWarmUp_withProbe() throws Exception {
+        long executed0 = services.get(0).getExecutedCount();
+        long executed1 = services.get(1).getExecutedCount();
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .loadBalancingPolicy(LoadBalancingPolicy.LEAST_REQUEST)
+                .warmUp(WarmUpConfig.newBuilder()
+                        .probe(ControllableServiceGrpc.getExecuteMethod(), ControllableRequest.getDefaultInstance())
+                        .build())
+                .buildAndWarmUp()
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(channel.getState(false)).isEqualTo(ConnectivityState.READY);
+        // one probe to each backend
+        assertThat(services.get(0).getExecutedCount() - executed0).isEqualTo(1);
+        assertThat(services.get(1).getExecutedCount() - executed1).isEqualTo(1);
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void buildAndWarmUp_probeFailed() {
+        GrpcConnectionBuilder builder = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .warmUp(WarmUpConfig.newBuilder()
+                        .probe(ControllableServiceGrpc.getExecuteMethod(),
+                                ControllableRequest.newBuilder().setFailureRate(1).build())
+                        .build());
+        assertThatThrownBy(() -> builder.buildAndWarmUp().get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .satisfies(e -> assertThat(Status.fromThrowable(e).getCode())
+                        .isEqualTo(Status.Code.UNAVAILABLE))
+                .hasMessageContaining("failed=2/2");
+    }
+
+    @Test
+    public void buildAndWarmUp_readyFraction() throws Exception {
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://" + getTarget() + "," + UNAVAILABLE_ADDRESS)
+                .warmUp(WarmUpConfig.newBuilder()
+                        .readyFraction(0.6)
+                        .timeout(5, TimeUnit.SECONDS)
+                        .build())
+                .buildAndWarmUp()
+                .get(5, TimeUnit.SECONDS);
+        assertThat(channel.getState(false)).isEqualTo(ConnectivityState.READY);
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void buildAndWarmUp_timeout() {
+        GrpcConnectionBuilder builder = GrpcConnectionBuilder.newBuilder()
+                .uri("grpc://" + getTarget() + "," + UNAVAILABLE_ADDRESS)
+                .warmUp(WarmUpConfig.newBuilder()
+                        .timeout(1, TimeUnit.SECONDS)
+                        .build());
+        assertThatThrownBy(() -> builder.buildAndWarmUp().get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .satisfies(e -> assertThat(Status.fromThrowable(e).getCode())
+                        .isEqualTo(Status.Code.DEADLINE_EXCEEDED))
+                .hasMessageContaining("ready=2, backends=3");
+    }
+
+    @Test
+    public void build_connectEagerly() throws InterruptedException {
+        ManagedChannel channel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .warmUp(WarmUpConfig.DEFAULT)
+                .build();
+        for (int i = 0; i < 100 && channel.getState(false) != ConnectivityState.READY; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(channel.getState(false)).isEqualTo(ConnectivityState.READY);
+        channel.shutdownNow();
+
+        ManagedChannel lazyChannel = GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget()).build();
+        assertThat(lazyChannel.getState(false)).isEqualTo(ConnectivityState.IDLE);
+        lazyChannel.shutdownNow();
+    }
+
+    @Test
+    public void config_invalid() {
+        assertThatThrownBy(() -> WarmUpConfig.newBuilder().readyFraction(0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> WarmUpConfig.newBuilder().probe(
+                ControllableServiceGrpc.getExecuteServerStreamingMethod(), ControllableRequest.getDefaultInstance()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // probe calls can't be sent to each backend by PICK_FIRST or a custom load balancer
+        WarmUpConfig probeConfig = WarmUpConfig.newBuilder()
+                .probe(ControllableServiceGrpc.getExecuteMethod(), ControllableRequest.getDefaultInstance())
+                .build();
+        assertThatThrownBy(() -> GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .loadBalancingPolicy(LoadBalancingPolicy.PICK_FIRST)
+                .warmUp(probeConfig)
+                .build())
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> GrpcConnectionBuilder.newBuilder().uri("grpc://" + getTarget())
+                .loadBalancerFactory(PickFirstBalancerFactory.getInstance())
+                .warmUp(probeConfig)
+                .buildAndWarmUp())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
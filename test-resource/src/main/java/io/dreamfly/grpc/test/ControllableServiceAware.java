@@ -20,6 +20,7 @@ public abstract class ControllableServiceAware {
     private static Logger logger = LoggerFactory.getLogger(ControllableServiceAware.class);
     protected final int[] ports;
     protected List<Server> servers = new ArrayList<>();
+    protected List<ControllableServiceImpl> services = new ArrayList<>();
 
     public ControllableServiceAware(int port) {
         checkPort(port);
@@ -39,16 +40,32 @@ public abstract class ControllableServiceAware {
         checkArgument(port > 0 && port < 65536, "invalid port " + port);
     }
 
+    /**
+     * @return addresses of the servers separated by comma, e.g. "127.0.0.1:10011,127.0.0.1:10012"
+     */
+    protected String getTarget() {
+        StringBuilder target = new StringBuilder();
+        for(int port : ports) {
+            if (target.length() > 0) {
+                target.append(',');
+            }
+            target.append("127.0.0.1:").append(port);
+        }
+        return target.toString();
+    }
+
     @BeforeAll
     public void startControllableServers() {
         for(int port : ports) {
             logger.debug("begin to start Controllable Server on port " + port);
             try {
+                ControllableServiceImpl service = new ControllableServiceImpl();
                 Server server = ServerBuilder.forPort(port)
-                        .addService(new ControllableServiceImpl())
+                        .addService(service)
                         .build()
                         .start();
                 servers.add(server);
+                services.add(service);
                 logger.info("Success to start Controllable Server on port " + port);
             } catch (IOException e) {
                 throw new RuntimeException("Fail to start Controllable Server on port " + port, e);
@@ -83,5 +100,6 @@ public abstract class ControllableServiceAware {
         }
 
         servers.clear();
+        services.clear();
     }
 }
\ No newline at end of file
@@ -1,23 +1,241 @@
 package io.dreamfly.grpc.test;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of ControllableService, the behavior of each call is customized by the request.
+ *
+ * <p>Delayed responses are scheduled on a timer instead of blocking the executor of the server, so the server
+ * can keep many slow calls outstanding without becoming the bottleneck. The timer only hands the responses to an
+ * executor, so responses due at the same time are sent in parallel.
+ */
 public class ControllableServiceImpl extends ControllableServiceGrpc.ControllableServiceImplBase {
+    private static final ScheduledExecutorService DEFAULT_SCHEDULER = Executors.newScheduledThreadPool(1,
+            daemonThreadFactory("controllable-service-scheduler-%d"));
+    private static final Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), daemonThreadFactory("controllable-service-executor-%d"));
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final AtomicLong executedCount = new AtomicLong();
+    private volatile ByteString zeros = ByteString.EMPTY;
+
+    public ControllableServiceImpl() {
+        this(DEFAULT_SCHEDULER, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param scheduler scheduler of delayed responses which are also sent by it, managed by caller
+     */
+    public ControllableServiceImpl(ScheduledExecutorService scheduler) {
+        this(scheduler, scheduler);
+    }
+
+    /**
+     * @param scheduler timer of delayed responses, managed by caller
+     * @param executor executor sending delayed responses, managed by caller
+     */
+    public ControllableServiceImpl(ScheduledExecutorService scheduler, Executor executor) {
+        this.scheduler = checkNotNull(scheduler, "scheduler should not be null");
+        this.executor = checkNotNull(executor, "executor should not be null");
+    }
+
+    /**
+     * @return count of executed calls, used to verify load balancing
+     */
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
 
     @Override
     public void execute(ControllableRequest request, StreamObserver<ControllableResponse> responseObserver) {
-        // Latency
-        int expectedLatency = request.getExpectedLatency();
-        if (expectedLatency > 0) {
-            try {
-                Thread.sleep(expectedLatency);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("thread sleep interrupted", e);
+        executedCount.incrementAndGet();
+        reply(request, 1, responseObserver);
+    }
+
+    @Override
+    public void executeServerStreaming(ControllableRequest request,
+                                       StreamObserver<ControllableResponse> responseObserver) {
+        executedCount.incrementAndGet();
+        Status failure = failure(request);
+        if (failure != null) {
+            schedule(request.getExpectedLatency(), () -> responseObserver.onError(failure.asRuntimeException()));
+            return;
+        }
+        replyStream(request, Math.max(1, request.getResponseCount()), responseObserver);
+    }
+
+    @Override
+    public StreamObserver<ControllableRequest> executeClientStreaming(
+            StreamObserver<ControllableResponse> responseObserver) {
+        executedCount.incrementAndGet();
+        return new StreamObserver<ControllableRequest>() {
+            private ControllableRequest last = ControllableRequest.getDefaultInstance();
+            private int receivedCount;
+
+            @Override
+            public void onNext(ControllableRequest request) {
+                last = request;
+                receivedCount++;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // cancelled by client, nothing to reply
+            }
+
+            @Override
+            public void onCompleted() {
+                reply(last, receivedCount, responseObserver);
+            }
+        };
+    }
+
+    @Override
+    public StreamObserver<ControllableRequest> executeBidiStreaming(
+            StreamObserver<ControllableResponse> responseObserver) {
+        executedCount.incrementAndGet();
+        return new StreamObserver<ControllableRequest>() {
+            // responses are sent by the executor, which should be serialized
+            private final Object lock = new Object();
+            private int receivedCount;
+            private int pendingCount;
+            private boolean halfClosed;
+            private boolean closed;
+
+            @Override
+            public void onNext(ControllableRequest request) {
+                int count;
+                synchronized (lock) {
+                    count = ++receivedCount;
+                    pendingCount++;
+                }
+                schedule(request.getExpectedLatency(), () -> {
+                    synchronized (lock) {
+                        pendingCount--;
+                        if (closed) {
+                            return;
+                        }
+                        Status failure = failure(request);
+                        if (failure != null) {
+                            closed = true;
+                            responseObserver.onError(failure.asRuntimeException());
+                            return;
+                        }
+                        responseObserver.onNext(response(request, count));
+                        if (halfClosed && pendingCount == 0) {
+                            closed = true;
+                            responseObserver.onCompleted();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                synchronized (lock) {
+                    closed = true;
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                synchronized (lock) {
+                    halfClosed = true;
+                    if (pendingCount == 0 && !closed) {
+                        closed = true;
+                        responseObserver.onCompleted();
+                    }
+                }
+            }
+        };
+    }
+
+    private void reply(ControllableRequest request, int receivedCount,
+                       StreamObserver<ControllableResponse> responseObserver) {
+        schedule(request.getExpectedLatency(), () -> {
+            Status failure = failure(request);
+            if (failure != null) {
+                responseObserver.onError(failure.asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(response(request, receivedCount));
+            responseObserver.onCompleted();
+        });
+    }
+
+    private void replyStream(ControllableRequest request, int remaining,
+                             StreamObserver<ControllableResponse> responseObserver) {
+        if (request.getExpectedLatency() <= 0) {
+            for (int i = 0; i < remaining; i++) {
+                responseObserver.onNext(response(request, 1));
+            }
+            responseObserver.onCompleted();
+            return;
+        }
+        schedule(request.getExpectedLatency(), () -> {
+            responseObserver.onNext(response(request, 1));
+            if (remaining > 1) {
+                replyStream(request, remaining - 1, responseObserver);
+            } else {
+                responseObserver.onCompleted();
             }
+        });
+    }
+
+    private void schedule(int latency, Runnable task) {
+        if (latency > 0) {
+            scheduler.schedule(() -> executor.execute(task), latency, TimeUnit.MILLISECONDS);
+        } else {
+            task.run();
         }
+    }
 
-        ControllableResponse response = ControllableResponse.newBuilder().setRequestId(request.getRequestId()).build();
-        responseObserver.onNext(response);
-        responseObserver.onCompleted();
+    private static ThreadFactory daemonThreadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+    }
+
+    private Status failure(ControllableRequest request) {
+        double failureRate = request.getFailureRate();
+        if (failureRate <= 0 || ThreadLocalRandom.current().nextDouble() >= failureRate) {
+            return null;
+        }
+        Status status = request.getFailureCode() == 0 ? Status.UNAVAILABLE
+                : Status.fromCodeValue(request.getFailureCode());
+        return status.withDescription("injected failure of request " + request.getRequestId());
+    }
+
+    private ControllableResponse response(ControllableRequest request, int receivedCount) {
+        return ControllableResponse.newBuilder()
+                .setRequestId(request.getRequestId())
+                .setPayload(payload(request.getResponseSize()))
+                .setReceivedCount(receivedCount)
+                .build();
+    }
+
+    private ByteString payload(int size) {
+        if (size <= 0) {
+            return ByteString.EMPTY;
+        }
+        ByteString current = zeros;
+        if (current.size() < size) {
+            // the payload is shared by responses, grown to the largest size asked
+            current = ByteString.copyFrom(new byte[size]);
+            zeros = current;
+        }
+        return current.substring(0, size);
     }
 }
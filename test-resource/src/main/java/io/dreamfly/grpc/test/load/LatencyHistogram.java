@@ -0,0 +1,196 @@
+package io.dreamfly.grpc.test.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, recorded by any thread.
+ *
+ * <p>Values are counted in log-linear buckets like HdrHistogram: values below 256 are exact, larger values are
+ * split into 128 buckets per power of two, so a reported value is at most 1/128 above the recorded one.
+ * {@link #recordValueWithExpectedInterval(long, long)} corrects coordinated omission the same way as HdrHistogram.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_BITS = 8;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int EXACT_COUNT = 1 << EXACT_BITS;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = EXACT_COUNT + (Long.SIZE - 1 - EXACT_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record a value, negative values are recorded as 0.
+     *
+     * @param value latency in nanoseconds
+     */
+    public void recordValue(long value) {
+        recordValue(value, 1);
+    }
+
+    /**
+     * record a value and the values missed while it was recorded.
+     *
+     * <p>If the value is larger than the expected interval between samples, the samples which were not taken in
+     * the meantime are recorded with linearly decreasing values, down to the expected interval.
+     *
+     * @param value latency in nanoseconds
+     * @param expectedInterval expected interval between samples in nanoseconds, 0 to record the value only
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        checkArgument(expectedInterval >= 0, "invalid expectedInterval " + expectedInterval);
+        recordValue(value, 1);
+        if (expectedInterval == 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing, 1);
+        }
+    }
+
+    /**
+     * add all values of other histogram to this one.
+     *
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        sum.addAndGet(other.sum.get());
+        updateMin(other.min.get());
+        updateMax(other.max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return min value, 0 if empty
+     */
+    public long getMinValue() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    public long getMaxValue() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of values, 0 if empty
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * get the value at percentile, the highest value equivalent to the recorded one is reported.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return value, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "invalid percentile " + percentile);
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts.get(i);
+            if (accumulated >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), getMaxValue());
+            }
+        }
+        return getMaxValue();
+    }
+
+    /**
+     * @return summary of percentiles in milliseconds
+     */
+    public String summary() {
+        return String.format("count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, p99.9=%.3fms, max=%.3fms",
+                getTotalCount(), getMean() / TimeUnit.MILLISECONDS.toNanos(1), toMillis(getValueAtPercentile(50)),
+                toMillis(getValueAtPercentile(90)), toMillis(getValueAtPercentile(99)),
+                toMillis(getValueAtPercentile(99.9)), toMillis(getMaxValue()));
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" + summary() + "}";
+    }
+
+    private void recordValue(long value, long count) {
+        long normalized = Math.max(0, value);
+        counts.addAndGet(bucketIndex(normalized), count);
+        totalCount.addAndGet(count);
+        sum.addAndGet(normalized * count);
+        updateMin(normalized);
+        updateMax(normalized);
+    }
+
+    private void updateMin(long value) {
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // retry until updated or a smaller value is recorded by other thread
+        }
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry until updated or a larger value is recorded by other thread
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < EXACT_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return EXACT_COUNT + (exponent - EXACT_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < EXACT_COUNT) {
+            return index;
+        }
+        int exponent = (index - EXACT_COUNT) / SUB_BUCKET_COUNT + EXACT_BITS;
+        int subBucket = (index - EXACT_COUNT) % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
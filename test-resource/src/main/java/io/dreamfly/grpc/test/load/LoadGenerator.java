@@ -0,0 +1,352 @@
+package io.dreamfly.grpc.test.load;
+
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableResponse;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceStub;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Load generator of ControllableService, used to profile latency and throughput of a channel.
+ *
+ * <p>Two modes are supported:
+ * <ul>
+ * <li>{@link Mode#OPEN_LOOP}: calls are sent at fixed rate no matter how fast the server responds, at most
+ * {@code concurrency} calls are outstanding. Latency is measured from the time the call should have been sent,
+ * so the delay of calls waiting for outstanding ones is counted (coordinated omission correction). All calls
+ * intended during the duration are sent, so the run lasts longer if the server can't keep up with the rate.</li>
+ * <li>{@link Mode#CLOSED_LOOP}: {@code concurrency} workers send the next call when the previous one completes,
+ * optionally paced to {@code rate} in total. When paced, the calls missed during a slow call are recorded by
+ * {@link LatencyHistogram#recordValueWithExpectedInterval(long, long)}.</li>
+ * </ul>
+ *
+ * <p>Calls sent during warmup are not recorded.
+ */
+public class LoadGenerator {
+    private static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    public enum Mode {
+        OPEN_LOOP, CLOSED_LOOP
+    }
+
+    private final ControllableServiceStub stub;
+    private final Mode mode;
+    private final int concurrency;
+    private final double rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final long callTimeoutNanos;
+    private final LongFunction<ControllableRequest> requestFactory;
+
+    private final LatencyHistogram correctedHistogram = new LatencyHistogram();
+    private final LatencyHistogram uncorrectedHistogram = new LatencyHistogram();
+    private final Map<Status.Code, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final AtomicLong requestId = new AtomicLong();
+    private volatile long measureStartNanos;
+    private volatile long endNanos;
+
+    private LoadGenerator(Builder builder) {
+        this.stub = ControllableServiceGrpc.newStub(builder.channel);
+        this.mode = builder.mode;
+        this.concurrency = builder.concurrency;
+        this.rate = builder.rate;
+        this.durationNanos = builder.durationNanos;
+        this.warmupNanos = builder.warmupNanos;
+        this.callTimeoutNanos = builder.callTimeoutNanos;
+        this.requestFactory = builder.requestFactory;
+    }
+
+    public static Builder newBuilder(Channel channel) {
+        return new Builder(channel);
+    }
+
+    /**
+     * run the load and wait until all calls complete, a generator should be run only once.
+     *
+     * @return report of calls sent after warmup
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public LoadReport run() throws InterruptedException {
+        long startNanos = System.nanoTime();
+        measureStartNanos = startNanos + warmupNanos;
+        endNanos = measureStartNanos + durationNanos;
+        logger.info("begin to run load: mode={}, concurrency={}, rate={}", mode, concurrency, rate);
+
+        if (mode == Mode.OPEN_LOOP) {
+            runOpenLoop(startNanos);
+        } else {
+            runClosedLoop(startNanos);
+        }
+
+        LoadReport report = new LoadReport(mode, System.nanoTime() - measureStartNanos, correctedHistogram,
+                uncorrectedHistogram, failures);
+        logger.info("Success to run load: {}", report);
+        return report;
+    }
+
+    private void runOpenLoop(long startNanos) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        Semaphore outstanding = new Semaphore(concurrency);
+        for (long intendedNanos = startNanos; intendedNanos < endNanos; intendedNanos += intervalNanos) {
+            long waitNanos = intendedNanos - System.nanoTime();
+            while (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                waitNanos = intendedNanos - System.nanoTime();
+            }
+            // the call is late if too many calls are outstanding, which is counted from the intended time
+            outstanding.acquire();
+            send(intendedNanos, 0, outstanding::release);
+        }
+        awaitOutstanding(outstanding);
+    }
+
+    private void runClosedLoop(long startNanos) throws InterruptedException {
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch finished = new CountDownLatch(concurrency);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                // spread the first calls of workers over the interval
+                long firstNanos = startNanos + intervalNanos * i / concurrency;
+                new Worker(scheduler, intervalNanos, finished).sendAt(firstNanos);
+            }
+            if (!finished.await(endNanos - System.nanoTime() + callTimeoutNanos + TimeUnit.SECONDS.toNanos(1),
+                    TimeUnit.NANOSECONDS)) {
+                logger.warn("timeout to wait for load workers to finish");
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void awaitOutstanding(Semaphore outstanding) throws InterruptedException {
+        long timeoutNanos = callTimeoutNanos + TimeUnit.SECONDS.toNanos(1);
+        if (!outstanding.tryAcquire(concurrency, timeoutNanos, TimeUnit.NANOSECONDS)) {
+            logger.warn("timeout to wait for outstanding calls: {}", concurrency - outstanding.availablePermits());
+        }
+    }
+
+    private void send(long intendedNanos, long expectedIntervalNanos, Runnable onComplete) {
+        ControllableRequest request = requestFactory.apply(requestId.incrementAndGet());
+        long sendNanos = System.nanoTime();
+        stub.withDeadlineAfter(callTimeoutNanos, TimeUnit.NANOSECONDS)
+                .execute(request, new StreamObserver<ControllableResponse>() {
+                    @Override
+                    public void onNext(ControllableResponse value) {
+                        // only completion is measured
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        complete(Status.fromThrowable(t).getCode());
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        complete(null);
+                    }
+
+                    private void complete(Status.Code failure) {
+                        long completeNanos = System.nanoTime();
+                        if (intendedNanos >= measureStartNanos) {
+                            correctedHistogram.recordValueWithExpectedInterval(completeNanos - intendedNanos,
+                                    expectedIntervalNanos);
+                            uncorrectedHistogram.recordValue(completeNanos - sendNanos);
+                            if (failure != null) {
+                                failures.computeIfAbsent(failure, code -> new AtomicLong()).incrementAndGet();
+                            }
+                        }
+                        onComplete.run();
+                    }
+                });
+    }
+
+    /**
+     * Worker of closed loop, sends the next call when the previous one completes.
+     */
+    private class Worker {
+        private final ScheduledExecutorService scheduler;
+        private final long intervalNanos;
+        private final CountDownLatch finished;
+
+        Worker(ScheduledExecutorService scheduler, long intervalNanos, CountDownLatch finished) {
+            this.scheduler = scheduler;
+            this.intervalNanos = intervalNanos;
+            this.finished = finished;
+        }
+
+        void sendAt(long intendedNanos) {
+            if (intendedNanos >= endNanos) {
+                finished.countDown();
+                return;
+            }
+            long delayNanos = intendedNanos - System.nanoTime();
+            if (delayNanos <= 0) {
+                sendNow(intendedNanos);
+                return;
+            }
+            try {
+                scheduler.schedule(() -> sendNow(intendedNanos), delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                // scheduler is shut down after timeout
+                finished.countDown();
+            }
+        }
+
+        private void sendNow(long intendedNanos) {
+            // without pacing the call is sent immediately after the previous one, so it is never late
+            long sendNanos = intervalNanos > 0 ? intendedNanos : System.nanoTime();
+            send(sendNanos, intervalNanos, () -> {
+                long nextNanos = intervalNanos > 0 ? Math.max(sendNanos + intervalNanos, System.nanoTime())
+                        : System.nanoTime();
+                sendAt(nextNanos);
+            });
+        }
+    }
+
+    public static class Builder {
+        private final Channel channel;
+        private Mode mode = Mode.CLOSED_LOOP;
+        private int concurrency = 1;
+        private double rate;
+        private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+        private long warmupNanos;
+        private long callTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+        private LongFunction<ControllableRequest> requestFactory =
+                requestId -> ControllableRequest.newBuilder().setRequestId(requestId).build();
+
+        private Builder(Channel channel) {
+            // use newBuilder()
+            this.channel = checkNotNull(channel, "channel should not be null");
+        }
+
+        /**
+         * set the mode, closed loop by default.
+         *
+         * @param mode load mode
+         * @return Builder
+         */
+        public Builder mode(Mode mode) {
+            this.mode = checkNotNull(mode, "mode should not be null");
+            return this;
+        }
+
+        /**
+         * set the concurrency, which is the max outstanding calls in open loop and count of workers in closed loop.
+         *
+         * @param concurrency concurrency, 1 by default
+         * @return Builder
+         */
+        public Builder concurrency(int concurrency) {
+            checkArgument(concurrency > 0, "invalid concurrency " + concurrency);
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * set the rate of calls, required in open loop and optional in closed loop.
+         *
+         * @param callsPerSecond calls per second in total, 0 to disable pacing of closed loop, at most one call per
+         *                       nanosecond so the interval of calls is never 0
+         * @return Builder
+         */
+        public Builder rate(double callsPerSecond) {
+            checkArgument(callsPerSecond >= 0 && callsPerSecond <= TimeUnit.SECONDS.toNanos(1),
+                    "invalid rate " + callsPerSecond);
+            this.rate = callsPerSecond;
+            return this;
+        }
+
+        /**
+         * set the duration of measurement.
+         *
+         * @param duration duration, 10 seconds by default
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder duration(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "invalid duration " + duration);
+            this.durationNanos = checkNotNull(unit, "unit should not be null").toNanos(duration);
+            return this;
+        }
+
+        /**
+         * set the duration of warmup before measurement.
+         *
+         * @param warmup warmup duration, 0 by default
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder warmup(long warmup, TimeUnit unit) {
+            checkArgument(warmup >= 0, "invalid warmup " + warmup);
+            this.warmupNanos = checkNotNull(unit, "unit should not be null").toNanos(warmup);
+            return this;
+        }
+
+        /**
+         * set the deadline of each call.
+         *
+         * @param timeout timeout, 10 seconds by default
+         * @param unit time unit
+         * @return Builder
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            checkArgument(timeout > 0, "invalid timeout " + timeout);
+            this.callTimeoutNanos = checkNotNull(unit, "unit should not be null").toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * set the latency each request asks the server to add.
+         *
+         * @param expectedLatency latency in milliseconds
+         * @return Builder
+         */
+        public Builder expectedLatency(int expectedLatency) {
+            checkArgument(expectedLatency >= 0, "invalid expectedLatency " + expectedLatency);
+            return request(requestId -> ControllableRequest.newBuilder()
+                    .setRequestId(requestId).setExpectedLatency(expectedLatency).build());
+        }
+
+        /**
+         * set the factory of requests, to vary requests during the load.
+         *
+         * @param requestFactory factory to create request by request id
+         * @return Builder
+         */
+        public Builder request(LongFunction<ControllableRequest> requestFactory) {
+            this.requestFactory = checkNotNull(requestFactory, "requestFactory should not be null");
+            return this;
+        }
+
+        public LoadGenerator build() {
+            checkArgument(mode == Mode.CLOSED_LOOP || rate > 0, "rate is required in open loop");
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.dreamfly.grpc.test.load;
+
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result of {@link LoadGenerator}.
+ */
+public class LoadReport {
+    private final LoadGenerator.Mode mode;
+    private final long elapsedNanos;
+    private final LatencyHistogram correctedHistogram;
+    private final LatencyHistogram uncorrectedHistogram;
+    private final Map<Status.Code, Long> failures;
+
+    LoadReport(LoadGenerator.Mode mode, long elapsedNanos, LatencyHistogram correctedHistogram,
+               LatencyHistogram uncorrectedHistogram, Map<Status.Code, AtomicLong> failures) {
+        this.mode = mode;
+        this.elapsedNanos = elapsedNanos;
+        this.correctedHistogram = correctedHistogram;
+        this.uncorrectedHistogram = uncorrectedHistogram;
+        Map<Status.Code, Long> counts = new EnumMap<>(Status.Code.class);
+        failures.forEach((code, count) -> counts.put(code, count.get()));
+        this.failures = Collections.unmodifiableMap(counts);
+    }
+
+    public LoadGenerator.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param unit time unit
+     * @return time from the end of warmup to the completion of the last call
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return count of completed calls, including failed ones
+     */
+    public long getCompletedCount() {
+        return uncorrectedHistogram.getTotalCount();
+    }
+
+    public long getFailedCount() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return count of failed calls by status code
+     */
+    public Map<Status.Code, Long> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return completed calls per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getCompletedCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return latency corrected for coordinated omission, which is what a user at the intended rate would see
+     */
+    public LatencyHistogram getCorrectedHistogram() {
+        return correctedHistogram;
+    }
+
+    /**
+     * @return latency from sending to completion of each call
+     */
+    public LatencyHistogram getUncorrectedHistogram() {
+        return uncorrectedHistogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoadReport{mode=%s, completed=%d, failures=%s, throughput=%.1f/s, "
+                        + "corrected={%s}, uncorrected={%s}}", mode, getCompletedCount(), failures, getThroughput(),
+                correctedHistogram.summary(), uncorrectedHistogram.summary());
+    }
+}
@@ -0,0 +1,219 @@
+package io.dreamfly.grpc.test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import io.dreamfly.grpc.test.ControllableServiceGrpc.ControllableServiceBlockingStub;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ControllableServiceImplTest extends ControllableServiceAware {
+    private static final int PORT = 10012;
+    private ManagedChannel channel;
+    private ControllableServiceBlockingStub blockingStub;
+
+    public ControllableServiceImplTest() {
+        super(PORT);
+    }
+
+    @BeforeAll
+    public void createChannel() {
+        channel = ManagedChannelBuilder.forAddress("127.0.0.1", PORT).usePlaintext().build();
+        blockingStub = ControllableServiceGrpc.newBlockingStub(channel);
+    }
+
+    @AfterAll
+    public void shutdownChannel() {
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void execute_payload() {
+        ControllableResponse response = blockingStub.execute(ControllableRequest.newBuilder()
+                .setRequestId(1)
+                .setPayload(ByteString.copyFrom(new byte[1024 * 1024]))
+                .setResponseSize(2 * 1024 * 1024)
+                .build());
+        assertThat(response.getRequestId()).isEqualTo(1);
+        assertThat(response.getPayload().size()).isEqualTo(2 * 1024 * 1024);
+
+        response = blockingStub.execute(ControllableRequest.newBuilder().setRequestId(2).setResponseSize(10).build());
+        assertThat(response.getPayload().size()).isEqualTo(10);
+    }
+
+    @Test
+    public void execute_failure() {
+        assertThatThrownBy(() -> blockingStub.execute(ControllableRequest.newBuilder()
+                .setRequestId(3).setFailureRate(1).build()))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNAVAILABLE));
+        assertThatThrownBy(() -> blockingStub.execute(ControllableRequest.newBuilder()
+                .setRequestId(4).setFailureRate(1).setFailureCode(Status.Code.RESOURCE_EXHAUSTED.value()).build()))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED));
+
+        int failed = 0;
+        for (int i = 0; i < 200; i++) {
+            try {
+                blockingStub.execute(ControllableRequest.newBuilder().setRequestId(i).setFailureRate(0.5).build());
+            } catch (StatusRuntimeException e) {
+                failed++;
+            }
+        }
+        assertThat(failed).isBetween(50, 150);
+    }
+
+    @Test
+    public void executeServerStreaming() {
+        Iterator<ControllableResponse> responses = blockingStub.executeServerStreaming(ControllableRequest.newBuilder()
+                .setRequestId(5).setResponseCount(3).setExpectedLatency(10).setResponseSize(5).build());
+        List<ControllableResponse> received = new ArrayList<>();
+        responses.forEachRemaining(received::add);
+        assertThat(received).hasSize(3);
+        assertThat(received).allSatisfy(response -> {
+            assertThat(response.getRequestId()).isEqualTo(5);
+            assertThat(response.getPayload().size()).isEqualTo(5);
+        });
+    }
+
+    @Test
+    public void executeClientStreaming() throws Exception {
+        CompletableFuture<ControllableResponse> result = new CompletableFuture<>();
+        StreamObserver<ControllableRequest> requests = ControllableServiceGrpc.newStub(channel)
+                .executeClientStreaming(new FutureObserver<>(result));
+        for (int i = 1; i <= 4; i++) {
+            requests.onNext(ControllableRequest.newBuilder().setRequestId(i).build());
+        }
+        requests.onCompleted();
+
+        ControllableResponse response = result.get(5, TimeUnit.SECONDS);
+        assertThat(response.getRequestId()).isEqualTo(4);
+        assertThat(response.getReceivedCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void executeBidiStreaming() throws Exception {
+        List<ControllableResponse> received = new ArrayList<>();
+        CompletableFuture<ControllableResponse> completed = new CompletableFuture<>();
+        StreamObserver<ControllableRequest> requests = ControllableServiceGrpc.newStub(channel)
+                .executeBidiStreaming(new FutureObserver<ControllableResponse>(completed) {
+                    @Override
+                    public void onNext(ControllableResponse value) {
+                        received.add(value);
+                    }
+                });
+        // responses are sent when each latency expires, the slow first one comes last
+        requests.onNext(ControllableRequest.newBuilder().setRequestId(1).setExpectedLatency(100).build());
+        requests.onNext(ControllableRequest.newBuilder().setRequestId(2).build());
+        requests.onNext(ControllableRequest.newBuilder().setRequestId(3).setExpectedLatency(10).build());
+        requests.onCompleted();
+
+        completed.get(5, TimeUnit.SECONDS);
+        assertThat(received).extracting(ControllableResponse::getRequestId).containsExactly(2L, 3L, 1L);
+        assertThat(received).extracting(ControllableResponse::getReceivedCount).containsExactly(2, 3, 1);
+    }
+
+    @Test
+    public void execute_notBlockServerExecutor() throws Exception {
+        // a server running calls in the transport thread can still keep delayed calls outstanding
+        String name = "controllable-service-impl-test";
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(new ControllableServiceImpl()).build().start();
+        ManagedChannel inProcessChannel = InProcessChannelBuilder.forName(name).build();
+        try {
+            ControllableServiceGrpc.ControllableServiceFutureStub stub =
+                    ControllableServiceGrpc.newFutureStub(inProcessChannel);
+            long start = System.nanoTime();
+            List<ListenableFuture<ControllableResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(stub.execute(ControllableRequest.newBuilder().setRequestId(i).setExpectedLatency(200)
+                        .build()));
+            }
+            for (ListenableFuture<ControllableResponse> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        } finally {
+            inProcessChannel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void execute_delayedResponsesSentByExecutor() throws Exception {
+        // the timer only hands delayed responses to the executor
+        String name = "controllable-service-impl-executor-test";
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger executedTasks = new AtomicInteger();
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(new ControllableServiceImpl(scheduler, task -> {
+                    executedTasks.incrementAndGet();
+                    executor.execute(task);
+                })).build().start();
+        ManagedChannel inProcessChannel = InProcessChannelBuilder.forName(name).build();
+        try {
+            ControllableServiceGrpc.ControllableServiceFutureStub stub =
+                    ControllableServiceGrpc.newFutureStub(inProcessChannel);
+            List<ListenableFuture<ControllableResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(stub.execute(ControllableRequest.newBuilder().setRequestId(i).setExpectedLatency(50)
+                        .build()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(5, TimeUnit.SECONDS).getRequestId()).isEqualTo(i);
+            }
+            assertThat(executedTasks.get()).isEqualTo(10);
+        } finally {
+            inProcessChannel.shutdownNow();
+            server.shutdownNow();
+            scheduler.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    private static class FutureObserver<T> implements StreamObserver<T> {
+        private final CompletableFuture<T> future;
+        private T last;
+
+        FutureObserver(CompletableFuture<T> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void onNext(T value) {
+            last = value;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            future.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            future.complete(last);
+        }
+    }
+}
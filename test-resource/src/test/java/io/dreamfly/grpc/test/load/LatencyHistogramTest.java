@@ -0,0 +1,82 @@
+package io.dreamfly.grpc.test.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_roundTrip() {
+        long[] values = {0, 1, 255, 256, 257, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / 128);
+        }
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.bucketIndex(
+                LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(Long.MAX_VALUE))));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.recordValue(i * 1000L);
+        }
+        assertThat(histogram.getTotalCount()).isEqualTo(10000);
+        assertThat(histogram.getMinValue()).isEqualTo(1000);
+        assertThat(histogram.getMaxValue()).isEqualTo(10000000);
+        assertThat(histogram.getMean()).isCloseTo(5000500, within(0.1));
+        assertThat(histogram.getValueAtPercentile(50)).isCloseTo(5000000, within(5000000L / 128));
+        assertThat(histogram.getValueAtPercentile(99)).isCloseTo(9900000, within(9900000L / 128));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10000000);
+
+        histogram.reset();
+        assertThat(histogram.getTotalCount()).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+        assertThat(histogram.getMinValue()).isEqualTo(0);
+    }
+
+    @Test
+    public void recordValueWithExpectedInterval_correctCoordinatedOmission() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.recordValueWithExpectedInterval(1000, 10000);
+        }
+        // a stall of 1 second hides the 99 samples which should have been taken in the meantime
+        histogram.recordValueWithExpectedInterval(1000000, 10000);
+        assertThat(histogram.getTotalCount()).isEqualTo(199);
+        assertThat(histogram.getValueAtPercentile(75)).isGreaterThan(250000);
+
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        IntStream.range(0, 99).forEach(i -> uncorrected.recordValue(1000));
+        uncorrected.recordValue(1000000);
+        assertThat(uncorrected.getValueAtPercentile(75)).isCloseTo(1000, within(1000L / 128));
+    }
+
+    @Test
+    public void add_concurrently() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> IntStream.range(0, 10000).forEach(histogram::recordValue));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(histogram.getTotalCount()).isEqualTo(40000);
+        assertThat(histogram.getMaxValue()).isEqualTo(9999);
+
+        LatencyHistogram total = new LatencyHistogram();
+        total.recordValue(20000);
+        total.add(histogram);
+        assertThat(total.getTotalCount()).isEqualTo(40001);
+        assertThat(total.getMinValue()).isEqualTo(0);
+        assertThat(total.getMaxValue()).isEqualTo(20000);
+    }
+}
@@ -0,0 +1,105 @@
+package io.dreamfly.grpc.test.load;
+
+import io.dreamfly.grpc.test.ControllableRequest;
+import io.dreamfly.grpc.test.ControllableServiceAware;
+import io.dreamfly.grpc.test.ControllableServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LoadGeneratorTest extends ControllableServiceAware {
+    private static final int PORT = 10041;
+    private ManagedChannel channel;
+
+    public LoadGeneratorTest() {
+        super(PORT);
+    }
+
+    @BeforeAll
+    public void createChannel() {
+        channel = ManagedChannelBuilder.forAddress("127.0.0.1", PORT).usePlaintext().build();
+        // connect before measurement
+        ControllableServiceGrpc.newBlockingStub(channel).execute(ControllableRequest.getDefaultInstance());
+    }
+
+    @AfterAll
+    public void shutdownChannel() {
+        channel.shutdownNow();
+    }
+
+    @Test
+    public void closedLoop() throws InterruptedException {
+        LoadReport report = LoadGenerator.newBuilder(channel)
+                .concurrency(4)
+                .expectedLatency(5)
+                .warmup(100, TimeUnit.MILLISECONDS)
+                .duration(500, TimeUnit.MILLISECONDS)
+                .build().run();
+
+        // 4 workers with 5ms latency can't exceed 800 calls per second
+        assertThat(report.getMode()).isEqualTo(LoadGenerator.Mode.CLOSED_LOOP);
+        assertThat(report.getCompletedCount()).isBetween(1L, 450L);
+        assertThat(report.getFailedCount()).isEqualTo(0);
+        assertThat(report.getUncorrectedHistogram().getMinValue()).isGreaterThanOrEqualTo(
+                TimeUnit.MILLISECONDS.toNanos(5));
+        // without pacing no call is late
+        assertThat(report.getCorrectedHistogram().getTotalCount()).isEqualTo(report.getCompletedCount());
+        assertThat(report.toString()).contains("p99=");
+    }
+
+    @Test
+    public void openLoop_correctCoordinatedOmission() throws InterruptedException {
+        // 200 calls per second with 1 outstanding call of 20ms, most calls wait for previous ones
+        LoadReport report = LoadGenerator.newBuilder(channel)
+                .mode(LoadGenerator.Mode.OPEN_LOOP)
+                .rate(200)
+                .concurrency(1)
+                .expectedLatency(20)
+                .duration(200, TimeUnit.MILLISECONDS)
+                .build().run();
+
+        // all intended calls are sent, even after the duration
+        assertThat(report.getCompletedCount()).isEqualTo(40);
+        assertThat(report.getThroughput()).isLessThan(60);
+        long corrected = report.getCorrectedHistogram().getValueAtPercentile(90);
+        long uncorrected = report.getUncorrectedHistogram().getValueAtPercentile(90);
+        assertThat(corrected).isGreaterThan(uncorrected * 3);
+    }
+
+    @Test
+    public void failures_countedByCode() throws InterruptedException {
+        LoadReport report = LoadGenerator.newBuilder(channel)
+                .mode(LoadGenerator.Mode.OPEN_LOOP)
+                .rate(100)
+                .concurrency(10)
+                .request(requestId -> ControllableRequest.newBuilder()
+                        .setRequestId(requestId).setExpectedLatency(requestId % 2 == 0 ? 200 : 0).build())
+                .callTimeout(50, TimeUnit.MILLISECONDS)
+                .duration(300, TimeUnit.MILLISECONDS)
+                .build().run();
+
+        assertThat(report.getFailures()).containsOnlyKeys(Status.Code.DEADLINE_EXCEEDED);
+        assertThat(report.getFailedCount()).isGreaterThan(0).isLessThan(report.getCompletedCount());
+    }
+
+    @Test
+    public void build_invalid() {
+        assertThatThrownBy(() -> LoadGenerator.newBuilder(channel).mode(LoadGenerator.Mode.OPEN_LOOP).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LoadGenerator.newBuilder(channel).concurrency(0))
+                .isInstanceOf(IllegalArgumentException.class);
+        // the interval of open loop would be 0
+        assertThatThrownBy(() -> LoadGenerator.newBuilder(channel).rate(2e9))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LoadGenerator.newBuilder(channel).rate(Double.NaN))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}